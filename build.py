@@ -176,6 +176,7 @@ CTX.INPUT['catalog'] = """
  groupref.cpp
  index.cpp
  materializedviewinfo.cpp
+ materializedviewjoin.cpp
  planfragment.cpp
  procedure.cpp
  procparameter.cpp
@@ -412,6 +413,8 @@ if whichtests in ("${eetestsuite}", "storage"):
      constraint_test
      CopyOnWriteTest
      filter_test
+     MaterializedViewJoinTest
+     PartialIndexTest
      persistent_table_log_test
      PersistentTableMemStatsTest
      serialize_test
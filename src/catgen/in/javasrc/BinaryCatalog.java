@@ -0,0 +1,381 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/* WARNING: THIS FILE IS AUTO-GENERATED
+            DO NOT MODIFY THIS SOURCE
+            ALL CHANGES MUST BE MADE IN THE CATALOG GENERATOR */
+
+package org.voltdb.catalog;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of the catalog commands. It carries the same add/set
+ * commands as the text form produced by Catalog.serialize(), but paths, field names and values are
+ * interned in a string table and values are typed, so applying it needs no
+ * splitting or parsing of lines.
+ *
+ * The commands of every child of a database (each table, procedure,
+ * connector, ...) are written as a separate section and indexed by the
+ * path of that child, so a reader can apply just the sections it needs
+ * on top of the root section. Strings are only decoded when a command
+ * applied uses them.
+ *
+ * Layout:
+ * <pre>
+ *   int magic, byte version, long source checksum
+ *   varint string count, then per string: varint byte length, UTF-8 bytes
+ *   varint section count, then per section: varint path string id, varint byte length
+ *   the commands of every section, in index order, the root section first
+ * </pre>
+ * A command is an opcode byte, a varint reference (0 for the node the previous
+ * command referenced, otherwise path string id + 1) and two operands: the
+ * collection and child name string ids for add, the field name string
+ * id and a typed value for set.
+ */
+public class BinaryCatalog {
+
+    static final int MAGIC = 0x56434154; // VCAT
+    static final byte VERSION = 1;
+
+    static final byte OP_ADD = 1;
+    static final byte OP_SET = 2;
+
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_INT = 1;
+    static final byte VALUE_TRUE = 2;
+    static final byte VALUE_FALSE = 3;
+    static final byte VALUE_STRING = 4;
+    static final byte VALUE_REF = 5;
+
+    /** Path of the section holding everything that isn't in a section of its own */
+    public static final String ROOT_SECTION = "/";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer m_buf;
+    private final long m_sourceChecksum;
+    private final int[] m_stringOffsets;
+    private final int[] m_stringLengths;
+    private final String[] m_strings;
+    private final int[] m_sectionPathIds;
+    private final int[] m_sectionOffsets;
+    private final int[] m_sectionLengths;
+
+    /**
+     * Read the header, string table offsets and section index. Nothing
+     * else is decoded until sections are applied.
+     */
+    public BinaryCatalog(byte[] bytes) {
+        m_buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < 13 || m_buf.getInt() != MAGIC) {
+            throw new CatalogException("Not a binary catalog");
+        }
+        byte version = m_buf.get();
+        if (version != VERSION) {
+            throw new CatalogException("Unsupported binary catalog version " + version);
+        }
+        m_sourceChecksum = m_buf.getLong();
+
+        int stringCount = readVarint(m_buf);
+        m_stringOffsets = new int[stringCount];
+        m_stringLengths = new int[stringCount];
+        m_strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            m_stringLengths[i] = readVarint(m_buf);
+            m_stringOffsets[i] = m_buf.position();
+            m_buf.position(m_buf.position() + m_stringLengths[i]);
+        }
+
+        int sectionCount = readVarint(m_buf);
+        m_sectionPathIds = new int[sectionCount];
+        m_sectionOffsets = new int[sectionCount];
+        m_sectionLengths = new int[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            m_sectionPathIds[i] = readVarint(m_buf);
+            m_sectionLengths[i] = readVarint(m_buf);
+        }
+        int offset = m_buf.position();
+        for (int i = 0; i < sectionCount; i++) {
+            m_sectionOffsets[i] = offset;
+            offset += m_sectionLengths[i];
+        }
+        if (offset != bytes.length) {
+            throw new CatalogException("Truncated binary catalog");
+        }
+    }
+
+    public static boolean isBinaryCatalog(byte[] bytes) {
+        return bytes != null && bytes.length >= 4 && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    /**
+     * @return the checksum the writer was given for the text form this was written alongside
+     */
+    public long getSourceChecksum() {
+        return m_sourceChecksum;
+    }
+
+    public int getSectionCount() {
+        return m_sectionPathIds.length;
+    }
+
+    public String getSectionPath(int section) {
+        return getString(m_sectionPathIds[section]);
+    }
+
+    /**
+     * Apply every section to the catalog, the root section first.
+     */
+    public void apply(Catalog catalog) {
+        for (int i = 0; i < m_sectionPathIds.length; i++) {
+            applySection(catalog, i);
+        }
+    }
+
+    /**
+     * Apply the sections whose path starts with the prefix. The root section
+     * must have been applied to the catalog already.
+     * @return the number of sections applied
+     */
+    public int applySections(Catalog catalog, String pathPrefix) {
+        int applied = 0;
+        for (int i = 1; i < m_sectionPathIds.length; i++) {
+            if (getSectionPath(i).startsWith(pathPrefix)) {
+                applySection(catalog, i);
+                ++applied;
+            }
+        }
+        return applied;
+    }
+
+    public void applySection(Catalog catalog, int section) {
+        ByteBuffer buf = m_buf.duplicate();
+        buf.position(m_sectionOffsets[section]);
+        int end = m_sectionOffsets[section] + m_sectionLengths[section];
+        CatalogType prev = null;
+        while (buf.position() < end) {
+            byte op = buf.get();
+            int ref = readVarint(buf);
+            CatalogType resolved;
+            String refPath = null;
+            if (ref == 0) {
+                if (prev == null) {
+                    throw new CatalogException("Previous node reference was not preceded by a cached reference.");
+                }
+                resolved = prev;
+            }
+            else {
+                refPath = getString(ref - 1);
+                resolved = catalog.getItemForRef(refPath);
+                if (resolved == null) {
+                    throw new CatalogException("Unable to find reference for catalog item '" + refPath + "'");
+                }
+                prev = resolved;
+            }
+
+            switch (op) {
+            case OP_ADD:
+                resolved.addChild(getString(readVarint(buf)), getString(readVarint(buf)));
+                break;
+            case OP_SET:
+                String field = getString(readVarint(buf));
+                resolved.setValue(field, readValue(buf));
+                break;
+            default:
+                throw new CatalogException("Unknown binary catalog command " + op);
+            }
+        }
+    }
+
+    private Object readValue(ByteBuffer buf) {
+        byte type = buf.get();
+        switch (type) {
+        case VALUE_NULL:
+            return null;
+        case VALUE_INT:
+            int zigzag = readVarint(buf);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_STRING:
+            return getString(readVarint(buf));
+        case VALUE_REF:
+            CatalogType.UnresolvedInfo uinfo = new CatalogType.UnresolvedInfo();
+            uinfo.path = getString(readVarint(buf));
+            return uinfo;
+        default:
+            throw new CatalogException("Unknown binary catalog value type " + type);
+        }
+    }
+
+    private String getString(int id) {
+        String s = m_strings[id];
+        if (s == null) {
+            s = new String(m_buf.array(), m_stringOffsets[id], m_stringLengths[id], UTF8);
+            m_strings[id] = s;
+        }
+        return s;
+    }
+
+    static int readVarint(ByteBuffer buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Accumulates catalog commands in the binary form, putting the commands for
+     * each child of a database in its own indexed section.
+     */
+    static class Writer {
+        private final Map<String, Integer> m_stringIds = new HashMap<String, Integer>();
+        private final ByteArrayOutputStream m_strings = new ByteArrayOutputStream();
+        private final List<Integer> m_sectionPathIds = new ArrayList<Integer>();
+        private final List<ByteArrayOutputStream> m_sections = new ArrayList<ByteArrayOutputStream>();
+        private ByteArrayOutputStream m_current;
+
+        Writer() {
+            m_sectionPathIds.add(stringId(ROOT_SECTION));
+            m_current = new ByteArrayOutputStream();
+            m_sections.add(m_current);
+        }
+
+        void beginSection(String path) {
+            assert(m_current == m_sections.get(0));
+            m_sectionPathIds.add(stringId(path));
+            m_current = new ByteArrayOutputStream();
+            m_sections.add(m_current);
+        }
+
+        void endSection() {
+            m_current = m_sections.get(0);
+        }
+
+        private int stringId(String s) {
+            Integer id = m_stringIds.get(s);
+            if (id == null) {
+                id = m_stringIds.size();
+                m_stringIds.put(s, id);
+                byte[] bytes = s.getBytes(UTF8);
+                writeVarint(m_strings, bytes.length);
+                m_strings.write(bytes, 0, bytes.length);
+            }
+            return id;
+        }
+
+        private void writeRef(String path) {
+            writeVarint(m_current, path == null ? 0 : stringId(path) + 1);
+        }
+
+        void writeAdd(String parentPath, String collection, String name) {
+            m_current.write(OP_ADD);
+            writeRef(parentPath);
+            writeVarint(m_current, stringId(collection));
+            writeVarint(m_current, stringId(name));
+        }
+
+        /**
+         * @param path path of the node to set the field on, null for the previous node
+         */
+        void writeSet(String path, String field, Object value) {
+            m_current.write(OP_SET);
+            writeRef(path);
+            writeVarint(m_current, stringId(field));
+            if (value == null) {
+                m_current.write(VALUE_NULL);
+            }
+            else if (value.getClass() == Integer.class) {
+                int i = (Integer) value;
+                m_current.write(VALUE_INT);
+                writeVarint(m_current, (i << 1) ^ (i >> 31));
+            }
+            else if (value.getClass() == Boolean.class) {
+                m_current.write((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+            }
+            else if (value.getClass() == String.class) {
+                m_current.write(VALUE_STRING);
+                writeVarint(m_current, stringId((String) value));
+            }
+            else if (value instanceof CatalogType) {
+                m_current.write(VALUE_REF);
+                writeVarint(m_current, stringId(((CatalogType) value).getPath()));
+            }
+            else if (value instanceof CatalogType.UnresolvedInfo) {
+                m_current.write(VALUE_REF);
+                writeVarint(m_current, stringId(((CatalogType.UnresolvedInfo) value).path));
+            }
+            else {
+                throw new CatalogException("Unsupported field type '" + value + "'");
+            }
+        }
+
+        /**
+         * @return true if no commands were written
+         */
+        boolean isEmpty() {
+            for (ByteArrayOutputStream section : m_sections) {
+                if (section.size() > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        byte[] toBytes(long sourceChecksum) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteBuffer header = ByteBuffer.allocate(13);
+            header.putInt(MAGIC).put(VERSION).putLong(sourceChecksum);
+            out.write(header.array(), 0, header.capacity());
+            writeVarint(out, m_stringIds.size());
+            byte[] strings = m_strings.toByteArray();
+            out.write(strings, 0, strings.length);
+            writeVarint(out, m_sections.size());
+            for (int i = 0; i < m_sections.size(); i++) {
+                writeVarint(out, m_sectionPathIds.get(i));
+                writeVarint(out, m_sections.get(i).size());
+            }
+            for (ByteArrayOutputStream section : m_sections) {
+                byte[] bytes = section.toByteArray();
+                out.write(bytes, 0, bytes.length);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -122,6 +122,14 @@ public class Catalog extends CatalogType {
         }
     }
 
+    /**
+     * Run the commands of a binary catalog, as produced by serializeBinary().
+     * @param commands The binary catalog
+     */
+    public void executeBinary(final byte[] commands) {
+        new BinaryCatalog(commands).apply(this);
+    }
+
     CatalogType getItemForRef(final String ref) {
         // if it's a path
         return m_pathCache.get(ref);
@@ -173,6 +181,22 @@ public class Catalog extends CatalogType {
         return sb.toString();
     }
 
+    /**
+     * Serialize the catalog to the binary form of the commands serialize()
+     * produces, with each child of the database in its own section.
+     * @param sourceChecksum Stored in the header, for callers to tie the binary form
+     * to the text form it was written alongside
+     * @return The serialized binary representation of the catalog.
+     */
+    public byte[] serializeBinary(long sourceChecksum) {
+        BinaryCatalog.Writer writer = new BinaryCatalog.Writer();
+
+        writeFieldCommands(writer);
+        writeChildCommands(writer);
+
+        return writer.toBytes(sourceChecksum);
+    }
+
     public Catalog deepCopy() {
         Catalog copy = new Catalog();
         // Note that CatalogType.deepCopy isn't called on the catalog node.
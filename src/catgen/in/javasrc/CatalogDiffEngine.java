@@ -155,6 +155,13 @@ public class CatalogDiffEngine {
             return false;
         }
 
+        // partial indexes only enforce uniqueness among the rows matching their WHERE clause,
+        // so they only help a new index restricted to exactly the same rows.
+        if (existingIndex.getPredicatejson().length() > 0 &&
+                ! existingIndex.getPredicatejson().equals(newIndex.getPredicatejson())) {
+            return false;
+        }
+
         // expression indexes only help if they are on exactly the same expressions in the same order.
         // OK -- that's obviously overspecifying the requirement, since expression order has nothing
         // to do with it, and uniqueness of just a subset of the new index expressions would do, but
@@ -338,6 +345,9 @@ public class CatalogDiffEngine {
                 m_errors.append("May not dynamically add, drop, or rename materialized view columns.\n");
                 return false;
             }
+            if (suspect.getParent() instanceof Table && isTableJoinedByMatView((Table) suspect.getParent())) {
+                return false; // error msg already appended
+            }
             if (changeType == ChangeType.ADDITION) {
                 Column col = (Column) suspect;
                 if ((! col.getNullable()) && (col.getDefaultvalue() == null)) {
@@ -380,6 +390,10 @@ public class CatalogDiffEngine {
             return true;
         }
 
+        else if (suspect instanceof MaterializedViewJoin && ! m_inStrictMatViewDiffMode) {
+            return true;
+        }
+
         //TODO: This code is also pretty fishy
         // -- See the "salmon of doubt" comment in checkModifyWhitelist
 
@@ -430,9 +444,34 @@ public class CatalogDiffEngine {
             }
         }
 
+        // no tables joined into materialized views, whose joined rows have a fixed layout
+        if (isTableJoinedByMatView(table)) {
+            return false;
+        }
+
         return true;
     }
 
+    /**
+     * @return true if the table is joined to the source table of a materialized view,
+     * appending an error message about changing its columns
+     */
+    private boolean isTableJoinedByMatView(Table table) {
+        Database db = (Database) table.getParent();
+        for (Table source : db.getTables()) {
+            for (MaterializedViewInfo mvi : source.getViews()) {
+                for (MaterializedViewJoin join : mvi.getJoins()) {
+                    if (join.getTable().getTypeName().equals(table.getTypeName())) {
+                        m_errors.append("May not change the columns of table " + table.getTypeName() +
+                                ", which is joined by materialized view " + mvi.getTypeName() + ".\n");
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * @return true if this change may be ignored
      */
@@ -601,6 +640,16 @@ public class CatalogDiffEngine {
             }
         }
 
+        else if (suspect instanceof MaterializedViewJoin) {
+            if ( ! m_inStrictMatViewDiffMode) {
+                // The lookup index only reflects which indexes the joined table has;
+                // the EE falls back to a scan without one.
+                if (field.equals("lookupIndex") || field.equals("lookupKeysJson")) {
+                    return true;
+                }
+            }
+        }
+
         // Also allow any field changes (that haven't triggered an early return already)
         // if they are found anywhere in these sub-trees.
 
@@ -115,10 +115,16 @@ public final class CatalogMap<T extends CatalogType> implements Iterable<T> {
 
             m_items.put(mapKey, x);
 
-            // assign a relative index to every child item
-            int index = 1;
-            for (Entry<String, T> e : m_items.entrySet()) {
-                e.getValue().m_relativeIndex = index++;
+            // assign a relative index to every child item, items usually
+            // arrive in order so only renumber when this one isn't last
+            if (m_items.lastKey().equals(mapKey)) {
+                x.m_relativeIndex = m_items.size();
+            }
+            else {
+                int index = 1;
+                for (Entry<String, T> e : m_items.entrySet()) {
+                    e.getValue().m_relativeIndex = index++;
+                }
             }
 
             return x;
@@ -157,6 +163,22 @@ public final class CatalogMap<T extends CatalogType> implements Iterable<T> {
         }
     }
 
+    void writeCommandsForMembers(BinaryCatalog.Writer writer) {
+        // every child of a database gets a section of its own
+        boolean sectioned = m_parent instanceof Database;
+        for (T type : this) {
+            if (sectioned) {
+                writer.beginSection(type.getPath());
+            }
+            type.writeCreationCommand(writer);
+            type.writeFieldCommands(writer);
+            type.writeChildCommands(writer);
+            if (sectioned) {
+                writer.endSection();
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     void copyFrom(CatalogMap<? extends CatalogType> catalogMap) {
         CatalogMap<T> castedMap = (CatalogMap<T>) catalogMap;
@@ -188,7 +188,6 @@ public abstract class CatalogType implements Comparable<CatalogType> {
 
         if (m_fields.containsKey(field) == false)
             throw new CatalogException("Unexpected field name '" + field + "' for " + this);
-        Object current = m_fields.get(field);
 
         value = value.trim();
 
@@ -196,28 +195,21 @@ public abstract class CatalogType implements Comparable<CatalogType> {
         if (value.startsWith("/")) {
             UnresolvedInfo uinfo = new UnresolvedInfo();
             uinfo.path = value;
-            m_fields.put(field, uinfo);
+            setValue(field, uinfo);
         }
         // null refs
         else if (value.startsWith("null")) {
-            m_fields.put(field, null);
+            setValue(field, null);
         }
         // handle booleans
         else if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
-            if ((current != null) && (current.getClass() != Boolean.class)) {
-                throw new CatalogException("Unexpected type for field '" + field + "'.");
-            }
-            m_fields.put(field, Boolean.parseBoolean(value));
+            setValue(field, Boolean.parseBoolean(value));
         }
         // handle strings
         else if ((value.startsWith("\"") && value.endsWith("\"")) ||
             (value.startsWith("'") && value.endsWith("'"))) {
             // ignoring null types here is sketch-city, but other options seem worse?
-            if ((current != null) && (current.getClass() != String.class)) {
-                throw new CatalogException("Unexpected type for field.");
-            }
-            value = value.substring(1, value.length() - 1);
-            m_fields.put(field, value);
+            setValue(field, value.substring(1, value.length() - 1));
         }
         // handle ints
         else {
@@ -229,17 +221,34 @@ public abstract class CatalogType implements Comparable<CatalogType> {
                     isint = false;
             }
             if (isint) {
-                if ((current != null) && (current.getClass() != Integer.class)) {
-                    throw new CatalogException("Unexpected type for field.");
-                }
-                int intValue = Integer.parseInt(value);
-                m_fields.put(field, intValue);
+                setValue(field, Integer.parseInt(value));
             }
             // error
             else {
                 throw new CatalogException("Unexpected non-digit character in '" + value + "' for field '" + field + "'");
             }
         }
+    }
+
+    /**
+     * Set a field to an already typed value: an Integer, Boolean, String,
+     * an UnresolvedInfo for a reference, or null.
+     */
+    void setValue(String field, Object value) {
+        if (field == null) {
+            throw new CatalogException("Null value where it shouldn't be.");
+        }
+
+        if (m_fields.containsKey(field) == false)
+            throw new CatalogException("Unexpected field name '" + field + "' for " + this);
+        Object current = m_fields.get(field);
+
+        // refs and nulls aren't type checked
+        if ((value != null) && !(value instanceof UnresolvedInfo) &&
+            (current != null) && (current.getClass() != value.getClass())) {
+            throw new CatalogException("Unexpected type for field '" + field + "'.");
+        }
+        m_fields.put(field, value);
 
         update();
     }
@@ -275,6 +284,21 @@ public abstract class CatalogType implements Comparable<CatalogType> {
         sb.append("\n");
     }
 
+    void writeCreationCommand(BinaryCatalog.Writer writer) {
+        // skip root node command
+        if (m_path.equals("/"))
+            return;
+
+        int lastSlash = m_path.lastIndexOf("/");
+        String key = m_path.substring(lastSlash + 1);
+        String newPath = m_path.substring(0, lastSlash);
+        if (newPath.length() == 0)
+            newPath = "/";
+        int bracket = key.indexOf('[');
+        writer.writeAdd(newPath, key.substring(0, bracket),
+                key.substring(bracket + 1, key.length() - 1).trim());
+    }
+
     void writeCommandForField(StringBuilder sb, String field, boolean printFullPath) {
         String path = m_path;
         if (!printFullPath) path = "$PREV"; // use cacheing to shrink output + speed parsing
@@ -303,6 +327,10 @@ public abstract class CatalogType implements Comparable<CatalogType> {
         sb.append("\n");
     }
 
+    void writeCommandForField(BinaryCatalog.Writer writer, String field, boolean printFullPath) {
+        writer.writeSet(printFullPath ? m_path : null, field, m_fields.get(field));
+    }
+
     void writeFieldCommands(StringBuilder sb) {
         int i = 0;
         for (String field : m_fields.keySet()) {
@@ -311,6 +339,14 @@ public abstract class CatalogType implements Comparable<CatalogType> {
         }
     }
 
+    void writeFieldCommands(BinaryCatalog.Writer writer) {
+        int i = 0;
+        for (String field : m_fields.keySet()) {
+            writeCommandForField(writer, field, i == 0);
+            ++i;
+        }
+    }
+
     void writeChildCommands(StringBuilder sb) {
         for (String childCollection : m_childCollections.keySet()) {
             CatalogMap<? extends CatalogType> map = m_childCollections.get(childCollection);
@@ -318,6 +354,24 @@ public abstract class CatalogType implements Comparable<CatalogType> {
         }
     }
 
+    void writeChildCommands(BinaryCatalog.Writer writer) {
+        for (CatalogMap<? extends CatalogType> map : m_childCollections.values()) {
+            map.writeCommandsForMembers(writer);
+        }
+    }
+
+    /**
+     * Serialize this item and everything below it, in the same
+     * command format Catalog.serialize() uses for the whole catalog.
+     */
+    public String serializeSubtree() {
+        StringBuilder sb = new StringBuilder();
+        writeCreationCommand(sb);
+        writeFieldCommands(sb);
+        writeChildCommands(sb);
+        return sb.toString();
+    }
+
     @Override
     public int compareTo(CatalogType o) {
         if (this == o) {
@@ -25,7 +25,11 @@
 #include <cstdio>
 #include <cstdlib>
 #include <climits>
+#include <cstring>
 #include <inttypes.h>
+#include <string>
+#include <utility>
+#include <vector>
 
 namespace voltdb {
 
@@ -173,6 +177,23 @@ namespace voltdb {
             m_document.Parse<0>(jsonStr);
         }
 
+        /**
+         * Build the DOM from either a JSON plan or the binary encoding the frontend
+         * hands plan fragments over in, see BinaryPlanEncoding.java. The binary form
+         * starts with a NUL which can't start a JSON document.
+         */
+        PlannerDomRoot(const char *data, size_t length) {
+            if (length > 0 && data[0] == '\0') {
+                BinaryReader in(data, data + length);
+                decodeBinary(in);
+            }
+            else {
+                // rapidjson wants a terminated string
+                std::string json(data, length);
+                m_document.Parse<0>(json.c_str());
+            }
+        }
+
         bool isNull() {
             return m_document.IsNull();
         }
@@ -182,6 +203,159 @@ namespace voltdb {
         }
 
     private:
+        static const uint8_t BINARY_PLAN_VERSION = 1;
+        static const int BINARY_PLAN_MAX_DEPTH = 1000;
+        enum BinaryPlanTag {
+            BINARY_NULL = 0,
+            BINARY_FALSE = 1,
+            BINARY_TRUE = 2,
+            BINARY_INT = 3,
+            BINARY_DOUBLE = 4,
+            BINARY_STRING = 5,
+            BINARY_ARRAY = 6,
+            BINARY_OBJECT = 7
+        };
+        typedef std::vector<std::pair<const char*, rapidjson::SizeType> > KeyTable;
+
+        static void binaryPlanError(const char *msg) {
+            char buf[1024];
+            snprintf(buf, 1024, "PlannerDomRoot: %s", msg);
+            throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION, buf);
+        }
+
+        class BinaryReader {
+        public:
+            BinaryReader(const char *pos, const char *end) : m_pos(pos), m_end(end) {}
+
+            size_t remaining() const {
+                return m_end - m_pos;
+            }
+
+            const char *readBytes(size_t length) {
+                if (remaining() < length) {
+                    binaryPlanError("binary plan is truncated");
+                }
+                const char *bytes = m_pos;
+                m_pos += length;
+                return bytes;
+            }
+
+            uint8_t readByte() {
+                return static_cast<uint8_t>(*readBytes(1));
+            }
+
+            uint32_t readInt32() {
+                const uint8_t *bytes = reinterpret_cast<const uint8_t*>(readBytes(4));
+                return (static_cast<uint32_t>(bytes[0]) << 24) | (static_cast<uint32_t>(bytes[1]) << 16) |
+                       (static_cast<uint32_t>(bytes[2]) << 8) | static_cast<uint32_t>(bytes[3]);
+            }
+
+            uint64_t readVarint() {
+                uint64_t value = 0;
+                for (int shift = 0; shift < 64; shift += 7) {
+                    uint8_t b = readByte();
+                    value |= static_cast<uint64_t>(b & 0x7f) << shift;
+                    if ((b & 0x80) == 0) {
+                        return value;
+                    }
+                }
+                binaryPlanError("bad varint in binary plan");
+                return 0;
+            }
+
+            // A count of things that each take at least a byte
+            rapidjson::SizeType readCount(uint64_t count) {
+                if (count > remaining()) {
+                    binaryPlanError("binary plan is truncated");
+                }
+                return static_cast<rapidjson::SizeType>(count);
+            }
+
+        private:
+            const char *m_pos;
+            const char *m_end;
+        };
+
+        void decodeBinary(BinaryReader &in) {
+            if (in.readByte() != 0 || in.readByte() != 'V' || in.readByte() != 'P') {
+                binaryPlanError("plan is not a binary plan");
+            }
+            if (in.readByte() != BINARY_PLAN_VERSION) {
+                binaryPlanError("unsupported binary plan version");
+            }
+            KeyTable keys(in.readCount(in.readVarint()));
+            for (size_t ii = 0; ii < keys.size(); ii++) {
+                rapidjson::SizeType length = in.readCount(in.readVarint());
+                keys[ii] = std::make_pair(in.readBytes(length), length);
+            }
+            decodeValue(in, keys, m_document, 0);
+        }
+
+        void decodeValue(BinaryReader &in, const KeyTable &keys, rapidjson::Value &value, int depth) {
+            if (depth > BINARY_PLAN_MAX_DEPTH) {
+                binaryPlanError("binary plan is nested too deeply");
+            }
+            rapidjson::Document::AllocatorType &allocator = m_document.GetAllocator();
+            uint8_t tag = in.readByte();
+            switch (tag) {
+            case BINARY_NULL:
+                value.SetNull();
+                break;
+            case BINARY_FALSE:
+                value.SetBool(false);
+                break;
+            case BINARY_TRUE:
+                value.SetBool(true);
+                break;
+            case BINARY_INT: {
+                uint64_t zigzag = in.readVarint();
+                value.SetInt64(static_cast<int64_t>(zigzag >> 1) ^ -static_cast<int64_t>(zigzag & 1));
+                break;
+            }
+            case BINARY_DOUBLE: {
+                uint64_t bits = static_cast<uint64_t>(in.readInt32()) << 32;
+                bits |= in.readInt32();
+                double d;
+                memcpy(&d, &bits, sizeof(d));
+                value.SetDouble(d);
+                break;
+            }
+            case BINARY_STRING: {
+                rapidjson::SizeType length = in.readCount(in.readVarint());
+                value.SetString(in.readBytes(length), length, allocator);
+                break;
+            }
+            case BINARY_ARRAY: {
+                rapidjson::SizeType count = in.readCount(in.readInt32());
+                value.SetArray();
+                value.Reserve(count, allocator);
+                for (rapidjson::SizeType ii = 0; ii < count; ii++) {
+                    rapidjson::Value element;
+                    decodeValue(in, keys, element, depth + 1);
+                    value.PushBack(element, allocator);
+                }
+                break;
+            }
+            case BINARY_OBJECT: {
+                rapidjson::SizeType count = in.readCount(in.readInt32());
+                value.SetObject();
+                for (rapidjson::SizeType ii = 0; ii < count; ii++) {
+                    uint64_t index = in.readVarint();
+                    if (index >= keys.size()) {
+                        binaryPlanError("bad member name index in binary plan");
+                    }
+                    rapidjson::Value name(keys[index].first, keys[index].second, allocator);
+                    rapidjson::Value member;
+                    decodeValue(in, keys, member, depth + 1);
+                    value.AddMember(name, member, allocator);
+                }
+                break;
+            }
+            default:
+                binaryPlanError("unknown value tag in binary plan");
+            }
+        }
+
         rapidjson::Document m_document;
     };
 }
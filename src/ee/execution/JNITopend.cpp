@@ -277,12 +277,8 @@ std::string JNITopend::planForFragmentId(int64_t fragmentId) {
         // so it'll get cleaned up if loadTuplesFrom throws
         jni_frame.addDependencyRef(is_copy, jbuf, bytes);
 
-        // make a null terminated copy
-        boost::scoped_array<char> strdata(new char[length + 1]);
-        memcpy(strdata.get(), bytes, length);
-        strdata.get()[length] = '\0';
-
-        return std::string(strdata.get());
+        // the plan may be binary, copy all of it rather than up to the first NUL
+        return std::string(reinterpret_cast<char*>(bytes), length);
     }
     else {
         // this will be trapped later ;-)
@@ -54,6 +54,7 @@
 #include "catalog/database.h"
 #include "catalog/index.h"
 #include "catalog/materializedviewinfo.h"
+#include "catalog/materializedviewjoin.h"
 #include "catalog/procedure.h"
 #include "catalog/statement.h"
 #include "catalog/table.h"
@@ -101,6 +102,7 @@
 ENABLE_BOOST_FOREACH_ON_CONST_MAP(Column);
 ENABLE_BOOST_FOREACH_ON_CONST_MAP(Index);
 ENABLE_BOOST_FOREACH_ON_CONST_MAP(MaterializedViewInfo);
+ENABLE_BOOST_FOREACH_ON_CONST_MAP(MaterializedViewJoin);
 ENABLE_BOOST_FOREACH_ON_CONST_MAP(Table);
 
 static const size_t PLAN_CACHE_SIZE = 1024 * 10;
@@ -117,6 +119,7 @@ typedef std::pair<std::string, catalog::Column*> LabeledColumn;
 typedef std::pair<std::string, catalog::Index*> LabeledIndex;
 typedef std::pair<std::string, catalog::Table*> LabeledTable;
 typedef std::pair<std::string, catalog::MaterializedViewInfo*> LabeledView;
+typedef std::pair<std::string, catalog::MaterializedViewJoin*> LabeledViewJoin;
 
 /**
  * A list of executors for runtime.
@@ -957,7 +960,8 @@ VoltDBEngine::processCatalogAdditions(bool addAll, int64_t timestamp)
                 }
                 // This is not a leak -- the view metadata is self-installing into the new table.
                 // Also, it guards its targetTable from accidental deletion with a refcount bump.
-                new MaterializedViewMetadata(persistenttable, targetTable, currInfo);
+                new MaterializedViewMetadata(persistenttable, targetTable, currInfo,
+                                             survivingViews[ii]->joinTables());
                 obsoleteViews.push_back(survivingViews[ii]);
             }
 
@@ -1250,8 +1254,16 @@ void VoltDBEngine::initMaterializedViews(bool addAll) {
             PersistentTable *destTable = dynamic_cast<PersistentTable*>(m_tables[destCatalogTable->relativeIndex()]);
             // connect source and destination tables
             if (addAll || catalogView->wasAdded()) {
+                // resolve any replicated tables the view joins to its source table, in join order
+                std::vector<PersistentTable*> joinTables(catalogView->joins().size());
+                BOOST_FOREACH (LabeledViewJoin labeledJoin, catalogView->joins()) {
+                    catalog::MaterializedViewJoin *catalogJoin = labeledJoin.second;
+                    joinTables[catalogJoin->index() - 1] =
+                        dynamic_cast<PersistentTable*>(m_tables[catalogJoin->table()->relativeIndex()]);
+                    assert(joinTables[catalogJoin->index() - 1]);
+                }
                 // This is not a leak -- the materialized view is self-installing into srcTable.
-                new MaterializedViewMetadata(srcTable, destTable, catalogView);
+                new MaterializedViewMetadata(srcTable, destTable, catalogView, joinTables);
             } else {
                 // Ensure that the materialized view is using the latest version of the target table.
                 srcTable->updateMaterializedViewTargetTable(destTable, catalogView);
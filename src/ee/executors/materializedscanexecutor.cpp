@@ -15,8 +15,10 @@
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+#include <algorithm>
 #include <iostream>
 #include <set>
+#include <vector>
 #include "materializedscanexecutor.h"
 #include "common/debuglog.h"
 #include "common/common.h"
@@ -39,17 +41,91 @@ bool MaterializedScanExecutor::p_init(AbstractPlanNode* abstract_node,
     VOLT_TRACE("init Materialized Scan Executor");
 
     assert(dynamic_cast<MaterializedScanPlanNode*>(abstract_node));
-    assert(abstract_node->getOutputSchema().size() == 1);
+    assert(abstract_node->getOutputSchema().size() ==
+           std::max<size_t>(1, dynamic_cast<MaterializedScanPlanNode*>(abstract_node)->
+                                   getTupleColumnsExpressions().size()));
 
     // Create output table based on output schema from the plan
     setTempOutputTable(limits);
     return true;
 }
 
+typedef std::vector<StlFriendlyNValue> InListTuple;
+
+/**
+ * Materialize a tuple IN LIST from the lists of the elements for each of its
+ * columns, pairing up their values by position, in sorted order without duplicates.
+ * A tuple with a NULL element can not be equal to any row, and a tuple with an
+ * element that can not be cast to its column type can not be equal to any row
+ * either, so neither is materialized.
+ */
+static void materializeTupleInList(const std::vector<AbstractExpression*> &columnsExpressions,
+                                   SortDirectionType sortDirection, Table* output_table)
+{
+    TableTuple& tmptup = output_table->tempTuple();
+    int columnCount = static_cast<int>(columnsExpressions.size());
+    assert((int)output_table->columnCount() == columnCount);
+
+    std::vector<NValue> columnArrays;
+    for (int col = 0; col < columnCount; col++) {
+        columnArrays.push_back(columnsExpressions[col]->eval());
+    }
+    int size = columnArrays[0].arrayLength();
+
+    std::set<InListTuple> uniques;
+    for (int row = 0; row < size; row++) {
+        InListTuple tuple(columnCount);
+        bool matchable = true;
+        for (int col = 0; col < columnCount && matchable; col++) {
+            NValue value = columnArrays[col].itemAtIndex(row);
+            if (value.isNull()) {
+                matchable = false;
+                continue;
+            }
+            try {
+                tuple[col] = value.castAs(output_table->schema()->columnType(col));
+            }
+            catch (SQLException &sqlException) {
+                matchable = false;
+            }
+        }
+        if (matchable) {
+            uniques.insert(tuple);
+        }
+    }
+
+    if (sortDirection != SORT_DIRECTION_TYPE_DESC) {
+        std::set<InListTuple>::const_iterator iter;
+        for (iter = uniques.begin(); iter != uniques.end(); iter++) {
+            for (int col = 0; col < columnCount; col++) {
+                tmptup.setNValue(col, (*iter)[col]);
+            }
+            output_table->insertTuple(tmptup);
+        }
+    } else {
+        std::set<InListTuple>::const_reverse_iterator reverse_iter;
+        for (reverse_iter = uniques.rbegin(); reverse_iter != uniques.rend(); reverse_iter++) {
+            for (int col = 0; col < columnCount; col++) {
+                tmptup.setNValue(col, (*reverse_iter)[col]);
+            }
+            output_table->insertTuple(tmptup);
+        }
+    }
+}
+
 bool MaterializedScanExecutor::p_execute(const NValueArray &params) {
     MaterializedScanPlanNode* node = dynamic_cast<MaterializedScanPlanNode*>(m_abstractNode);
     assert(node);
 
+    if ( ! node->getTupleColumnsExpressions().empty()) {
+        Table* output_table = node->getOutputTable();
+        assert(output_table);
+        materializeTupleInList(node->getTupleColumnsExpressions(), node->getSortDirection(), output_table);
+        VOLT_TRACE("\n%s\n", output_table->debug().c_str());
+        VOLT_DEBUG("Finished Materializing a Table");
+        return true;
+    }
+
     // output table has one column
     Table* output_table = node->getOutputTable();
     TableTuple& tmptup = output_table->tempTuple();
@@ -163,7 +163,8 @@ bool UpdateExecutor::p_execute(const NValueArray &params) {
             }
             if (indexKeyUpdated) break;
         }
-        if (indexKeyUpdated) {
+        // Any update may move a tuple into or out of a partial index.
+        if (indexKeyUpdated || index->isPartialIndex()) {
             indexesToUpdate.push_back(index);
         }
     }
@@ -542,4 +542,10 @@ void ExpressionUtil::loadIndexedExprsFromJson(std::vector<AbstractExpression*>&
     }
 }
 
+AbstractExpression* ExpressionUtil::loadExpressionFromJson(const std::string& jsonstring)
+{
+    PlannerDomRoot domRoot(jsonstring.c_str());
+    return AbstractExpression::buildExpressionTree(domRoot.rootObject());
+}
+
 }
@@ -69,6 +69,8 @@ public:
     static void loadIndexedExprsFromJson(std::vector<voltdb::AbstractExpression*>& indexed_exprs,
                                          const std::string& jsonarraystring);
 
+    static AbstractExpression* loadExpressionFromJson(const std::string& jsonstring);
+
     /** If the passed vector contains only TupleValueExpression, it
      * returns ColumnIds of them, otherwise NULL.*/
     static boost::shared_array<int>
@@ -71,6 +71,12 @@ TableIndex::~TableIndex()
     for (int ii = 0; ii < indexed_expressions.size(); ++ii) {
         delete indexed_expressions[ii];
     }
+    delete m_scheme.predicate;
+}
+
+bool TableIndex::predicateAcceptsTuple(const TableTuple *tuple) const
+{
+    return m_scheme.predicate->eval(tuple, NULL).isTrue();
 }
 
 std::string TableIndex::debug() const
@@ -103,7 +109,11 @@ std::string TableIndex::debug() const
                << ") column in parent table";
         add = ", ";
     }
-    buffer << "] --- size: " << getSize();
+    buffer << "]";
+    if (isPartialIndex()) {
+        buffer << " WHERE " << m_scheme.predicate->debug();
+    }
+    buffer << " --- size: " << getSize();
 
     std::string ret(buffer.str());
     return (ret);
@@ -68,6 +68,7 @@ class AbstractExpression;
 struct TableIndexScheme {
     TableIndexScheme() {
         tupleSchema = NULL;
+        predicate = NULL;
     }
 
     TableIndexScheme(std::string a_name, TableIndexType a_type,
@@ -75,7 +76,9 @@ struct TableIndexScheme {
                      const std::vector<AbstractExpression*>& a_indexedExpressions,
                      bool a_unique, bool a_countable,
                      const std::string& a_expressionsAsText,
-                     const TupleSchema *a_tupleSchema) :
+                     const TupleSchema *a_tupleSchema,
+                     AbstractExpression *a_predicate = NULL,
+                     const std::string& a_predicateAsText = "") :
       name(a_name),
       type(a_type),
       columnIndices(a_columnIndices),
@@ -83,7 +86,9 @@ struct TableIndexScheme {
       unique(a_unique),
       countable(a_countable),
       expressionsAsText(a_expressionsAsText),
-      tupleSchema(a_tupleSchema)
+      tupleSchema(a_tupleSchema),
+      predicate(a_predicate),
+      predicateAsText(a_predicateAsText)
     {}
 
     // TODO: Remove this temporary backward-compatible test-only constructor -- this should go away soon, forcing
@@ -110,7 +115,9 @@ struct TableIndexScheme {
       unique(a_unique),
       countable(a_countable),
       expressionsAsText(""),
-      tupleSchema(a_tupleSchema)
+      tupleSchema(a_tupleSchema),
+      predicate(NULL),
+      predicateAsText("")
     {
     }
 
@@ -122,7 +129,9 @@ struct TableIndexScheme {
       unique(other.unique),
       countable(other.countable),
       expressionsAsText(other.expressionsAsText),
-      tupleSchema(other.tupleSchema)
+      tupleSchema(other.tupleSchema),
+      predicate(other.predicate),
+      predicateAsText(other.predicateAsText)
     {}
 
     TableIndexScheme& operator=(const TableIndexScheme& other)
@@ -135,6 +144,8 @@ struct TableIndexScheme {
         countable = other.countable;
         expressionsAsText = other.expressionsAsText;
         tupleSchema = other.tupleSchema;
+        predicate = other.predicate;
+        predicateAsText = other.predicateAsText;
         return *this;
     }
 
@@ -151,6 +162,9 @@ struct TableIndexScheme {
     bool countable;
     std::string expressionsAsText;
     const TupleSchema *tupleSchema;
+    // The WHERE clause of a partial index, or NULL if every tuple is indexed.
+    AbstractExpression *predicate;
+    std::string predicateAsText;
 };
 
 /**
@@ -360,6 +374,24 @@ public:
         return m_scheme.countable;
     }
 
+    /**
+     * A partial index only holds the tuples that satisfy its predicate.
+     * Uniqueness is only enforced among those tuples.
+     */
+    inline bool isPartialIndex() const
+    {
+        return m_scheme.predicate != NULL;
+    }
+
+    /**
+     * @return true if the given table tuple belongs in this index,
+     * which is always the case unless this is a partial index.
+     */
+    inline bool coversTuple(const TableTuple *tuple) const
+    {
+        return m_scheme.predicate == NULL || predicateAcceptsTuple(tuple);
+    }
+
     virtual bool hasKey(const TableTuple *searchKey) = 0;
 
     /**
@@ -479,6 +511,8 @@ protected:
 
 private:
 
+    bool predicateAcceptsTuple(const TableTuple *tuple) const;
+
     // This should always/only be required for unique key indexes used for primary keys.
     virtual TableIndex *cloneEmptyNonCountingTreeIndex() const {
         throwFatalException("Primary key index discovered to be non-unique or missing a cloneEmptyTreeIndex implementation.");
@@ -30,6 +30,9 @@ namespace voltdb {
         if (m_tableRowsExpression) {
             delete m_tableRowsExpression;
         }
+        for (int i = 0; i < m_tupleColumnsExpressions.size(); i++) {
+            delete m_tupleColumnsExpressions[i];
+        }
     }
 
     std::string MaterializedScanPlanNode::debugInfo(const std::string &spacer) const {
@@ -39,9 +42,18 @@ namespace voltdb {
     }
 
     void MaterializedScanPlanNode::loadFromJSONObject(PlannerDomValue obj) {
-        PlannerDomValue rowExpressionObj = obj.valueForKey("TABLE_DATA");
         assert(!m_tableRowsExpression);
-        m_tableRowsExpression = AbstractExpression::buildExpressionTree(rowExpressionObj);
+        if (obj.hasNonNullKey("TUPLE_DATA")) {
+            PlannerDomValue columnExpressionArray = obj.valueForKey("TUPLE_DATA");
+            for (int i = 0; i < columnExpressionArray.arrayLen(); i++) {
+                AbstractExpression *expr =
+                    AbstractExpression::buildExpressionTree(columnExpressionArray.valueAtIndex(i));
+                m_tupleColumnsExpressions.push_back(expr);
+            }
+        } else {
+            PlannerDomValue rowExpressionObj = obj.valueForKey("TABLE_DATA");
+            m_tableRowsExpression = AbstractExpression::buildExpressionTree(rowExpressionObj);
+        }
         if (obj.hasNonNullKey("SORT_DIRECTION")) {
             std::string sortDirectionString = obj.valueForKey("SORT_DIRECTION").asStr();
             m_sortDirection = stringToSortDirection(sortDirectionString);
@@ -20,6 +20,7 @@
 
 #include "common/common.h"
 #include "abstractscannode.h"
+#include <vector>
 
 namespace voltdb {
 
@@ -47,6 +48,9 @@ namespace voltdb {
         AbstractExpression* getTableRowsExpression() const
         { return m_tableRowsExpression; }
 
+        const std::vector<AbstractExpression*>& getTupleColumnsExpressions() const
+        { return m_tupleColumnsExpressions; }
+
         SortDirectionType getSortDirection() const
         { return m_sortDirection; }
 
@@ -59,6 +63,9 @@ namespace voltdb {
         // so long as eval() returns an NValue array as opposed
         // to the usual scalar NValues.
         AbstractExpression* m_tableRowsExpression;
+        // For a tuple IN LIST, one such expression per column, instead.
+        // The rows are made by pairing up their values by position.
+        std::vector<AbstractExpression*> m_tupleColumnsExpressions;
         SortDirectionType m_sortDirection;
     };
 
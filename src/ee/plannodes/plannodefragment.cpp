@@ -94,7 +94,8 @@ PlanNodeFragment::createFromCatalog(const string value)
     //cout << "DEBUG PlanNodeFragment::createFromCatalog: value.size() == " << value.size() << endl;
     //cout << "DEBUG PlanNodeFragment::createFromCatalog: value == " << value << endl;
 
-    PlannerDomRoot domRoot(value.c_str());
+    // The frontend hands plans over in a binary encoding which may contain NULs
+    PlannerDomRoot domRoot(value.data(), value.size());
 
     PlanNodeFragment *retval = PlanNodeFragment::fromJSONObject(domRoot.rootObject());
     return retval;
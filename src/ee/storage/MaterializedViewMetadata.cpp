@@ -15,6 +15,7 @@
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
 #include "storage/MaterializedViewMetadata.h"
+#include <algorithm>
 #include <cassert>
 #include <cstdio>
 #include <vector>
@@ -25,7 +26,9 @@
 #include "catalog/catalog.h"
 #include "catalog/columnref.h"
 #include "catalog/column.h"
+#include "catalog/materializedviewjoin.h"
 #include "catalog/table.h"
+#include "common/TupleSchema.h"
 #include "expressions/abstractexpression.h"
 #include "expressions/tuplevalueexpression.h"
 #include "expressions/constantvalueexpression.h"
@@ -33,20 +36,26 @@
 #include "expressions/expressionutil.h"
 #include "indexes/tableindex.h"
 #include "storage/persistenttable.h"
+#include "storage/tableiterator.h"
 #include "boost/foreach.hpp"
+#include "boost/scoped_ptr.hpp"
 #include "boost/shared_array.hpp"
 
 namespace voltdb {
 
 MaterializedViewMetadata::MaterializedViewMetadata(PersistentTable *srcTable,
                                                    PersistentTable *destTable,
-                                                   catalog::MaterializedViewInfo *mvInfo)
+                                                   catalog::MaterializedViewInfo *mvInfo,
+                                                   const std::vector<PersistentTable*> &joinTables)
     : m_srcTable(srcTable), m_target(destTable), m_index(destTable->primaryKeyIndex())
     , m_indexForMinMax(NULL)
     , m_filterPredicate(parsePredicate(mvInfo))
     , m_groupByColumnCount(parseGroupBy(mvInfo)) // also loads m_groupByExprs/Columns as needed
     , m_searchKeyValue(m_groupByColumnCount)
     , m_aggColumnCount(parseAggregation(mvInfo))
+    , m_joinTables(joinTables)
+    , m_joinedSchema(NULL)
+    , m_joinedTupleBackingStore(NULL)
 {
     // best not to have to worry about the destination table disappearing out from under the source table that feeds it.
     VOLT_TRACE("construct materializedViewMetadata...");
@@ -55,6 +64,12 @@ MaterializedViewMetadata::MaterializedViewMetadata(PersistentTable *srcTable,
 
     m_target->incrementRefcount();
     srcTable->addMaterializedView(this);
+    // The joined tables are guarded the same way, and tell the view about their changes.
+    BOOST_FOREACH(PersistentTable *joinTable, m_joinTables) {
+        joinTable->incrementRefcount();
+        joinTable->addJoinedMaterializedView(this);
+    }
+    parseJoins(mvInfo);
 
     // When updateTupleWithSpecificIndexes needs to be called,
     // the context is lost that identifies which base table columns potentially changed.
@@ -94,6 +109,15 @@ MaterializedViewMetadata::~MaterializedViewMetadata() {
     for (int ii = 0; ii < m_aggExprs.size(); ++ii) {
         delete m_aggExprs[ii];
     }
+    freeJoinKeyLookups();
+    delete[] m_joinedTupleBackingStore;
+    if (m_joinedSchema) {
+        TupleSchema::freeTupleSchema(m_joinedSchema);
+    }
+    BOOST_FOREACH(PersistentTable *joinTable, m_joinTables) {
+        joinTable->dropJoinedMaterializedView(this);
+        joinTable->decrementRefcount();
+    }
     m_target->decrementRefcount();
 }
 
@@ -127,6 +151,110 @@ void MaterializedViewMetadata::setIndexForMinMax(std::string indexForMinOrMax)
     }
 }
 
+void MaterializedViewMetadata::parseJoins(catalog::MaterializedViewInfo *mvInfo)
+{
+    if (m_joinTables.empty()) {
+        return;
+    }
+    assert(m_joinTables.size() == mvInfo->joins().size());
+
+    // The joined row is the source table's columns followed by those of each joined table.
+    m_joinedSchema = TupleSchema::createTupleSchema(m_srcTable->schema());
+    BOOST_FOREACH(PersistentTable *joinTable, m_joinTables) {
+        m_joinColumnOffsets.push_back(m_joinedSchema->columnCount());
+        TupleSchema *widenedSchema = TupleSchema::createTupleSchema(m_joinedSchema, joinTable->schema());
+        TupleSchema::freeTupleSchema(m_joinedSchema);
+        m_joinedSchema = widenedSchema;
+    }
+    m_joinedTuple = TableTuple(m_joinedSchema);
+    m_joinedTupleBackingStore = new char[m_joinedSchema->tupleLength() + 1];
+    memset(m_joinedTupleBackingStore, 0, m_joinedSchema->tupleLength() + 1);
+    m_joinedTuple.move(m_joinedTupleBackingStore);
+
+    setJoinLookupIndexes(mvInfo);
+}
+
+void MaterializedViewMetadata::setJoinLookupIndexes(catalog::MaterializedViewInfo *mvInfo)
+{
+    if (m_joinTables.empty()) {
+        return;
+    }
+    freeJoinKeyLookups();
+    m_joinLookups.assign(m_joinTables.size(), JoinKeyLookup());
+    m_sourceProbes.assign(m_joinTables.size(), JoinKeyLookup());
+
+    const catalog::CatalogMap<catalog::MaterializedViewJoin>& joins = mvInfo->joins();
+    for (catalog::CatalogMap<catalog::MaterializedViewJoin>::field_map_iter joinIterator = joins.begin();
+         joinIterator != joins.end(); joinIterator++) {
+        const catalog::MaterializedViewJoin *join = joinIterator->second;
+        // Join positions count from 1, the source table being position 0.
+        std::size_t joinIndex = join->index() - 1;
+        assert(joinIndex < m_joinTables.size());
+        resolveJoinKeyLookup(m_joinLookups[joinIndex], m_joinTables[joinIndex],
+                             join->lookupIndex(), join->lookupKeysJson());
+        resolveJoinKeyLookup(m_sourceProbes[joinIndex], m_srcTable,
+                             join->sourceIndex(), join->sourceKeysJson());
+    }
+}
+
+void MaterializedViewMetadata::resolveJoinKeyLookup(JoinKeyLookup &lookup, PersistentTable *table,
+                                                    const std::string &indexName, const std::string &keysJson)
+{
+    if (indexName.empty()) {
+        return;
+    }
+    ExpressionUtil::loadIndexedExprsFromJson(lookup.keys, keysJson);
+
+    // Without the index, fall back to scanning the table.
+    const std::vector<TableIndex*>& candidates = table->allIndexes();
+    BOOST_FOREACH(TableIndex *candidate, candidates) {
+        if (candidate->getName() == indexName &&
+            candidate->getKeySchema()->columnCount() == lookup.keys.size()) {
+            lookup.index = candidate;
+            break;
+        }
+    }
+    if (lookup.index == NULL) {
+        return;
+    }
+    const TupleSchema *keySchema = lookup.index->getKeySchema();
+    lookup.keyBackingStore = new char[keySchema->tupleLength() + 1];
+    memset(lookup.keyBackingStore, 0, keySchema->tupleLength() + 1);
+    lookup.keyTuple = TableTuple(keySchema);
+    lookup.keyTuple.move(lookup.keyBackingStore);
+}
+
+void MaterializedViewMetadata::freeJoinKeyLookup(JoinKeyLookup &lookup)
+{
+    BOOST_FOREACH(AbstractExpression *key, lookup.keys) {
+        delete key;
+    }
+    lookup.keys.clear();
+    delete[] lookup.keyBackingStore;
+    lookup.keyBackingStore = NULL;
+    lookup.index = NULL;
+}
+
+void MaterializedViewMetadata::freeJoinKeyLookups()
+{
+    BOOST_FOREACH(JoinKeyLookup &lookup, m_joinLookups) {
+        freeJoinKeyLookup(lookup);
+    }
+    BOOST_FOREACH(JoinKeyLookup &lookup, m_sourceProbes) {
+        freeJoinKeyLookup(lookup);
+    }
+    m_joinLookups.clear();
+    m_sourceProbes.clear();
+}
+
+inline void MaterializedViewMetadata::moveToJoinKey(JoinKeyLookup &lookup)
+{
+    for (int ii = 0; ii < lookup.keys.size(); ++ii) {
+        lookup.keyTuple.setNValue(ii, lookup.keys[ii]->eval(&m_joinedTuple, NULL));
+    }
+    lookup.index->moveToKey(&lookup.keyTuple);
+}
+
 void MaterializedViewMetadata::freeBackedTuples()
 {
     delete[] m_searchKeyBackingStore;
@@ -372,10 +500,125 @@ NValue MaterializedViewMetadata::findMinMaxFallbackValueSequential(const TableTu
 
 void MaterializedViewMetadata::processTupleInsert(const TableTuple &newTuple, bool fallible)
 {
+    if ( ! m_joinTables.empty()) {
+        m_joinedTuple.setNValues(0, newTuple, 0, m_srcTable->columnCount());
+        joinAndApply(0, m_joinTables.size(), newTuple, true, fallible);
+        return;
+    }
     // don't change the view if this tuple doesn't match the predicate
     if (m_filterPredicate && !m_filterPredicate->eval(&newTuple, NULL).isTrue()) {
         return;
     }
+    applyTupleInsert(newTuple, fallible);
+}
+
+void MaterializedViewMetadata::processTupleDelete(const TableTuple &oldTuple, bool fallible)
+{
+    if ( ! m_joinTables.empty()) {
+        m_joinedTuple.setNValues(0, oldTuple, 0, m_srcTable->columnCount());
+        joinAndApply(0, m_joinTables.size(), oldTuple, false, fallible);
+        return;
+    }
+    // don't change the view if this tuple doesn't match the predicate
+    if (m_filterPredicate && !m_filterPredicate->eval(&oldTuple, NULL).isTrue()) {
+        return;
+    }
+    applyTupleDelete(oldTuple, fallible);
+}
+
+void MaterializedViewMetadata::processJoinedTupleInsert(PersistentTable *joinTable,
+                                                        const TableTuple &newTuple, bool fallible)
+{
+    processJoinedTuple(joinTable, newTuple, true, fallible);
+}
+
+void MaterializedViewMetadata::processJoinedTupleDelete(PersistentTable *joinTable,
+                                                        const TableTuple &oldTuple, bool fallible)
+{
+    processJoinedTuple(joinTable, oldTuple, false, fallible);
+}
+
+void MaterializedViewMetadata::processJoinedTuple(PersistentTable *joinTable, const TableTuple &tuple,
+                                                  bool isInsert, bool fallible)
+{
+    std::size_t fixedJoinIndex = std::find(m_joinTables.begin(), m_joinTables.end(), joinTable) -
+                                 m_joinTables.begin();
+    assert(fixedJoinIndex < m_joinTables.size());
+    TableTuple srcTuple(m_srcTable->schema());
+    JoinKeyLookup &probe = m_sourceProbes[fixedJoinIndex];
+    if (probe.index) {
+        // only visit the source rows whose index key matches the key
+        // expressions evaluated on the changed row
+        m_joinedTuple.setNValues(m_joinColumnOffsets[fixedJoinIndex], tuple, 0, tuple.sizeInValues());
+        moveToJoinKey(probe);
+        while ( ! (srcTuple = probe.index->nextValueAtKey()).isNullTuple()) {
+            m_joinedTuple.setNValues(0, srcTuple, 0, m_srcTable->columnCount());
+            joinAndApply(0, fixedJoinIndex, tuple, isInsert, fallible);
+        }
+        return;
+    }
+
+    // The compiler requires the index, but it may be missing for a catalog compiled before
+    // it did. Then the changed row may join with any source table row.
+    boost::scoped_ptr<TableIterator> iterator(m_srcTable->makeIterator());
+    while (iterator->next(srcTuple)) {
+        m_joinedTuple.setNValues(0, srcTuple, 0, m_srcTable->columnCount());
+        joinAndApply(0, fixedJoinIndex, tuple, isInsert, fallible);
+    }
+}
+
+void MaterializedViewMetadata::joinAndApply(std::size_t joinIndex, std::size_t fixedJoinIndex,
+                                            const TableTuple &fixedTuple, bool isInsert, bool fallible)
+{
+    if (joinIndex == m_joinTables.size()) {
+        // don't change the view if the joined row doesn't match the predicate,
+        // which includes the join conditions
+        if (m_filterPredicate && !m_filterPredicate->eval(&m_joinedTuple, NULL).isTrue()) {
+            return;
+        }
+        if (isInsert) {
+            applyTupleInsert(m_joinedTuple, fallible);
+        } else {
+            applyTupleDelete(m_joinedTuple, fallible);
+        }
+        return;
+    }
+
+    if (joinIndex == fixedJoinIndex) {
+        applyJoinedRow(joinIndex, fixedJoinIndex, fixedTuple, fixedTuple, isInsert, fallible);
+        return;
+    }
+
+    PersistentTable *joinTable = m_joinTables[joinIndex];
+    JoinKeyLookup &lookup = m_joinLookups[joinIndex];
+    if (lookup.index) {
+        // only visit the rows whose index key matches the key expressions
+        // evaluated on the part of the joined row built so far
+        moveToJoinKey(lookup);
+        TableTuple joinedRow;
+        while ( ! (joinedRow = lookup.index->nextValueAtKey()).isNullTuple()) {
+            applyJoinedRow(joinIndex, fixedJoinIndex, fixedTuple, joinedRow, isInsert, fallible);
+        }
+        return;
+    }
+
+    TableTuple joinedRow(joinTable->schema());
+    boost::scoped_ptr<TableIterator> iterator(joinTable->makeIterator());
+    while (iterator->next(joinedRow)) {
+        applyJoinedRow(joinIndex, fixedJoinIndex, fixedTuple, joinedRow, isInsert, fallible);
+    }
+}
+
+inline void MaterializedViewMetadata::applyJoinedRow(std::size_t joinIndex, std::size_t fixedJoinIndex,
+                                                     const TableTuple &fixedTuple, const TableTuple &joinedRow,
+                                                     bool isInsert, bool fallible)
+{
+    m_joinedTuple.setNValues(m_joinColumnOffsets[joinIndex], joinedRow, 0, joinedRow.sizeInValues());
+    joinAndApply(joinIndex + 1, fixedJoinIndex, fixedTuple, isInsert, fallible);
+}
+
+void MaterializedViewMetadata::applyTupleInsert(const TableTuple &newTuple, bool fallible)
+{
     bool exists = findExistingTuple(newTuple);
     if (!exists) {
         // create a blank tuple
@@ -466,12 +709,8 @@ void MaterializedViewMetadata::processTupleInsert(const TableTuple &newTuple, bo
     }
 }
 
-void MaterializedViewMetadata::processTupleDelete(const TableTuple &oldTuple, bool fallible)
+void MaterializedViewMetadata::applyTupleDelete(const TableTuple &oldTuple, bool fallible)
 {
-    // don't change the view if this tuple doesn't match the predicate
-    if (m_filterPredicate && !m_filterPredicate->eval(&oldTuple, NULL).isTrue())
-        return;
-
     if ( ! findExistingTuple(oldTuple)) {
         std::string name = m_target->name();
         throwFatalException("MaterializedViewMetadata for table %s went"
@@ -30,17 +30,26 @@ namespace voltdb {
 class AbstractExpression;
 class PersistentTable;
 class TableIndex;
+class TupleSchema;
 
 /**
  * Manage the inserts, deletes and updates for a materialized view table based on changes to
  * a source table. An instance sits between the two tables translasting changes in one table
  * into changes in another table. It loads all this information from the catalog in its
  * constructor.
+ *
+ * A view may also join replicated tables to its source table. Its expressions are then
+ * evaluated on joined rows made of the source table's columns followed by those of each
+ * joined table, in join order. A change to the source table is joined with the matching
+ * rows of the joined tables, found with an index lookup where the catalog names one and
+ * by a scan otherwise. A change to a joined table is joined with every row of the source
+ * table, so it costs a scan of the source table.
  */
 class MaterializedViewMetadata {
 public:
 
-    MaterializedViewMetadata(PersistentTable *srcTable, PersistentTable *destTable, catalog::MaterializedViewInfo *mvInfo);
+    MaterializedViewMetadata(PersistentTable *srcTable, PersistentTable *destTable, catalog::MaterializedViewInfo *mvInfo,
+                             const std::vector<PersistentTable*> &joinTables = std::vector<PersistentTable*>());
     ~MaterializedViewMetadata();
 
     /**
@@ -55,17 +64,58 @@ public:
      */
     void processTupleDelete(const TableTuple &oldTuple, bool fallible);
 
+    /**
+     * Called when a table joined to the source table is inserting a tuple. This will update the
+     * materialized view destination table for each source table row the new tuple joins with,
+     * found through the source table index the catalog names for the joined table.
+     */
+    void processJoinedTupleInsert(PersistentTable *joinTable, const TableTuple &newTuple, bool fallible);
+
+    /**
+     * Called when a table joined to the source table is deleting a tuple. This will update the
+     * materialized view destination table for each source table row the old tuple joins with.
+     */
+    void processJoinedTupleDelete(PersistentTable *joinTable, const TableTuple &oldTuple, bool fallible);
+
     PersistentTable * targetTable() const { return m_target; }
     std::string indexForMinMax() const { return m_indexForMinMax == NULL ? "" : m_indexForMinMax->getName(); }
 
     void setTargetTable(PersistentTable * target);
     void setIndexForMinMax(std::string index);
 
+    const std::vector<PersistentTable*> &joinTables() const { return m_joinTables; }
+    /**
+     * (Re-)resolve the indexes used to find joined rows and the source rows a joined
+     * table's row joins with, which may have been added or dropped
+     */
+    void setJoinLookupIndexes(catalog::MaterializedViewInfo *mvInfo);
+
     catalog::MaterializedViewInfo* getMaterializedViewInfo() {
         return m_mvInfo;
     }
 private:
 
+    /**
+     * An index and the key expressions over the joined row that find the rows
+     * of one table that join with the rest of the row.
+     */
+    struct JoinKeyLookup {
+        JoinKeyLookup() : index(NULL), keyBackingStore(NULL) {}
+        std::vector<AbstractExpression*> keys;
+        TableIndex *index;
+        TableTuple keyTuple;
+        char *keyBackingStore;
+    };
+
+    static void resolveJoinKeyLookup(JoinKeyLookup &lookup, PersistentTable *table,
+                                     const std::string &indexName, const std::string &keysJson);
+    static void freeJoinKeyLookup(JoinKeyLookup &lookup);
+    void freeJoinKeyLookups();
+    /** Position the lookup's index on its key evaluated over the joined row */
+    void moveToJoinKey(JoinKeyLookup &lookup);
+
+    void processJoinedTuple(PersistentTable *joinTable, const TableTuple &tuple, bool isInsert, bool fallible);
+
     void freeBackedTuples();
     void allocateBackedTuples();
 
@@ -74,6 +124,20 @@ private:
 
     std::size_t parseGroupBy(catalog::MaterializedViewInfo *mvInfo);
     std::size_t parseAggregation(catalog::MaterializedViewInfo *mvInfo);
+    void parseJoins(catalog::MaterializedViewInfo *mvInfo);
+
+    /** Update the view for one (possibly joined) source row that passed the filter predicate */
+    void applyTupleInsert(const TableTuple &newTuple, bool fallible);
+    void applyTupleDelete(const TableTuple &oldTuple, bool fallible);
+
+    /**
+     * Fill in the joined row from the given join position on, by lookup or scan, unless
+     * the position is fixedJoinIndex, and apply each complete row that passes the filter.
+     */
+    void joinAndApply(std::size_t joinIndex, std::size_t fixedJoinIndex, const TableTuple &fixedTuple,
+                      bool isInsert, bool fallible);
+    void applyJoinedRow(std::size_t joinIndex, std::size_t fixedJoinIndex, const TableTuple &fixedTuple,
+                        const TableTuple &joinedRow, bool isInsert, bool fallible);
     NValue getGroupByValueFromSrcTuple(int colIndex, const TableTuple& tuple);
     NValue getAggInputFromSrcTuple(int aggIndex, const TableTuple& tuple);
 
@@ -149,6 +213,22 @@ private:
     // aggregated columns, but there might be some other mostly harmless ones in there that are based
     // solely on the immutable primary key (GROUP BY columns).
     std::vector<TableIndex*> m_updatableIndexList;
+
+    // the replicated tables joined to the source table, in join order
+    std::vector<PersistentTable*> m_joinTables;
+    // where each joined table's columns start in the joined row
+    std::vector<int> m_joinColumnOffsets;
+    // for each joined table, an optional index on it and key expressions over the
+    // earlier part of the joined row used to find the rows that join with it
+    std::vector<JoinKeyLookup> m_joinLookups;
+    // for each joined table, an index on the source table and key expressions over that
+    // table's part of the joined row used to find the source rows one of its rows joins with
+    std::vector<JoinKeyLookup> m_sourceProbes;
+    // scratch space for the joined row, which refers to (rather than copies)
+    // any out-of-line values of the rows it is built from
+    TupleSchema *m_joinedSchema;
+    TableTuple m_joinedTuple;
+    char *m_joinedTupleBackingStore;
 };
 
 } // namespace voltdb
@@ -114,6 +114,12 @@ bool TableCatalogDelegate::getIndexScheme(catalog::Table const &catalogTable,
         ExpressionUtil::loadIndexedExprsFromJson(indexedExpressions, expressionsAsText);
     }
 
+    AbstractExpression *predicate = NULL;
+    const std::string predicateAsText = catalogIndex.predicatejson();
+    if (predicateAsText.length() != 0) {
+        predicate = ExpressionUtil::loadExpressionFromJson(predicateAsText);
+    }
+
     // Since the columns are not going to come back in the proper order from
     // the catalogs, we'll use the index attribute to make sure we put them
     // in the right order
@@ -140,7 +146,9 @@ bool TableCatalogDelegate::getIndexScheme(catalog::Table const &catalogTable,
                                catalogIndex.unique(),
                                true, // support counting indexes (wherever supported)
                                expressionsAsText,
-                               schema);
+                               schema,
+                               predicate,
+                               predicateAsText);
     return true;
 }
 
@@ -149,7 +157,8 @@ bool TableCatalogDelegate::getIndexScheme(catalog::Table const &catalogTable,
  */
 static std::string
 getIndexIdFromMap(TableIndexType type, bool countable, bool isUnique,
-                  const std::string& expressionsAsText, vector<int32_t> columnIndexes) {
+                  const std::string& expressionsAsText, const std::string& predicateAsText,
+                  vector<int32_t> columnIndexes) {
     // add the uniqueness of the index
     std::string retval = isUnique ? "U" : "M";
 
@@ -188,6 +197,12 @@ getIndexIdFromMap(TableIndexType type, bool countable, bool isUnique,
     if (expressionsAsText.length() != 0) {
         retval += expressionsAsText;
     }
+
+    // Partial indexes over different subsets of the rows are different indexes.
+    if (predicateAsText.length() != 0) {
+        retval += "WHERE";
+        retval += predicateAsText;
+    }
     return retval;
 }
 
@@ -209,11 +224,13 @@ TableCatalogDelegate::getIndexIdString(const catalog::Index &catalogIndex)
     }
 
     const std::string expressionsAsText = catalogIndex.expressionsjson();
+    const std::string predicateAsText = catalogIndex.predicatejson();
 
     return getIndexIdFromMap((TableIndexType)catalogIndex.type(),
                              true, //catalogIndex.countable(), // always counting for now
                              catalogIndex.unique(),
                              expressionsAsText,
+                             predicateAsText,
                              columnIndexes);
 }
 
@@ -232,6 +249,7 @@ TableCatalogDelegate::getIndexIdString(const TableIndexScheme &indexScheme)
                              true, // indexScheme.countable, // // always counting for now
                              indexScheme.unique,
                              indexScheme.expressionsAsText,
+                             indexScheme.predicateAsText,
                              columnIndexes);
 }
 
@@ -453,7 +471,7 @@ void migrateViews(const catalog::CatalogMap<catalog::MaterializedViewInfo> & vie
         }
         // This is not a leak -- the materialized view metadata is self-installing into the new table.
         // Also, it guards its targetTable from accidental deletion with a refcount bump.
-        new MaterializedViewMetadata(newTable, targetTable, currInfo);
+        new MaterializedViewMetadata(newTable, targetTable, currInfo, survivingViews[ii]->joinTables());
     }
 }
 
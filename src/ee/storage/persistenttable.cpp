@@ -299,7 +299,8 @@ void PersistentTable::truncateTable(VoltDBEngine* engine) {
         }
         PersistentTable * targetEmptyTable = targetTcd->getPersistentTable();
         assert(targetEmptyTable);
-        new MaterializedViewMetadata(emptyTable, targetEmptyTable, originalView->getMaterializedViewInfo());
+        new MaterializedViewMetadata(emptyTable, targetEmptyTable, originalView->getMaterializedViewInfo(),
+                                     originalView->joinTables());
     }
     engine->rebuildTableCollections();
 
@@ -416,6 +417,9 @@ void PersistentTable::insertTupleCommon(TableTuple &source, TableTuple &target,
     for (int i = 0; i < m_views.size(); i++) {
         m_views[i]->processTupleInsert(target, fallible);
     }
+    for (int i = 0; i < m_joinedViews.size(); i++) {
+        m_joinedViews[i]->processJoinedTupleInsert(this, target, fallible);
+    }
 }
 
 /*
@@ -505,13 +509,23 @@ bool PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
         someIndexGotUpdated = true;
         for (int i = 0; i < indexesToUpdate.size(); i++) {
             TableIndex *index = indexesToUpdate[i];
-            if (!index->keyUsesNonInlinedMemory()) {
+            // A partial index may gain or lose the tuple without any change to its key.
+            bool coveredBefore = index->coversTuple(&targetTupleToUpdate);
+            bool coveredAfter = index->coversTuple(&sourceTupleWithNewValues);
+            if (!coveredBefore && !coveredAfter) {
+                indexRequiresUpdate[i] = false;
+                continue;
+            }
+            if (coveredBefore && coveredAfter && !index->keyUsesNonInlinedMemory()) {
                 if (!index->checkForIndexChange(&targetTupleToUpdate, &sourceTupleWithNewValues)) {
                     indexRequiresUpdate[i] = false;
                     continue;
                 }
             }
             indexRequiresUpdate[i] = true;
+            if (!coveredBefore) {
+                continue;
+            }
             if (!index->deleteEntry(&targetTupleToUpdate)) {
                 throwFatalException("Failed to remove tuple from index (during update) in Table: %s Index %s",
                                     m_name.c_str(), index->getName().c_str());
@@ -523,6 +537,9 @@ bool PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
     for (int i = 0; i < m_views.size(); i++) {
         m_views[i]->processTupleDelete(targetTupleToUpdate, fallible);
     }
+    for (int i = 0; i < m_joinedViews.size(); i++) {
+        m_joinedViews[i]->processJoinedTupleDelete(this, targetTupleToUpdate, fallible);
+    }
 
     if (m_schema->getUninlinedObjectColumnCount() != 0) {
         decreaseStringMemCount(targetTupleToUpdate.getNonInlinedMemorySize());
@@ -576,7 +593,7 @@ bool PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
      */
     for (int i = 0; i < indexesToUpdate.size(); i++) {
         TableIndex *index = indexesToUpdate[i];
-        if (!indexRequiresUpdate[i]) {
+        if (!indexRequiresUpdate[i] || !index->coversTuple(&targetTupleToUpdate)) {
             continue;
         }
         if (!index->addEntry(&targetTupleToUpdate)) {
@@ -589,6 +606,9 @@ bool PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
     for (int i = 0; i < m_views.size(); i++) {
         m_views[i]->processTupleInsert(targetTupleToUpdate, fallible);
     }
+    for (int i = 0; i < m_joinedViews.size(); i++) {
+        m_joinedViews[i]->processJoinedTupleInsert(this, targetTupleToUpdate, fallible);
+    }
     return true;
 }
 
@@ -620,6 +640,9 @@ void PersistentTable::updateTupleForUndo(char* tupleWithUnwantedValues,
     //If the indexes were never updated there is no need to revert them.
     if (revertIndexes) {
         BOOST_FOREACH(TableIndex *index, m_indexes) {
+            if (!index->coversTuple(&targetTupleToUpdate)) {
+                continue;
+            }
             if (!index->deleteEntry(&targetTupleToUpdate)) {
                 throwFatalException("Failed to update tuple in Table: %s Index %s",
                                     m_name.c_str(), index->getName().c_str());
@@ -645,6 +668,9 @@ void PersistentTable::updateTupleForUndo(char* tupleWithUnwantedValues,
     //If the indexes were never updated there is no need to revert them.
     if (revertIndexes) {
         BOOST_FOREACH(TableIndex *index, m_indexes) {
+            if (!index->coversTuple(&targetTupleToUpdate)) {
+                continue;
+            }
             if (!index->addEntry(&targetTupleToUpdate)) {
                 throwFatalException("Failed to update tuple in Table: %s Index %s",
                                     m_name.c_str(), index->getName().c_str());
@@ -667,6 +693,9 @@ bool PersistentTable::deleteTuple(TableTuple &target, bool fallible) {
     for (int i = 0; i < m_views.size(); i++) {
         m_views[i]->processTupleDelete(target, fallible);
     }
+    for (int i = 0; i < m_joinedViews.size(); i++) {
+        m_joinedViews[i]->processJoinedTupleDelete(this, target, fallible);
+    }
 
     if (fallible) {
         UndoQuantum *uq = ExecutorContext::currentUndoQuantum();
@@ -812,6 +841,9 @@ TableTuple PersistentTable::lookupTuple(TableTuple tuple) {
 
 void PersistentTable::insertIntoAllIndexes(TableTuple *tuple) {
     BOOST_FOREACH(TableIndex *index, m_indexes) {
+        if (!index->coversTuple(tuple)) {
+            continue;
+        }
         if (!index->addEntry(tuple)) {
             throwFatalException(
                     "Failed to insert tuple in Table: %s Index %s", m_name.c_str(), index->getName().c_str());
@@ -821,6 +853,9 @@ void PersistentTable::insertIntoAllIndexes(TableTuple *tuple) {
 
 void PersistentTable::deleteFromAllIndexes(TableTuple *tuple) {
     BOOST_FOREACH(TableIndex *index, m_indexes) {
+        if (!index->coversTuple(tuple)) {
+            continue;
+        }
         if (!index->deleteEntry(tuple)) {
             throwFatalException(
                     "Failed to delete tuple in Table: %s Index %s", m_name.c_str(), index->getName().c_str());
@@ -830,12 +865,17 @@ void PersistentTable::deleteFromAllIndexes(TableTuple *tuple) {
 
 bool PersistentTable::tryInsertOnAllIndexes(TableTuple *tuple) {
     for (int i = static_cast<int>(m_indexes.size()) - 1; i >= 0; --i) {
+        if (!m_indexes[i]->coversTuple(tuple)) {
+            continue;
+        }
         FAIL_IF(!m_indexes[i]->addEntry(tuple)) {
             VOLT_DEBUG("Failed to insert into index %s,%s",
                        m_indexes[i]->getTypeName().c_str(),
                        m_indexes[i]->getName().c_str());
             for (int j = i + 1; j < m_indexes.size(); ++j) {
-                m_indexes[j]->deleteEntry(tuple);
+                if (m_indexes[j]->coversTuple(tuple)) {
+                    m_indexes[j]->deleteEntry(tuple);
+                }
             }
             return false;
         }
@@ -849,7 +889,11 @@ bool PersistentTable::checkUpdateOnUniqueIndexes(TableTuple &targetTupleToUpdate
 {
     BOOST_FOREACH(TableIndex* index, indexesToUpdate) {
         if (index->isUniqueIndex()) {
-            if (index->checkForIndexChange(&targetTupleToUpdate, &sourceTupleWithNewValues) == false)
+            // a partial index only enforces uniqueness among the tuples it covers
+            if ( ! index->coversTuple(&sourceTupleWithNewValues))
+                continue;
+            if (index->coversTuple(&targetTupleToUpdate) &&
+                index->checkForIndexChange(&targetTupleToUpdate, &sourceTupleWithNewValues) == false)
                 continue; // no update is needed for this index
 
             // if there is a change, the new_key has to be checked
@@ -903,6 +947,24 @@ void PersistentTable::dropMaterializedView(MaterializedViewMetadata *targetView)
     delete targetView;
 }
 
+/*
+ * A view of another table started joining this table. The view's source table owns it.
+ */
+void PersistentTable::addJoinedMaterializedView(MaterializedViewMetadata *view)
+{
+    m_joinedViews.push_back(view);
+}
+
+/*
+ * A view of another table stopped joining this table, typically because it is being deleted.
+ */
+void PersistentTable::dropJoinedMaterializedView(MaterializedViewMetadata *view)
+{
+    std::vector<MaterializedViewMetadata*>::iterator toView = find(m_joinedViews.begin(), m_joinedViews.end(), view);
+    assert(toView != m_joinedViews.end());
+    m_joinedViews.erase(toView);
+}
+
 void
 PersistentTable::segregateMaterializedViews(std::map<std::string, catalog::MaterializedViewInfo*>::const_iterator const & start,
                                             std::map<std::string, catalog::MaterializedViewInfo*>::const_iterator const & end,
@@ -952,6 +1014,8 @@ PersistentTable::updateMaterializedViewTargetTable(PersistentTable* target, cata
             if (currView->indexForMinMax().compare(targetMvInfo->indexForMinMax()) != 0) {
                 currView->setIndexForMinMax(targetMvInfo->indexForMinMax());
             }
+            // and the indexes used to find joined rows
+            currView->setJoinLookupIndexes(targetMvInfo);
             return;
         }
 
@@ -961,6 +1025,7 @@ PersistentTable::updateMaterializedViewTargetTable(PersistentTable* target, cata
             // the view was initialized, so re-initialize the view.
             currView->setTargetTable(target);
             currView->setIndexForMinMax(targetMvInfo->indexForMinMax());
+            currView->setJoinLookupIndexes(targetMvInfo);
             return;
         }
     }
@@ -1209,6 +1274,9 @@ void PersistentTable::swapTuples(TableTuple &originalTuple,
      */
     if (!originalTuple.isPendingDelete()) {
         BOOST_FOREACH(TableIndex *index, m_indexes) {
+            if (!index->coversTuple(&originalTuple)) {
+                continue;
+            }
             if (!index->replaceEntryNoKeyChange(destinationTuple, originalTuple)) {
                 throwFatalException("Failed to update tuple in Table: %s Index %s",
                                     m_name.c_str(), index->getName().c_str());
@@ -338,6 +338,10 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
                                     std::vector<MaterializedViewMetadata*> &obsoleteViewsOut);
     void updateMaterializedViewTargetTable(PersistentTable* target, catalog::MaterializedViewInfo* targetMvInfo);
 
+    /** Add/drop materialized views of other tables that join this table. They are owned by their source tables. */
+    void addJoinedMaterializedView(MaterializedViewMetadata *view);
+    void dropJoinedMaterializedView(MaterializedViewMetadata *view);
+
     /**
      * Attempt to stream more tuples from the table to the provided
      * output stream.
@@ -532,6 +536,9 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
     // list of materialized views that are sourced from this table
     std::vector<MaterializedViewMetadata *> m_views;
 
+    // list of materialized views of other tables that join this table
+    std::vector<MaterializedViewMetadata *> m_joinedViews;
+
     // STATS
     voltdb::PersistentTableStats stats_;
     voltdb::TableStats* getTableStats();
@@ -528,7 +528,9 @@ void Table::addIndex(TableIndex *index) {
     TableTuple tuple(m_schema);
     TableIterator iter = iterator();
     while (iter.next(tuple)) {
-        index->addEntry(&tuple);
+        if (index->coversTuple(&tuple)) {
+            index->addEntry(&tuple);
+        }
     }
 
     // add the index to the table
@@ -880,11 +880,8 @@ std::string VoltDBIPC::planForFragmentId(int64_t fragmentId) {
         exit(-1);
     }
 
-    // null terminate
-    planBytes[length] = '\0';
-
-    // need to return a string
-    return std::string(planBytes.get());
+    // need to return a string, the plan may be binary so it can't stop at a NUL
+    return std::string(planBytes.get(), length);
 }
 
 void VoltDBIPC::crashVoltDB(voltdb::FatalException e) {
@@ -0,0 +1,261 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google_voltpatches.common.base.Preconditions;
+
+/**
+ * Open addressing hash map from primitive long keys to objects, for the hot
+ * bookkeeping paths that would otherwise box a Long and allocate an entry per put.
+ * Linear probing, deletes shift the following entries back so there are no tombstones.
+ * Null values are not allowed, a null slot is an empty slot.
+ *
+ * Not thread safe. The map must not be modified while a cursor is in use.
+ */
+public class LongObjectHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] m_keys;
+    private Object[] m_values;
+    private int m_mask;
+    private int m_size = 0;
+    private int m_resizeThreshold;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    static int capacityFor(int expectedSize) {
+        Preconditions.checkArgument(expectedSize >= 0);
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Murmur3 finalizer, so sequential transaction ids spread over the table
+     */
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+        m_resizeThreshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key) & m_mask;
+        while (m_values[index] != null) {
+            if (m_keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & m_mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V)m_values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value previously mapped to the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Preconditions.checkNotNull(value);
+        int index = hash(key) & m_mask;
+        while (m_values[index] != null) {
+            if (m_keys[index] == key) {
+                V old = (V)m_values[index];
+                m_values[index] = value;
+                return old;
+            }
+            index = (index + 1) & m_mask;
+        }
+        m_keys[index] = key;
+        m_values[index] = value;
+        if (++m_size > m_resizeThreshold) {
+            rehash(m_keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was mapped to the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V old = (V)m_values[index];
+        m_values[index] = null;
+        --m_size;
+        // shift back entries that probed past the freed slot
+        int free = index;
+        index = (index + 1) & m_mask;
+        while (m_values[index] != null) {
+            int home = hash(m_keys[index]) & m_mask;
+            if (((index - home) & m_mask) >= ((index - free) & m_mask)) {
+                m_keys[free] = m_keys[index];
+                m_values[free] = m_values[index];
+                m_values[index] = null;
+                free = index;
+            }
+            index = (index + 1) & m_mask;
+        }
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(m_values, null);
+        m_size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = m_keys;
+        Object[] oldValues = m_values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldKeys[i]) & m_mask;
+                while (m_values[index] != null) {
+                    index = (index + 1) & m_mask;
+                }
+                m_keys[index] = oldKeys[i];
+                m_values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the keys, in no particular order
+     */
+    public long[] keys() {
+        long[] keys = new long[m_size];
+        int count = 0;
+        for (int i = 0; i < m_values.length; i++) {
+            if (m_values[i] != null) {
+                keys[count++] = m_keys[i];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return a copy of the values, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(m_size);
+        for (int i = 0; i < m_values.length; i++) {
+            if (m_values[i] != null) {
+                values.add((V)m_values[i]);
+            }
+        }
+        return values;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks the entries in place without allocating per entry
+     */
+    public class Cursor {
+        private int m_index = -1;
+
+        public boolean advance() {
+            while (++m_index < m_values.length) {
+                if (m_values[m_index] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long key() {
+            checkPosition();
+            return m_keys[m_index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkPosition();
+            return (V)m_values[m_index];
+        }
+
+        private void checkPosition() {
+            if (m_index < 0 || m_index >= m_values.length || m_values[m_index] == null) {
+                throw new NoSuchElementException();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Cursor cursor = cursor();
+        boolean first = true;
+        while (cursor.advance()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(cursor.key()).append('=').append(cursor.value());
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,241 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google_voltpatches.common.base.Preconditions;
+
+/**
+ * Open addressing hash map keyed by a pair of primitive longs, so composite keys like
+ * (txnId, spHandle) don't need a key object per entry. Same scheme as
+ * {@link LongObjectHashMap}: linear probing, backward shift deletes, no null values.
+ *
+ * Not thread safe. The map must not be modified while a cursor is in use.
+ */
+public class LongPairObjectHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] m_firstKeys;
+    private long[] m_secondKeys;
+    private Object[] m_values;
+    private int m_mask;
+    private int m_size = 0;
+    private int m_resizeThreshold;
+
+    public LongPairObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongPairObjectHashMap(int expectedSize) {
+        allocate(LongObjectHashMap.capacityFor(expectedSize));
+    }
+
+    static int hash(long first, long second) {
+        return LongObjectHashMap.hash(first * 31 + second);
+    }
+
+    private void allocate(int capacity) {
+        m_firstKeys = new long[capacity];
+        m_secondKeys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+        m_resizeThreshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    private int indexOf(long first, long second) {
+        int index = hash(first, second) & m_mask;
+        while (m_values[index] != null) {
+            if (m_firstKeys[index] == first && m_secondKeys[index] == second) {
+                return index;
+            }
+            index = (index + 1) & m_mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long first, long second) {
+        int index = indexOf(first, second);
+        return index < 0 ? null : (V)m_values[index];
+    }
+
+    public boolean containsKey(long first, long second) {
+        return indexOf(first, second) >= 0;
+    }
+
+    /**
+     * @return the value previously mapped to the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long first, long second, V value) {
+        Preconditions.checkNotNull(value);
+        int index = hash(first, second) & m_mask;
+        while (m_values[index] != null) {
+            if (m_firstKeys[index] == first && m_secondKeys[index] == second) {
+                V old = (V)m_values[index];
+                m_values[index] = value;
+                return old;
+            }
+            index = (index + 1) & m_mask;
+        }
+        m_firstKeys[index] = first;
+        m_secondKeys[index] = second;
+        m_values[index] = value;
+        if (++m_size > m_resizeThreshold) {
+            rehash(m_values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was mapped to the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long first, long second) {
+        int index = indexOf(first, second);
+        if (index < 0) {
+            return null;
+        }
+        V old = (V)m_values[index];
+        m_values[index] = null;
+        --m_size;
+        // shift back entries that probed past the freed slot
+        int free = index;
+        index = (index + 1) & m_mask;
+        while (m_values[index] != null) {
+            int home = hash(m_firstKeys[index], m_secondKeys[index]) & m_mask;
+            if (((index - home) & m_mask) >= ((index - free) & m_mask)) {
+                m_firstKeys[free] = m_firstKeys[index];
+                m_secondKeys[free] = m_secondKeys[index];
+                m_values[free] = m_values[index];
+                m_values[index] = null;
+                free = index;
+            }
+            index = (index + 1) & m_mask;
+        }
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(m_values, null);
+        m_size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldFirstKeys = m_firstKeys;
+        long[] oldSecondKeys = m_secondKeys;
+        Object[] oldValues = m_values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldFirstKeys[i], oldSecondKeys[i]) & m_mask;
+                while (m_values[index] != null) {
+                    index = (index + 1) & m_mask;
+                }
+                m_firstKeys[index] = oldFirstKeys[i];
+                m_secondKeys[index] = oldSecondKeys[i];
+                m_values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the values, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(m_size);
+        for (int i = 0; i < m_values.length; i++) {
+            if (m_values[i] != null) {
+                values.add((V)m_values[i]);
+            }
+        }
+        return values;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks the entries in place without allocating per entry
+     */
+    public class Cursor {
+        private int m_index = -1;
+
+        public boolean advance() {
+            while (++m_index < m_values.length) {
+                if (m_values[m_index] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long first() {
+            checkPosition();
+            return m_firstKeys[m_index];
+        }
+
+        public long second() {
+            checkPosition();
+            return m_secondKeys[m_index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkPosition();
+            return (V)m_values[m_index];
+        }
+
+        private void checkPosition() {
+            if (m_index < 0 || m_index >= m_values.length || m_values[m_index] == null) {
+                throw new NoSuchElementException();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Cursor cursor = cursor();
+        boolean first = true;
+        while (cursor.advance()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append('<').append(cursor.first()).append(", ").append(cursor.second())
+              .append(">=").append(cursor.value());
+        }
+        return sb.append('}').toString();
+    }
+}
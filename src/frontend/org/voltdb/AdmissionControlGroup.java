@@ -138,6 +138,15 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
         m_connectionStates.remove(member.connectionId());
     }
 
+    /*
+     * Number of transactions admitted and not yet responded to. Read from other
+     * threads without synchronization, so only good for reporting load.
+     */
+    public int getPendingTxnCount()
+    {
+        return Math.max(0, m_pendingTxnCount);
+    }
+
     /*
      * Invoked when accepting a new transaction. Increments pending txn count in addition
      * to tracking the number of request bytes accepted. Can invoke onBackpressure
@@ -71,6 +71,11 @@ public class CatalogContext {
      */
     public final PlannerTool m_ptool;
 
+    /*
+     * Procedure metadata shared by all the sites running this catalog version.
+     */
+    public final ProcedureMetadataCache m_procedureMetadata;
+
     // PRIVATE
     //private final String m_path;
     private final InMemoryJarfile m_jarfile;
@@ -117,6 +122,7 @@ public class CatalogContext {
         m_jdbc = new JdbcDatabaseMetaDataGenerator(catalog);
         m_ptool = new PlannerTool(cluster, database, version);
         catalogVersion = version;
+        m_procedureMetadata = new ProcedureMetadataCache(this);
 
         if (procedures != null) {
             for (Procedure proc : procedures) {
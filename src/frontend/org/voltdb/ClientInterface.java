@@ -97,6 +97,7 @@ import org.voltdb.dtxn.InitiatorStats.InvocationInfo;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Iv2Trace;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.SiteTaskerQueue;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.InitiateResponseMessage;
 import org.voltdb.messaging.Iv2EndOfLogMessage;
@@ -105,6 +106,7 @@ import org.voltdb.messaging.LocalMailbox;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
 import org.voltdb.security.AuthenticationRequest;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.MiscUtils;
 
@@ -112,6 +114,7 @@ import com.google_voltpatches.common.base.Charsets;
 import com.google_voltpatches.common.base.Predicate;
 import com.google_voltpatches.common.base.Supplier;
 import com.google_voltpatches.common.base.Throwables;
+import com.google_voltpatches.common.collect.ImmutableList;
 import com.google_voltpatches.common.collect.ImmutableMap;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
 import com.google_voltpatches.common.util.concurrent.ListenableFutureTask;
@@ -126,6 +129,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     static long TOPOLOGY_CHANGE_CHECK_MS = Long.getLong("TOPOLOGY_CHANGE_CHECK_MS", 5000);
     static long AUTH_TIMEOUT_MS = Long.getLong("AUTH_TIMEOUT_MS", 30000);
+    // responses at least this large are compressed for clients that asked for it at login
+    static int RESPONSE_COMPRESSION_THRESHOLD = Integer.getInteger("RESPONSE_COMPRESSION_THRESHOLD", 16 * 1024);
 
     //Same as in Distributer.java
     public static final long ASYNC_TOPO_HANDLE = Long.MAX_VALUE - 1;
@@ -183,6 +188,11 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     private final RateLimitedClientNotifier m_notifier = new RateLimitedClientNotifier();
 
+    /**
+     * Results held on behalf of clients paging through them with @FetchCursor
+     */
+    private final ResultCursorRegistry m_cursors = new ResultCursorRegistry();
+
     private final Cartographer m_cartographer;
 
     /**
@@ -227,6 +237,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         }
     };
 
+    // Task queues of the local sites, summed into the load hints sent to clients that ask for them
+    private volatile List<SiteTaskerQueue> m_siteTaskerQueues = ImmutableList.of();
+
     // IV2 doesn't use this at all. Leave it here for now for legacy.
     private final int m_allPartitions[];
     private ImmutableMap<Integer, Long> m_localReplicas = ImmutableMap.<Integer, Long>builder().build();
@@ -611,7 +624,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 return null;
             }
 
-            message.flip().position(1);//skip version
+            message.flip();
+            final byte loginVersion = message.get();
             FastDeserializer fds = new FastDeserializer(message);
             final String service = fds.readString();
             final String username = fds.readString();
@@ -701,7 +715,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             /*
              * Create an input handler.
              */
-            InputHandler handler = new ClientInputHandler(username, m_isAdmin);
+            InputHandler handler = new ClientInputHandler(username, m_isAdmin, loginVersion);
 
             byte buildString[] = VoltDB.instance().getBuildString().getBytes(Charsets.UTF_8);
             responseBuffer = ByteBuffer.allocate(34 + buildString.length);
@@ -727,6 +741,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
         private Connection m_connection;
         private final boolean m_isAdmin;
+        private final boolean m_compressResponses;
+        private final boolean m_sendLoadHints;
 
         /**
          * Must use username to do a lookup via the auth system
@@ -736,10 +752,13 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         private final String m_username;
 
         public ClientInputHandler(String username,
-                                  boolean isAdmin)
+                                  boolean isAdmin,
+                                  byte loginVersion)
         {
             m_username = username.intern();
             m_isAdmin = isAdmin;
+            m_compressResponses = (loginVersion & Constants.LOGIN_VERSION_COMPRESSED_RESPONSES) != 0;
+            m_sendLoadHints = (loginVersion & Constants.LOGIN_VERSION_LOAD_HINTS) != 0;
         }
 
         public boolean isAdmin()
@@ -761,6 +780,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             try {
                 final ClientResponseImpl error = handleRead(message, this, c);
                 if (error != null) {
+                    m_cursors.discardPending(connectionId(), error.getClientHandle());
                     ByteBuffer buf = ByteBuffer.allocate(error.getSerializedSize() + 4);
                     buf.putInt(buf.capacity() - 4);
                     error.flattenToBuffer(buf).flip();
@@ -774,8 +794,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void started(final Connection c) {
             m_connection = c;
-            m_cihm.put(c.connectionId(),
-                       new ClientInterfaceHandleManager( m_isAdmin, c, m_acg.get()));
+            ClientInterfaceHandleManager cihm = new ClientInterfaceHandleManager( m_isAdmin, c, m_acg.get());
+            cihm.setCompressResponses(m_compressResponses);
+            cihm.setSendLoadHints(m_sendLoadHints);
+            m_cihm.put(c.connectionId(), cihm);
             m_acg.get().addMember(this);
             if (!m_acg.get().hasBackPressure()) {
                 c.enableReadSelection();
@@ -792,6 +814,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             ClientInterfaceHandleManager cihm = m_cihm.remove(connectionId());
             cihm.freeOutstandingTxns();
             cihm.m_acg.removeMember(this);
+            m_cursors.connectionClosed(connectionId());
             m_notifier.removeConnection(c);
         }
 
@@ -923,10 +946,46 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     clientResponse.getStatus());
 
             clientResponse.setClientHandle(clientData.m_clientHandle);
+            clientResponse = m_cursors.open(cihm.connection.connectionId(), clientResponse,
+                                            catProc != null && catProc.getReadonly());
             clientResponse.setClusterRoundtrip((int)TimeUnit.NANOSECONDS.toMillis(delta));
             clientResponse.setHash(null); // not part of wire protocol
+            if (cihm.sendLoadHints()) {
+                clientResponse.setLoadHint(getSiteQueueDepth(), getOutstandingTxns());
+            }
+
+            final int serializedSize = clientResponse.getSerializedSize();
+            if (cihm.compressResponses() && serializedSize >= RESPONSE_COMPRESSION_THRESHOLD) {
+                compressAndEnqueue();
+                return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
+            }
+            return serializedSize + 4;
+        }
 
-            return clientResponse.getSerializedSize() + 4;
+        /**
+         * Hand the response to the compression service so the network thread
+         * doesn't pay for deflating it, and queue the result when it is done.
+         */
+        private void compressAndEnqueue() {
+            final ClientResponseImpl toCompress = clientResponse;
+            final Connection connection = cihm.connection;
+            CompressionService.submitCompressionTask(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    ByteBuffer frame;
+                    try {
+                        frame = toCompress.flattenToCompressedFrame();
+                    } catch (Throwable t) {
+                        networkLog.warn("Failed to compress response for connection " +
+                                        connection.connectionId() + ", sending it uncompressed", t);
+                        frame = ByteBuffer.allocate(toCompress.getSerializedSize() + 4);
+                        frame.putInt(frame.capacity() - 4);
+                        toCompress.flattenToBuffer(frame).flip();
+                    }
+                    connection.writeStream().enqueue(frame);
+                    return null;
+                }
+            });
         }
 
         @Override
@@ -1226,11 +1285,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                             "Transaction dropped due to change in mastership. " +
                             "It is possible the transaction was committed");
             response.setClientHandle( inFlight.m_clientHandle );
-            ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
-            buf.putInt(buf.capacity() - 4);
-            response.flattenToBuffer(buf);
-            buf.flip();
-            c.writeStream().enqueue(buf);
+            enqueueDirectResponse(c, response);
         }
     }
 
@@ -1343,6 +1398,48 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         }
     }
 
+    /**
+     * Send a response produced outside of the transaction response path straight to the
+     * client, dropping any cursor request it answers.
+     */
+    private void enqueueDirectResponse(Connection c, ClientResponseImpl response) {
+        m_cursors.discardPending(c.connectionId(), response.getClientHandle());
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
+        buf.putInt(buf.capacity() - 4);
+        response.flattenToBuffer(buf).flip();
+        c.writeStream().enqueue(buf);
+    }
+
+    /**
+     * Provide the task queues of the sites on this node so their depth can be
+     * reported to clients routing by load.
+     */
+    public void setSiteTaskerQueues(List<SiteTaskerQueue> queues) {
+        m_siteTaskerQueues = ImmutableList.copyOf(queues);
+    }
+
+    /**
+     * @return the number of tasks waiting on all the sites of this node.
+     */
+    int getSiteQueueDepth() {
+        int depth = 0;
+        for (SiteTaskerQueue queue : m_siteTaskerQueues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of transactions admitted by this node and not yet responded to.
+     */
+    int getOutstandingTxns() {
+        int outstanding = 0;
+        for (AdmissionControlGroup acg : m_allACGs) {
+            outstanding += acg.getPendingTxnCount();
+        }
+        return outstanding;
+    }
+
     /**
      * Set the flag that tells this client interface to update its
      * catalog when it's threadsafe.
@@ -1396,11 +1493,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                         vt,
                         null);
         response.setClientHandle( planBatch.clientHandle );
-        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
-        buf.putInt(buf.capacity() - 4);
-        response.flattenToBuffer(buf);
-        buf.flip();
-        c.writeStream().enqueue(buf);
+        enqueueDirectResponse(c, response);
 
         //do not cache the plans for explainAdhoc
         //        planBatch.clientData = null;
@@ -1445,11 +1538,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                         vt,
                         null);
         response.setClientHandle( task.clientHandle );
-        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
-        buf.putInt(buf.capacity() - 4);
-        response.flattenToBuffer(buf);
-        buf.flip();
-        ccxn.writeStream().enqueue(buf);
+        enqueueDirectResponse(ccxn, response);
         return null;
     }
 
@@ -1644,6 +1733,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         try {
             OpsAgent agent = VoltDB.instance().getOpsAgent(selector);
             if (agent != null) {
+                // the ops agent answers on the connection directly, so the response can't be paged
+                m_cursors.discardPending(ccxn.connectionId(), task.clientHandle);
                 agent.performOpsAction(ccxn, task.clientHandle, selector, task.getParams());
             }
             else {
@@ -1715,15 +1806,36 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         final CatalogContext catalogContext = m_catalogContext.get();
         final AuthSystem.AuthUser user = catalogContext.authSystem.getUser(handler.m_username);
 
+        // cursor requests name the procedure to run and ask for its results to be paged,
+        // unwrap them before looking at the actual procedure
+        if (task.procName.equals("@OpenCursor")) {
+            error = m_cursors.prepareOpen(handler.connectionId(), task);
+            if (error != null) {
+                return error;
+            }
+        }
+
         // ping just responds as fast as possible to show the connection is alive
         // nb: ping is not a real procedure, so this is checked before other "sysprocs"
         if (task.procName.startsWith("@")) {
             if (task.procName.equals("@Ping")) {
-                return new ClientResponseImpl(ClientResponseImpl.SUCCESS, new VoltTable[0], "", task.clientHandle);
+                ClientResponseImpl pong =
+                        new ClientResponseImpl(ClientResponseImpl.SUCCESS, new VoltTable[0], "", task.clientHandle);
+                // idle clients routing by load refresh their view of this node with pings
+                if (handler.m_sendLoadHints) {
+                    pong.setLoadHint(getSiteQueueDepth(), getOutstandingTxns());
+                }
+                return pong;
             }
             if (task.procName.equals("@GetPartitionKeys")) {
                 return dispatchGetPartitionKeys(task);
             }
+            if (task.procName.equals("@FetchCursor")) {
+                return m_cursors.fetch(handler.connectionId(), task);
+            }
+            if (task.procName.equals("@CloseCursor")) {
+                return m_cursors.close(handler.connectionId(), task);
+            }
             if (task.procName.equals("@Subscribe")) {
                 return dispatchSubscribe( handler, task);
             }
@@ -1850,6 +1962,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 return dispatchUpdateApplicationCatalog(task, handler, ccxn);
             }
             else if (task.procName.equals("@SnapshotSave")) {
+                m_cursors.discardPending(ccxn.connectionId(), task.clientHandle);
                 m_snapshotDaemon.requestUserSnapshot(task, ccxn);
                 return null;
             }
@@ -1953,13 +2066,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                             new VoltTable[] { vt },
                             null,
                             task.clientHandle);
-                    ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
-                    buf.putInt(buf.capacity() - 4);
-                    response.flattenToBuffer(buf).flip();
 
                     ClientInterfaceHandleManager cihm = m_cihm.get(handler.connectionId());
                     if (cihm == null) return;
-                    cihm.connection.writeStream().enqueue(buf);
+                    enqueueDirectResponse(cihm.connection, response);
                 }
             });
             return null;
@@ -2212,11 +2322,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                             ClientResponseImpl.GRACEFUL_FAILURE,
                                             new VoltTable[0], msg,
                                             result.clientHandle);
-                                ByteBuffer buf = ByteBuffer.allocate(errorResponse.getSerializedSize() + 4);
-                                buf.putInt(buf.capacity() - 4);
-                                errorResponse.flattenToBuffer(buf);
-                                buf.flip();
-                                c.writeStream().enqueue(buf);
+                                enqueueDirectResponse(c, errorResponse);
                             }
                         }
                     }
@@ -2230,11 +2336,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                             ClientResponseImpl.SUCCESS,
                                             new VoltTable[0], "Catalog update with no changes was skipped.",
                                             result.clientHandle);
-                            ByteBuffer buf = ByteBuffer.allocate(shortcutResponse.getSerializedSize() + 4);
-                            buf.putInt(buf.capacity() - 4);
-                            shortcutResponse.flattenToBuffer(buf);
-                            buf.flip();
-                            c.writeStream().enqueue(buf);
+                            enqueueDirectResponse(c, shortcutResponse);
                         }
                         else {
                             // create the execution site task
@@ -2279,11 +2381,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                 ClientResponseImpl.GRACEFUL_FAILURE,
                                 new VoltTable[0], result.errorMsg,
                                 result.clientHandle);
-                    ByteBuffer buf = ByteBuffer.allocate(errorResponse.getSerializedSize() + 4);
-                    buf.putInt(buf.capacity() - 4);
-                    errorResponse.flattenToBuffer(buf);
-                    buf.flip();
-                    c.writeStream().enqueue(buf);
+                    enqueueDirectResponse(c, errorResponse);
                 }
             }
         }, null);
@@ -2322,11 +2420,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                     ClientResponseImpl.UNEXPECTED_FAILURE,
                                     new VoltTable[0], realReason,
                                     result.clientHandle);
-                    ByteBuffer buf = ByteBuffer.allocate(errorResponse.getSerializedSize() + 4);
-                    buf.putInt(buf.capacity() - 4);
-                    errorResponse.flattenToBuffer(buf);
-                    buf.flip();
-                    c.writeStream().enqueue(buf);
+                    enqueueDirectResponse(c, errorResponse);
                 }
             }
         }, CoreUtils.SAMETHREADEXECUTOR);
@@ -2337,6 +2431,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     private ScheduledFuture<?> m_deadConnectionFuture;
     private ScheduledFuture<?> m_topologyCheckFuture;
+    private ScheduledFuture<?> m_cursorExpirationFuture;
     public void schedulePeriodicWorks() {
         m_deadConnectionFuture = VoltDB.instance().scheduleWork(new Runnable() {
             @Override
@@ -2361,6 +2456,19 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 checkForTopologyChanges();
             }
         }, 0, TOPOLOGY_CHANGE_CHECK_MS, TimeUnit.MILLISECONDS);
+        /*
+         * Release the results of cursors clients stopped reading without closing them
+         */
+        m_cursorExpirationFuture = VoltDB.instance().scheduleWork(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    m_cursors.expireIdleCursors(System.nanoTime());
+                } catch (Exception ex) {
+                    log.warn("Exception while expiring idle cursors", ex);
+                }
+            }
+        }, 10, 10, TimeUnit.SECONDS);
     }
 
     /*
@@ -2499,6 +2607,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             m_topologyCheckFuture.cancel(false);
             try {m_topologyCheckFuture.get();} catch (Throwable t) {}
         }
+        if (m_cursorExpirationFuture != null) {
+            m_cursorExpirationFuture.cancel(false);
+            try {m_cursorExpirationFuture.get();} catch (Throwable t) {}
+        }
         if (m_maxConnectionUpdater != null) {
             m_maxConnectionUpdater.cancel(false);
         }
@@ -2584,8 +2696,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                         StoredProcedureInvocation task)
             throws Exception
     {
-        Object invocationParameter = task.getParameterAtIndex(partitionIndex);
-        return TheHashinator.getPartitionForParameter(partitionType, invocationParameter);
+        return task.getPartitionForParameter(partitionIndex, partitionType);
     }
 
     @Override
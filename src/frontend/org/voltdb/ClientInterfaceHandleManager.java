@@ -21,13 +21,12 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
+import org.voltcore.utils.LongObjectHashMap;
 import org.voltdb.iv2.MpInitiator;
 
 import com.google_voltpatches.common.collect.ImmutableMap;
@@ -61,10 +60,12 @@ public class ClientInterfaceHandleManager
     final AdmissionControlGroup m_acg;
 
     private volatile boolean m_wantsTopologyUpdates = false;
+    private volatile boolean m_compressResponses = false;
+    private volatile boolean m_sendLoadHints = false;
 
     private HandleGenerator m_shortCircuitHG = new HandleGenerator(SHORT_CIRCUIT_PART_ID);
 
-    private final Map<Long, Iv2InFlight> m_shortCircuitReads = new HashMap<Long, Iv2InFlight>();
+    private final LongObjectHashMap<Iv2InFlight> m_shortCircuitReads = new LongObjectHashMap<Iv2InFlight>();
 
     private static class HandleGenerator
     {
@@ -445,14 +446,9 @@ public class ClientInterfaceHandleManager
          * MP short circuit reads can be remote, which necessitate repair
          */
         if (partitionId == MpInitiator.MP_INIT_PID) {
-            Iterator<Map.Entry<Long, Iv2InFlight>> itr =
-                    m_shortCircuitReads.entrySet().iterator();
-            while (itr.hasNext()) {
-                Map.Entry<Long, Iv2InFlight> e = itr.next();
-                Iv2InFlight entry = e.getValue();
-
+            for (Iv2InFlight entry : m_shortCircuitReads.values()) {
                 if (entry.m_initiatorHSId != initiatorHSId) {
-                    itr.remove();
+                    m_shortCircuitReads.remove(entry.m_ciHandle);
                     retval.add(entry);
                     m_outstandingTxns--;
                     m_acg.reduceBackpressure(entry.m_messageSize);
@@ -491,4 +487,26 @@ public class ClientInterfaceHandleManager
     public boolean wantsTopologyUpdates() {
         return m_wantsTopologyUpdates;
     }
+
+    public void setCompressResponses(boolean compressResponses) {
+        m_compressResponses = compressResponses;
+    }
+
+    /**
+     * Whether the client negotiated compressed responses at login
+     */
+    public boolean compressResponses() {
+        return m_compressResponses;
+    }
+
+    public void setSendLoadHints(boolean sendLoadHints) {
+        m_sendLoadHints = sendLoadHints;
+    }
+
+    /**
+     * Whether the client asked at login for node load hints on its responses
+     */
+    public boolean sendLoadHints() {
+        return m_sendLoadHints;
+    }
 }
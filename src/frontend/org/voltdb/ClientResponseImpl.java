@@ -19,7 +19,11 @@ package org.voltdb;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONString;
@@ -49,6 +53,13 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     private int clientRoundTripTime = 0;
     private long clientRoundTripTimeNanos = 0;
 
+    // load of the responding node, only sent to clients that asked for it at login
+    private int m_siteQueueDepth = -1;
+    private int m_outstandingTxns = -1;
+
+    // the first result is a cursor descriptor followed by a chunk of the results
+    private boolean m_hasCursorDescriptor = false;
+
     // JSON KEYS FOR SERIALIZATION
     static final String JSON_STATUS_KEY = "status";
     static final String JSON_STATUSSTRING_KEY = "statusstring";
@@ -140,6 +151,40 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         return m_hash;
     }
 
+    /**
+     * Piggyback the responding node's load on this response.
+     * @param siteQueueDepth tasks waiting on the node's sites
+     * @param outstandingTxns transactions the node's client interface has in flight
+     */
+    public void setLoadHint(int siteQueueDepth, int outstandingTxns) {
+        m_siteQueueDepth = siteQueueDepth;
+        m_outstandingTxns = outstandingTxns;
+    }
+
+    public boolean hasLoadHint() {
+        return m_siteQueueDepth >= 0;
+    }
+
+    public int getSiteQueueDepth() {
+        return m_siteQueueDepth;
+    }
+
+    public int getOutstandingTxns() {
+        return m_outstandingTxns;
+    }
+
+    /**
+     * Mark the first result table as the descriptor of a server side cursor,
+     * the remaining tables are a chunk of the invocation's results.
+     */
+    public void setHasCursorDescriptor(boolean hasCursorDescriptor) {
+        m_hasCursorDescriptor = hasCursorDescriptor;
+    }
+
+    public boolean hasCursorDescriptor() {
+        return m_hasCursorDescriptor;
+    }
+
     public void initFromBuffer(ByteBuffer buf) throws IOException {
         buf.get();//Skip version byte
         clientHandle = buf.getLong();
@@ -165,6 +210,14 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         } else {
             m_hash = null;
         }
+        if ((presentFields & (1 << 3)) != 0) {
+            m_siteQueueDepth = buf.getInt();
+            m_outstandingTxns = buf.getInt();
+        } else {
+            m_siteQueueDepth = -1;
+            m_outstandingTxns = -1;
+        }
+        m_hasCursorDescriptor = (presentFields & (1 << 2)) != 0;
         int tableCount = buf.getShort();
         results = new VoltTable[tableCount];
         for (int i = 0; i < tableCount; i++) {
@@ -199,6 +252,9 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             msgsize += 4;
         }
+        if (hasLoadHint()) {
+            msgsize += 8;
+        }
         for (VoltTable vt : results) {
             msgsize += vt.getSerializedSize();
         }
@@ -223,6 +279,12 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             presentFields |= 1 << 4;
         }
+        if (hasLoadHint()) {
+            presentFields |= 1 << 3;
+        }
+        if (m_hasCursorDescriptor) {
+            presentFields |= 1 << 2;
+        }
         buf.put(presentFields);
         buf.put(status);
         if (statusString != null) {
@@ -238,6 +300,10 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             buf.putInt(m_hash.intValue());
         }
+        if (hasLoadHint()) {
+            buf.putInt(m_siteQueueDepth);
+            buf.putInt(m_outstandingTxns);
+        }
         buf.putShort((short)results.length);
         for (VoltTable vt : results)
         {
@@ -246,6 +312,95 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         return buf;
     }
 
+    /**
+     * Serialize this response as a length prefixed frame for a connection that
+     * negotiated compressed responses. The frame holds the
+     * COMPRESSED_RESPONSE_VERSION byte, the uncompressed length and the deflated
+     * regular serialization, or the regular serialization if deflating doesn't
+     * make it any smaller.
+     * @return a heap buffer positioned at the start of the frame.
+     */
+    public ByteBuffer flattenToCompressedFrame() {
+        final int size = getSerializedSize();
+        ByteBuffer plain = ByteBuffer.allocate(4 + size);
+        plain.putInt(size);
+        flattenToBuffer(plain).flip();
+
+        // worst case growth of a deflate stream that doesn't compress
+        byte compressed[] = new byte[9 + size + (size >> 12) + (size >> 14) + 64];
+        int compressedSize = 9;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(plain.array(), 4, size);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (compressedSize == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedSize += deflater.deflate(compressed, compressedSize,
+                                                   compressed.length - compressedSize);
+            }
+        } finally {
+            deflater.end();
+        }
+        if (compressedSize >= plain.capacity()) {
+            return plain;
+        }
+
+        ByteBuffer frame = ByteBuffer.wrap(compressed, 0, compressedSize);
+        frame.putInt(compressedSize - 4);
+        frame.put(Constants.COMPRESSED_RESPONSE_VERSION);
+        frame.putInt(size);
+        frame.position(0);
+        return frame;
+    }
+
+    /**
+     * Undo flattenToCompressedFrame on a response read off the wire, minus the
+     * length prefix.
+     * @return buf itself if the response isn't compressed, otherwise a buffer
+     * with the regular serialization of the response.
+     */
+    public static ByteBuffer decompressFrame(ByteBuffer buf) throws IOException {
+        if (buf.get(buf.position()) != Constants.COMPRESSED_RESPONSE_VERSION) {
+            return buf;
+        }
+        buf.get();
+        final int size = buf.getInt();
+        byte input[];
+        int offset = 0;
+        if (buf.hasArray()) {
+            input = buf.array();
+            offset = buf.arrayOffset() + buf.position();
+        } else {
+            input = new byte[buf.remaining()];
+            buf.duplicate().get(input);
+        }
+
+        byte uncompressed[] = new byte[size];
+        int uncompressedSize = 0;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input, offset, buf.remaining());
+            while (uncompressedSize < size && !inflater.finished()) {
+                int inflated = inflater.inflate(uncompressed, uncompressedSize, size - uncompressedSize);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                uncompressedSize += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Unable to decompress response", e);
+        } finally {
+            inflater.end();
+        }
+        if (uncompressedSize != size) {
+            throw new IOException("Compressed response was truncated, expected " + size +
+                                  " bytes but got " + uncompressedSize);
+        }
+        return ByteBuffer.wrap(uncompressed);
+    }
+
     @Override
     public int getClusterRoundtrip() {
         return clusterRoundTripTime;
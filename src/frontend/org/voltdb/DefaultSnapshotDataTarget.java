@@ -22,8 +22,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -45,10 +48,16 @@ import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.saverestore.ColumnarChunkCodec;
+import org.voltdb.sysprocs.saverestore.DeltaSegmenter;
+import org.voltdb.sysprocs.saverestore.DeltaSnapshotManifest;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.DirectIOFileChannel;
 import org.voltdb.utils.PosixAdvise;
+import org.voltdb.utils.WriteOnlyFileChannel;
 
+import com.google_voltpatches.common.hash.HashCode;
 import com.google_voltpatches.common.util.concurrent.Callables;
 import com.google_voltpatches.common.util.concurrent.Futures;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
@@ -67,7 +76,8 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     public static volatile boolean m_simulateFullDiskWritingChunk = false;
 
     private final File m_file;
-    private final FileChannel m_channel;
+    private final WriteOnlyFileChannel m_channel;
+    //Null when the file is written with direct I/O
     private final FileOutputStream m_fos;
     private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
     private Runnable m_onCloseHandler = null;
@@ -99,6 +109,25 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     @SuppressWarnings("unused")
     private final String m_tableName;
 
+    /*
+     * Files with this version have chunks encoded with the ColumnarChunkCodec
+     * before they are compressed
+     */
+    public static final int COLUMNAR_VERSION = 3;
+
+    /*
+     * Files with this version have one chunk per DeltaSegmenter segment, and segments that
+     * are unchanged since the base snapshot are references to the file that holds their rows
+     */
+    public static final int DELTA_VERSION = 4;
+
+    private final SnapshotFormat m_format;
+    private final ColumnarChunkCodec m_columnarCodec;
+    private final DeltaSnapshotManifest m_deltaBase;
+    private final DeltaSnapshotManifest m_deltaManifest;
+    private final ConcurrentHashMap<Integer, DeltaSegmenter> m_segmenters =
+            new ConcurrentHashMap<Integer, DeltaSegmenter>();
+
     private final AtomicInteger m_outstandingWriteTasks = new AtomicInteger(0);
     private final ReentrantLock m_outstandingWriteTasksLock = new ReentrantLock();
     private final Condition m_noMoreOutstandingWriteTasksCondition =
@@ -110,6 +139,17 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     public static final int SNAPSHOT_SYNC_FREQUENCY = Integer.getInteger("SNAPSHOT_SYNC_FREQUENCY", 500);
     public static final int SNAPSHOT_FADVISE_BYTES = Integer.getInteger("SNAPSHOT_FADVISE_BYTES", 1024 * 1024 * 2);
+    /*
+     * Write table files with O_DIRECT so snapshots don't evict the page cache, falls back
+     * to buffered writes if the platform or file system doesn't support it. Each target holds
+     * an aligned staging buffer and reserves file space ahead of its appends.
+     */
+    public static final boolean SNAPSHOT_DIRECT_IO =
+            Boolean.valueOf(System.getProperty("SNAPSHOT_DIRECT_IO", "true"));
+    public static final int SNAPSHOT_DIRECT_IO_BUFFER_BYTES =
+            Integer.getInteger("SNAPSHOT_DIRECT_IO_BUFFER_BYTES", 1024 * 256);
+    public static final long SNAPSHOT_PREALLOCATE_BYTES =
+            Long.getLong("SNAPSHOT_PREALLOCATE_BYTES", 1024 * 1024 * 64);
     public static final int SNAPSHOT_RATELIMIT_MEGABYTES;
     public static final boolean USE_SNAPSHOT_RATELIMIT;
 
@@ -162,7 +202,66 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 schemaTable,
                 txnId,
                 timestamp,
-                new int[] { 0, 0, 0, 2 });
+                SnapshotFormat.NATIVE);
+    }
+
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            final SnapshotFormat format) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                format,
+                null);
+    }
+
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            final SnapshotFormat format,
+            DeltaSnapshotManifest deltaBase) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                new int[] { 0, 0, 0, getVersion(format) },
+                deltaBase);
     }
 
     public DefaultSnapshotDataTarget(
@@ -179,11 +278,63 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             final long timestamp,
             int version[]
             ) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                version,
+                null);
+    }
+
+    /**
+     * @param deltaBase Manifest of the snapshot a delta snapshot is based on, only used
+     *                  with the delta version.
+     */
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            int version[],
+            DeltaSnapshotManifest deltaBase
+            ) throws IOException {
         String hostname = CoreUtils.getHostnameOrAddress();
         m_file = file;
+        m_columnarCodec = version[3] == COLUMNAR_VERSION ? new ColumnarChunkCodec(schemaTable) : null;
+        if (version[3] == DELTA_VERSION) {
+            m_format = SnapshotFormat.DELTA;
+            m_deltaBase = deltaBase == null ? new DeltaSnapshotManifest() : deltaBase;
+            m_deltaManifest = new DeltaSnapshotManifest();
+        } else {
+            m_format = m_columnarCodec == null ? SnapshotFormat.NATIVE : SnapshotFormat.COLUMNAR;
+            m_deltaBase = null;
+            m_deltaManifest = null;
+        }
         m_tableName = tableName;
-        m_fos = new FileOutputStream(file);
-        m_channel = m_fos.getChannel();
+        final DirectIOFileChannel directChannel = SNAPSHOT_DIRECT_IO ?
+                DirectIOFileChannel.open(file, SNAPSHOT_DIRECT_IO_BUFFER_BYTES, SNAPSHOT_PREALLOCATE_BYTES) : null;
+        if (directChannel == null) {
+            m_fos = new FileOutputStream(file);
+            m_channel = new BufferedChannel(m_fos.getChannel());
+        } else {
+            m_fos = null;
+            m_channel = directChannel;
+        }
         m_needsFinalClose = !isReplicated;
         final FastSerializer fs = new FastSerializer();
         fs.writeInt(0);//CRC
@@ -253,7 +404,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         if (m_simulateFullDiskWritingHeader) {
             m_writeException = new IOException("Disk full");
             m_writeFailed = true;
-            m_fos.close();
+            m_channel.close();
             throw m_writeException;
         }
 
@@ -267,14 +418,14 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         try {
             writeFuture.get();
         } catch (InterruptedException e) {
-            m_fos.close();
+            m_channel.close();
             throw new java.io.InterruptedIOException();
         } catch (ExecutionException e) {
-            m_fos.close();
+            m_channel.close();
             throw m_writeException;
         }
         if (m_writeFailed) {
-            m_fos.close();
+            m_channel.close();
             throw m_writeException;
         }
 
@@ -291,8 +442,15 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                     long positionAtSync = 0;
                     try {
                         positionAtSync = m_channel.position();
-                        final long syncStart = syncedBytes;
-                        syncedBytes = Bits.sync_file_range(SNAP_LOG, m_fos.getFD(), m_channel, syncStart, positionAtSync);
+                        if (m_fos == null) {
+                            //Direct I/O skips the page cache, but the drive's cache and the
+                            //file's size still have to be synced
+                            m_channel.force(false);
+                        } else {
+                            final long syncStart = syncedBytes;
+                            syncedBytes = Bits.sync_file_range(
+                                    SNAP_LOG, m_fos.getFD(), m_fos.getChannel(), syncStart, positionAtSync);
+                        }
                     } catch (IOException e) {
                         if (!(e instanceof java.nio.channels.AsynchronousCloseException )) {
                             SNAP_LOG.error("Error syncing snapshot", e);
@@ -301,6 +459,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                         }
                     }
                     m_bytesAllowedBeforeSync.release(bytesSinceLastSync);
+                    if (m_fos == null) {
+                        //Nothing in the page cache to drop
+                        continue;
+                    }
 
                     /*
                      * Don't pollute the page cache with snapshot data, use fadvise
@@ -334,6 +496,69 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_syncTask = syncTask;
     }
 
+    /*
+     * Writes through the page cache with a regular file channel
+     */
+    private static class BufferedChannel implements WriteOnlyFileChannel {
+        private final FileChannel m_fc;
+
+        private BufferedChannel(FileChannel fc) {
+            m_fc = fc;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return m_fc.write(src);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return m_fc.write(src, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return m_fc.position();
+        }
+
+        @Override
+        public WriteOnlyFileChannel position(long newPosition) throws IOException {
+            m_fc.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return m_fc.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            m_fc.force(metaData);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return m_fc.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_fc.close();
+        }
+    }
+
+    private static int getVersion(SnapshotFormat format) {
+        switch (format) {
+        case COLUMNAR:
+            return COLUMNAR_VERSION;
+        case DELTA:
+            return DELTA_VERSION;
+        default:
+            return 2;
+        }
+    }
+
     @Override
     public boolean needsFinalClose()
     {
@@ -342,6 +567,15 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     @Override
     public void close() throws IOException, InterruptedException {
+        if (m_deltaManifest != null && !m_writeFailed) {
+            //The sites are done, write the rows left over from every partition's last segment
+            for (Map.Entry<Integer, DeltaSegmenter> e : m_segmenters.entrySet()) {
+                final ByteBuffer segment = e.getValue().flush();
+                if (segment != null) {
+                    writeSegment(e.getKey(), segment);
+                }
+            }
+        }
         try {
             m_outstandingWriteTasksLock.lock();
             try {
@@ -378,6 +612,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_channel.write(completed);
         m_channel.force(false);
         m_channel.close();
+        if (m_deltaManifest != null && !m_writeFailed) {
+            m_deltaManifest.write(m_file);
+        }
         if (m_onCloseHandler != null) {
             m_onCloseHandler.run();
         }
@@ -417,7 +654,12 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             return null;
         }
 
+        if (prependLength && m_deltaManifest != null) {
+            return writeDelta(tupleDataCont);
+        }
+
         ByteBuffer tupleData = tupleDataCont.b();
+        final int partitionId = prependLength ? tupleData.getInt(0) : 0;
 
         m_outstandingWriteTasks.incrementAndGet();
 
@@ -434,10 +676,24 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
              * that is 16 bytes, but 4 of those are done by CompressionService
              */
             cont.b().position(12);
-            compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            if (m_columnarCodec == null) {
+                compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            } else {
+                compressionTask = encodeCompressAndCRC32cBufferAsync(tupleData, cont);
+            }
         }
-        final Future<BBContainer> compressionTaskFinal = compressionTask;
+        return writeChunk(tupleDataCont, partitionId, compressionTask, null);
+    }
 
+    /*
+     * Write a compressed chunk, or for the header the unwrapped data, on the write service.
+     * The tuple data container can be null if the compressed chunk doesn't depend on it.
+     */
+    private ListenableFuture<?> writeChunk(final BBContainer tupleDataCont,
+                                           final int partitionId,
+                                           final Future<BBContainer> compressionTaskFinal,
+                                           final DeltaSegmentWrite segmentWrite) {
+        final boolean prependLength = compressionTaskFinal != null;
         ListenableFuture<?> writeTask = m_es.submit(new Callable<Object>() {
             @Override
             public Object call() throws Exception {
@@ -455,7 +711,6 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                         }
                     }
 
-                    final ByteBuffer tupleData = tupleDataCont.b();
                     int totalWritten = 0;
                     if (prependLength) {
                         BBContainer payloadContainer = compressionTaskFinal.get();
@@ -468,7 +723,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                             //Length prefix does not include 4 header items, just compressd payload
                             //that follows
                             lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
-                            lengthPrefix.putInt(tupleData.getInt(0)); // partitionId
+                            lengthPrefix.putInt(partitionId);
 
                             /*
                              * Checksum the header and put it in the payload buffer
@@ -485,13 +740,18 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                             /*
                              * Write payload to file
                              */
+                            final long offset = m_channel.position();
                             while (payloadBuffer.hasRemaining()) {
                                 totalWritten += m_channel.write(payloadBuffer);
                             }
+                            if (segmentWrite != null) {
+                                segmentWrite.written(offset);
+                            }
                         } finally {
                             payloadContainer.discard();
                         }
                     } else {
+                        final ByteBuffer tupleData = tupleDataCont.b();
                         while (tupleData.hasRemaining()) {
                             totalWritten += m_channel.write(tupleData);
                         }
@@ -505,7 +765,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                     throw e;
                 } finally {
                     try {
-                        tupleDataCont.discard();
+                        if (tupleDataCont != null) {
+                            tupleDataCont.discard();
+                        }
                     } finally {
                         m_outstandingWriteTasksLock.lock();
                         try {
@@ -523,6 +785,136 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return writeTask;
     }
 
+    /*
+     * Cut the tuple data into content defined segments and write the completed ones. The rows are
+     * copied out of the EE's buffer, but it is only released once the segments made from it are
+     * written so that the snapshot still applies backpressure to the sites.
+     */
+    private ListenableFuture<?> writeDelta(final BBContainer tupleDataCont) {
+        final ByteBuffer tupleData = tupleDataCont.b();
+        final int partitionId = tupleData.getInt(0);
+        DeltaSegmenter segmenter = m_segmenters.get(partitionId);
+        if (segmenter == null) {
+            //Only the partition's site writes its chunks
+            segmenter = new DeltaSegmenter();
+            m_segmenters.put(partitionId, segmenter);
+        }
+        tupleData.position(tupleData.position() + 4);
+        final List<ByteBuffer> segments = segmenter.add(tupleData);
+        if (segments.isEmpty()) {
+            tupleDataCont.discard();
+            return Futures.immediateFuture(null);
+        }
+
+        final List<ListenableFuture<?>> writes = new ArrayList<ListenableFuture<?>>(segments.size());
+        for (ByteBuffer segment : segments) {
+            writes.add(writeSegment(partitionId, segment));
+        }
+        final ListenableFuture<?> allWritten = Futures.allAsList(writes);
+        allWritten.addListener(new Runnable() {
+            @Override
+            public void run() {
+                tupleDataCont.discard();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return allWritten;
+    }
+
+    /*
+     * Where a segment ended up, filled in by the compression task and the write task
+     */
+    private class DeltaSegmentWrite {
+        private final int m_partitionId;
+        private HashCode m_hash;
+        private DeltaSnapshotManifest.Location m_base;
+
+        private DeltaSegmentWrite(int partitionId) {
+            m_partitionId = partitionId;
+        }
+
+        private void written(long offset) {
+            if (m_base != null) {
+                //Keep pointing at the file holding the rows so chains of deltas stay one hop deep
+                m_deltaManifest.put(m_hash, m_base);
+            } else {
+                m_deltaManifest.put(m_hash,
+                        new DeltaSnapshotManifest.Location(m_partitionId, m_file.getName(), offset));
+            }
+        }
+    }
+
+    /*
+     * A segment becomes a chunk holding its rows, unless the base snapshot already wrote
+     * the same rows in which case the chunk only holds a reference to them.
+     */
+    private ListenableFuture<?> writeSegment(final int partitionId, final ByteBuffer segment) {
+        final DeltaSegmentWrite segmentWrite = new DeltaSegmentWrite(partitionId);
+        m_outstandingWriteTasks.incrementAndGet();
+        final Future<BBContainer> compressionTask = CompressionService.submitCompressionTask(new Callable<BBContainer>() {
+            @Override
+            public BBContainer call() throws Exception {
+                final HashCode hash = DeltaSegmenter.hash(segment);
+                final DeltaSnapshotManifest.Location base = m_deltaBase.get(hash);
+                segmentWrite.m_hash = hash;
+                segmentWrite.m_base = base;
+
+                final byte hashBytes[] = hash.asBytes();
+                final byte fileName[] = base == null ? null : base.fileName.getBytes("UTF-8");
+                final int payloadLength = 1 + hashBytes.length +
+                        (base == null ? segment.remaining() : 4 + fileName.length + 8);
+                final BBContainer payloadC = DBBPool.allocateDirect(payloadLength);
+                try {
+                    final ByteBuffer payload = payloadC.b();
+                    if (base == null) {
+                        payload.put(DeltaSegmenter.SEGMENT_ROWS);
+                        payload.put(hashBytes);
+                        payload.put(segment.duplicate());
+                    } else {
+                        payload.put(DeltaSegmenter.SEGMENT_REFERENCE);
+                        payload.put(hashBytes);
+                        payload.putInt(fileName.length);
+                        payload.put(fileName);
+                        payload.putLong(base.offset);
+                    }
+                    payload.flip();
+
+                    final BBContainer cont =
+                            DBBPool.allocateDirect(16 + CompressionService.maxCompressedLength(payloadLength));
+                    //Same layout as a regular chunk, 12 bytes of header and the CRC added when compressing
+                    cont.b().position(12);
+                    return CompressionService.compressAndCRC32cBuffer(payload, cont);
+                } finally {
+                    payloadC.discard();
+                }
+            }
+        });
+        return writeChunk(null, partitionId, compressionTask, segmentWrite);
+    }
+
+    /*
+     * Re-encode the chunk column by column before it is compressed, the encoded chunk is never
+     * larger than the tuple data plus a format byte so a snapshot buffer always fits it
+     */
+    private Future<BBContainer> encodeCompressAndCRC32cBufferAsync(final ByteBuffer tupleData,
+                                                                   final BBContainer outBufferC) {
+        return CompressionService.submitCompressionTask(new Callable<BBContainer>() {
+            @Override
+            public BBContainer call() throws Exception {
+                final BBContainer encodedC =
+                        DBBPool.allocateDirectAndPool(SnapshotSiteProcessor.m_snapshotBufferLength);
+                try {
+                    final ByteBuffer encoded = encodedC.b();
+                    encoded.clear();
+                    m_columnarCodec.encode(tupleData, encoded);
+                    encoded.flip();
+                    return CompressionService.compressAndCRC32cBuffer(encoded, outBufferC);
+                } finally {
+                    encodedC.discard();
+                }
+            }
+        });
+    }
+
     @Override
     public ListenableFuture<?> write(final Callable<BBContainer> tupleData, int tableId) {
         return write(tupleData, true);
@@ -545,7 +937,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     @Override
     public SnapshotFormat getFormat() {
-        return SnapshotFormat.NATIVE;
+        return m_format;
     }
 
     /**
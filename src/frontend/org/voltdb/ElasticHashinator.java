@@ -89,11 +89,127 @@ public class ElasticHashinator extends TheHashinator {
         }
     });
 
+    /**
+     * Hashes the same bytes as {@link TheHashinator#valueToBytes(Object)} produces,
+     * without materializing them for the common partition key types.
+     */
     @Override
     public int pHashToPartition(VoltType type, Object obj) {
+        if (VoltType.isNullVoltType(obj)) {
+            return 0;
+        } else if (obj instanceof Long) {
+            return partitionForToken(MurmurHash3.hash3_x64_128(((Long) obj).longValue()));
+        } else if (obj instanceof String) {
+            return partitionForToken(MurmurHash3.hash3_x64_128((String) obj, 0));
+        } else if (obj instanceof Integer) {
+            return partitionForToken(MurmurHash3.hash3_x64_128(((Integer) obj).intValue()));
+        } else if (obj instanceof byte[]) {
+            final byte[] bytes = (byte[]) obj;
+            return partitionForToken(MurmurHash3.hash3_x64_128(bytes, 0, bytes.length, 0));
+        } else if (obj instanceof Short) {
+            return partitionForToken(MurmurHash3.hash3_x64_128(((Short) obj).shortValue()));
+        } else if (obj instanceof Byte) {
+            return partitionForToken(MurmurHash3.hash3_x64_128(((Byte) obj).byteValue()));
+        }
         return hashinateBytes(valueToBytes(obj));
     }
 
+    @Override
+    protected int pHashSerializedParameter(VoltType type, ByteBuffer params, int position) {
+        final byte typeByte = params.get(position);
+        long value;
+        if (typeByte == VoltType.STRING.getValue() || typeByte == VoltType.VARBINARY.getValue()) {
+            // strings and bytes are converted for numeric partition columns
+            if (type.isPartitionableNumber()) {
+                return -1;
+            }
+            final int length = params.getInt(position + 1);
+            final int offset = position + 5;
+            if (length == VoltType.NULL_STRING_LENGTH) {
+                return 0;
+            }
+            // The UTF-8 on the wire is what the string hashes as, unless it is malformed
+            // and would change when decoded
+            if (typeByte == VoltType.STRING.getValue() && !isWellFormedUtf8(params, offset, length)) {
+                return -1;
+            }
+            return partitionForToken(MurmurHash3.hash3_x64_128(params, offset, length, 0));
+        } else if (typeByte == VoltType.BIGINT.getValue()) {
+            value = params.getLong(position + 1);
+            if (value == VoltType.NULL_BIGINT) {
+                return 0;
+            }
+        } else if (typeByte == VoltType.INTEGER.getValue()) {
+            value = params.getInt(position + 1);
+            if (value == VoltType.NULL_INTEGER) {
+                return 0;
+            }
+        } else if (typeByte == VoltType.SMALLINT.getValue()) {
+            value = params.getShort(position + 1);
+            if (value == VoltType.NULL_SMALLINT) {
+                return 0;
+            }
+        } else if (typeByte == VoltType.TINYINT.getValue()) {
+            value = params.get(position + 1);
+            if (value == VoltType.NULL_TINYINT) {
+                return 0;
+            }
+        } else {
+            return -1;
+        }
+        return partitionForToken(MurmurHash3.hash3_x64_128(value));
+    }
+
+    /**
+     * True if decoding the bytes as UTF-8 and encoding them again gives back the same
+     * bytes: no overlong forms, no encoded surrogates, nothing past U+10FFFF.
+     */
+    static boolean isWellFormedUtf8(ByteBuffer buf, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            final int b = buf.get(i) & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int count;
+            int min;
+            int cp;
+            if (b >= 0xC2 && b <= 0xDF) {
+                count = 1;
+                min = 0x80;
+                cp = b & 0x1F;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                count = 2;
+                min = 0x800;
+                cp = b & 0x0F;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                count = 3;
+                min = 0x10000;
+                cp = b & 0x07;
+            } else {
+                return false;
+            }
+            if (i + count >= end) {
+                return false;
+            }
+            for (int j = 1; j <= count; j++) {
+                final int cb = buf.get(i + j) & 0xFF;
+                if ((cb & 0xC0) != 0x80) {
+                    return false;
+                }
+                cp = (cp << 6) | (cb & 0x3F);
+            }
+            if (cp < min || cp > Character.MAX_CODE_POINT ||
+                    (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+                return false;
+            }
+            i += count + 1;
+        }
+        return true;
+    }
+
     /**
      * The serialization format is big-endian and the first value is the number of tokens
      * Construct the hashinator from a binary description of the ring.
@@ -255,8 +371,7 @@ public class ElasticHashinator extends TheHashinator {
 
     @Override
     public int pHashinateBytes(byte[] bytes) {
-        ByteBuffer buf = ByteBuffer.wrap(bytes);
-        final int token = MurmurHash3.hash3_x64_128(buf, 0, bytes.length, 0);
+        final int token = MurmurHash3.hash3_x64_128(bytes, 0, bytes.length, 0);
         return partitionForToken(token);
     }
 
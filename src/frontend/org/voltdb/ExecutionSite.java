@@ -1147,7 +1147,7 @@ implements Runnable, SiteProcedureConnection, SiteSnapshotConnection
             final VoltMessage task)
     {
         final InitiateTaskMessage itask = (InitiateTaskMessage)task;
-        final ProcedureRunner runner = m_loadedProcedures.procs.get(itask.getStoredProcedureName());
+        final ProcedureRunner runner = m_loadedProcedures.getProcByName(itask.getStoredProcedureName());
 
         final InitiateResponseMessage response = new InitiateResponseMessage(itask);
 
@@ -351,8 +351,10 @@ public class Inits {
                 }
             } while (catalogStuff == null);
 
+            InMemoryJarfile jarfile = null;
             try {
-                Pair<String, String> loadResults = CatalogUtil.loadAndUpgradeCatalogFromJar(catalogStuff.bytes, hostLog);
+                jarfile = CatalogUtil.loadInMemoryJarFile(catalogStuff.bytes);
+                Pair<String, String> loadResults = CatalogUtil.loadAndUpgradeCatalogFromJar(jarfile);
                 m_rvdb.m_serializedCatalog = loadResults.getFirst();
             } catch (IOException e) {
                 VoltDB.crashLocalVoltDB("Unable to load catalog", false, e);
@@ -362,8 +364,7 @@ public class Inits {
                 VoltDB.crashLocalVoltDB("Catalog loading failure", false, null);
 
             /* N.B. node recovery requires discovering the current catalog version. */
-            Catalog catalog = new Catalog();
-            catalog.execute(m_rvdb.m_serializedCatalog);
+            Catalog catalog = CatalogUtil.deserializeCatalogFromJar(jarfile);
 
             // note if this fails it will print an error first
             try {
@@ -23,6 +23,7 @@ import java.util.Set;
 
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
+import org.voltdb.ProcedureMetadataCache.ProcedureMetadata;
 import org.voltdb.SystemProcedureCatalog.Config;
 import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Procedure;
@@ -36,8 +37,12 @@ public class LoadedProcedureSet {
 
     private static final VoltLogger hostLog = new VoltLogger("HOST");
 
-    // user procedures.
-    ImmutableMap<String, ProcedureRunner> procs = ImmutableMap.<String, ProcedureRunner>builder().build();
+    // user procedures, shared with the other sites running the same catalog version.
+    ImmutableMap<String, ProcedureMetadata> m_userProcs = ImmutableMap.<String, ProcedureMetadata>builder().build();
+    // runners for the user procedures this site has invoked so far, created lazily.
+    final HashMap<String, ProcedureRunner> m_userRunners = new HashMap<String, ProcedureRunner>();
+    // system procedures.
+    ImmutableMap<String, ProcedureRunner> m_sysProcs = ImmutableMap.<String, ProcedureRunner>builder().build();
 
     // map of sysproc fragment ids to system procedures.
     final HashMap<Long, ProcedureRunner> m_registeredSysProcPlanFragments =
@@ -47,6 +52,7 @@ public class LoadedProcedureSet {
     final long m_siteId;
     final int m_siteIndex;
     final SiteProcedureConnection m_site;
+    CatalogSpecificPlanner m_csp;
 
     public LoadedProcedureSet(SiteProcedureConnection site, ProcedureRunnerFactory runnerFactory, long siteId, int siteIndex) {
         m_runnerFactory = runnerFactory;
@@ -73,19 +79,22 @@ public class LoadedProcedureSet {
             BackendTarget backendTarget,
             CatalogSpecificPlanner csp) {
         m_registeredSysProcPlanFragments.clear();
-        ImmutableMap.Builder<String, ProcedureRunner> builder =
-                loadProceduresFromCatalog(catalogContext, backendTarget, csp);
+        m_userRunners.clear();
+        m_csp = csp;
+        m_userProcs = loadProceduresFromCatalog(catalogContext);
+        ImmutableMap.Builder<String, ProcedureRunner> builder = ImmutableMap.<String, ProcedureRunner>builder();
         loadSystemProcedures(catalogContext, backendTarget, csp, builder);
-        procs = builder.build();
+        m_sysProcs = builder.build();
     }
 
-    private ImmutableMap.Builder<String, ProcedureRunner> loadProceduresFromCatalog(
-            CatalogContext catalogContext,
-            BackendTarget backendTarget,
-            CatalogSpecificPlanner csp) {
+    /**
+     * Look up the shared metadata of every user procedure. The first site to load a
+     * catalog version builds it, the runners themselves are created on first use.
+     */
+    private ImmutableMap<String, ProcedureMetadata> loadProceduresFromCatalog(CatalogContext catalogContext) {
         // load up all the stored procedures
         final CatalogMap<Procedure> catalogProcedures = catalogContext.database.getProcedures();
-        ImmutableMap.Builder<String, ProcedureRunner> builder = ImmutableMap.<String, ProcedureRunner>builder();
+        ImmutableMap.Builder<String, ProcedureMetadata> builder = ImmutableMap.<String, ProcedureMetadata>builder();
         for (final Procedure proc : catalogProcedures) {
 
             // Sysprocs used to be in the catalog. Now they aren't. Ignore
@@ -94,53 +103,46 @@ public class LoadedProcedureSet {
                 continue;
             }
 
-            ProcedureRunner runner = null;
-            VoltProcedure procedure = null;
-            if (proc.getHasjava()) {
+            ProcedureMetadata metadata = null;
+            try {
+                metadata = catalogContext.m_procedureMetadata.get(proc);
+            }
+            catch (final ClassNotFoundException e) {
                 final String className = proc.getClassname();
-
-                Language lang;
-                try {
-                    lang = Language.valueOf(proc.getLanguage());
-                } catch (IllegalArgumentException e) {
-                    // default to java for earlier compiled catalogs
-                    lang = Language.JAVA;
-                }
-
-                Class<?> procClass = null;
-                try {
-                    procClass = catalogContext.classForProcedure(className);
-                }
-                catch (final ClassNotFoundException e) {
-                    if (className.startsWith("org.voltdb.")) {
-                        VoltDB.crashLocalVoltDB("VoltDB does not support procedures with package names " +
-                                                        "that are prefixed with \"org.voltdb\". Please use a different " +
-                                                        "package name and retry. Procedure name was " + className + ".",
-                                                        false, null);
-                    }
-                    else {
-                        VoltDB.crashLocalVoltDB("VoltDB was unable to load a procedure (" +
-                                                 className + ") it expected to be in the " +
-                                                "catalog jarfile and will now exit.", false, null);
-                    }
+                if (className.startsWith("org.voltdb.")) {
+                    VoltDB.crashLocalVoltDB("VoltDB does not support procedures with package names " +
+                                                    "that are prefixed with \"org.voltdb\". Please use a different " +
+                                                    "package name and retry. Procedure name was " + className + ".",
+                                                    false, null);
                 }
-                try {
-                    procedure = lang.accept(procedureInstantiator, procClass);
+                else {
+                    VoltDB.crashLocalVoltDB("VoltDB was unable to load a procedure (" +
+                                             className + ") it expected to be in the " +
+                                            "catalog jarfile and will now exit.", false, null);
                 }
-                catch (final Exception e) {
-                    hostLog.l7dlog( Level.WARN, LogKeys.host_ExecutionSite_GenericException.name(),
-                                    new Object[] { m_siteId, m_siteIndex }, e);
-                }
-            }
-            else {
-                procedure = new ProcedureRunner.StmtProcedure();
             }
+            builder.put(proc.getTypeName().intern(), metadata);
+        }
+        return builder.build();
+    }
 
-            assert(procedure != null);
-            runner = m_runnerFactory.create(procedure, proc, csp);
-            builder.put(proc.getTypeName().intern(), runner);
+    private ProcedureRunner createRunner(ProcedureMetadata metadata) {
+        VoltProcedure procedure = null;
+        if (metadata.procClass != null) {
+            try {
+                procedure = metadata.language.accept(procedureInstantiator, metadata.procClass);
+            }
+            catch (final Exception e) {
+                hostLog.l7dlog( Level.WARN, LogKeys.host_ExecutionSite_GenericException.name(),
+                                new Object[] { m_siteId, m_siteIndex }, e);
+            }
+        }
+        else {
+            procedure = new ProcedureRunner.StmtProcedure();
         }
-        return builder;
+
+        assert(procedure != null);
+        return m_runnerFactory.create(procedure, metadata, m_csp);
     }
 
     private static Language.CheckedExceptionVisitor<VoltProcedure, Class<?>, Exception> procedureInstantiator =
@@ -205,6 +207,15 @@ public class LoadedProcedureSet {
 
     public ProcedureRunner getProcByName(String procName)
     {
-        return procs.get(procName);
+        ProcedureRunner runner = m_userRunners.get(procName);
+        if (runner == null) {
+            ProcedureMetadata metadata = m_userProcs.get(procName);
+            if (metadata == null) {
+                return m_sysProcs.get(procName);
+            }
+            runner = createRunner(metadata);
+            m_userRunners.put(procName, runner);
+        }
+        return runner;
     }
 }
@@ -296,17 +296,64 @@ public class ParameterSet implements JSONString {
      * Do not use for large strings or varbinary (> 1MB).
      */
     static Object getParameterAtIndex(int partitionIndex, ByteBuffer unserializedParams) throws IOException {
+        unserializedParams.position(getParameterPositionAtIndex(partitionIndex, unserializedParams));
+        OneParamInfo opi = readOneParameter(unserializedParams);
+        unserializedParams.rewind();
+        return opi.value;
+    }
+
+    /**
+     * Find where a parameter starts in a serialized parameter set, stepping over the
+     * parameters before it without deserializing them where possible.
+     * Leaves the buffer positioned at the start of the parameter.
+     */
+    static int getParameterPositionAtIndex(int partitionIndex, ByteBuffer unserializedParams) throws IOException {
         int paramLen = unserializedParams.getShort();
         if (partitionIndex >= paramLen) {
             // error if caller desires out of bounds parameter
             throw new RuntimeException("Invalid partition parameter requested.");
         }
         for (int i = 0; i < partitionIndex; ++i) {
-            readOneParameter(unserializedParams);
+            skipOneParameter(unserializedParams);
         }
-        OneParamInfo opi = readOneParameter(unserializedParams);
-        unserializedParams.rewind();
-        return opi.value;
+        return unserializedParams.position();
+    }
+
+    /** Read the single parameter the buffer is positioned at */
+    static Object readParameter(ByteBuffer in) throws IOException {
+        return readOneParameter(in).value;
+    }
+
+    static private void skipOneParameter(ByteBuffer in) throws IOException {
+        final int position = in.position();
+        final byte nextTypeByte = in.get();
+        if (nextTypeByte == VoltType.NULL.getValue()) {
+            return;
+        } else if (nextTypeByte == VoltType.TINYINT.getValue()) {
+            in.position(position + 2);
+            return;
+        } else if (nextTypeByte == VoltType.SMALLINT.getValue()) {
+            in.position(position + 3);
+            return;
+        } else if (nextTypeByte == VoltType.INTEGER.getValue()) {
+            in.position(position + 5);
+            return;
+        } else if (nextTypeByte == VoltType.BIGINT.getValue() ||
+                nextTypeByte == VoltType.FLOAT.getValue() ||
+                nextTypeByte == VoltType.TIMESTAMP.getValue()) {
+            in.position(position + 9);
+            return;
+        } else if (nextTypeByte == VoltType.STRING.getValue() ||
+                nextTypeByte == VoltType.VARBINARY.getValue()) {
+            final int len = in.getInt();
+            if (len != VoltType.NULL_STRING_LENGTH) {
+                in.position(position + 5 + len);
+            }
+            return;
+        }
+        // arrays, tables and decimals are rare enough to just be read
+        in.position(position);
+        readOneParameter(in);
     }
 
     static Object getAKosherArray(Object[] array) {
@@ -0,0 +1,197 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.StmtParameter;
+import org.voltdb.compiler.Language;
+import org.voltdb.planner.ActivePlanRepository;
+import org.voltdb.utils.Encoder;
+
+import com.google_voltpatches.common.collect.ImmutableMap;
+
+/**
+ * Immutable per-procedure metadata derived from one catalog version. There is one
+ * cache per {@link CatalogContext}, shared by every site on the host, so the plan
+ * fragments of a statement are decoded and registered with the
+ * {@link ActivePlanRepository} once per catalog version instead of once per site.
+ */
+public class ProcedureMetadataCache {
+
+    /**
+     * Immutable per-statement metadata. The fragments are registered with the
+     * {@link ActivePlanRepository} once, on behalf of all the sites.
+     */
+    static final class StatementMetadata {
+        final SQLStmt.Frag aggregator;
+        final SQLStmt.Frag collector;
+        final boolean isReadOnly;
+        final boolean isReplicatedTableDML;
+        // shared between sites, must never be modified
+        final byte[] statementParamJavaTypes;
+
+        StatementMetadata(Statement catStmt) {
+            int fragCount = catStmt.getFragments().size();
+            SQLStmt.Frag aggregator = null;
+            SQLStmt.Frag collector = null;
+            for (PlanFragment frag : catStmt.getFragments()) {
+                byte[] planHash = Encoder.hexDecode(frag.getPlanhash());
+                byte[] plan = Encoder.decodeBase64AndDecompressToBytes(frag.getPlannodetree());
+                long id = ActivePlanRepository.loadOrAddRefPlanFragment(planHash, plan);
+                boolean transactional = frag.getNontransactional() == false;
+
+                SQLStmt.Frag stmtFrag = new SQLStmt.Frag(id, planHash, transactional);
+                if (fragCount == 1 || frag.getHasdependencies()) {
+                    aggregator = stmtFrag;
+                }
+                else {
+                    collector = stmtFrag;
+                }
+            }
+            this.aggregator = aggregator;
+            this.collector = collector;
+            isReadOnly = catStmt.getReadonly();
+            isReplicatedTableDML = catStmt.getReplicatedtabledml();
+
+            statementParamJavaTypes = new byte[catStmt.getParameters().size()];
+            for (StmtParameter param : catStmt.getParameters()) {
+                statementParamJavaTypes[param.getIndex()] = (byte)param.getJavatype();
+            }
+        }
+
+        void release() {
+            if (aggregator != null) {
+                ActivePlanRepository.decrefPlanFragmentById(aggregator.id);
+            }
+            if (collector != null) {
+                ActivePlanRepository.decrefPlanFragmentById(collector.id);
+            }
+        }
+    }
+
+    /**
+     * Immutable per-procedure metadata. Every {@link ProcedureRunner} built from it
+     * holds a reference, so the plan fragments stay registered until the catalog
+     * version and all the runners that use it are gone.
+     */
+    public static final class ProcedureMetadata {
+        final Procedure catProc;
+        final Language language;
+        // null for single statement procedures
+        final Class<?> procClass;
+        // only set for single statement procedures, shared between sites
+        final Class<?>[] paramTypes;
+        final ImmutableMap<String, StatementMetadata> statements;
+
+        ProcedureMetadata(Procedure catProc, Language language, Class<?> procClass) {
+            this.catProc = catProc;
+            this.language = language;
+            this.procClass = procClass;
+            paramTypes = catProc.getHasjava() ? null : singleStatementParamTypes(catProc);
+
+            ImmutableMap.Builder<String, StatementMetadata> builder =
+                    ImmutableMap.<String, StatementMetadata>builder();
+            for (Statement catStmt : catProc.getStatements()) {
+                builder.put(catStmt.getTypeName(), new StatementMetadata(catStmt));
+            }
+            statements = builder.build();
+        }
+
+        StatementMetadata getStatement(String name) {
+            return statements.get(name);
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            for (StatementMetadata stmt : statements.values()) {
+                stmt.release();
+            }
+            super.finalize();
+        }
+    }
+
+    private final CatalogContext m_context;
+    private final Map<String, ProcedureMetadata> m_procedures = new HashMap<String, ProcedureMetadata>();
+
+    ProcedureMetadataCache(CatalogContext context) {
+        m_context = context;
+    }
+
+    /**
+     * Get the shared metadata of a user procedure, building it on first use.
+     * The first site to ask pays for resolving the class and decoding the plans,
+     * every other site on the host reuses the result.
+     */
+    public synchronized ProcedureMetadata get(Procedure catProc) throws ClassNotFoundException {
+        final String name = catProc.getTypeName();
+        ProcedureMetadata metadata = m_procedures.get(name);
+        if (metadata == null) {
+            Language lang = null;
+            Class<?> procClass = null;
+            if (catProc.getHasjava()) {
+                try {
+                    lang = Language.valueOf(catProc.getLanguage());
+                } catch (IllegalArgumentException e) {
+                    // default to java for earlier compiled catalogs
+                    lang = Language.JAVA;
+                }
+                procClass = m_context.classForProcedure(catProc.getClassname());
+            }
+            metadata = new ProcedureMetadata(catProc, lang, procClass);
+            m_procedures.put(name, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Parameter types of a single statement procedure. Integer and decimal
+     * parameters are widened to BIGINT and FLOAT.
+     */
+    static Class<?>[] singleStatementParamTypes(Procedure catProc) {
+        Class<?>[] paramTypes = new Class<?>[catProc.getParameters().size()];
+        for (ProcParameter param : catProc.getParameters()) {
+            VoltType type = VoltType.get((byte) param.getType());
+            if (param.getIsarray()) {
+                paramTypes[param.getIndex()] = type.vectorClassFromType();
+                continue;
+            }
+            // Paul doesn't understand why single-statement procedures
+            // need to have their input parameter types widened here.
+            // Is it not better to catch too-wide values in the ProcedureRunner
+            // (ParameterConverter.tryToMakeCompatible) before falling through to the EE?
+            if (type == VoltType.INTEGER) {
+                type = VoltType.BIGINT;
+            } else if (type == VoltType.SMALLINT) {
+                type = VoltType.BIGINT;
+            } else if (type == VoltType.TINYINT) {
+                type = VoltType.BIGINT;
+            } else if (type == VoltType.NUMERIC) {
+                type = VoltType.FLOAT;
+            }
+
+            paramTypes[param.getIndex()] = type.classFromType();
+        }
+        return paramTypes;
+    }
+}
@@ -26,6 +26,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -37,9 +38,10 @@ import org.apache.hadoop_voltpatches.util.PureJavaCrc32C;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.CatalogContext.ProcedurePartitionInfo;
+import org.voltdb.ProcedureMetadataCache.ProcedureMetadata;
+import org.voltdb.ProcedureMetadataCache.StatementMetadata;
 import org.voltdb.VoltProcedure.VoltAbortException;
 import org.voltdb.catalog.PlanFragment;
-import org.voltdb.catalog.ProcParameter;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.StmtParameter;
@@ -113,6 +115,7 @@ public class ProcedureRunner {
     // per procedure state and catalog info
     //
     protected ProcedureStatsCollector m_statsCollector;
+    protected StatementStatsCollector m_stmtStatsCollector;
     protected final Procedure m_catProc;
     protected final boolean m_isSysProc;
     protected final boolean m_isSinglePartition;
@@ -122,6 +125,8 @@ public class ProcedureRunner {
     protected final int m_partitionColumn;
     protected final VoltType m_partitionColumnType;
     protected final Language m_language;
+    // metadata shared with the other sites, null for sysprocs
+    protected final ProcedureMetadata m_metadata;
 
     // dependency ids for ad hoc
     protected final static int AGG_DEPID = 1;
@@ -156,6 +161,15 @@ public class ProcedureRunner {
                     SystemProcedureExecutionContext sysprocContext,
                     Procedure catProc,
                     CatalogSpecificPlanner csp) {
+        this(procedure, site, sysprocContext, catProc, csp, null);
+    }
+
+    ProcedureRunner(VoltProcedure procedure,
+                    SiteProcedureConnection site,
+                    SystemProcedureExecutionContext sysprocContext,
+                    Procedure catProc,
+                    CatalogSpecificPlanner csp,
+                    ProcedureMetadata metadata) {
         assert(m_inputCRC.getValue() == 0L);
 
         String language = catProc.getLanguage();
@@ -196,6 +210,7 @@ public class ProcedureRunner {
         m_site = site;
         m_systemProcedureContext = sysprocContext;
         m_csp = csp;
+        m_metadata = metadata;
 
         m_procedure.init(this);
 
@@ -207,6 +222,16 @@ public class ProcedureRunner {
                 StatsSelector.PROCEDURE,
                 site.getCorrespondingSiteId(),
                 m_statsCollector);
+        m_stmtStatsCollector = new StatementStatsCollector(
+                m_site.getCorrespondingSiteId(),
+                m_site.getCorrespondingPartitionId(),
+                m_catProc.getClassname());
+        if (!m_isSysProc) {
+            VoltDB.instance().getStatsAgent().registerStatsSource(
+                    StatsSelector.STATEMENT,
+                    site.getCorrespondingSiteId(),
+                    m_stmtStatsCollector);
+        }
 
         reflect();
     }
@@ -602,11 +627,13 @@ public class ProcedureRunner {
             AdHocPlannedStatement plannedStatement = batch.plannedStatements.get(0);
 
             long aggFragId = ActivePlanRepository.loadOrAddRefPlanFragment(
-                    plannedStatement.core.aggregatorHash, plannedStatement.core.aggregatorFragment);
+                    plannedStatement.core.aggregatorHash, plannedStatement.core.aggregatorFragment,
+                    plannedStatement.core.aggregatorBinaryFragment);
             long collectorFragId = 0;
             if (plannedStatement.core.collectorFragment != null) {
                 collectorFragId = ActivePlanRepository.loadOrAddRefPlanFragment(
-                        plannedStatement.core.collectorHash, plannedStatement.core.collectorFragment);
+                        plannedStatement.core.collectorHash, plannedStatement.core.collectorFragment,
+                        plannedStatement.core.collectorBinaryFragment);
             }
 
             queuedSQL.stmt = SQLStmtAdHocHelper.createWithPlan(
@@ -729,6 +756,9 @@ public class ProcedureRunner {
             return new VoltTable[] {};
         }
 
+        // execution times of the statements if this batch is sampled for statement stats
+        long[] executionTimes = null;
+
         // IF THIS IS HSQL, RUN THE QUERIES DIRECTLY IN HSQL
         if (getHsqlBackendIfExists() != null) {
             results = new VoltTable[batchSize];
@@ -739,16 +769,34 @@ public class ProcedureRunner {
             }
         }
         else if (m_isSinglePartition) {
-            results = fastPath(batch);
+            if (m_stmtStatsCollector.beginBatch()) {
+                executionTimes = new long[batchSize];
+                results = timedFastPath(batch, executionTimes);
+            }
+            else {
+                results = fastPath(batch);
+            }
         }
         else {
-            results = slowPath(batch, isFinalSQL);
+            // Splitting a multi-partition batch would cost extra round trips,
+            // so only single statement batches are timed.
+            if (m_stmtStatsCollector.beginBatch() && batchSize == 1) {
+                executionTimes = new long[1];
+                final long startTime = System.nanoTime();
+                results = slowPath(batch, isFinalSQL);
+                executionTimes[0] = System.nanoTime() - startTime;
+            }
+            else {
+                results = slowPath(batch, isFinalSQL);
+            }
         }
 
         // check expectations
         int i = 0; for (QueuedSQL qs : batch) {
             Expectation.check(m_procedureName, qs.stmt,
                     i, qs.expectation, results[i]);
+            m_stmtStatsCollector.endStatement(qs.stmt, results[i],
+                    executionTimes != null ? executionTimes[i] : -1);
             i++;
         }
 
@@ -865,6 +913,21 @@ public class ProcedureRunner {
     }
 
 
+    /**
+     * Initialize a statement from metadata shared with the other sites. The plan
+     * fragments are already registered and the registration is owned by the shared
+     * metadata, so the statement is left without a site to keep it from releasing
+     * them when it is finalized.
+     */
+    void initSQLStmt(SQLStmt stmt, StatementMetadata shared) {
+        stmt.aggregator = shared.aggregator;
+        stmt.collector = shared.collector;
+        stmt.isReadOnly = shared.isReadOnly;
+        stmt.isReplicatedTableDML = shared.isReplicatedTableDML;
+        stmt.statementParamJavaTypes = shared.statementParamJavaTypes;
+        stmt.site = null;
+    }
+
     protected void reflect() {
         // fill in the sql for single statement procs
         if (m_catProc.getHasjava() == false) {
@@ -877,30 +940,11 @@ public class ProcedureRunner {
                 SQLStmtAdHocHelper.setSQLStr(stmt, s);
                 m_cachedSingleStmt.stmt = stmt;
 
-                int numParams = m_catProc.getParameters().size();
-                m_paramTypes = new Class<?>[numParams];
-
-                for (ProcParameter param : m_catProc.getParameters()) {
-                    VoltType type = VoltType.get((byte) param.getType());
-                    if (param.getIsarray()) {
-                        m_paramTypes[param.getIndex()] = type.vectorClassFromType();
-                        continue;
-                    }
-                    // Paul doesn't understand why single-statement procedures
-                    // need to have their input parameter types widened here.
-                    // Is it not better to catch too-wide values in the ProcedureRunner
-                    // (ParameterConverter.tryToMakeCompatible) before falling through to the EE?
-                    if (type == VoltType.INTEGER) {
-                        type = VoltType.BIGINT;
-                    } else if (type == VoltType.SMALLINT) {
-                        type = VoltType.BIGINT;
-                    } else if (type == VoltType.TINYINT) {
-                        type = VoltType.BIGINT;
-                    } else if (type == VoltType.NUMERIC) {
-                        type = VoltType.FLOAT;
-                    }
-
-                    m_paramTypes[param.getIndex()] = type.classFromType();
+                if (m_metadata != null) {
+                    m_paramTypes = m_metadata.paramTypes;
+                }
+                else {
+                    m_paramTypes = ProcedureMetadataCache.singleStatementParamTypes(m_catProc);
                 }
             } catch (Exception e) {
                 // shouldn't throw anything outside of the compiler
@@ -941,9 +985,18 @@ public class ProcedureRunner {
                  * a regular basis.
                  */
                 SQLStmt stmt = entry.getValue();
+                if (!m_isSysProc) {
+                    m_stmtStatsCollector.registerStatement(name, stmt);
+                }
 
-                // done in a static method in an abstract class so users don't call it
-                initSQLStmt(stmt, s);
+                StatementMetadata shared = m_metadata != null ? m_metadata.getStatement(name) : null;
+                if (shared != null) {
+                    initSQLStmt(stmt, shared);
+                }
+                else {
+                    // done in a static method in an abstract class so users don't call it
+                    initSQLStmt(stmt, s);
+                }
                 //LOG.fine("Found statement " + name);
             }
         }
@@ -1385,6 +1438,20 @@ public class ProcedureRunner {
        return state.m_results;
    }
 
+   /**
+    * Run a single partition batch one statement at a time so that the EE time
+    * of each statement can be recorded for the statement stats.
+    */
+   private VoltTable[] timedFastPath(List<QueuedSQL> batch, long[] executionTimes) {
+       VoltTable[] results = new VoltTable[batch.size()];
+       for (int i = 0; i < batch.size(); i++) {
+           final long startTime = System.nanoTime();
+           results[i] = fastPath(Collections.singletonList(batch.get(i)))[0];
+           executionTimes[i] = System.nanoTime() - startTime;
+       }
+       return results;
+   }
+
    // Batch up pre-planned fragments, but handle ad hoc independently.
    private VoltTable[] fastPath(List<QueuedSQL> batch) {
        final int batchSize = batch.size();
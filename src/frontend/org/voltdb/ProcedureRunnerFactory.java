@@ -17,6 +17,7 @@
 
 package org.voltdb;
 
+import org.voltdb.ProcedureMetadataCache.ProcedureMetadata;
 import org.voltdb.catalog.Procedure;
 
 public class ProcedureRunnerFactory {
@@ -37,4 +38,11 @@ public class ProcedureRunnerFactory {
         return new ProcedureRunner(procedure, m_site, m_context, catProc, csp);
     }
 
+    public ProcedureRunner create(
+            VoltProcedure procedure,
+            ProcedureMetadata metadata,
+            CatalogSpecificPlanner csp) {
+        return new ProcedureRunner(procedure, m_site, m_context, metadata.catProc, csp, metadata);
+    }
+
 }
@@ -98,11 +98,14 @@ import org.voltdb.dtxn.LatencyHistogramStats;
 import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
+import org.voltdb.export.ExportMemoryBudget;
+import org.voltdb.export.ExportStats;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Initiator;
 import org.voltdb.iv2.KSafetyStats;
 import org.voltdb.iv2.LeaderAppointer;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.SiteTaskerQueue;
 import org.voltdb.iv2.SpInitiator;
 import org.voltdb.iv2.TxnEgo;
 import org.voltdb.join.BalancePartitionsStatistics;
@@ -112,6 +115,8 @@ import org.voltdb.messaging.VoltDbMessageFactory;
 import org.voltdb.planner.ActivePlanRepository;
 import org.voltdb.rejoin.Iv2RejoinCoordinator;
 import org.voltdb.rejoin.JoinCoordinator;
+import org.voltdb.rejoin.RejoinStats;
+import org.voltdb.sysprocs.saverestore.RestoreStats;
 import org.voltdb.utils.CLibrary;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.Encoder;
@@ -671,6 +676,15 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             KSafetyStats kSafetyStats = new KSafetyStats();
             getStatsAgent().registerStatsSource(StatsSelector.KSAFETY, 0, kSafetyStats);
 
+            RejoinStats rejoinStats = new RejoinStats();
+            getStatsAgent().registerStatsSource(StatsSelector.REJOIN, 0, rejoinStats);
+
+            ExportStats exportStats = new ExportStats(ExportMemoryBudget.instance());
+            getStatsAgent().registerStatsSource(StatsSelector.EXPORT, 0, exportStats);
+
+            RestoreStats restoreStats = new RestoreStats();
+            getStatsAgent().registerStatsSource(StatsSelector.RESTORE, 0, restoreStats);
+
             /*
              * Initialize the command log on rejoin and join before configuring the IV2
              * initiators.  This will prevent them from receiving transactions
@@ -772,6 +786,11 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
                         adminIntf,
                         config.m_adminPort,
                         m_config.m_timestampTestingSalt);
+                List<SiteTaskerQueue> siteTaskerQueues = new ArrayList<SiteTaskerQueue>();
+                for (Initiator iv2init : m_iv2Initiators) {
+                    siteTaskerQueues.add(iv2init.getSiteTaskerQueue());
+                }
+                m_clientInterface.setSiteTaskerQueues(siteTaskerQueues);
             } catch (Exception e) {
                 VoltDB.crashLocalVoltDB(e.getMessage(), true, e);
             }
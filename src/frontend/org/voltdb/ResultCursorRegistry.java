@@ -0,0 +1,439 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+
+/**
+ * Server side state for clients that page through large results with @OpenCursor,
+ * @FetchCursor and @CloseCursor.
+ *
+ * The results of a read-only transaction are fully materialized by the time its response
+ * reaches the ClientInterface, so rather than serializing the whole response into a single
+ * message a cursor holds on to the response tables and hands them to the client a chunk of
+ * rows at a time. Every response to a cursor request starts with a descriptor table holding
+ * the cursor id (or {@link #NO_CURSOR} once the results are exhausted) and the index of the
+ * result table the first chunk belongs to. The chunk tables that follow cover consecutive
+ * result tables, the first one picking up where the previous chunk left off.
+ *
+ * Cursors belong to the connection that opened them and are released when exhausted,
+ * closed, left idle for too long or when the connection goes away. The results held by all
+ * cursors of the node are capped at {@link #MAX_HELD_BYTES}, requests for a cursor beyond
+ * that are rejected. Responses carrying a descriptor are flagged with
+ * {@link ClientResponseImpl#setHasCursorDescriptor(boolean)} so clients don't have to guess.
+ */
+class ResultCursorRegistry {
+
+    static final long NO_CURSOR = -1;
+
+    /** Open cursors allowed per connection, further requests get unpaged responses */
+    static final int MAX_CURSORS_PER_CONNECTION = Integer.getInteger("MAX_CURSORS_PER_CONNECTION", 16);
+    /** Upper bound on the size of a chunk regardless of the number of rows requested */
+    static final int MAX_CHUNK_BYTES = Integer.getInteger("CURSOR_MAX_CHUNK_BYTES", 1024 * 1024);
+    static final long CURSOR_IDLE_TIMEOUT_NANOS =
+            TimeUnit.SECONDS.toNanos(Integer.getInteger("CURSOR_IDLE_TIMEOUT_SECONDS", 300));
+    /** Upper bound on the bytes of results held by all the open cursors of this node */
+    static final long MAX_HELD_BYTES = Long.getLong("CURSOR_MAX_HELD_BYTES", 256L * 1024 * 1024);
+
+    static final ColumnInfo DESCRIPTOR_SCHEMA[] = new ColumnInfo[] {
+        new ColumnInfo("CURSOR_ID", VoltType.BIGINT),
+        new ColumnInfo("FIRST_TABLE", VoltType.INTEGER)
+    };
+
+    static class Cursor {
+        private final VoltTable m_results[];
+        private final int m_chunkRows;
+        private final int m_chunkBytes;
+        private int m_table = 0;
+        private int m_row = 0;
+        private int m_rowOffset = -1;
+        private volatile long m_lastAccessNanos = System.nanoTime();
+
+        /** Serialized size of the result tables not yet handed out in full */
+        private long m_heldBytes = 0;
+        /** Node wide count of held bytes this cursor is charged to, null until registered */
+        private AtomicLong m_account = null;
+
+        Cursor(VoltTable results[], int chunkRows, int chunkBytes) {
+            m_results = results;
+            m_chunkRows = chunkRows;
+            m_chunkBytes = chunkBytes;
+            for (VoltTable table : results) {
+                m_heldBytes += table.getSerializedSize();
+            }
+        }
+
+        synchronized long getHeldBytes() {
+            return m_heldBytes;
+        }
+
+        /**
+         * Start charging the remaining results to the node wide account.
+         * @return the account's total including this cursor
+         */
+        synchronized long charge(AtomicLong account) {
+            m_account = account;
+            return account.addAndGet(m_heldBytes);
+        }
+
+        /** Stop charging, called once the cursor is no longer reachable. */
+        synchronized void release() {
+            if (m_account != null) {
+                m_account.addAndGet(-m_heldBytes);
+                m_account = null;
+            }
+        }
+
+        boolean isExhausted() {
+            return m_table >= m_results.length;
+        }
+
+        int getTable() {
+            return m_table;
+        }
+
+        /**
+         * Take up to the chunk's worth of rows and bytes from the remaining results. At least
+         * one row is always taken so that a single row larger than the byte budget still
+         * makes progress.
+         */
+        synchronized List<VoltTable> nextChunk() {
+            m_lastAccessNanos = System.nanoTime();
+            List<VoltTable> chunk = new ArrayList<VoltTable>();
+            int rowBudget = m_chunkRows;
+            int byteBudget = m_chunkBytes;
+            while (!isExhausted()) {
+                VoltTable table = m_results[m_table];
+                if (m_rowOffset == -1) {
+                    m_rowOffset = table.getFirstRowOffset();
+                }
+                int endOffset = m_rowOffset;
+                int rows = 0;
+                while (m_row + rows < table.getRowCount() && rows < rowBudget) {
+                    int rowSize = table.getRowSizeAt(endOffset);
+                    if (rowSize > byteBudget && !(chunk.isEmpty() && rows == 0)) {
+                        break;
+                    }
+                    byteBudget -= rowSize;
+                    endOffset += rowSize;
+                    rows++;
+                }
+
+                boolean finished = m_row + rows == table.getRowCount();
+                if (rows == 0 && !finished) {
+                    break;
+                }
+                if (m_row == 0 && finished) {
+                    chunk.add(table);
+                } else {
+                    chunk.add(table.copyRows(m_rowOffset, endOffset, rows));
+                }
+                rowBudget -= rows;
+
+                if (finished) {
+                    final long tableBytes = table.getSerializedSize();
+                    m_heldBytes -= tableBytes;
+                    if (m_account != null) {
+                        m_account.addAndGet(-tableBytes);
+                    }
+                    m_results[m_table] = null;
+                    m_table++;
+                    m_row = 0;
+                    m_rowOffset = -1;
+                } else {
+                    m_row += rows;
+                    m_rowOffset = endOffset;
+                    break;
+                }
+            }
+            return chunk;
+        }
+    }
+
+    /** An invocation that asked for a cursor and hasn't been answered yet */
+    private static class PendingOpen {
+        private final int m_chunkRows;
+        private final long m_createNanos = System.nanoTime();
+
+        PendingOpen(int chunkRows) {
+            m_chunkRows = chunkRows;
+        }
+    }
+
+    private static class ConnectionCursors {
+        /** Invocations that asked for a cursor, by client handle */
+        private final ConcurrentMap<Long, PendingOpen> m_pending = new ConcurrentHashMap<Long, PendingOpen>();
+        private final ConcurrentMap<Long, Cursor> m_open = new ConcurrentHashMap<Long, Cursor>();
+    }
+
+    private final AtomicLong m_nextCursorId = new AtomicLong(1);
+    private final ConcurrentMap<Long, ConnectionCursors> m_connections =
+            new ConcurrentHashMap<Long, ConnectionCursors>();
+    /** Bytes of results held by all open cursors */
+    private final AtomicLong m_heldBytes = new AtomicLong(0);
+    private final long m_maxHeldBytes;
+
+    ResultCursorRegistry() {
+        this(MAX_HELD_BYTES);
+    }
+
+    ResultCursorRegistry(long maxHeldBytes) {
+        m_maxHeldBytes = maxHeldBytes;
+    }
+
+    /**
+     * Unwrap an @OpenCursor invocation into the invocation of the procedure it names and
+     * remember that the response to it should be paged.
+     * @return an error response if the parameters are malformed, null otherwise
+     */
+    ClientResponseImpl prepareOpen(long connectionId, StoredProcedureInvocation task) {
+        Object params[] = task.getParams().toArray();
+        if (params.length < 2 ||
+                !(params[0] instanceof Number) || ((Number)params[0]).intValue() < 1 ||
+                !(params[1] instanceof String)) {
+            return new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0],
+                    "@OpenCursor must have a positive number of rows per chunk and a procedure name " +
+                    "followed by the parameters of the procedure",
+                    task.clientHandle);
+        }
+        String procName = (String)params[1];
+        if (procName.equals("@OpenCursor") || procName.equals("@FetchCursor") || procName.equals("@CloseCursor")) {
+            return new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0],
+                    "@OpenCursor can not invoke " + procName,
+                    task.clientHandle);
+        }
+        Object procParams[] = new Object[params.length - 2];
+        System.arraycopy(params, 2, procParams, 0, procParams.length);
+        task.setProcName(procName);
+        task.setParams(procParams);
+
+        getConnection(connectionId).m_pending.put(task.clientHandle, new PendingOpen(((Number)params[0]).intValue()));
+        return null;
+    }
+
+    /**
+     * Forget about a cursor request that was answered without going through {@link #open},
+     * because it was rejected or answered outside of a transaction. Requests that are never
+     * answered at all are dropped by {@link #expireIdleCursors(long)}.
+     */
+    void discardPending(long connectionId, long clientHandle) {
+        ConnectionCursors cursors = m_connections.get(connectionId);
+        if (cursors != null) {
+            cursors.m_pending.remove(clientHandle);
+        }
+    }
+
+    /**
+     * If the response answers an @OpenCursor invocation, return the first chunk of its
+     * results and keep the rest in a cursor. Results of read-write transactions are never
+     * held on to and are returned in full with the descriptor, as are the results of
+     * connections that already have too many cursors open.
+     */
+    ClientResponseImpl open(long connectionId, ClientResponseImpl response, boolean readOnly) {
+        ConnectionCursors cursors = m_connections.get(connectionId);
+        if (cursors == null) {
+            return response;
+        }
+        PendingOpen pending = cursors.m_pending.remove(response.getClientHandle());
+        if (pending == null || response.getStatus() != ClientResponse.SUCCESS) {
+            return response;
+        }
+
+        Cursor cursor;
+        if (readOnly && cursors.m_open.size() < MAX_CURSORS_PER_CONNECTION) {
+            cursor = new Cursor(response.getResults().clone(), pending.m_chunkRows, MAX_CHUNK_BYTES);
+        } else {
+            cursor = new Cursor(response.getResults().clone(), Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+        List<VoltTable> chunk = cursor.nextChunk();
+        long cursorId = NO_CURSOR;
+        if (!cursor.isExhausted()) {
+            if (cursor.charge(m_heldBytes) > m_maxHeldBytes) {
+                cursor.release();
+                return new ClientResponseImpl(
+                        ClientResponse.GRACEFUL_FAILURE,
+                        new VoltTable[0],
+                        "Too many results are held by open cursors on this node, " +
+                        "close or finish reading other cursors and try again",
+                        response.getClientHandle());
+            }
+            cursorId = m_nextCursorId.getAndIncrement();
+            cursors.m_open.put(cursorId, cursor);
+        }
+        return descriptorResponse(response.getStatus(),
+                response.getAppStatus(),
+                response.getAppStatusString(),
+                withDescriptor(cursorId, 0, chunk),
+                response.getStatusString(),
+                response.getClientHandle());
+    }
+
+    /**
+     * Answer @FetchCursor with the next chunk of an open cursor.
+     */
+    ClientResponseImpl fetch(long connectionId, StoredProcedureInvocation task) {
+        Object params[] = task.getParams().toArray();
+        if (params.length != 1 || !(params[0] instanceof Number)) {
+            return new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0],
+                    "@FetchCursor must have one parameter specifying the cursor id",
+                    task.clientHandle);
+        }
+        long cursorId = ((Number)params[0]).longValue();
+        ConnectionCursors cursors = m_connections.get(connectionId);
+        Cursor cursor = cursors == null ? null : cursors.m_open.get(cursorId);
+        if (cursor == null) {
+            return new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0],
+                    "Cursor " + cursorId + " is not open, it may have been exhausted, closed or expired",
+                    task.clientHandle);
+        }
+
+        int firstTable;
+        List<VoltTable> chunk;
+        boolean exhausted;
+        synchronized (cursor) {
+            firstTable = cursor.getTable();
+            chunk = cursor.nextChunk();
+            exhausted = cursor.isExhausted();
+        }
+        if (exhausted) {
+            remove(cursors, cursorId);
+            cursorId = NO_CURSOR;
+        }
+        return descriptorResponse(
+                ClientResponse.SUCCESS,
+                ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
+                null,
+                withDescriptor(cursorId, firstTable, chunk),
+                null,
+                task.clientHandle);
+    }
+
+    /**
+     * Answer @CloseCursor, releasing the remaining results of a cursor. Closing a cursor
+     * that is no longer open is not an error.
+     */
+    ClientResponseImpl close(long connectionId, StoredProcedureInvocation task) {
+        Object params[] = task.getParams().toArray();
+        if (params.length != 1 || !(params[0] instanceof Number)) {
+            return new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0],
+                    "@CloseCursor must have one parameter specifying the cursor id",
+                    task.clientHandle);
+        }
+        ConnectionCursors cursors = m_connections.get(connectionId);
+        if (cursors != null) {
+            remove(cursors, ((Number)params[0]).longValue());
+        }
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], null, task.clientHandle);
+    }
+
+    void connectionClosed(long connectionId) {
+        ConnectionCursors cursors = m_connections.remove(connectionId);
+        if (cursors != null) {
+            for (Long cursorId : cursors.m_open.keySet()) {
+                remove(cursors, cursorId);
+            }
+        }
+    }
+
+    int getOpenCursorCount(long connectionId) {
+        ConnectionCursors cursors = m_connections.get(connectionId);
+        return cursors == null ? 0 : cursors.m_open.size();
+    }
+
+    long getHeldBytes() {
+        return m_heldBytes.get();
+    }
+
+    /**
+     * Release cursors that have been idle for too long, and forget cursor requests that
+     * were never answered through {@link #open}. Run periodically by the ClientInterface.
+     */
+    void expireIdleCursors(long nowNanos) {
+        for (ConnectionCursors cursors : m_connections.values()) {
+            for (Entry<Long, Cursor> e : cursors.m_open.entrySet()) {
+                if (nowNanos - e.getValue().m_lastAccessNanos > CURSOR_IDLE_TIMEOUT_NANOS) {
+                    remove(cursors, e.getKey());
+                }
+            }
+            Iterator<PendingOpen> iter = cursors.m_pending.values().iterator();
+            while (iter.hasNext()) {
+                if (nowNanos - iter.next().m_createNanos > CURSOR_IDLE_TIMEOUT_NANOS) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    private static void remove(ConnectionCursors cursors, long cursorId) {
+        Cursor cursor = cursors.m_open.remove(cursorId);
+        if (cursor != null) {
+            cursor.release();
+        }
+    }
+
+    private ConnectionCursors getConnection(long connectionId) {
+        ConnectionCursors cursors = m_connections.get(connectionId);
+        if (cursors == null) {
+            ConnectionCursors created = new ConnectionCursors();
+            cursors = m_connections.putIfAbsent(connectionId, created);
+            if (cursors == null) {
+                cursors = created;
+            }
+        }
+        return cursors;
+    }
+
+    private static ClientResponseImpl descriptorResponse(byte status, byte appStatus, String appStatusString,
+            VoltTable results[], String statusString, long clientHandle) {
+        ClientResponseImpl response = new ClientResponseImpl(
+                status, appStatus, appStatusString, results, statusString, clientHandle);
+        response.setHasCursorDescriptor(true);
+        return response;
+    }
+
+    private static VoltTable[] withDescriptor(long cursorId, int firstTable, List<VoltTable> chunk) {
+        VoltTable descriptor = new VoltTable(DESCRIPTOR_SCHEMA);
+        descriptor.addRow(cursorId, firstTable);
+        VoltTable tables[] = new VoltTable[chunk.size() + 1];
+        tables[0] = descriptor;
+        for (int i = 0; i < chunk.size(); i++) {
+            tables[i + 1] = chunk.get(i);
+        }
+        return tables;
+    }
+}
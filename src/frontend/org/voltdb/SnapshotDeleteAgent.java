@@ -18,8 +18,11 @@ package org.voltdb;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
@@ -27,6 +30,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.sysprocs.saverestore.DeltaSnapshotManifest;
 import org.voltdb.utils.VoltFile;
 
 /**
@@ -177,9 +181,28 @@ public class SnapshotDeleteAgent extends OpsAgent
             public void run() {
                 StringBuilder sb = new StringBuilder();
                 sb.append("Deleting files: ");
+                List<List<File>> filesByNonce = new ArrayList<List<File>>();
+                List<File> allFiles = new ArrayList<File>();
                 for (int ii = 0; ii < paths.length; ii++) {
                     List<File> relevantFiles = retrieveRelevantFiles(paths[ii], nonces[ii]);
+                    filesByNonce.add(relevantFiles);
                     if (relevantFiles != null) {
+                        allFiles.addAll(relevantFiles);
+                    }
+                }
+                for (int ii = 0; ii < paths.length; ii++) {
+                    List<File> relevantFiles = filesByNonce.get(ii);
+                    if (relevantFiles != null) {
+                        /*
+                         * Delta snapshots that are kept can't be restored without the files
+                         * they reference, so a snapshot they depend on is kept as a whole
+                         */
+                        String referenced = findReferencedFile(new VoltFile(paths[ii]), relevantFiles, allFiles);
+                        if (referenced != null) {
+                            SNAP_LOG.warn("Not deleting snapshot " + nonces[ii] + " in " + paths[ii] +
+                                    ", " + referenced + " is referenced by a delta snapshot");
+                            continue;
+                        }
                         for (final File f : relevantFiles) {
                             sb.append(f.getPath());
                             sb.append(',');
@@ -195,6 +218,26 @@ public class SnapshotDeleteAgent extends OpsAgent
         return new VoltTable[] {result};
     }
 
+    /*
+     * @return The first of the files that a delta snapshot which isn't deleted along
+     * with them references, or null if there is none
+     */
+    private static String findReferencedFile(File directory, List<File> files, List<File> deleted) {
+        Set<String> referenced;
+        try {
+            referenced = DeltaSnapshotManifest.getReferencedFiles(directory, deleted);
+        } catch (IOException e) {
+            SNAP_LOG.warn("Unable to read delta snapshot manifests in " + directory, e);
+            return directory.getPath();
+        }
+        for (File f : files) {
+            if (referenced.contains(f.getName())) {
+                return f.getName();
+            }
+        }
+        return null;
+    }
+
     private final List<File> retrieveRelevantFiles(String filePath, String nonce) {
         final File path = new VoltFile(filePath);
 
@@ -240,7 +283,8 @@ public class SnapshotDeleteAgent extends OpsAgent
                 if (!pathname.getName().endsWith(".vpt") &&
                     !pathname.getName().endsWith(".digest") &&
                     !pathname.getName().endsWith(".jar") &&
-                    !pathname.getName().endsWith(".hash")) {
+                    !pathname.getName().endsWith(".hash") &&
+                    !pathname.getName().endsWith(DeltaSnapshotManifest.MANIFEST_EXTENSION)) {
                     return false;
                 }
 
@@ -21,10 +21,18 @@ package org.voltdb;
  * Supported snapshot formats
  */
 public enum SnapshotFormat {
-    NATIVE (true,  true,  TableStreamType.SNAPSHOT),
-    CSV    (true,  true,  TableStreamType.SNAPSHOT),
-    STREAM (false, false, TableStreamType.SNAPSHOT),
-    INDEX  (false, false, TableStreamType.ELASTIC_INDEX);
+    NATIVE   (true,  true,  TableStreamType.SNAPSHOT),
+    /*
+     * Native file container with each chunk encoded column by column before compression
+     */
+    COLUMNAR (true,  true,  TableStreamType.SNAPSHOT),
+    /*
+     * Native file container that only writes the rows that changed since a base snapshot
+     */
+    DELTA    (true,  true,  TableStreamType.SNAPSHOT),
+    CSV      (true,  true,  TableStreamType.SNAPSHOT),
+    STREAM   (false, false, TableStreamType.SNAPSHOT),
+    INDEX    (false, false, TableStreamType.ELASTIC_INDEX);
 
     private final boolean m_isFileBased;
     private final boolean m_canCloseEarly;
@@ -45,6 +45,8 @@ import org.voltcore.zk.ZKUtil;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.iv2.TxnEgo;
 import org.voltdb.sysprocs.saverestore.CSVSnapshotWritePlan;
+import org.voltdb.sysprocs.saverestore.ColumnarSnapshotWritePlan;
+import org.voltdb.sysprocs.saverestore.DeltaSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.HashinatorSnapshotData;
 import org.voltdb.sysprocs.saverestore.IndexSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.NativeSnapshotWritePlan;
@@ -462,6 +464,12 @@ public class SnapshotSaveAPI
         if (format == SnapshotFormat.NATIVE) {
             plan = new NativeSnapshotWritePlan();
         }
+        else if (format == SnapshotFormat.COLUMNAR) {
+            plan = new ColumnarSnapshotWritePlan();
+        }
+        else if (format == SnapshotFormat.DELTA) {
+            plan = new DeltaSnapshotWritePlan();
+        }
         else if (format == SnapshotFormat.CSV) {
             plan = new CSVSnapshotWritePlan();
         }
@@ -235,6 +235,15 @@ public class SnapshotSiteProcessor {
         return sequenceNumbers;
     }
 
+    /**
+     * Grow or shrink the number of snapshot buffers that can be outstanding at once.
+     * Stream snapshots use this to size the pool to the rejoin window. A shrink
+     * takes effect as outstanding buffers are discarded.
+     */
+    public static void adjustSnapshotBufferLimit(int delta) {
+        m_availableSnapshotBuffers.addAndGet(delta);
+    }
+
     private long m_quietUntil = 0;
 
     public SnapshotSiteProcessor(SiteTaskerQueue siteQueue, int snapshotPriority) {
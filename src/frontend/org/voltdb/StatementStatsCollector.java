@@ -0,0 +1,338 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltcore.utils.CompressionStrategySnappy;
+import org.voltdb.dtxn.LatencyStats;
+
+/**
+ * Derivation of StatsSource to expose execution information for the individual
+ * SQL statements of a procedure. One collector exists per procedure per site and
+ * is only ever updated from the site thread.
+ *
+ * Invocation and row counts are kept for every execution. Execution time and
+ * result size are only recorded for one batch in every timeCollectionInterval,
+ * in which the statements of the batch are handed to the EE one at a time.
+ */
+class StatementStatsCollector extends SiteStatsSource {
+
+    /**
+     * Time the statements of every Nth batch
+     */
+    final int timeCollectionInterval = 20;
+
+    /**
+     * Counters for a single statement of the procedure.
+     */
+    static class StatementStats {
+        final String m_name;
+
+        long m_invocations = 0;
+        long m_lastInvocations = 0;
+
+        long m_timedInvocations = 0;
+        long m_lastTimedInvocations = 0;
+
+        long m_totalTimedExecutionTime = 0;
+        long m_lastTotalTimedExecutionTime = 0;
+
+        long m_minExecutionTime = Long.MAX_VALUE;
+        long m_lastMinExecutionTime = Long.MAX_VALUE;
+
+        long m_maxExecutionTime = Long.MIN_VALUE;
+        long m_lastMaxExecutionTime = Long.MIN_VALUE;
+
+        /**
+         * Rows returned by reads and rows modified by writes
+         */
+        long m_rowsReturned = 0;
+        long m_lastRowsReturned = 0;
+
+        long m_rowsModified = 0;
+        long m_lastRowsModified = 0;
+
+        int m_minResultSize = Integer.MAX_VALUE;
+        int m_lastMinResultSize = Integer.MAX_VALUE;
+
+        int m_maxResultSize = Integer.MIN_VALUE;
+        int m_lastMaxResultSize = Integer.MIN_VALUE;
+
+        long m_totalResultSize = 0;
+        long m_lastTotalResultSize = 0;
+
+        /**
+         * Histograms of the timed executions in microseconds, allocated on the
+         * first timed execution so that statements that never run cost nothing.
+         */
+        AbstractHistogram m_histogram = null;
+        AbstractHistogram m_intervalHistogram = null;
+
+        StatementStats(String name) {
+            m_name = name;
+        }
+    }
+
+    private final Map<SQLStmt, StatementStats> m_statements =
+            new IdentityHashMap<SQLStmt, StatementStats>();
+
+    /**
+     * Statements in the order they were registered, used to produce stable rows
+     */
+    private final List<StatementStats> m_statementList = new ArrayList<StatementStats>();
+
+    /**
+     * Number of batches executed, used to pick the batches to time
+     */
+    private long m_batches = 0;
+
+    /**
+     * Whether to return results in intervals since polling or since the beginning
+     */
+    private boolean m_interval = false;
+
+    private final String m_procName;
+    private final int m_partitionId;
+
+    public StatementStatsCollector(long siteId, int partitionId, String procName) {
+        super(siteId, false);
+        m_partitionId = partitionId;
+        m_procName = procName;
+    }
+
+    /**
+     * Register a statement of the procedure under its field name. Statements that
+     * are not registered, such as SQL built on the fly, are not tracked.
+     */
+    public void registerStatement(String name, SQLStmt stmt) {
+        if (m_statements.containsKey(stmt)) {
+            return;
+        }
+        StatementStats stats = new StatementStats(name);
+        m_statements.put(stmt, stats);
+        m_statementList.add(stats);
+    }
+
+    /**
+     * Called when a batch begins executing.
+     * @return true if the execution time of the statements in this batch should be recorded
+     */
+    public final boolean beginBatch() {
+        if (m_statementList.isEmpty()) {
+            return false;
+        }
+        return (m_batches++ % timeCollectionInterval) == 0;
+    }
+
+    /**
+     * Called after a statement has executed.
+     * @param stmt the statement
+     * @param result the table the statement produced
+     * @param executionTime time spent executing the statement in nanoseconds,
+     *        or a negative value if this execution was not timed
+     */
+    public final void endStatement(SQLStmt stmt, VoltTable result, long executionTime) {
+        StatementStats stats = m_statements.get(stmt);
+        if (stats == null) {
+            return;
+        }
+        stats.m_invocations++;
+        if (result != null) {
+            if (stmt.isReadOnly) {
+                stats.m_rowsReturned += result.getRowCount();
+            }
+            else if (result.getRowCount() == 1 && result.getColumnCount() == 1 &&
+                     result.getColumnType(0) == VoltType.BIGINT) {
+                stats.m_rowsModified += result.asScalarLong();
+            }
+        }
+        if (executionTime < 0) {
+            return;
+        }
+
+        stats.m_timedInvocations++;
+        stats.m_totalTimedExecutionTime += executionTime;
+        stats.m_minExecutionTime = Math.min(executionTime, stats.m_minExecutionTime);
+        stats.m_maxExecutionTime = Math.max(executionTime, stats.m_maxExecutionTime);
+        stats.m_lastMinExecutionTime = Math.min(executionTime, stats.m_lastMinExecutionTime);
+        stats.m_lastMaxExecutionTime = Math.max(executionTime, stats.m_lastMaxExecutionTime);
+
+        int resultSize = result != null ? result.getSerializedSize() : 0;
+        stats.m_totalResultSize += resultSize;
+        stats.m_minResultSize = Math.min(resultSize, stats.m_minResultSize);
+        stats.m_maxResultSize = Math.max(resultSize, stats.m_maxResultSize);
+        stats.m_lastMinResultSize = Math.min(resultSize, stats.m_lastMinResultSize);
+        stats.m_lastMaxResultSize = Math.max(resultSize, stats.m_lastMaxResultSize);
+
+        // The histograms are read by the stats agent, so only the sampled path
+        // pays for the lock.
+        synchronized (this) {
+            if (stats.m_histogram == null) {
+                stats.m_histogram = LatencyStats.constructHistogram(false);
+                stats.m_intervalHistogram = LatencyStats.constructHistogram(false);
+            }
+            long micros = Math.max(1, Math.min(executionTime / 1000,
+                                               stats.m_histogram.getHighestTrackableValue()));
+            stats.m_histogram.recordValue(micros);
+            stats.m_intervalHistogram.recordValue(micros);
+        }
+    }
+
+    /**
+     * Update the rowValues array with the latest statistical information.
+     * The super class version must also be called so that it can update its columns.
+     * @param rowKey The StatementStats of the statement the row describes.
+     * @param rowValues Values of each column of the row of stats. Used as output.
+     */
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        super.updateStatsRow(rowKey, rowValues);
+        StatementStats stats = (StatementStats) rowKey;
+        rowValues[columnNameToIndex.get("PARTITION_ID")] = m_partitionId;
+        rowValues[columnNameToIndex.get("PROCEDURE")] = m_procName;
+        rowValues[columnNameToIndex.get("STATEMENT")] = stats.m_name;
+
+        long invocations = stats.m_invocations;
+        long timedInvocations = stats.m_timedInvocations;
+        long totalTimedExecutionTime = stats.m_totalTimedExecutionTime;
+        long minExecutionTime = stats.m_minExecutionTime;
+        long maxExecutionTime = stats.m_maxExecutionTime;
+        long rowsReturned = stats.m_rowsReturned;
+        long rowsModified = stats.m_rowsModified;
+        int minResultSize = stats.m_minResultSize;
+        int maxResultSize = stats.m_maxResultSize;
+        long totalResultSize = stats.m_totalResultSize;
+        AbstractHistogram histogram = stats.m_histogram;
+
+        if (m_interval) {
+            invocations = stats.m_invocations - stats.m_lastInvocations;
+            stats.m_lastInvocations = stats.m_invocations;
+
+            timedInvocations = stats.m_timedInvocations - stats.m_lastTimedInvocations;
+            stats.m_lastTimedInvocations = stats.m_timedInvocations;
+
+            totalTimedExecutionTime = stats.m_totalTimedExecutionTime - stats.m_lastTotalTimedExecutionTime;
+            stats.m_lastTotalTimedExecutionTime = stats.m_totalTimedExecutionTime;
+
+            minExecutionTime = stats.m_lastMinExecutionTime;
+            maxExecutionTime = stats.m_lastMaxExecutionTime;
+            stats.m_lastMinExecutionTime = Long.MAX_VALUE;
+            stats.m_lastMaxExecutionTime = Long.MIN_VALUE;
+
+            rowsReturned = stats.m_rowsReturned - stats.m_lastRowsReturned;
+            stats.m_lastRowsReturned = stats.m_rowsReturned;
+
+            rowsModified = stats.m_rowsModified - stats.m_lastRowsModified;
+            stats.m_lastRowsModified = stats.m_rowsModified;
+
+            minResultSize = stats.m_lastMinResultSize;
+            maxResultSize = stats.m_lastMaxResultSize;
+            stats.m_lastMinResultSize = Integer.MAX_VALUE;
+            stats.m_lastMaxResultSize = Integer.MIN_VALUE;
+
+            totalResultSize = stats.m_totalResultSize - stats.m_lastTotalResultSize;
+            stats.m_lastTotalResultSize = stats.m_totalResultSize;
+
+            histogram = stats.m_intervalHistogram;
+        }
+
+        rowValues[columnNameToIndex.get("INVOCATIONS")] = invocations;
+        rowValues[columnNameToIndex.get("TIMED_INVOCATIONS")] = timedInvocations;
+        if (timedInvocations != 0) {
+            rowValues[columnNameToIndex.get("MIN_EXECUTION_TIME")] = minExecutionTime;
+            rowValues[columnNameToIndex.get("MAX_EXECUTION_TIME")] = maxExecutionTime;
+            rowValues[columnNameToIndex.get("AVG_EXECUTION_TIME")] =
+                    (totalTimedExecutionTime / timedInvocations);
+            rowValues[columnNameToIndex.get("MIN_RESULT_SIZE")] = minResultSize;
+            rowValues[columnNameToIndex.get("MAX_RESULT_SIZE")] = maxResultSize;
+            rowValues[columnNameToIndex.get("AVG_RESULT_SIZE")] =
+                    (int) (totalResultSize / timedInvocations);
+        } else {
+            // the min/max trackers still hold their sentinels when nothing was sampled
+            rowValues[columnNameToIndex.get("MIN_EXECUTION_TIME")] = 0L;
+            rowValues[columnNameToIndex.get("MAX_EXECUTION_TIME")] = 0L;
+            rowValues[columnNameToIndex.get("AVG_EXECUTION_TIME")] = 0L;
+            rowValues[columnNameToIndex.get("MIN_RESULT_SIZE")] = 0;
+            rowValues[columnNameToIndex.get("MAX_RESULT_SIZE")] = 0;
+            rowValues[columnNameToIndex.get("AVG_RESULT_SIZE")] = 0;
+        }
+        if (histogram != null && histogram.getHistogramData().getTotalCount() != 0) {
+            rowValues[columnNameToIndex.get("P99_EXECUTION_TIME")] =
+                    histogram.getHistogramData().getValueAtPercentile(99.0) * 1000;
+            rowValues[columnNameToIndex.get("HISTOGRAM")] =
+                    histogram.toCompressedBytes(CompressionStrategySnappy.INSTANCE);
+        } else {
+            rowValues[columnNameToIndex.get("P99_EXECUTION_TIME")] = 0L;
+            rowValues[columnNameToIndex.get("HISTOGRAM")] = null;
+        }
+        if (m_interval && histogram != null) {
+            histogram.reset();
+        }
+        rowValues[columnNameToIndex.get("ROWS_RETURNED")] = rowsReturned;
+        rowValues[columnNameToIndex.get("ROWS_MODIFIED")] = rowsModified;
+    }
+
+    /**
+     * Specifies the columns of statistics that are added by this class to the schema of a statistical results.
+     * @param columns List of columns that are in a stats row.
+     */
+    @Override
+    protected void populateColumnSchema(ArrayList<VoltTable.ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new VoltTable.ColumnInfo("PARTITION_ID", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("PROCEDURE", VoltType.STRING));
+        columns.add(new VoltTable.ColumnInfo("STATEMENT", VoltType.STRING));
+        columns.add(new VoltTable.ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("TIMED_INVOCATIONS", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("MIN_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("MAX_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("AVG_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("P99_EXECUTION_TIME", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("ROWS_RETURNED", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("ROWS_MODIFIED", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("MIN_RESULT_SIZE", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("MAX_RESULT_SIZE", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("AVG_RESULT_SIZE", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("HISTOGRAM", VoltType.VARBINARY));
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        List<Object> rows = new ArrayList<Object>();
+        for (StatementStats stats : m_statementList) {
+            long invocations = interval ?
+                    stats.m_invocations - stats.m_lastInvocations : stats.m_invocations;
+            if (invocations != 0) {
+                rows.add(stats);
+            }
+        }
+        return rows.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return m_procName;
+    }
+}
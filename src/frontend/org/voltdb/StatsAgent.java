@@ -187,6 +187,8 @@ public class StatsAgent extends OpsAgent
         m_procInfo = getProcInfoSupplier();
         registeredStatsSources.put(StatsSelector.PROCEDURE,
                                    new NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>());
+        registeredStatsSources.put(StatsSelector.STATEMENT,
+                                   new NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>());
     }
 
     @Override
@@ -376,6 +378,9 @@ public class StatsAgent extends OpsAgent
         case PROCEDUREPROFILE:
             stats = collectProcedureStats(interval);
             break;
+        case STATEMENT:
+            stats = collectStatementStats(interval);
+            break;
         case STARVATION:
             stats = collectStarvationStats(interval);
             break;
@@ -400,6 +405,15 @@ public class StatsAgent extends OpsAgent
         case KSAFETY:
             stats = collectKSafetyStats(interval);
             break;
+        case REJOIN:
+            stats = collectRejoinStats(interval);
+            break;
+        case EXPORT:
+            stats = collectExportStats(interval);
+            break;
+        case RESTORE:
+            stats = collectRestoreStats(interval);
+            break;
         default:
             // Should have been successfully groomed in collectStatsImpl().  Log something
             // for our information but let the null check below return harmlessly
@@ -555,6 +569,19 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private VoltTable[] collectStatementStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable sStats = getStatsAggregate(StatsSelector.STATEMENT, interval, now);
+        if (sStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = sStats;
+        }
+        return stats;
+    }
+
     private VoltTable[] collectPlannerStats(boolean interval)
     {
         Long now = System.currentTimeMillis();
@@ -668,6 +695,45 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private VoltTable[] collectRejoinStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable mStats = getStatsAggregate(StatsSelector.REJOIN, interval, now);
+        if (mStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = mStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectExportStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable eStats = getStatsAggregate(StatsSelector.EXPORT, interval, now);
+        if (eStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = eStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectRestoreStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable rStats = getStatsAggregate(StatsSelector.RESTORE, interval, now);
+        if (rStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = rStats;
+        }
+        return stats;
+    }
+
     public void registerStatsSource(StatsSelector selector, long siteId, StatsSource source) {
         assert selector != null;
         assert source != null;
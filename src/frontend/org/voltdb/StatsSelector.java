@@ -20,6 +20,7 @@ public enum StatsSelector {
     TABLE,            // invoked as @stat table
     INDEX,            // invoked as @stat index
     PROCEDURE,        // invoked as @stat procedure
+    STATEMENT,        // invoked as @stat statement
     STARVATION,
     INITIATOR,        // invoked as @stat initiator
     LATENCY,          // invoked as @stat latency
@@ -45,5 +46,8 @@ public enum StatsSelector {
 
     TOPO,           // return leader and site info for iv2
     REBALANCE,      // return elastic rebalance progress
-    KSAFETY         // return ksafety coverage information
+    KSAFETY,        // return ksafety coverage information
+    REJOIN,         // return progress of rejoin streams sent from each node
+    EXPORT,         // export backlog per stream in each tier of the export memory budget
+    RESTORE         // return progress of the snapshot files being restored on each node
 }
@@ -173,6 +173,22 @@ public class StoredProcedureInvocation implements JSONString {
         }
     }
 
+    /**
+     * Hash the partition parameter to a partition. While the parameters are still
+     * serialized the parameter is hashed straight out of the buffer.
+     */
+    int getPartitionForParameter(int partitionIndex, VoltType partitionType) {
+        if (serializedParams == null) {
+            return TheHashinator.getPartitionForParameter(partitionType, getParameterAtIndex(partitionIndex));
+        }
+        try {
+            return TheHashinator.getPartitionForSerializedParameter(partitionType, serializedParams, partitionIndex);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("Invalid partitionIndex", ex);
+        }
+    }
+
     public int getSerializedSize()
     {
         int size = 1 // Version/type
@@ -166,6 +166,15 @@ public abstract class TheHashinator {
     abstract public int pHashToPartition(VoltType type, Object obj);
     abstract protected Set<Integer> pGetPartitions();
 
+    /**
+     * Hash the parameter at the given position of a serialized parameter set in place.
+     * Returns -1 if it has to be deserialized and hashed by
+     * {@link #getHashedPartitionForParameter(VoltType, Object)} instead.
+     */
+    protected int pHashSerializedParameter(VoltType type, ByteBuffer params, int position) {
+        return -1;
+    }
+
     /**
      * Returns the configuration signature
      * @return the configuration signature
@@ -306,6 +315,38 @@ public abstract class TheHashinator {
         return instance.get().getSecond().getHashedPartitionForParameter(partitionType, invocationParameter);
     }
 
+    /**
+     * Same as {@link #getPartitionForParameter(VoltType, Object)} for a parameter that is
+     * still in a serialized parameter set, which spares deserializing it when possible.
+     *
+     * @return The partition best set up to execute the procedure.
+     * @throws IOException if the parameter set is malformed
+     */
+    public static int getPartitionForSerializedParameter(VoltType partitionType,
+            ByteBuffer serializedParams, int partitionIndex) throws IOException {
+        return instance.get().getSecond().getHashedPartitionForSerializedParameter(
+                partitionType, serializedParams, partitionIndex);
+    }
+
+    /**
+     * Find the partition parameter in a serialized parameter set and hash it, in place
+     * if this hashinator supports it. Does not change the position of the buffer.
+     *
+     * @return The partition best set up to execute the procedure.
+     * @throws IOException if the parameter set is malformed
+     */
+    public int getHashedPartitionForSerializedParameter(VoltType partitionParamType,
+            ByteBuffer serializedParams, int partitionIndex) throws IOException {
+        final ByteBuffer params = serializedParams.duplicate();
+        final int position = ParameterSet.getParameterPositionAtIndex(partitionIndex, params);
+        final int partition = pHashSerializedParameter(partitionParamType, params, position);
+        if (partition >= 0) {
+            return partition;
+        }
+        params.position(position);
+        return getHashedPartitionForParameter(partitionParamType, ParameterSet.readParameter(params));
+    }
+
     /**
      * Given the type of the targeting partition parameter and an object,
      * coerce the object to the correct type and hash it.
@@ -81,6 +81,35 @@ public interface Client {
     public ClientResponse callProcedure(String procName, Object... parameters)
     throws IOException, NoConnectionsException, ProcCallException;
 
+    /**
+     * <p>Prepare a handle for invoking a procedure many times. The returned
+     * {@link PreparedInvocation} encodes the procedure name once and caches the
+     * procedure's partitioning info used for client affinity, so high rate callers
+     * only supply parameter values on each call.</p>
+     *
+     * @param procName <code>class</code> name (not qualified by package) of the procedure to execute.
+     * @return {@link PreparedInvocation} bound to this client.
+     */
+    public PreparedInvocation prepareInvocation(String procName);
+
+    /**
+     * <p>Synchronously invoke a procedure and page through its results instead of receiving them
+     * in a single response. The server holds on to the results of read-only procedures and returns
+     * them a chunk of rows at a time as the returned {@link ResultCursor} is iterated. Results of
+     * procedures that write are returned in a single chunk. A {@link ProcCallException}
+     * is thrown if the response is anything other then success.</p>
+     *
+     * @param chunkRows Maximum number of rows in each chunk of results.
+     * @param procName <code>class</code> name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return {@link ResultCursor} over the chunks of the procedure results.
+     * @throws ProcCallException on any VoltDB specific failure.
+     * @throws NoConnectionsException if this {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public ResultCursor callProcedureWithCursor(int chunkRows, String procName, Object... parameters)
+    throws IOException, NoConnectionsException, ProcCallException;
+
     /**
      * <p>Asynchronously invoke a replicated procedure. If there is backpressure
      * this call will block until the invocation is queued. If configureBlocking(false) is invoked
@@ -42,6 +42,8 @@ public class ClientConfig {
     long m_procedureCallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_PROCEDURE_TIMOUT_NANOS);
     long m_connectionResponseTimeoutMS = DEFAULT_CONNECTION_TIMOUT_MS;
     boolean m_useClientAffinity = true;
+    boolean m_compressResponses = false;
+    boolean m_loadAwareRouting = false;
     Subject m_subject = null;
 
     /**
@@ -238,6 +240,16 @@ public class ClientConfig {
         m_autoTune = true;
     }
 
+    /**
+     * <p>Ask the servers to compress large responses on the connections this
+     * client creates. Compression costs CPU on both ends, so it only pays off
+     * for big results over slow links. Servers that don't support it keep
+     * sending uncompressed responses.</p>
+     */
+    public void enableResponseCompression() {
+        m_compressResponses = true;
+    }
+
     /**
      * <p>Attempts to route transactions to the correct master partition improving latency
      * and throughput</p>
@@ -250,6 +262,18 @@ public class ClientConfig {
         m_useClientAffinity = on;
     }
 
+    /**
+     * <p>Ask the servers to report how loaded they are on every response and use
+     * that to send multi-partition and read-only transactions to the least loaded
+     * node instead of round-robin. Single partition writes still go to the partition
+     * master when client affinity is enabled.</p>
+     *
+     * <p>See {@link ClientStatsContext#getLoadAwareRoutingStats()} for where calls were sent.</p>
+     */
+    public void enableLoadAwareRouting() {
+        m_loadAwareRouting = true;
+    }
+
     /**
      * <p>Set the target latency for the Auto Tune feature. Note this represents internal
      * latency as reported by the server(s), not round-trip latency measured by the
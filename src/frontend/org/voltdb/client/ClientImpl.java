@@ -101,6 +101,8 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                 config.m_procedureCallTimeoutNanos,
                 config.m_connectionResponseTimeoutMS,
                 config.m_useClientAffinity,
+                config.m_compressResponses,
+                config.m_loadAwareRouting,
                 config.m_subject);
         m_distributer.addClientStatusListener(m_listener);
         String username = config.m_username;
@@ -216,6 +218,94 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         return callProcedure(cb, System.nanoTime(), unit.toNanos(timeout), invocation);
     }
 
+    @Override
+    public PreparedInvocation prepareInvocation(String procName) {
+        return new PreparedInvocation(this, procName);
+    }
+
+    /**
+     * Synchronously invoke a procedure through a {@link PreparedInvocation}.
+     */
+    ClientResponse callPrepared(PreparedInvocation prepared, Object... parameters)
+            throws IOException, NoConnectionsException, ProcCallException {
+        final SyncCallback cb = new SyncCallback();
+        cb.setArgs(parameters);
+        final ProcedureInvocation invocation
+                = new ProcedureInvocation(m_handle.getAndIncrement(), prepared, parameters);
+        return callProcedure(cb, System.nanoTime(), Distributer.USE_DEFAULT_TIMEOUT, invocation);
+    }
+
+    /**
+     * Asynchronously invoke a procedure through a {@link PreparedInvocation}.
+     */
+    boolean callPrepared(ProcedureCallback callback, PreparedInvocation prepared, Object... parameters)
+            throws IOException, NoConnectionsException {
+        final ProcedureInvocation invocation
+                = new ProcedureInvocation(m_handle.getAndIncrement(), prepared, parameters);
+        return private_callProcedure(callback, 0, invocation, Distributer.USE_DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Synchronously invoke a procedure and page through its results a chunk at a time
+     * rather than receiving them in a single response.
+     *
+     * @param chunkRows maximum number of rows to return in each chunk.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return A {@link ResultCursor} positioned before the first chunk.
+     * @throws org.voltdb.client.ProcCallException
+     * @throws NoConnectionsException
+     */
+    @Override
+    public final ResultCursor callProcedureWithCursor(int chunkRows, String procName, Object... parameters)
+        throws IOException, NoConnectionsException, ProcCallException
+    {
+        return callProcedureWithCursor(chunkRows, Distributer.USE_DEFAULT_TIMEOUT, TimeUnit.SECONDS, procName, parameters);
+    }
+
+    /**
+     * Synchronously invoke a procedure and page through its results a chunk at a time.
+     * The timeout applies to the invocation and to each subsequent fetch of a chunk.
+     *
+     * @param chunkRows maximum number of rows to return in each chunk.
+     * @param timeout timeout for the procedure and each fetch
+     * @param unit TimeUnit of the timeout
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return A {@link ResultCursor} positioned before the first chunk.
+     * @throws org.voltdb.client.ProcCallException
+     * @throws NoConnectionsException
+     */
+    public ResultCursor callProcedureWithCursor(int chunkRows, long timeout, TimeUnit unit,
+            String procName, Object... parameters)
+            throws IOException, NoConnectionsException, ProcCallException {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("The number of rows per chunk must be positive");
+        }
+        Object cursorParameters[] = new Object[parameters.length + 2];
+        cursorParameters[0] = chunkRows;
+        cursorParameters[1] = procName;
+        System.arraycopy(parameters, 0, cursorParameters, 2, parameters.length);
+
+        // every request of the cursor has to go to the server holding its results
+        Distributer.NodeConnection cxn = m_distributer.pickConnection();
+        ClientResponse response = callProcedureOn(cxn, unit.toNanos(timeout), "@OpenCursor", cursorParameters);
+        return new ResultCursor(this, cxn, unit.toNanos(timeout), response);
+    }
+
+    /**
+     * Synchronously invoke a procedure on a specific connection, used to fetch and close cursors.
+     */
+    ClientResponse callProcedureOn(Distributer.NodeConnection cxn, long timeoutNanos,
+            String procName, Object... parameters)
+            throws IOException, NoConnectionsException, ProcCallException {
+        final SyncCallback cb = new SyncCallback();
+        cb.setArgs(parameters);
+        final ProcedureInvocation invocation
+                = new ProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
+        return callProcedure(cb, System.nanoTime(), timeoutNanos, invocation, cxn);
+    }
+
     /**
      * The synchronous procedure call method for DR replication
      */
@@ -238,6 +328,16 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
 
     private final ClientResponse callProcedure(SyncCallback cb, long nowNanos, long timeout, ProcedureInvocation invocation)
             throws IOException, NoConnectionsException, ProcCallException
+    {
+        return callProcedure(cb, nowNanos, timeout, invocation, null);
+    }
+
+    /**
+     * @param cxn The connection to send the invocation on, or null to let the distributer pick one.
+     */
+    private final ClientResponse callProcedure(SyncCallback cb, long nowNanos, long timeout,
+            ProcedureInvocation invocation, Distributer.NodeConnection cxn)
+            throws IOException, NoConnectionsException, ProcCallException
     {
         if (m_isShutdown) {
             throw new NoConnectionsException("Client instance is shutdown");
@@ -248,10 +348,14 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                     " without deadlocking the client library");
         }
 
-        m_distributer.queue(
-                invocation,
-                cb,
-                true, nowNanos, timeout);
+        if (cxn == null) {
+            m_distributer.queue(
+                    invocation,
+                    cb,
+                    true, nowNanos, timeout);
+        } else {
+            m_distributer.queue(cxn, invocation, cb, nowNanos, timeout);
+        }
 
         try {
             cb.waitForResponse();
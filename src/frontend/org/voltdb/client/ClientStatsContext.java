@@ -45,13 +45,16 @@ public class ClientStatsContext {
     Map<Long, ClientIOStats> m_currentIO;
     Map<Integer, ClientAffinityStats> m_baselineAffinity;
     Map<Integer, ClientAffinityStats> m_currentAffinity;
+    Map<Long, Long> m_baselineRouting;
+    Map<Long, Long> m_currentRouting;
     long m_baselineTS;
     long m_currentTS;
 
     ClientStatsContext(Distributer distributor,
                        Map<Long, Map<String, ClientStats>> current,
                        Map<Long, ClientIOStats> currentIO,
-                       Map<Integer, ClientAffinityStats> currentAffinity)
+                       Map<Integer, ClientAffinityStats> currentAffinity,
+                       Map<Long, Long> currentRouting)
     {
         m_distributor = distributor;
         m_baseline = new TreeMap<Long, Map<String, ClientStats>>();
@@ -60,6 +63,8 @@ public class ClientStatsContext {
         m_current = current;
         m_currentIO = currentIO;
         m_currentAffinity = currentAffinity;
+        m_baselineRouting = new TreeMap<Long, Long>();
+        m_currentRouting = currentRouting;
         m_baselineTS = m_currentTS = System.currentTimeMillis();
     }
 
@@ -76,6 +81,7 @@ public class ClientStatsContext {
         m_currentIO = m_distributor.getIOStatsSnapshot();
         m_currentTS = System.currentTimeMillis();
         m_currentAffinity = m_distributor.getAffinityStatsSnapshot();
+        m_currentRouting = m_distributor.getLoadAwareRoutingSnapshot();
         return this;
     }
 
@@ -89,16 +95,18 @@ public class ClientStatsContext {
     public ClientStatsContext fetchAndResetBaseline() {
         fetch();
         ClientStatsContext retval = new ClientStatsContext(m_distributor, m_current, m_currentIO,
-                m_currentAffinity);
+                m_currentAffinity, m_currentRouting);
         retval.m_baseline = m_baseline;
         retval.m_baselineIO = m_baselineIO;
         retval.m_baselineTS = m_baselineTS;
         retval.m_baselineAffinity = m_baselineAffinity;
+        retval.m_baselineRouting = m_baselineRouting;
         retval.m_currentTS = m_currentTS;
         m_baseline = m_current;
         m_baselineIO = m_currentIO;
         m_baselineTS = m_currentTS;
         m_baselineAffinity = m_currentAffinity;
+        m_baselineRouting = m_currentRouting;
         return retval;
     }
 
@@ -247,6 +255,22 @@ public class ClientStatsContext {
         return retval;
     }
 
+    /**
+     * Get the number of invocations load aware routing sent to each connection. Will only be
+     * populated if load aware routing is enabled with {@link ClientConfig#enableLoadAwareRouting()}.
+     *
+     * @return A map from connection id to the number of invocations routed to it by load.
+     */
+    public Map<Long, Long> getLoadAwareRoutingStats()
+    {
+        Map<Long, Long> retval = new TreeMap<Long, Long>();
+        for (Entry<Long, Long> e : m_currentRouting.entrySet()) {
+            Long baseline = m_baselineRouting.get(e.getKey());
+            retval.put(e.getKey(), baseline == null ? e.getValue() : e.getValue() - baseline);
+        }
+        return retval;
+    }
+
     /**
      * Return a {@link ClientStats} instance for a specific procedure
      * name. This will be rolled up across all connections. The
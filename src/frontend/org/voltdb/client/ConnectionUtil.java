@@ -130,21 +130,38 @@ public class ConnectionUtil {
     public static Object[] getAuthenticatedConnection(String host, String username,
                                                       byte[] hashedPassword, int port,
                                                       final Subject subject) throws IOException {
+        return getAuthenticatedConnection(host, username, hashedPassword, port, subject, (byte) 0);
+    }
+
+    /**
+     * Create a connection to a Volt server and authenticate the connection,
+     * optionally asking the server for response features such as compression
+     * of large responses.
+     * @param loginVersion a combination of the Constants.LOGIN_VERSION_* bits
+     * @see #getAuthenticatedConnection(String, String, byte[], int, Subject)
+     */
+    public static Object[] getAuthenticatedConnection(String host, String username,
+                                                      byte[] hashedPassword, int port,
+                                                      final Subject subject,
+                                                      byte loginVersion) throws IOException {
         String service = subject == null ? "database" : Constants.KERBEROS;
-        return getAuthenticatedConnection(service, host, username, hashedPassword, port, subject);
+        return getAuthenticatedConnection(service, host, username, hashedPassword, port, subject,
+                                          loginVersion);
     }
 
     private static Object[] getAuthenticatedConnection(
             String service, String host,
-            String username, byte[] hashedPassword, int port, final Subject subject)
+            String username, byte[] hashedPassword, int port, final Subject subject,
+            byte loginVersion)
     throws IOException {
         InetSocketAddress address = new InetSocketAddress(host, port);
-        return getAuthenticatedConnection(service, address, username, hashedPassword, subject);
+        return getAuthenticatedConnection(service, address, username, hashedPassword, subject,
+                                          loginVersion);
     }
 
     private static Object[] getAuthenticatedConnection(
             String service, InetSocketAddress addr, String username,
-            byte[] hashedPassword, final Subject subject)
+            byte[] hashedPassword, final Subject subject, byte loginVersion)
     throws IOException {
         Object returnArray[] = new Object[3];
         boolean success = false;
@@ -181,7 +198,7 @@ public class ConnectionUtil {
 
             // serialize it
             b.putInt(requestSize - 4);                            // length prefix
-            b.put((byte) 0);                                      // version
+            b.put(loginVersion);                                  // version
             SerializationHelper.writeVarbinary(serviceBytes, b);  // data service (export|database)
             SerializationHelper.writeVarbinary(usernameBytes, b);
             b.put(hashedPassword);
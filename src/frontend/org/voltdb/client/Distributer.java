@@ -23,6 +23,7 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -77,6 +78,8 @@ class Distributer {
 
     static int RESUBSCRIPTION_DELAY_MS = Integer.getInteger("RESUBSCRIPTION_DELAY_MS", 10000);
     static final long PING_HANDLE = Long.MAX_VALUE;
+    // Load hints older than this are ignored, and idle connections are pinged for a fresh one
+    static long LOAD_HINT_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
     public static final Long ASYNC_TOPO_HANDLE = PING_HANDLE - 1;
     static final long USE_DEFAULT_TIMEOUT = 0;
 
@@ -97,8 +100,10 @@ class Distributer {
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
+    private final boolean m_compressResponses;
+    private final boolean m_loadAwareRouting;
 
-    private static final class Procedure {
+    static final class Procedure {
         final static int PARAMETER_NONE = -1;
         private final boolean multiPart;
         private final boolean readOnly;
@@ -119,6 +124,8 @@ class Distributer {
     private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
     private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
     private final Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
+    // Bumped every time m_procedureInfo is reloaded so prepared invocations know to re-resolve
+    private int m_procedureInfoGeneration = 0;
     //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
     private HashinatorLite m_hashinator = null;
     //This is a global timeout that will be used if a per-procedure timeout is not provided with the procedure call.
@@ -287,6 +294,12 @@ class Distributer {
                         c.sendPing();
                     }
 
+                    // keep the load of nodes that aren't getting any calls up to date
+                    if (m_loadAwareRouting && (!c.m_outstandingPing) &&
+                            (nowNanos - c.m_serverLoadTimeNanos > LOAD_HINT_MAX_AGE_NANOS)) {
+                        c.sendPing();
+                    }
+
                     // for each outstanding procedure
                     for (final Map.Entry<Long, CallbackBookeeping> e : c.m_callbacks.entrySet()) {
                         final long handle = e.getKey();
@@ -355,6 +368,14 @@ class Distributer {
         private volatile boolean m_isConnected = true;
 
         volatile long m_lastResponseTimeNanos = System.nanoTime();
+        // Load last reported by the server, queued site tasks plus outstanding transactions,
+        // the number of calls this client had in flight to it at the time, and when it arrived.
+        // Only written by the network thread, readers can live with a slightly torn view.
+        volatile int m_serverLoad = 0;
+        volatile int m_inFlightAtLoadHint = 0;
+        volatile long m_serverLoadTimeNanos = Long.MIN_VALUE / 2;
+        // invocations sent here by load aware routing, guarded by the distributer lock
+        long m_loadAwareRouted = 0;
         boolean m_outstandingPing = false;
         ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
 
@@ -575,7 +596,7 @@ class Distributer {
             long nowNanos = System.nanoTime();
             ClientResponseImpl response = new ClientResponseImpl();
             try {
-                response.initFromBuffer(buf);
+                response.initFromBuffer(ClientResponseImpl.decompressFrame(buf));
             } catch (IOException e1) {
                 // TODO Auto-generated catch block
                 e1.printStackTrace();
@@ -583,6 +604,12 @@ class Distributer {
 
             final long handle = response.getClientHandle();
 
+            if (response.hasLoadHint()) {
+                m_inFlightAtLoadHint = m_callbacks.size();
+                m_serverLoad = response.getSiteQueueDepth() + response.getOutstandingTxns();
+                m_serverLoadTimeNanos = nowNanos;
+            }
+
             // handle ping response and get out
             if (handle == PING_HANDLE) {
                 m_outstandingPing = false;
@@ -664,6 +691,20 @@ class Distributer {
             return m_connection.writeStream().hadBackPressure();
         }
 
+        /**
+         * Estimated load of the node. The outstanding transactions the node reported
+         * already count the calls this client had in flight at the time, so those are
+         * replaced by the calls in flight now. A hint older than LOAD_HINT_MAX_AGE_NANOS
+         * is ignored so that a node isn't avoided forever after one busy moment.
+         */
+        int getLoad(long nowNanos) {
+            final int inFlight = m_callbacks.size();
+            if (nowNanos - m_serverLoadTimeNanos > LOAD_HINT_MAX_AGE_NANOS) {
+                return inFlight;
+            }
+            return Math.max(0, m_serverLoad - m_inFlightAtLoadHint) + inFlight;
+        }
+
 
         @Override
         public void stopping(Connection c) {
@@ -851,6 +892,29 @@ class Distributer {
             long connectionResponseTimeoutMS,
             boolean useClientAffinity,
             Subject subject) {
+        this(useMultipleThreads, procedureCallTimeoutNanos, connectionResponseTimeoutMS,
+                useClientAffinity, false, subject);
+    }
+
+    Distributer(
+            boolean useMultipleThreads,
+            long procedureCallTimeoutNanos,
+            long connectionResponseTimeoutMS,
+            boolean useClientAffinity,
+            boolean compressResponses,
+            Subject subject) {
+        this(useMultipleThreads, procedureCallTimeoutNanos, connectionResponseTimeoutMS,
+                useClientAffinity, compressResponses, false, subject);
+    }
+
+    Distributer(
+            boolean useMultipleThreads,
+            long procedureCallTimeoutNanos,
+            long connectionResponseTimeoutMS,
+            boolean useClientAffinity,
+            boolean compressResponses,
+            boolean loadAwareRouting,
+            Subject subject) {
         m_useMultipleThreads = useMultipleThreads;
         m_network = new VoltNetworkPool(
                 m_useMultipleThreads ? Math.max(1, CoreUtils.availableProcessors() / 4 ) : 1,
@@ -859,12 +923,28 @@ class Distributer {
         m_procedureCallTimeoutNanos= procedureCallTimeoutNanos;
         m_connectionResponseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectionResponseTimeoutMS);
         m_useClientAffinity = useClientAffinity;
+        m_compressResponses = compressResponses;
+        m_loadAwareRouting = loadAwareRouting;
 
         // schedule the task that looks for timed-out proc calls and connections
         m_timeoutReaperHandle = m_ex.scheduleAtFixedRate(new CallExpiration(), 1, 1, TimeUnit.SECONDS);
         m_subject = subject;
     }
 
+    /**
+     * The login version bits for the optional response features this client reads
+     */
+    private byte getLoginVersion() {
+        byte loginVersion = 0;
+        if (m_compressResponses) {
+            loginVersion |= Constants.LOGIN_VERSION_COMPRESSED_RESPONSES;
+        }
+        if (m_loadAwareRouting) {
+            loginVersion |= Constants.LOGIN_VERSION_LOAD_HINTS;
+        }
+        return loginVersion;
+    }
+
     void createConnection(String host, String program, String password, int port)
     throws UnknownHostException, IOException
     {
@@ -876,7 +956,8 @@ class Distributer {
     throws UnknownHostException, IOException
     {
         final Object socketChannelAndInstanceIdAndBuildString[] =
-            ConnectionUtil.getAuthenticatedConnection(host, program, hashedPassword, port, m_subject);
+            ConnectionUtil.getAuthenticatedConnection(host, program, hashedPassword, port, m_subject,
+                                                      getLoginVersion());
         InetSocketAddress address = new InetSocketAddress(host, port);
         final SocketChannel aChannel = (SocketChannel)socketChannelAndInstanceIdAndBuildString[0];
         final long instanceIdWhichIsTimestampAndLeaderIp[] = (long[])socketChannelAndInstanceIdAndBuildString[1];
@@ -1008,6 +1089,7 @@ class Distributer {
 
         NodeConnection cxn = null;
         boolean backpressure = true;
+        boolean loadAware = false;
 
         /*
          * Synchronization is necessary to ensure that m_connections is not modified
@@ -1026,7 +1108,7 @@ class Distributer {
              * affinity and known topology (hashinator initialized).
              */
             if (m_useClientAffinity && (m_hashinator != null)) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+                final Procedure procedureInfo = getProcedureInfo(invocation);
                 Integer hashedPartition = -1;
 
                 if (procedureInfo != null) {
@@ -1045,20 +1127,34 @@ class Distributer {
                     if (!procedureInfo.multiPart && procedureInfo.readOnly) {
                         NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
                         if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
+                            if (m_loadAwareRouting) {
+                                cxn = leastLoaded(Arrays.asList(partitionReplicas));
+                                loadAware = true;
+                            } else {
+                                cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                                if (cxn.hadBackPressure()) {
+                                    //See if there is one without backpressure, make sure it's still connected
+                                    for (NodeConnection nc : partitionReplicas) {
+                                        if (!nc.hadBackPressure() && nc.m_isConnected) {
+                                            cxn = nc;
+                                            break;
+                                        }
                                     }
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                            if (cxn != null && (!cxn.hadBackPressure() || ignoreBackpressure)) {
                                 backpressure = false;
                             }
                         }
+                    } else if (procedureInfo.multiPart && m_loadAwareRouting) {
+                        /*
+                         * Any node can coordinate a multi-partition transaction, use the least loaded one
+                         */
+                        cxn = leastLoaded(m_connections);
+                        loadAware = true;
+                        if (cxn != null && (!cxn.hadBackPressure() || ignoreBackpressure)) {
+                            backpressure = false;
+                        }
                     } else {
                         /*
                          * Writes have to go to the master
@@ -1100,12 +1196,20 @@ class Distributer {
                 }
             }
             if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
+                if (m_loadAwareRouting) {
+                    cxn = leastLoaded(m_connections);
+                    loadAware = true;
+                    if (cxn != null && (!cxn.hadBackPressure() || ignoreBackpressure)) {
                         backpressure = false;
-                        break;
+                    }
+                } else {
+                    for (int i=0; i < totalConnections; ++i) {
+                        cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                            // serialize and queue the invocation
+                            backpressure = false;
+                            break;
+                        }
                     }
                 }
             }
@@ -1115,6 +1219,8 @@ class Distributer {
                 for (ClientStatusListenerExt s : m_listeners) {
                     s.backpressure(true);
                 }
+            } else if (loadAware) {
+                cxn.m_loadAwareRouted++;
             }
         }
 
@@ -1135,6 +1241,74 @@ class Distributer {
         return !backpressure;
     }
 
+    /**
+     * Pick the connected node with the lowest estimated load, preferring nodes without
+     * backpressure. The scan starts at a rotating offset so that equally loaded nodes
+     * take turns. Must be called while holding the distributer lock.
+     * @return the chosen connection or null if none of the candidates are connected.
+     */
+    private NodeConnection leastLoaded(List<NodeConnection> candidates) {
+        NodeConnection best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        boolean bestHadBackPressure = true;
+        final int count = candidates.size();
+        final int start = Math.abs(++m_nextConnection % count);
+        final long nowNanos = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            final NodeConnection nc = candidates.get((start + i) % count);
+            if (!nc.m_isConnected) {
+                continue;
+            }
+            final boolean hadBackPressure = nc.hadBackPressure();
+            final int load = nc.getLoad(nowNanos);
+            if (best == null ||
+                    (bestHadBackPressure && !hadBackPressure) ||
+                    (bestHadBackPressure == hadBackPressure && load < bestLoad)) {
+                best = nc;
+                bestLoad = load;
+                bestHadBackPressure = hadBackPressure;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pick a connection round robin for a conversation, such as paging through a result cursor,
+     * where every request has to go to the server that holds the state for it.
+     */
+    NodeConnection pickConnection() throws NoConnectionsException {
+        synchronized (this) {
+            final int totalConnections = m_connections.size();
+            if (totalConnections == 0) {
+                throw new NoConnectionsException("No connections.");
+            }
+            return m_connections.get(Math.abs(++m_nextConnection % totalConnections));
+        }
+    }
+
+    /**
+     * Queue an invocation on a specific connection picked with {@link #pickConnection()}.
+     * Backpressure is ignored since the caller waits for the response anyway.
+     */
+    void queue(NodeConnection cxn,
+            ProcedureInvocation invocation,
+            ProcedureCallback cb,
+            final long nowNanos, final long timeoutNanos)
+            throws NoConnectionsException {
+        assert(invocation != null);
+        assert(cb != null);
+        if (!cxn.m_isConnected) {
+            throw new NoConnectionsException("Connection to " + cxn.getSocketAddress() + " was lost.");
+        }
+        ByteBuffer buf = null;
+        try {
+            buf = serializeSPI(invocation);
+        } catch (Exception e) {
+            Throwables.propagate(e);
+        }
+        cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, true, timeoutNanos);
+    }
+
     /**
      * Shutdown the VoltNetwork allowing the Ports to close and free resources
      * like memory pools
@@ -1179,7 +1353,7 @@ class Distributer {
 
     ClientStatsContext createStatsContext() {
         return new ClientStatsContext(this, getStatsSnapshot(), getIOStatsSnapshot(),
-                getAffinityStatsSnapshot());
+                getAffinityStatsSnapshot(), getLoadAwareRoutingSnapshot());
     }
 
     Map<Long, Map<String, ClientStats>> getStatsSnapshot() {
@@ -1234,6 +1408,18 @@ class Distributer {
         return retval;
     }
 
+    Map<Long, Long> getLoadAwareRoutingSnapshot()
+    {
+        Map<Long, Long> retval = new TreeMap<Long, Long>();
+        // these get modified under this lock in queue()
+        synchronized(this) {
+            for (NodeConnection conn : m_connections) {
+                retval.put(conn.connectionId(), conn.m_loadAwareRouted);
+            }
+        }
+        return retval;
+    }
+
     public synchronized Object[] getInstanceId() {
         return m_clusterInstanceId;
     }
@@ -1310,8 +1496,26 @@ class Distributer {
         }
     }
 
+    /**
+     * Look up the partitioning info for an invocation. Prepared invocations keep the
+     * last resolved info and only go back to the map after the procedures are reloaded.
+     * Must be called while holding the distributer lock.
+     */
+    private Procedure getProcedureInfo(ProcedureInvocation invocation) {
+        final PreparedInvocation prepared = invocation.getPrepared();
+        if (prepared == null) {
+            return m_procedureInfo.get(invocation.getProcName());
+        }
+        if (prepared.m_procedureInfoGeneration != m_procedureInfoGeneration) {
+            prepared.m_procedureInfo = m_procedureInfo.get(prepared.getProcName());
+            prepared.m_procedureInfoGeneration = m_procedureInfoGeneration;
+        }
+        return prepared.m_procedureInfo;
+    }
+
     private void updateProcedurePartitioning(VoltTable vt) {
         m_procedureInfo.clear();
+        m_procedureInfoGeneration++;
         while (vt.advanceRow()) {
             try {
                 //Data embedded in JSON object in remarks column
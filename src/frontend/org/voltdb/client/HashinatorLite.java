@@ -232,8 +232,7 @@ public class HashinatorLite {
         }
 
         if (m_type.equals(HashinatorLiteType.ELASTIC)) {
-            ByteBuffer buf = ByteBuffer.wrap(bytes);
-            final int hash = MurmurHash3.hash3_x64_128(buf, 0, bytes.length, 0);
+            final int hash = MurmurHash3.hash3_x64_128(bytes, 0, bytes.length, 0);
             long token = getTokenPtr(hash);
             return Bits.unsafe.getInt(token + 4);
         } else {
@@ -271,6 +270,22 @@ public class HashinatorLite {
      */
     int hashToPartition(VoltType type, Object obj) {
         if (m_type.equals(HashinatorLiteType.ELASTIC)) {
+            // Same hashes as valueToBytes(obj) would give, without allocating the bytes
+            if (VoltType.isNullVoltType(obj)) {
+                return 0;
+            } else if (obj instanceof Long) {
+                return partitionForToken(MurmurHash3.hash3_x64_128(((Long) obj).longValue()));
+            } else if (obj instanceof String) {
+                return partitionForToken(MurmurHash3.hash3_x64_128((String) obj, 0));
+            } else if (obj instanceof Integer) {
+                return partitionForToken(MurmurHash3.hash3_x64_128(((Integer) obj).intValue()));
+            } else if (obj instanceof byte[]) {
+                return hashinateBytes((byte[]) obj);
+            } else if (obj instanceof Short) {
+                return partitionForToken(MurmurHash3.hash3_x64_128(((Short) obj).shortValue()));
+            } else if (obj instanceof Byte) {
+                return partitionForToken(MurmurHash3.hash3_x64_128(((Byte) obj).byteValue()));
+            }
             return hashinateBytes(valueToBytes(obj));
         }
         // Annoying, legacy hashes numbers and bytes differently, need to preserve that.
@@ -0,0 +1,97 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * <p>A handle for repeatedly invoking one procedure through a {@link Client}. It is
+ * obtained once with {@link Client#prepareInvocation(String)} and encodes the
+ * procedure name up front. With client affinity enabled it also remembers the
+ * partitioning info (partition parameter index and type) resolved for the procedure,
+ * so each call only has to supply and serialize the parameter values.</p>
+ *
+ * <p>The cached partitioning info is refreshed automatically when the client
+ * reloads procedure info from the cluster. Instances are safe to share between threads.</p>
+ */
+public class PreparedInvocation {
+
+    private final ClientImpl m_client;
+    private final String m_procName;
+    private final byte m_procNameBytes[];
+
+    // Routing cached by the distributer, only accessed while holding its lock
+    Distributer.Procedure m_procedureInfo = null;
+    int m_procedureInfoGeneration = -1;
+
+    PreparedInvocation(ClientImpl client, String procName) {
+        if (procName == null || procName.isEmpty()) {
+            throw new IllegalArgumentException("Procedure name can't be null or empty");
+        }
+        m_client = client;
+        m_procName = procName;
+        try {
+            m_procNameBytes = procName.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the name of the procedure this invocation calls.
+     */
+    public String getProcName() {
+        return m_procName;
+    }
+
+    byte[] getProcNameBytes() {
+        return m_procNameBytes;
+    }
+
+    /**
+     * <p>Synchronously invoke the procedure. Blocks until a result is available. A {@link ProcCallException}
+     * is thrown if the response is anything other then success.</p>
+     *
+     * @param parameters vararg list of procedure's parameter values.
+     * @return {@link ClientResponse} instance of procedure call results.
+     * @throws ProcCallException on any VoltDB specific failure.
+     * @throws NoConnectionsException if the {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public ClientResponse callProcedure(Object... parameters)
+    throws IOException, NoConnectionsException, ProcCallException {
+        return m_client.callPrepared(this, parameters);
+    }
+
+    /**
+     * <p>Asynchronously invoke the procedure. Does not guarantee that the invocation is actually queued. If there
+     * is backpressure on all connections to the cluster then the invocation will not be queued. Check the return value
+     * to determine if queuing actually took place.</p>
+     *
+     * @param callback {@link ProcedureCallback} that will be invoked with procedure results.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return <code>true</code> if the procedure was queued and <code>false</code> otherwise.
+     * @throws NoConnectionsException if the {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public boolean callProcedure(ProcedureCallback callback, Object... parameters)
+    throws IOException, NoConnectionsException {
+        return m_client.callPrepared(callback, this, parameters);
+    }
+}
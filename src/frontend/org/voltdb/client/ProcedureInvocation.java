@@ -39,13 +39,27 @@ public class ProcedureInvocation {
     private final long m_originalUniqueId;
     private final ProcedureInvocationType m_type;
 
+    // set when invoked through a PreparedInvocation that caches the name and routing
+    private final PreparedInvocation m_prepared;
+
     public ProcedureInvocation(long handle, String procName, Object... parameters) {
         this(-1, -1, handle, procName, parameters);
     }
 
+    ProcedureInvocation(long handle, PreparedInvocation prepared, Object... parameters) {
+        this(-1, -1, handle, prepared.getProcName(), prepared, parameters);
+        m_procNameBytes = prepared.getProcNameBytes();
+    }
+
     ProcedureInvocation(long originalTxnId, long originalUniqueId, long handle,
                         String procName, Object... parameters) {
+        this(originalTxnId, originalUniqueId, handle, procName, null, parameters);
+    }
+
+    private ProcedureInvocation(long originalTxnId, long originalUniqueId, long handle,
+                        String procName, PreparedInvocation prepared, Object... parameters) {
         super();
+        m_prepared = prepared;
         m_originalTxnId = originalTxnId;
         m_originalUniqueId = originalUniqueId;
         m_clientHandle = handle;
@@ -71,10 +85,17 @@ public class ProcedureInvocation {
         return m_procName;
     }
 
+    /** return the prepared invocation this was created from, or null */
+    PreparedInvocation getPrepared() {
+        return m_prepared;
+    }
+
     public int getSerializedSize() {
-        try {
-            m_procNameBytes = m_procName.getBytes("UTF-8");
-        } catch (Exception e) {/*No UTF-8? Really?*/}
+        if (m_procNameBytes == null) {
+            try {
+                m_procNameBytes = m_procName.getBytes("UTF-8");
+            } catch (Exception e) {/*No UTF-8? Really?*/}
+        }
         int size =
             1 + (m_type == ProcedureInvocationType.REPLICATED ? 16 : 0) +
             m_procNameBytes.length + 4 + 8 + m_parameters.getSerializedSize();
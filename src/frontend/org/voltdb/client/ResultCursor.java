@@ -0,0 +1,156 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+
+/**
+ * <p>Iterates over the results of a procedure invoked with
+ * {@link Client#callProcedureWithCursor(int, String, Object...)} one chunk at a time.
+ * Each chunk is a {@link VoltTable} holding consecutive rows of one of the result tables of the
+ * procedure, {@link #getTableIndex()} tells which. Chunks beyond the first response are fetched
+ * from the server on demand, so only a chunk's worth of rows has to be held by the client.</p>
+ *
+ * <p>A cursor that isn't iterated to the end should be closed to release the results held by
+ * the server. Failures to fetch a chunk are reported as unchecked exceptions from
+ * {@link #hasNext()} with the {@link ProcCallException} or {@link IOException} as the cause.</p>
+ */
+public final class ResultCursor implements Iterator<VoltTable>, Closeable {
+
+    private static final long NO_CURSOR = -1;
+
+    private final ClientImpl m_client;
+    private final Distributer.NodeConnection m_connection;
+    private final long m_timeoutNanos;
+    private final ClientResponse m_response;
+
+    private final ArrayDeque<VoltTable> m_chunks = new ArrayDeque<VoltTable>();
+    private long m_cursorId = NO_CURSOR;
+    private int m_nextTableIndex = 0;
+    private int m_tableIndex = -1;
+
+    ResultCursor(ClientImpl client, Distributer.NodeConnection connection, long timeoutNanos,
+            ClientResponse response) {
+        m_client = client;
+        m_connection = connection;
+        m_timeoutNanos = timeoutNanos;
+        m_response = response;
+        addChunks(response);
+    }
+
+    /**
+     * Responses to cursor requests start with a descriptor table naming the cursor and the
+     * result table of the first chunk, and are flagged as such. Responses the server answered
+     * directly, without running a transaction, don't carry one and are returned as a single chunk.
+     */
+    private void addChunks(ClientResponse response) {
+        VoltTable results[] = response.getResults();
+        int first = 0;
+        if (response instanceof ClientResponseImpl &&
+                ((ClientResponseImpl)response).hasCursorDescriptor()) {
+            m_cursorId = results[0].fetchRow(0).getLong(0);
+            m_nextTableIndex = (int)results[0].fetchRow(0).getLong(1);
+            first = 1;
+        } else {
+            m_cursorId = NO_CURSOR;
+            m_nextTableIndex = 0;
+        }
+        for (int i = first; i < results.length; i++) {
+            m_chunks.add(results[i]);
+        }
+    }
+
+    /**
+     * @return The response to the invocation that opened the cursor, for its status and
+     * application status. Its results hold only the first chunk and should not be used.
+     */
+    public ClientResponse getClientResponse() {
+        return m_response;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (m_chunks.isEmpty() && m_cursorId != NO_CURSOR) {
+            try {
+                addChunks(m_client.callProcedureOn(m_connection, m_timeoutNanos, "@FetchCursor", m_cursorId));
+            } catch (ProcCallException e) {
+                m_cursorId = NO_CURSOR;
+                throw new RuntimeException("Failed to fetch the next chunk of results: " + e.getMessage(), e);
+            } catch (IOException e) {
+                m_cursorId = NO_CURSOR;
+                throw new RuntimeException("Failed to fetch the next chunk of results", e);
+            }
+        }
+        return !m_chunks.isEmpty();
+    }
+
+    @Override
+    public VoltTable next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        m_tableIndex = m_nextTableIndex++;
+        return m_chunks.poll();
+    }
+
+    /**
+     * @return The index among the procedure results of the table the chunk last returned by
+     * {@link #next()} belongs to.
+     */
+    public int getTableIndex() {
+        return m_tableIndex;
+    }
+
+    /**
+     * @return The index of the result table the next chunk belongs to, fetching it if
+     * necessary, or -1 if the results are exhausted.
+     */
+    public int peekTableIndex() {
+        return hasNext() ? m_nextTableIndex : -1;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Release the results still held by the server. Closing an exhausted cursor is a no-op.
+     */
+    @Override
+    public void close() throws IOException {
+        m_chunks.clear();
+        if (m_cursorId == NO_CURSOR) {
+            return;
+        }
+        long cursorId = m_cursorId;
+        m_cursorId = NO_CURSOR;
+        try {
+            m_client.callProcedureOn(m_connection, m_timeoutNanos, "@CloseCursor", cursorId);
+        } catch (ProcCallException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -38,6 +38,12 @@ public class Constants
 
     public static final String KERBEROS = "kerberos";
 
+    // bits of the login message version for optional response features the client can read
+    public static final byte LOGIN_VERSION_COMPRESSED_RESPONSES = 1;
+    public static final byte LOGIN_VERSION_LOAD_HINTS = 2;
+    // version byte that starts a compressed response instead of the response version
+    public static final byte COMPRESSED_RESPONSE_VERSION = (byte) 0x80;
+
     // reasons a connection can fail
     public static final byte AUTHENTICATION_FAILURE = -1;
     public static final byte MAX_CONNECTIONS_LIMIT_ERROR = 1;
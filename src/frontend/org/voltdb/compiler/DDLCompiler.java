@@ -42,6 +42,7 @@ import org.hsqldb_voltpatches.VoltXMLElement;
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONStringer;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.Pair;
 import org.voltdb.VoltType;
 import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Column;
@@ -51,6 +52,7 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Group;
 import org.voltdb.catalog.Index;
 import org.voltdb.catalog.MaterializedViewInfo;
+import org.voltdb.catalog.MaterializedViewJoin;
 import org.voltdb.catalog.Table;
 import org.voltdb.compiler.ClassMatcher.ClassNameMatchStatus;
 import org.voltdb.compiler.VoltCompiler.DdlProceduresToLoad;
@@ -58,7 +60,10 @@ import org.voltdb.compiler.VoltCompiler.ProcedureDescriptor;
 import org.voltdb.compiler.VoltCompiler.VoltCompilerException;
 import org.voltdb.compilereport.TableAnnotation;
 import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.AggregateExpression;
+import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.FunctionExpression;
+import org.voltdb.expressions.ParameterValueExpression;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.groovy.GroovyCodeBlockCompiler;
 import org.voltdb.planner.AbstractParsedStmt;
@@ -1559,6 +1564,11 @@ public class DDLCompiler {
             return false;
         }
 
+        // Partial indexes over different subsets of the rows are not interchangeable.
+        if ( ! (idx1.getPredicatejson().equals(idx2.getPredicatejson()))) {
+            return false;
+        }
+
         // Simple column indexes have identical empty expression strings so need to be distinguished other ways.
         // More complex expression indexes that have the same expression strings always have the same set of (base)
         // columns referenced in the same order, but we fall through and check them, anyway.
@@ -1620,7 +1630,9 @@ public class DDLCompiler {
         dummy.setTable(table);
 
         // "parse" the expression trees for an expression-based index (vs. a simple column value index)
+        // and the WHERE clause of a partial index
         List<AbstractExpression> exprs = null;
+        AbstractExpression predicate = null;
         for (VoltXMLElement subNode : node.children) {
             if (subNode.name.equals("exprs")) {
                 exprs = new ArrayList<AbstractExpression>();
@@ -1637,6 +1649,26 @@ public class DDLCompiler {
                     exprs.add(expr);
                 }
             }
+            else if (subNode.name.equals("predicate")) {
+                assert(subNode.children.size() == 1);
+                predicate = dummy.parseExpressionTree(subNode.children.get(0));
+
+                // The rows covered by a partial index must not depend on when or how they are examined.
+                if (containsTimeSensitiveFunction(predicate, FunctionSQL.voltGetCurrentTimestampId()) ) {
+                    String msg = String.format("Partial index %s cannot include the function NOW or CURRENT_TIMESTAMP " +
+                                               "in its WHERE clause.", name);
+                    throw this.m_compiler.new VoltCompilerException(msg);
+                }
+                if (predicate.hasAnySubexpressionOfClass(AggregateExpression.class) ||
+                        predicate.hasAnySubexpressionOfClass(ParameterValueExpression.class)) {
+                    String msg = String.format("Partial index %s can not use aggregate functions or parameters " +
+                                               "in its WHERE clause.", name);
+                    throw this.m_compiler.new VoltCompilerException(msg);
+                }
+
+                predicate.resolveForTable(table);
+                predicate.finalizeValueTypes();
+            }
         }
 
         String colList = node.attributes.get("columns");
@@ -1732,6 +1764,19 @@ public class DDLCompiler {
             }
         }
 
+        if (predicate != null) {
+            try {
+                JSONStringer stringer = new JSONStringer();
+                stringer.object();
+                predicate.toJSONString(stringer);
+                stringer.endObject();
+                index.setPredicatejson(stringer.toString());
+            } catch (JSONException e) {
+                throw m_compiler.new VoltCompilerException("Unexpected error serializing the WHERE clause for index '" +
+                                                           name + "' on type '" + table.getTypeName() + "': " + e.toString());
+            }
+        }
+
         index.setUnique(unique);
         if (assumeUnique) {
             index.setUnique(true);
@@ -1928,15 +1973,32 @@ public class DDLCompiler {
 
             // create the materializedviewinfo catalog node for the source table
             Table srcTable = stmt.m_tableList.get(0);
-            if (viewTableNames.contains(srcTable.getTypeName())) {
-                String msg = String.format("A materialized view (%s) can not be defined on another view (%s).",
-                        viewName, srcTable.getTypeName());
-                throw m_compiler.new VoltCompilerException(msg);
+            for (Table table : stmt.m_tableList) {
+                if (viewTableNames.contains(table.getTypeName())) {
+                    String msg = String.format("A materialized view (%s) can not be defined on another view (%s).",
+                            viewName, table.getTypeName());
+                    throw m_compiler.new VoltCompilerException(msg);
+                }
+            }
+
+            // A join view is maintained on the source table, the first one in the FROM clause.
+            // Its expressions are evaluated on rows made of the source table's columns followed
+            // by those of each joined table, so their column references are re-indexed to match.
+            boolean isJoinView = stmt.m_tableList.size() > 1;
+            Map<String, Integer> joinedColumnOffsets = null;
+            if (isJoinView) {
+                joinedColumnOffsets = getJoinedColumnOffsets(stmt.m_tableList);
             }
 
             MaterializedViewInfo matviewinfo = srcTable.getViews().add(viewName);
             matviewinfo.setDest(destTable);
-            AbstractExpression where = stmt.getSingleTableFilterExpression();
+            AbstractExpression where;
+            if (isJoinView) {
+                where = toJoinedRowExpression(stmt.m_joinTree.getAllInnerJoinFilters(), joinedColumnOffsets);
+                addMaterializedViewJoins(matviewinfo, stmt, where);
+            } else {
+                where = stmt.getSingleTableFilterExpression();
+            }
             if (where != null) {
                 String hex = Encoder.hexEncode(where.toJSONString());
                 matviewinfo.setPredicate(hex);
@@ -1949,10 +2011,11 @@ public class DDLCompiler {
             List<Column> destColumnArray = CatalogUtil.getSortedCatalogItems(destTable.getColumns(), "index");
             List<AbstractExpression> groupbyExprs = null;
 
-            if (stmt.hasComplexGroupby()) {
+            if (stmt.hasComplexGroupby() || isJoinView) {
                 groupbyExprs = new ArrayList<AbstractExpression>();
                 for (ParsedColInfo col: stmt.m_groupByColumns) {
-                    groupbyExprs.add(col.expression);
+                    groupbyExprs.add(isJoinView ?
+                            toJoinedRowExpression(col.expression, joinedColumnOffsets) : col.expression);
                 }
                 // Parse group by expressions to json string
                 String groupbyExprsJson = null;
@@ -2018,7 +2081,11 @@ public class DDLCompiler {
             for (int i = stmt.m_groupByColumns.size() + 1; i < stmt.m_displayColumns.size(); i++) {
                 ParsedSelectStmt.ParsedColInfo col = stmt.m_displayColumns.get(i);
                 AbstractExpression aggExpr = col.expression.getLeft();
-                if (aggExpr.getExpressionType() != ExpressionType.VALUE_TUPLE) {
+                if (isJoinView) {
+                    aggExpr = toJoinedRowExpression(aggExpr, joinedColumnOffsets);
+                    hasAggregationExprs = true;
+                }
+                else if (aggExpr.getExpressionType() != ExpressionType.VALUE_TUPLE) {
                     hasAggregationExprs = true;
                 }
                 aggregationExprs.add(aggExpr);
@@ -2065,10 +2132,14 @@ public class DDLCompiler {
 
                 AbstractExpression colExpr = col.expression.getLeft();
                 TupleValueExpression tve = null;
+                Table colTable = srcTable;
                 if (colExpr.getExpressionType() == ExpressionType.VALUE_TUPLE) {
                     tve = (TupleValueExpression)colExpr;
+                    if (isJoinView) {
+                        colTable = getTableForColumn(stmt.m_tableList, tve);
+                    }
                 }
-                processMaterializedViewColumn(matviewinfo, srcTable, destColumn,
+                processMaterializedViewColumn(matviewinfo, colTable, destColumn,
                         col.expression.getExpressionType(), tve);
 
                 // Correctly set the type of the column so that it's consistent.
@@ -2078,6 +2149,181 @@ public class DDLCompiler {
         }
     }
 
+    /**
+     * The offset of each table's first column in the rows the EE joins together to maintain
+     * a join view: the source table's columns, then those of each joined table in FROM order.
+     */
+    private static Map<String, Integer> getJoinedColumnOffsets(List<Table> tables) {
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        int offset = 0;
+        for (Table table : tables) {
+            offsets.put(table.getTypeName(), offset);
+            offset += table.getColumns().size();
+        }
+        return offsets;
+    }
+
+    private static Table getTableForColumn(List<Table> tables, TupleValueExpression tve) {
+        for (Table table : tables) {
+            if (table.getTypeName().equalsIgnoreCase(tve.getTableName())) {
+                return table;
+            }
+        }
+        assert(false);
+        return null;
+    }
+
+    /**
+     * Copy an expression of a join view, re-indexing its column references
+     * into the joined rows described by getJoinedColumnOffsets.
+     */
+    private static AbstractExpression toJoinedRowExpression(AbstractExpression expr,
+                                                            Map<String, Integer> joinedColumnOffsets) {
+        if (expr == null) {
+            return null;
+        }
+        AbstractExpression copy = (AbstractExpression) expr.clone();
+        for (AbstractExpression subExpr : copy.findAllSubexpressionsOfClass(TupleValueExpression.class)) {
+            TupleValueExpression tve = (TupleValueExpression) subExpr;
+            Integer offset = joinedColumnOffsets.get(tve.getTableName().toUpperCase());
+            assert(offset != null);
+            tve.setColumnIndex(offset + tve.getColumnIndex());
+        }
+        return copy;
+    }
+
+    /**
+     * Record the tables a view joins to its source table. For each one, look for an index
+     * whose columns are all equated by the view's filters to expressions over the tables
+     * before it in the join order, so that the EE can find the matching rows with a key
+     * lookup instead of a scan. Also require an index on the source table whose columns are
+     * all equated to expressions over the joined table alone, which the EE uses to find the
+     * source rows a changed row of the joined table joins with. Without it every change to
+     * the joined table would scan the whole source table partition.
+     */
+    private void addMaterializedViewJoins(MaterializedViewInfo matviewinfo,
+                                                 ParsedSelectStmt stmt,
+                                                 AbstractExpression joinedWhere)
+            throws VoltCompilerException {
+        List<Table> tables = stmt.m_tableList;
+        Table srcTable = tables.get(0);
+        Map<String, Integer> offsets = getJoinedColumnOffsets(tables);
+        List<AbstractExpression> filters = ExpressionUtil.uncombine(joinedWhere);
+        for (int joinIndex = 1; joinIndex < tables.size(); joinIndex++) {
+            Table joinTable = tables.get(joinIndex);
+            int first = offsets.get(joinTable.getTypeName());
+            int end = first + joinTable.getColumns().size();
+
+            MaterializedViewJoin join = matviewinfo.getJoins().add(joinTable.getTypeName());
+            join.setIndex(joinIndex);
+            join.setTable(joinTable);
+
+            Pair<Index, List<AbstractExpression>> lookup =
+                    findJoinKeyIndex(joinTable, getJoinKeyCandidates(filters, first, end, 0, first));
+            if (lookup != null) {
+                join.setLookupindex(lookup.getFirst().getTypeName());
+                join.setLookupkeysjson(joinKeysToJSON(matviewinfo, lookup.getSecond()));
+            } else {
+                join.setLookupindex("");
+                join.setLookupkeysjson("");
+            }
+
+            Pair<Index, List<AbstractExpression>> probe = findJoinKeyIndex(srcTable,
+                    getJoinKeyCandidates(filters, 0, srcTable.getColumns().size(), first, end));
+            if (probe == null) {
+                String msg = String.format("Materialized view \"%s\" joins table %s to its source table %s, " +
+                        "but no index on %s has all of its columns equated to columns of %s by the view's " +
+                        "join conditions. Every change to %s would have to scan %s. Create such an index on %s.",
+                        matviewinfo.getTypeName(), joinTable.getTypeName(), srcTable.getTypeName(),
+                        srcTable.getTypeName(), joinTable.getTypeName(), joinTable.getTypeName(),
+                        srcTable.getTypeName(), srcTable.getTypeName());
+                throw m_compiler.new VoltCompilerException(msg);
+            }
+            join.setSourceindex(probe.getFirst().getTypeName());
+            join.setSourcekeysjson(joinKeysToJSON(matviewinfo, probe.getSecond()));
+        }
+    }
+
+    /**
+     * For each column of the joined row in [first, end), an expression it is equated to by one
+     * of the view's filters that only refers to columns of the joined row in [otherFirst, otherEnd).
+     * The map is keyed by the column's index in its own table.
+     */
+    private static Map<Integer, AbstractExpression> getJoinKeyCandidates(List<AbstractExpression> filters,
+            int first, int end, int otherFirst, int otherEnd) {
+        Map<Integer, AbstractExpression> keyCandidates = new HashMap<Integer, AbstractExpression>();
+        for (AbstractExpression filter : filters) {
+            if (filter.getExpressionType() != ExpressionType.COMPARE_EQUAL) {
+                continue;
+            }
+            AbstractExpression[] sides = { filter.getLeft(), filter.getRight() };
+            for (int side = 0; side < 2; side++) {
+                if ( ! (sides[side] instanceof TupleValueExpression)) {
+                    continue;
+                }
+                int colIndex = ((TupleValueExpression) sides[side]).getColumnIndex();
+                AbstractExpression other = sides[1 - side];
+                if (colIndex < first || colIndex >= end || keyCandidates.containsKey(colIndex - first)) {
+                    continue;
+                }
+                boolean onlyOtherColumns = true;
+                for (AbstractExpression otherTve : other.findAllSubexpressionsOfClass(TupleValueExpression.class)) {
+                    int otherIndex = ((TupleValueExpression) otherTve).getColumnIndex();
+                    if (otherIndex < otherFirst || otherIndex >= otherEnd) {
+                        onlyOtherColumns = false;
+                        break;
+                    }
+                }
+                if (onlyOtherColumns && ! other.hasAnySubexpressionOfClass(AggregateExpression.class)) {
+                    keyCandidates.put(colIndex - first, other);
+                }
+            }
+        }
+        return keyCandidates;
+    }
+
+    /**
+     * The index on the table with the most key columns, all of which must be covered by key
+     * candidates of exactly the indexed column's type, and its key expressions. Null if none.
+     */
+    private static Pair<Index, List<AbstractExpression>> findJoinKeyIndex(Table table,
+            Map<Integer, AbstractExpression> keyCandidates) {
+        Index bestIndex = null;
+        List<AbstractExpression> bestKeys = null;
+        for (Index index : table.getIndexes()) {
+            // A partial index can not find the rows that fall outside its WHERE clause.
+            if ( ! index.getExpressionsjson().isEmpty() || ! index.getPredicatejson().isEmpty()) {
+                continue;
+            }
+            List<AbstractExpression> keys = new ArrayList<AbstractExpression>();
+            for (ColumnRef colRef : CatalogUtil.getSortedCatalogItems(index.getColumns(), "index")) {
+                Column column = colRef.getColumn();
+                AbstractExpression key = keyCandidates.get(column.getIndex());
+                if (key == null || key.getValueType() != VoltType.get((byte) column.getType())) {
+                    keys = null;
+                    break;
+                }
+                keys.add(key);
+            }
+            if (keys != null && ! keys.isEmpty() &&
+                    (bestKeys == null || keys.size() > bestKeys.size())) {
+                bestIndex = index;
+                bestKeys = keys;
+            }
+        }
+        return bestIndex == null ? null : Pair.of(bestIndex, bestKeys);
+    }
+
+    private String joinKeysToJSON(MaterializedViewInfo matviewinfo, List<AbstractExpression> keys)
+            throws VoltCompilerException {
+        try {
+            return convertToJSONArray(keys);
+        } catch (JSONException e) {
+            throw m_compiler.new VoltCompilerException("Unexpected error serializing the join keys " +
+                    "of materialized view " + matviewinfo.getTypeName() + ": " + e.toString());
+        }
+    }
+
     // if the materialized view has MIN / MAX, try to find an index defined on the source table
     // covering all group by cols / exprs to avoid expensive tablescan.
     // For now, the only acceptable index is defined exactly on the group by columns IN ORDER.
@@ -2095,6 +2341,10 @@ public class DDLCompiler {
         // Match based on one of two algorithms depending on whether expressions are all simple columns.
         if (groupbyExprs == null) {
             for (Index index : allIndexes) {
+                // A partial index may be missing some of the rows of a group.
+                if ( ! index.getPredicatejson().isEmpty()) {
+                    continue;
+                }
                 String expressionjson = index.getExpressionsjson();
                 if ( ! expressionjson.isEmpty()) {
                     continue;
@@ -2122,6 +2372,9 @@ public class DDLCompiler {
             }
         } else {
             for (Index index : allIndexes) {
+                if ( ! index.getPredicatejson().isEmpty()) {
+                    continue;
+                }
                 String expressionjson = index.getExpressionsjson();
                 if (expressionjson.isEmpty()) {
                     continue;
@@ -2168,10 +2421,21 @@ public class DDLCompiler {
         int displayColCount = stmt.m_displayColumns.size();
         String msg = "Materialized view \"" + viewName + "\" ";
 
-        if (stmt.m_tableList.size() != 1) {
-            msg += "has " + String.valueOf(stmt.m_tableList.size()) + " sources. " +
-            "Only one source view or source table is allowed.";
-            throw m_compiler.new VoltCompilerException(msg);
+        // A view may join other tables to its source table, the first one in the FROM clause,
+        // as long as they are replicated (checked once partitioning is known) and inner-joined.
+        boolean isJoinView = stmt.m_tableList.size() > 1;
+        if (isJoinView) {
+            Set<String> tableNames = new HashSet<String>();
+            for (Table table : stmt.m_tableList) {
+                if ( ! tableNames.add(table.getTypeName())) {
+                    msg += "joins table " + table.getTypeName() + " to itself, which is not supported.";
+                    throw m_compiler.new VoltCompilerException(msg);
+                }
+            }
+            if (stmt.m_joinTree.hasOuterJoin()) {
+                msg += "uses an outer join. Only inner joins are allowed.";
+                throw m_compiler.new VoltCompilerException(msg);
+            }
         }
 
         if (stmt.orderByColumns().size() != 0) {
@@ -2213,11 +2477,18 @@ public class DDLCompiler {
                 msg += "must have non-group by columns aggregated by sum, count, min or max.";
                 throw m_compiler.new VoltCompilerException(msg);
             }
+            if (isJoinView &&
+                    ((outcol.expression.getExpressionType() == ExpressionType.AGGREGATE_MIN) ||
+                     (outcol.expression.getExpressionType() == ExpressionType.AGGREGATE_MAX))) {
+                msg += "joins more than one table and so can not use min or max.";
+                throw m_compiler.new VoltCompilerException(msg);
+            }
             checkExpressions.add(outcol.expression);
         }
 
         // Check unsupported SQL functions like: NOW, CURRENT_TIMESTAMP
-        AbstractExpression where = stmt.getSingleTableFilterExpression();
+        AbstractExpression where = isJoinView ?
+                stmt.m_joinTree.getAllInnerJoinFilters() : stmt.getSingleTableFilterExpression();
         checkExpressions.add(where);
 
         for (AbstractExpression expr: checkExpressions) {
@@ -0,0 +1,222 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb_voltpatches.HSQLInterface;
+import org.hsqldb_voltpatches.HSQLInterface.HSQLParseException;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.planner.CompiledPlan;
+import org.voltdb.planner.StatementPartitioning;
+import org.voltdb.utils.Encoder;
+
+/**
+ * Plans the statements of a catalog's procedures ahead of the (serial) catalog
+ * build, fanning the QueryPlanner work out over a fork/join pool.
+ * <p>
+ * Each worker thread gets a private HSQL session that has replayed the same DDL
+ * as the compiler's own session. The catalog is only read while planning ahead;
+ * StatementCompiler claims each finished plan as it builds the statement's catalog
+ * entries in the usual order, so the catalog and jar come out exactly as they would
+ * from a serial compile. A statement that was not planned ahead, or that was planned
+ * ahead with different inputs, is simply planned inline.
+ */
+class ParallelStatementPlanner {
+
+    /** Number of threads to plan with; 1 (or less) plans everything inline. */
+    static int plannerThreads() {
+        return Integer.getInteger("COMPILER_PLANNER_THREADS", Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Number of statements listed in the slowest statement report. */
+    static final int SLOWEST_STATEMENTS_REPORTED = 10;
+
+    /** The outcome of planning one statement on a worker thread. */
+    static class PlannedStatement {
+        final StatementPartitioning m_partitioning;
+        final CompiledPlan m_plan;
+        final Exception m_error;
+        final long m_planNanos;
+
+        PlannedStatement(StatementPartitioning partitioning, CompiledPlan plan, Exception error, long planNanos) {
+            m_partitioning = partitioning;
+            m_plan = plan;
+            m_error = error;
+            m_planNanos = planNanos;
+        }
+
+        /**
+         * @param partitioning the caller's partitioning, which takes on the analysis done while planning
+         * @return the plan, or rethrow the planning failure exactly as inline planning would have
+         */
+        CompiledPlan adopt(StatementPartitioning partitioning) throws Exception {
+            if (m_error != null) {
+                throw m_error;
+            }
+            partitioning.adoptAnalysis(m_partitioning);
+            return m_plan;
+        }
+    }
+
+    private final ForkJoinPool m_pool;
+    private final ThreadLocal<HSQLInterface> m_hsql;
+    private final Catalog m_catalog;
+    private final Database m_db;
+    private final DatabaseEstimates m_estimates;
+    private final Map<String, ForkJoinTask<PlannedStatement>> m_tasks =
+            new HashMap<String, ForkJoinTask<PlannedStatement>>();
+
+    /**
+     * @param threads size of the planning pool
+     * @param hexEncodedDDL the DDL run on the compiler's HSQL session, one hex-encoded statement per line
+     */
+    ParallelStatementPlanner(int threads, final String hexEncodedDDL,
+            Catalog catalog, Database db, DatabaseEstimates estimates) {
+        m_pool = new ForkJoinPool(threads);
+        m_catalog = catalog;
+        m_db = db;
+        m_estimates = estimates;
+        m_hsql = new ThreadLocal<HSQLInterface>() {
+            @Override
+            protected HSQLInterface initialValue() {
+                HSQLInterface hsql = HSQLInterface.loadHsqldb();
+                for (String line : hexEncodedDDL.split("\n")) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        hsql.runDDLCommand(Encoder.hexDecodeToString(line));
+                    } catch (HSQLParseException e) {
+                        // The compiler's session accepted this DDL, so this is unexpected.
+                        // Failing the task makes StatementCompiler plan the statement inline.
+                        throw new RuntimeException(e);
+                    }
+                }
+                return hsql;
+            }
+        };
+    }
+
+    private static String key(String procName, String stmtName, String sql, String joinOrder,
+            DeterminismMode detMode, boolean singlePartition) {
+        return procName + "\u0000" + stmtName + "\u0000" + sql + "\u0000" + joinOrder + "\u0000" +
+               detMode + "\u0000" + singlePartition;
+    }
+
+    /**
+     * Start planning a statement. Only called from the compiler thread.
+     */
+    void submit(final String procName, final String stmtName, String stmt, final String joinOrder,
+            final DeterminismMode detMode, final boolean singlePartition) {
+        final String sql = StatementCompiler.catalogSqlText(stmt);
+        String key = key(procName, stmtName, sql, joinOrder, detMode, singlePartition);
+        if (m_tasks.containsKey(key)) {
+            return;
+        }
+        m_tasks.put(key, m_pool.submit(new Callable<PlannedStatement>() {
+            @Override
+            public PlannedStatement call() {
+                HSQLInterface hsql = m_hsql.get();
+                StatementPartitioning partitioning =
+                        singlePartition ? StatementPartitioning.forceSP() : StatementPartitioning.forceMP();
+                long start = System.nanoTime();
+                try {
+                    CompiledPlan plan = StatementCompiler.planStatement(hsql, m_catalog, m_db, m_estimates,
+                            sql, stmtName, procName, joinOrder, detMode, partitioning);
+                    return new PlannedStatement(partitioning, plan, null, System.nanoTime() - start);
+                } catch (Exception e) {
+                    return new PlannedStatement(partitioning, null, e, System.nanoTime() - start);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Wait for every submitted statement to be planned, so that the catalog is not
+     * read by the workers while the compiler thread goes on to modify it.
+     */
+    void awaitAll() {
+        m_pool.shutdown();
+        try {
+            while (!m_pool.awaitTermination(1, TimeUnit.SECONDS)) {}
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Take the result of planning a statement ahead, if it was planned with these inputs.
+     * @return the planned statement or null if the caller should plan it inline
+     */
+    PlannedStatement claim(String procName, String stmtName, String sql, String joinOrder,
+            DeterminismMode detMode, StatementPartitioning partitioning) {
+        if (partitioning.isInferred()) {
+            return null;
+        }
+        ForkJoinTask<PlannedStatement> task =
+                m_tasks.remove(key(procName, stmtName, sql, joinOrder, detMode, partitioning.wasSpecifiedAsSingle()));
+        if (task == null) {
+            return null;
+        }
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build the informational lines reporting the slowest statements to plan.
+     * @param planNanosByStatement planning time keyed by "procedure-statement" name
+     */
+    static List<String> slowestStatementsReport(Map<String, Long> planNanosByStatement, int count) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(planNanosByStatement.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                int cmp = o2.getValue().compareTo(o1.getValue());
+                return cmp != 0 ? cmp : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        long totalNanos = 0;
+        for (Map.Entry<String, Long> e : entries) {
+            totalNanos += e.getValue();
+        }
+        if (entries.isEmpty()) {
+            return lines;
+        }
+        lines.add(String.format("Planned %d statements in %.1f ms of planner time; slowest statements:",
+                entries.size(), totalNanos / 1000000.0));
+        for (Map.Entry<String, Long> e : entries.subList(0, Math.min(count, entries.size()))) {
+            lines.add(String.format("  %s: %.1f ms", e.getKey(), e.getValue() / 1000000.0));
+        }
+        return lines;
+    }
+}
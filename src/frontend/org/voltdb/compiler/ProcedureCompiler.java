@@ -83,6 +83,95 @@ public abstract class ProcedureCompiler implements GroovyCodeBlockConstants {
             compileSingleStmtProcedure(compiler, hsql, estimates, catalog, db, procedureDescriptor);
     }
 
+    /**
+     * Submit the statements of a procedure for planning ahead of its compilation.
+     * This guesses the planner inputs compile() will use without reporting any
+     * problems; a wrong guess only means the statement gets planned inline.
+     */
+    static void planAhead(VoltCompiler compiler, ParallelStatementPlanner planner,
+            ProcedureDescriptor procedureDescriptor) {
+        final String className = procedureDescriptor.m_className;
+
+        if (procedureDescriptor.m_singleStmt != null) {
+            String shortName = className;
+            if (procedureDescriptor.m_builtInStmt == false) {
+                shortName = deriveShortProcedureName(className);
+            }
+            ProcInfoData info = compiler.getProcInfoOverride(shortName);
+            boolean singlePartition = (info != null) ? info.singlePartition :
+                                      (procedureDescriptor.m_partitionString != null);
+            submitUnlessReusable(compiler, planner, shortName, VoltDB.ANON_STMT_NAME, procedureDescriptor.m_singleStmt,
+                    procedureDescriptor.m_joinOrder, DeterminismMode.FASTER, singlePartition);
+            return;
+        }
+
+        // Groovy procedures are introspected through their script delegate; plan those inline.
+        Class<?> procClass = procedureDescriptor.m_class;
+        if (procClass == null || procedureDescriptor.m_language != Language.JAVA) {
+            return;
+        }
+        String shortName = deriveShortProcedureName(className);
+        ProcInfoData info = compiler.getProcInfoOverride(shortName);
+        boolean singlePartition;
+        if (info != null) {
+            singlePartition = info.singlePartition;
+        }
+        else {
+            ProcInfo annotationInfo = procClass.getAnnotation(ProcInfo.class);
+            if (annotationInfo != null) {
+                singlePartition = annotationInfo.singlePartition();
+            }
+            else {
+                singlePartition = procedureDescriptor.m_partitionString != null &&
+                                  ! procedureDescriptor.m_partitionString.trim().isEmpty();
+            }
+        }
+
+        Map<String, SQLStmt> stmts = new HashMap<String, SQLStmt>();
+        try {
+            Object procInstance = procClass.newInstance();
+            for (Class<?> c = procClass; c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    int modifiers = f.getModifiers();
+                    if (f.getType() != SQLStmt.class || ! Modifier.isFinal(modifiers) ||
+                            (Modifier.isPrivate(modifiers) && c != procClass) ||
+                            stmts.containsKey(f.getName())) {
+                        continue;
+                    }
+                    f.setAccessible(true);
+                    stmts.put(f.getName(), (SQLStmt) f.get(procInstance));
+                }
+            }
+        }
+        catch (Exception e) {
+            // compileJavaProcedure reports whatever is wrong with the class.
+            return;
+        }
+
+        boolean readWrite = false;
+        for (SQLStmt stmt : stmts.values()) {
+            if ( ! QueryType.getFromSQL(stmt.getText()).isReadOnly()) {
+                readWrite = true;
+                break;
+            }
+        }
+        final DeterminismMode detMode = readWrite ? DeterminismMode.SAFER : DeterminismMode.FASTER;
+        for (Entry<String, SQLStmt> entry : stmts.entrySet()) {
+            SQLStmt stmt = entry.getValue();
+            submitUnlessReusable(compiler, planner, shortName, entry.getKey(), stmt.getText(), stmt.getJoinOrder(),
+                    detMode, singlePartition);
+        }
+    }
+
+    private static void submitUnlessReusable(VoltCompiler compiler, ParallelStatementPlanner planner,
+            String procName, String stmtName, String stmt, String joinOrder, DeterminismMode detMode,
+            boolean singlePartition) {
+        if (compiler.findReusableStatement(procName, stmtName, StatementCompiler.catalogSqlText(stmt),
+                joinOrder, detMode, singlePartition) == null) {
+            planner.submit(procName, stmtName, stmt, joinOrder, detMode, singlePartition);
+        }
+    }
+
     public static Map<String, SQLStmt> getValidSQLStmts(VoltCompiler compiler, String procName, Class<?> procClass, Object procInstance, boolean withPrivate)
             throws VoltCompilerException {
 
@@ -409,6 +498,11 @@ public abstract class ProcedureCompiler implements GroovyCodeBlockConstants {
 
                 // Validate any inferred statement partitioning given the statement's possible usage, until a contradiction is found.
             }
+            else if (procWantsCommonPartitioning && ! partitioning.isAnalyzed()) {
+                // The statement's plan was reused from the previous catalog. Any advice about
+                // common partitioning was given when the procedure was first compiled.
+                procWantsCommonPartitioning = false;
+            }
             else if (procWantsCommonPartitioning) {
                 // Only consider statements that are capable of running SP with a partitioning parameter that does not seem to
                 // conflict with the partitioning of prior statements.
@@ -713,7 +807,7 @@ public abstract class ProcedureCompiler implements GroovyCodeBlockConstants {
             // In theory, the PartitioningForStatement would confirm the use of (only) a parameter as a partition key --
             // or if the partition key was determined to be some other hard-coded constant (expression?) it might display a warning
             // message that the passed parameter is assumed to be equal to that constant (expression).
-        } else {
+        } else if (partitioning.isAnalyzed()) {
             if (partitioning.getCountOfIndependentlyPartitionedTables() == 1) {
                 AbstractExpression statementPartitionExpression = partitioning.singlePartitioningExpression();
                 if (statementPartitionExpression != null) {
@@ -22,6 +22,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
 import org.hsqldb_voltpatches.HSQLInterface;
+import org.voltcore.utils.Pair;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.PlanFragment;
@@ -89,22 +90,31 @@ public abstract class StatementCompiler {
         String sql = catalogStmt.getSqltext();
         String stmtName = catalogStmt.getTypeName();
         String procName = catalogStmt.getParent().getTypeName();
-        TrivialCostModel costModel = new TrivialCostModel();
 
-        CompiledPlan plan = null;
-
-        if (qtype == QueryType.UPSERT) {
-            sql = "INSERT" + sql.substring(6);
+        // Take the plan from the catalog being recompiled if nothing it depends on has changed.
+        Pair<Statement, StatementFingerprints.Entry> previous = compiler.findReusableStatement(
+                procName, stmtName, sql, joinOrder, detMode, partitioning.wasSpecifiedAsSingle());
+        if (previous != null) {
+            reuseCompiledStatement(db, previous.getFirst(), catalogStmt, previous.getSecond());
+            compiler.recordStatementFingerprint(procName, stmtName, previous.getSecond(), true);
+            return;
         }
 
-        QueryPlanner planner = new QueryPlanner(
-                sql, stmtName, procName,  catalog.getClusters().get("cluster"), db,
-                partitioning, hsql, estimates, false, DEFAULT_MAX_JOIN_TABLES,
-                costModel, null, joinOrder, detMode);
+        CompiledPlan plan = null;
+
+        long planStartNanos = System.nanoTime();
         try {
-            planner.parse();
-            plan = planner.plan();
-            assert(plan != null);
+            ParallelStatementPlanner.PlannedStatement planned =
+                    compiler.claimPlannedStatement(procName, stmtName, sql, joinOrder, detMode, partitioning);
+            if (planned != null) {
+                plan = planned.adopt(partitioning);
+                compiler.recordStatementPlanTime(name, planned.m_planNanos);
+            }
+            else {
+                plan = planStatement(hsql, catalog, db, estimates, sql, stmtName, procName,
+                        joinOrder, detMode, partitioning);
+                compiler.recordStatementPlanTime(name, System.nanoTime() - planStartNanos);
+            }
         } catch (PlanningErrorException e) {
             // These are normal expectable errors -- don't normally need a stack-trace.
             String msg = "Failed to plan for statement (" + catalogStmt.getTypeName() + ") " + catalogStmt.getSqltext();
@@ -125,14 +135,6 @@ public abstract class StatementCompiler {
                 " must not exceed the maximum " + CompiledPlan.MAX_PARAM_COUNT);
         }
 
-        if (qtype == QueryType.UPSERT) {
-            plan.rootPlanGraph = replaceInsertPlanNodeWithUpsert(plan.rootPlanGraph);
-            plan.subPlanGraph  = replaceInsertPlanNodeWithUpsert(plan.subPlanGraph);
-
-            // TODO(xin): more work to get formated explain plan
-            plan.explainedPlan = plan.explainedPlan.replace("INSERT", "UPSERT");
-        }
-
         // Check order determinism before accessing the detail which it caches.
         boolean orderDeterministic = plan.isOrderDeterministic();
         catalogStmt.setIsorderdeterministic(orderDeterministic);
@@ -174,8 +176,14 @@ public abstract class StatementCompiler {
         StatementAnnotation annotation = new StatementAnnotation();
         annotation.explainPlan = plan.explainedPlan;
         catalogStmt.setAnnotation(annotation);
-        // build usage links for report generation
-        CatalogUtil.updateUsageAnnotations(db, catalogStmt, plan.rootPlanGraph, plan.subPlanGraph);
+        // build usage links for report generation, and remember what the plan
+        // depends on so that a later recompile can reuse it
+        StatementFingerprints.Entry fingerprint = StatementFingerprints.Entry.forPlan(
+                db, sql, joinOrder, detMode, partitioning.wasSpecifiedAsSingle(), catalogStmt.getReadonly(),
+                plan.rootPlanGraph, plan.subPlanGraph);
+        CatalogUtil.updateUsageAnnotations(db, catalogStmt, fingerprint.m_tablesRead,
+                fingerprint.m_indexes, fingerprint.m_tableUpdated);
+        compiler.recordStatementFingerprint(procName, stmtName, fingerprint, false);
 
         // set the explain plan output into the catalog (in hex)
         catalogStmt.setExplainplan(Encoder.hexEncode(plan.explainedPlan));
@@ -220,6 +228,87 @@ public abstract class StatementCompiler {
         assert(validType != QueryType.INVALID.getValue());
     }
 
+    /**
+     * Copy the compiled plan of a statement from a previous catalog, along with
+     * everything compile() derives from the plan.
+     */
+    private static void reuseCompiledStatement(Database db, Statement previous, Statement catalogStmt,
+            StatementFingerprints.Entry fingerprint) {
+        catalogStmt.setIsorderdeterministic(previous.getIsorderdeterministic());
+        catalogStmt.setIscontentdeterministic(previous.getIscontentdeterministic());
+        catalogStmt.setNondeterminismdetail(previous.getNondeterminismdetail());
+        catalogStmt.setSeqscancount(previous.getSeqscancount());
+        catalogStmt.setReplicatedtabledml(previous.getReplicatedtabledml());
+
+        for (StmtParameter previousParam : previous.getParameters()) {
+            StmtParameter catalogParam = catalogStmt.getParameters().add(previousParam.getTypeName());
+            catalogParam.setJavatype(previousParam.getJavatype());
+            catalogParam.setIsarray(previousParam.getIsarray());
+            catalogParam.setIndex(previousParam.getIndex());
+        }
+
+        StatementAnnotation annotation = new StatementAnnotation();
+        annotation.explainPlan = Encoder.hexDecodeToString(previous.getExplainplan());
+        catalogStmt.setAnnotation(annotation);
+        CatalogUtil.updateUsageAnnotations(db, catalogStmt, fingerprint.m_tablesRead,
+                fingerprint.m_indexes, fingerprint.m_tableUpdated);
+        catalogStmt.setExplainplan(previous.getExplainplan());
+
+        for (PlanFragment previousFragment : previous.getFragments()) {
+            PlanFragment planFragment = catalogStmt.getFragments().add(previousFragment.getTypeName());
+            planFragment.setHasdependencies(previousFragment.getHasdependencies());
+            planFragment.setNontransactional(previousFragment.getNontransactional());
+            planFragment.setMultipartition(previousFragment.getMultipartition());
+            planFragment.setPlannodetree(previousFragment.getPlannodetree());
+            planFragment.setPlanhash(previousFragment.getPlanhash());
+        }
+    }
+
+    /**
+     * Normalize statement text the way it is stored in the catalog.
+     */
+    static String catalogSqlText(String stmt) {
+        stmt = stmt.replaceAll("\n", " ").trim();
+        if (!stmt.endsWith(";")) {
+            stmt += ";";
+        }
+        return stmt;
+    }
+
+    /**
+     * Plan a statement without touching the catalog. Concurrent callers must each
+     * use their own HSQL session.
+     * @param sql statement text as stored in the catalog
+     */
+    static CompiledPlan planStatement(HSQLInterface hsql, Catalog catalog, Database db,
+            DatabaseEstimates estimates, String sql, String stmtName, String procName,
+            String joinOrder, DeterminismMode detMode, StatementPartitioning partitioning)
+    throws Exception {
+        boolean isUpsert = (QueryType.getFromSQL(sql) == QueryType.UPSERT);
+        if (isUpsert) {
+            sql = "INSERT" + sql.substring(6);
+        }
+
+        QueryPlanner planner = new QueryPlanner(
+                sql, stmtName, procName,  catalog.getClusters().get("cluster"), db,
+                partitioning, hsql, estimates, false, DEFAULT_MAX_JOIN_TABLES,
+                new TrivialCostModel(), null, joinOrder, detMode);
+        planner.parse();
+        CompiledPlan plan = planner.plan();
+        assert(plan != null);
+
+        // The upsert nodes take the next plan node ids of this thread, so this must
+        // happen on the thread that did the planning.
+        if (isUpsert) {
+            plan.rootPlanGraph = replaceInsertPlanNodeWithUpsert(plan.rootPlanGraph);
+            plan.subPlanGraph  = replaceInsertPlanNodeWithUpsert(plan.subPlanGraph);
+
+            // TODO(xin): more work to get formated explain plan
+            plan.explainedPlan = plan.explainedPlan.replace("INSERT", "UPSERT");
+        }
+        return plan;
+    }
+
     /**
      * Update the plan fragment and return the bytes of the plan
      */
@@ -0,0 +1,204 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.voltdb.RealVoltDB;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Table;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.parseinfo.StmtTargetTableScan;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.Encoder;
+import org.voltdb.utils.InMemoryJarfile;
+
+import com.google_voltpatches.common.base.Joiner;
+import com.google_voltpatches.common.base.Splitter;
+
+/**
+ * Fingerprints of the compiled statements of a catalog, kept in the catalog jar so
+ * that recompiling the jar (for ad hoc DDL, for instance) can reuse the plans of
+ * statements that would plan the same way again.
+ * <p>
+ * A fingerprint hashes the statement text and planner settings together with the
+ * catalog definition of every table the plan touches. Fingerprints are only used
+ * by the same build of VoltDB that wrote them.
+ */
+class StatementFingerprints {
+
+    static final String FINGERPRINTS_FILE_NAME = "statement-fingerprints.txt";
+
+    private static final Joiner s_listJoiner = Joiner.on(',');
+    private static final Splitter s_listSplitter = Splitter.on(',').omitEmptyStrings();
+
+    /** What a compiled statement depends on. */
+    static class Entry {
+        final String m_fingerprint;
+        final List<String> m_tablesRead;
+        final List<String> m_indexes;
+        // null for a read-only statement
+        final String m_tableUpdated;
+
+        Entry(String fingerprint, Collection<String> tablesRead, Collection<String> indexes, String tableUpdated) {
+            m_fingerprint = fingerprint;
+            m_tablesRead = Collections.unmodifiableList(new ArrayList<String>(tablesRead));
+            m_indexes = Collections.unmodifiableList(new ArrayList<String>(indexes));
+            m_tableUpdated = tableUpdated;
+        }
+
+        /**
+         * Fingerprint a freshly planned statement.
+         */
+        static Entry forPlan(Database db, String sql, String joinOrder, DeterminismMode detMode,
+                boolean singlePartition, boolean readOnly,
+                AbstractPlanNode topPlan, AbstractPlanNode bottomPlan) {
+            Map<String, StmtTargetTableScan> tablesRead = new TreeMap<String, StmtTargetTableScan>();
+            Collection<String> indexes = new TreeSet<String>();
+            topPlan.getTablesAndIndexes(tablesRead, indexes);
+            if (bottomPlan != null) {
+                bottomPlan.getTablesAndIndexes(tablesRead, indexes);
+            }
+
+            String updated = null;
+            if ( ! readOnly) {
+                updated = topPlan.getUpdatedTable();
+                if (updated == null) {
+                    updated = bottomPlan.getUpdatedTable();
+                }
+                assert(updated != null);
+            }
+            return new Entry(fingerprint(db, sql, joinOrder, detMode, singlePartition, tablesRead.keySet(), updated),
+                             tablesRead.keySet(), indexes, updated);
+        }
+
+        /**
+         * Recompute this entry's fingerprint against another schema.
+         */
+        String fingerprintIn(Database db, String sql, String joinOrder, DeterminismMode detMode,
+                boolean singlePartition) {
+            return fingerprint(db, sql, joinOrder, detMode, singlePartition, m_tablesRead, m_tableUpdated);
+        }
+    }
+
+    // keyed by "procedure\tstatement", sorted so that the jar contents are deterministic
+    private final Map<String, Entry> m_entries = new TreeMap<String, Entry>();
+
+    private static String buildString() {
+        String[] info = RealVoltDB.extractBuildInfo();
+        return info[0] + " " + info[1];
+    }
+
+    static String fingerprint(Database db, String sql, String joinOrder, DeterminismMode detMode,
+            boolean singlePartition, Collection<String> tablesRead, String tableUpdated) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sql).append('\n');
+        sb.append(joinOrder).append('\n');
+        sb.append(detMode).append('\n');
+        sb.append(singlePartition).append('\n');
+        TreeSet<String> tables = new TreeSet<String>(tablesRead);
+        if (tableUpdated != null) {
+            tables.add(tableUpdated);
+        }
+        for (String tableName : tables) {
+            Table table = db.getTables().get(tableName);
+            if (table == null) {
+                sb.append("missing ").append(tableName).append('\n');
+                continue;
+            }
+            sb.append(table.serializeSubtree());
+            sb.append("exportonly ").append(CatalogUtil.isTableExportOnly(db, table)).append('\n');
+        }
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        return Encoder.hexEncode(md.digest(sb.toString().getBytes(Constants.UTF8ENCODING)));
+    }
+
+    Entry get(String procName, String stmtName) {
+        return m_entries.get(procName + "\t" + stmtName);
+    }
+
+    void put(String procName, String stmtName, Entry entry) {
+        m_entries.put(procName + "\t" + stmtName, entry);
+    }
+
+    int size() {
+        return m_entries.size();
+    }
+
+    byte[] toBytes() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(buildString()).append('\n');
+        for (Map.Entry<String, Entry> e : m_entries.entrySet()) {
+            Entry entry = e.getValue();
+            sb.append(e.getKey()).append('\t');
+            sb.append(entry.m_fingerprint).append('\t');
+            sb.append(s_listJoiner.join(entry.m_tablesRead)).append('\t');
+            sb.append(entry.m_tableUpdated == null ? "" : entry.m_tableUpdated).append('\t');
+            sb.append(s_listJoiner.join(entry.m_indexes)).append('\n');
+        }
+        return sb.toString().getBytes(Constants.UTF8ENCODING);
+    }
+
+    /**
+     * @return the fingerprints stored in a catalog jar, or null if there are none
+     *         or they were written by a different build
+     */
+    static StatementFingerprints fromJar(InMemoryJarfile jarfile) {
+        byte[] bytes = jarfile.get(FINGERPRINTS_FILE_NAME);
+        if (bytes == null) {
+            return null;
+        }
+        String[] lines = new String(bytes, Constants.UTF8ENCODING).split("\n");
+        if (lines.length == 0 || ! lines[0].equals(buildString())) {
+            return null;
+        }
+        StatementFingerprints fingerprints = new StatementFingerprints();
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t", -1);
+            if (fields.length != 6) {
+                return null;
+            }
+            List<String> tablesRead = new ArrayList<String>();
+            for (String table : s_listSplitter.split(fields[3])) {
+                tablesRead.add(table);
+            }
+            List<String> indexes = new ArrayList<String>();
+            for (String index : s_listSplitter.split(fields[5])) {
+                indexes.add(index);
+            }
+            fingerprints.put(fields[0], fields[1], new Entry(fields[2], tablesRead, indexes,
+                    fields[4].isEmpty() ? null : fields[4]));
+        }
+        return fingerprints;
+    }
+}
@@ -56,6 +56,7 @@ import org.hsqldb_voltpatches.HSQLInterface;
 import org.json_voltpatches.JSONException;
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.Pair;
 import org.voltdb.CatalogContext;
 import org.voltdb.ProcInfoData;
 import org.voltdb.RealVoltDB;
@@ -71,6 +72,7 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.FilteredCatalogDiffEngine;
 import org.voltdb.catalog.Index;
 import org.voltdb.catalog.MaterializedViewInfo;
+import org.voltdb.catalog.MaterializedViewJoin;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.Table;
@@ -88,6 +90,7 @@ import org.voltdb.compiler.projectfile.SchemasType;
 import org.voltdb.compilereport.ReportMaker;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.planner.StatementPartitioning;
 import org.voltdb.types.ConstraintType;
 import org.voltdb.utils.CatalogSchemaTools;
 import org.voltdb.utils.CatalogUtil;
@@ -144,6 +147,18 @@ public class VoltCompiler {
 
     private List<String> m_capturedDiagnosticDetail = null;
 
+    // statements planned ahead on worker threads, claimed as their catalog entries are built
+    private ParallelStatementPlanner m_parallelPlanner = null;
+    // planning time of each statement compiled, keyed by "procedure-statement"
+    private final Map<String, Long> m_statementPlanNanos = new HashMap<String, Long>();
+
+    // fingerprints of the statements compiled, written to the jar
+    private StatementFingerprints m_fingerprints = new StatementFingerprints();
+    // the catalog being recompiled and its fingerprints, when its plans may be reused
+    private StatementFingerprints m_previousFingerprints = null;
+    private Database m_previousDatabase = null;
+    private int m_reusedStatementCount = 0;
+
     private static final VoltLogger compilerLog = new VoltLogger("COMPILER");
     private static final VoltLogger consoleLog = new VoltLogger("CONSOLE");
     private static final VoltLogger Log = new VoltLogger("org.voltdb.compiler.VoltCompiler");
@@ -564,6 +579,7 @@ public class VoltCompiler {
         m_warnings.clear();
         m_infos.clear();
         m_errors.clear();
+        m_fingerprints = new StatementFingerprints();
 
         // do all the work to get the catalog
         DatabaseType database = getProjectDatabase(projectReader);
@@ -595,6 +611,9 @@ public class VoltCompiler {
                 addBuildInfo(jarOutput);
             }
             jarOutput.put(CatalogUtil.CATALOG_FILENAME, catalogBytes);
+            jarOutput.put(CatalogUtil.CATALOG_BINARY_FILENAME,
+                    catalog.serializeBinary(CatalogUtil.getTextCatalogChecksum(catalogBytes)));
+            jarOutput.put(StatementFingerprints.FINGERPRINTS_FILE_NAME, m_fingerprints.toBytes());
             // put the compiler report into the jarfile
             jarOutput.put("catalog-report.html", m_report.getBytes(Constants.UTF8ENCODING));
         }
@@ -859,7 +878,7 @@ public class VoltCompiler {
         List<VoltCompilerReader> ddlReaderList = DDLPathsToReaderList(ddlFilePaths);
         final VoltDDLElementTracker voltDdlTracker = new VoltDDLElementTracker(this);
         InMemoryJarfile jarOutput = new InMemoryJarfile();
-        compileDatabase(db, hsql, voltDdlTracker, ddlReaderList, null, null, whichProcs, jarOutput);
+        compileDatabase(db, hsql, voltDdlTracker, ddlReaderList, null, null, whichProcs, jarOutput, false);
 
         return m_catalog;
     }
@@ -945,7 +964,7 @@ public class VoltCompiler {
         // shutdown and make a new hsqldb
         HSQLInterface hsql = HSQLInterface.loadHsqldb();
         compileDatabase(db, hsql, voltDdlTracker, ddlReaderList, database.getExport(), classDependencies,
-                        DdlProceduresToLoad.ALL_DDL_PROCEDURES, jarOutput);
+                        DdlProceduresToLoad.ALL_DDL_PROCEDURES, jarOutput, true);
     }
 
     /**
@@ -959,6 +978,8 @@ public class VoltCompiler {
      * @param classDependencies optional additional jar files required by procedures
      * @param whichProcs indicates which ddl-defined procedures to load: none, single-statement, or all
      * @param jarOutput The in-memory jar to populate or null if the caller doesn't provide one.
+     * @param planInParallel true if hsql holds only this schema, so that worker threads
+     *        can replay the schema into their own sessions and plan statements in parallel
      */
     private void compileDatabase(
             Database db,
@@ -968,7 +989,8 @@ public class VoltCompiler {
             ExportType export,
             Collection<Class<?>> classDependencies,
             DdlProceduresToLoad whichProcs,
-            InMemoryJarfile jarOutput)
+            InMemoryJarfile jarOutput,
+            boolean planInParallel)
                     throws VoltCompilerException
     {
         // Actually parse and handle all the DDL
@@ -1057,6 +1079,21 @@ public class VoltCompiler {
             }
         }
 
+        // A materialized view is maintained on each partition of its source table, so every
+        // table it joins to its source table must be replicated to have all of its rows there.
+        for (Table table : tables) {
+            for (MaterializedViewInfo mvi : table.getViews()) {
+                for (MaterializedViewJoin join : mvi.getJoins()) {
+                    if ( ! join.getTable().getIsreplicated()) {
+                        throw new VoltCompilerException(String.format(
+                                "Materialized view \"%s\" joins partitioned table %s. " +
+                                "Only replicated tables may be joined to the source table of a materialized view.",
+                                mvi.getTypeName(), join.getTable().getTypeName()));
+                    }
+                }
+            }
+        }
+
         // add database estimates info
         addDatabaseEstimatesInfo(m_estimates, db);
 
@@ -1075,7 +1112,8 @@ public class VoltCompiler {
 
         if (whichProcs != DdlProceduresToLoad.NO_DDL_PROCEDURES) {
             Collection<ProcedureDescriptor> allProcs = voltDdlTracker.getProcedureDescriptors();
-            compileProcedures(db, hsql, allProcs, classDependencies, whichProcs, jarOutput);
+            compileProcedures(db, hsql, allProcs, classDependencies, whichProcs, jarOutput,
+                              planInParallel ? ddlcompiler.m_fullDDL : null);
         }
 
         // add extra classes from the DDL
@@ -1188,6 +1226,7 @@ public class VoltCompiler {
      * @param classDependencies
      * @param voltDdlTracker non-standard VoltDB schema annotations
      * @param whichProcs indicates which ddl-defined procedures to load: none, single-statement, or all
+     * @param hexEncodedDDL the DDL run on hsql to replay on planner threads, or null to plan serially
      * @throws VoltCompilerException
      */
     private void compileProcedures(Database db,
@@ -1195,7 +1234,8 @@ public class VoltCompiler {
                                    Collection<ProcedureDescriptor> allProcs,
                                    Collection<Class<?>> classDependencies,
                                    DdlProceduresToLoad whichProcs,
-                                   InMemoryJarfile jarOutput) throws VoltCompilerException
+                                   InMemoryJarfile jarOutput,
+                                   String hexEncodedDDL) throws VoltCompilerException
     {
         // Ignore class dependencies if ignoring java stored procs.
         // This extra qualification anticipates some (undesirable) overlap between planner
@@ -1217,28 +1257,115 @@ public class VoltCompiler {
 
         procedures.addAll(allProcs);
 
-        // Actually parse and handle all the Procedures
-        for (final ProcedureDescriptor procedureDescriptor : procedures) {
-            final String procedureName = procedureDescriptor.m_className;
-            if (procedureDescriptor.m_singleStmt == null) {
-                m_currentFilename = procedureName.substring(procedureName.lastIndexOf('.') + 1);
-                m_currentFilename += ".class";
-            }
-            else if (whichProcs == DdlProceduresToLoad.ONLY_SINGLE_STATEMENT_PROCEDURES) {
-                // In planner test mode, especially within the plannerTester framework,
-                // ignore any java procedures referenced in ddl CREATE PROCEDURE statements to allow
-                // re-use of actual application ddl files without introducing class dependencies.
-                // This potentially allows automatic plannerTester regression test support
-                // for all the single-statement procedures of an unchanged application ddl file.
-                continue;
+        m_statementPlanNanos.clear();
+        m_reusedStatementCount = 0;
+
+        // Plan the statements on a pool of threads first. The loop below still builds
+        // every catalog entry in order, claiming those plans instead of planning inline.
+        final int plannerThreads = ParallelStatementPlanner.plannerThreads();
+        if (hexEncodedDDL != null && plannerThreads > 1) {
+            m_parallelPlanner = new ParallelStatementPlanner(plannerThreads, hexEncodedDDL, m_catalog, db, m_estimates);
+            for (final ProcedureDescriptor procedureDescriptor : procedures) {
+                if (procedureDescriptor.m_singleStmt == null &&
+                        whichProcs == DdlProceduresToLoad.ONLY_SINGLE_STATEMENT_PROCEDURES) {
+                    continue;
+                }
+                ProcedureCompiler.planAhead(this, m_parallelPlanner, procedureDescriptor);
             }
-            else {
-                m_currentFilename = procedureName;
+            m_parallelPlanner.awaitAll();
+        }
+
+        try {
+            // Actually parse and handle all the Procedures
+            for (final ProcedureDescriptor procedureDescriptor : procedures) {
+                final String procedureName = procedureDescriptor.m_className;
+                if (procedureDescriptor.m_singleStmt == null) {
+                    m_currentFilename = procedureName.substring(procedureName.lastIndexOf('.') + 1);
+                    m_currentFilename += ".class";
+                }
+                else if (whichProcs == DdlProceduresToLoad.ONLY_SINGLE_STATEMENT_PROCEDURES) {
+                    // In planner test mode, especially within the plannerTester framework,
+                    // ignore any java procedures referenced in ddl CREATE PROCEDURE statements to allow
+                    // re-use of actual application ddl files without introducing class dependencies.
+                    // This potentially allows automatic plannerTester regression test support
+                    // for all the single-statement procedures of an unchanged application ddl file.
+                    continue;
+                }
+                else {
+                    m_currentFilename = procedureName;
+                }
+                ProcedureCompiler.compile(this, hsql, m_estimates, m_catalog, db, procedureDescriptor, jarOutput);
             }
-            ProcedureCompiler.compile(this, hsql, m_estimates, m_catalog, db, procedureDescriptor, jarOutput);
+        }
+        finally {
+            m_parallelPlanner = null;
         }
         // done handling files
         m_currentFilename = null;
+
+        if (m_reusedStatementCount > 0) {
+            addInfo("Reused the plans of " + m_reusedStatementCount + " of " + m_fingerprints.size() +
+                    " statements from the previous catalog.");
+        }
+        for (String line : ParallelStatementPlanner.slowestStatementsReport(
+                m_statementPlanNanos, ParallelStatementPlanner.SLOWEST_STATEMENTS_REPORTED)) {
+            addInfo(line);
+        }
+    }
+
+    /**
+     * Take the plan for a statement if it was planned ahead with the same inputs.
+     * @return the planned statement, or null if the caller should plan it
+     */
+    ParallelStatementPlanner.PlannedStatement claimPlannedStatement(String procName, String stmtName,
+            String sql, String joinOrder, DeterminismMode detMode, StatementPartitioning partitioning) {
+        if (m_parallelPlanner == null) {
+            return null;
+        }
+        return m_parallelPlanner.claim(procName, stmtName, sql, joinOrder, detMode, partitioning);
+    }
+
+    /**
+     * Find the statement in the catalog being recompiled whose plan can be reused for a statement,
+     * because neither the statement, its planner settings nor the tables it touches have changed.
+     * @return the previous statement and its fingerprint, or null if the statement must be planned
+     */
+    Pair<Statement, StatementFingerprints.Entry> findReusableStatement(String procName, String stmtName,
+            String sql, String joinOrder, DeterminismMode detMode, boolean singlePartition) {
+        if (m_previousFingerprints == null) {
+            return null;
+        }
+        StatementFingerprints.Entry entry = m_previousFingerprints.get(procName, stmtName);
+        if (entry == null) {
+            return null;
+        }
+        Procedure previousProc = m_previousDatabase.getProcedures().get(procName);
+        if (previousProc == null) {
+            return null;
+        }
+        Statement previousStmt = previousProc.getStatements().get(stmtName);
+        if (previousStmt == null || ! previousStmt.getSqltext().equals(sql)) {
+            return null;
+        }
+        String fingerprint = entry.fingerprintIn(getCatalogDatabase(), sql, joinOrder, detMode, singlePartition);
+        if ( ! fingerprint.equals(entry.m_fingerprint)) {
+            return null;
+        }
+        return Pair.of(previousStmt, entry);
+    }
+
+    /** Remember what a compiled statement depends on, for reuse by a later recompile. */
+    void recordStatementFingerprint(String procName, String stmtName, StatementFingerprints.Entry entry,
+            boolean reused) {
+        m_fingerprints.put(procName, stmtName, entry);
+        if (reused) {
+            ++m_reusedStatementCount;
+        }
+    }
+
+    /** Remember how long a statement took to plan, for the slowest statement report. */
+    void recordStatementPlanTime(String statementName, long planNanos) {
+        m_statementPlanNanos.put(statementName, planNanos);
     }
 
     private void setGroupedTablePartitionColumn(MaterializedViewInfo mvi, Column partitionColumn)
@@ -2467,6 +2594,8 @@ public class VoltCompiler {
         ClassLoader originalClassLoader = m_classLoader;
         try {
             m_classLoader = jarfile.getLoader();
+            // Plans of unchanged statements can be taken from the catalog being replaced.
+            loadPreviousCompilation(jarfile);
             // Do the compilation work.
             InMemoryJarfile jarOut = compileInternal(null, ddlReaderList, jarfile);
             // Trim the compiler output to try to provide a concise failure
@@ -2490,6 +2619,29 @@ public class VoltCompiler {
         finally {
             // Restore the original class loader
             m_classLoader = originalClassLoader;
+            m_previousFingerprints = null;
+            m_previousDatabase = null;
+        }
+    }
+
+    /**
+     * Load the catalog and statement fingerprints from a jar about to be recompiled,
+     * if it was compiled by this build.
+     */
+    private void loadPreviousCompilation(InMemoryJarfile jarfile) {
+        StatementFingerprints fingerprints = StatementFingerprints.fromJar(jarfile);
+        byte[] catalogBytes = jarfile.get(CatalogUtil.CATALOG_FILENAME);
+        if (fingerprints == null || catalogBytes == null) {
+            return;
+        }
+        try {
+            Catalog previousCatalog = new Catalog();
+            previousCatalog.execute(new String(catalogBytes, Constants.UTF8ENCODING));
+            m_previousDatabase = previousCatalog.getClusters().get("cluster").getDatabases().get("database");
+            m_previousFingerprints = fingerprints;
+        }
+        catch (Exception e) {
+            compilerLog.info("Unable to reuse the plans of the previous catalog: " + e.getMessage());
         }
     }
 
@@ -26,8 +26,12 @@ import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.json_voltpatches.JSONArray;
@@ -84,6 +88,14 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     private Runnable m_onMastership;
     private final ListeningExecutorService m_es;
     private SettableFuture<BBContainer> m_pollFuture;
+    private SettableFuture<AckingBatch> m_pollBatchFuture;
+    private int m_pollBatchMaxBlocks;
+    /*
+     * Acks from local consumers are coalesced so that a burst of discarded
+     * containers results in a single release and a single message to the replicas
+     */
+    private final AtomicLong m_pendingLocalAck = new AtomicLong(0);
+    private final AtomicBoolean m_localAckScheduled = new AtomicBoolean(false);
     private final AtomicReference<Pair<Mailbox, ImmutableList<Long>>> m_ackMailboxRefs =
             new AtomicReference<Pair<Mailbox,ImmutableList<Long>>>(Pair.of((Mailbox)null, ImmutableList.<Long>builder().build()));
     private final Semaphore m_bufferPushPermits = new Semaphore(16);
@@ -132,7 +144,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
 
         String nonce = signature + "_" + partitionId;
 
-        m_committedBuffers = new StreamBlockQueue(overflowPath, nonce);
+        m_committedBuffers = new StreamBlockQueue(overflowPath, nonce, ExportMemoryBudget.instance(), m_es);
 
         /*
          * This is not the catalog relativeIndex(). This ID incorporates
@@ -262,12 +274,12 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         //If on disk generation matches catalog generation we dont do end of stream as it will be appended to.
         m_endOfStream = !isContinueingGeneration;
 
-        m_committedBuffers = new StreamBlockQueue(overflowPath, nonce);
+        m_es = CoreUtils.getListeningExecutorService("ExportDataSource gen " + m_generation + " table " + m_tableName + " partition " + m_partitionId, 1);
+        m_committedBuffers = new StreamBlockQueue(overflowPath, nonce, ExportMemoryBudget.instance(), m_es);
 
         // compute the number of bytes necessary to hold one bit per
         // schema column
         m_nullArrayLength = ((m_columnTypes.size() + 7) & -8) >> 3;
-        m_es = CoreUtils.getListeningExecutorService("ExportDataSource gen " + m_generation + " table " + m_tableName + " partition " + m_partitionId, 1);
     }
 
     public void updateAckMailboxes( final Pair<Mailbox, ImmutableList<Long>> ackMailboxes) {
@@ -418,10 +430,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
 
             if (m_committedBuffers.isEmpty()) {
                 exportLog.info("Pushed EOS buffer with 0 bytes remaining");
-                if (m_pollFuture != null) {
-                    m_pollFuture.set(null);
-                    m_pollFuture = null;
-                }
+                completePollsWithEndOfStream();
                 if (m_onDrain != null) {
                     m_onDrain.run();
                 }
@@ -486,6 +495,18 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             }
         }
         pollImpl(m_pollFuture);
+        pollBatchImpl(m_pollBatchFuture, m_pollBatchMaxBlocks);
+    }
+
+    private void completePollsWithEndOfStream() {
+        if (m_pollFuture != null) {
+            m_pollFuture.set(null);
+            m_pollFuture = null;
+        }
+        if (m_pollBatchFuture != null) {
+            m_pollBatchFuture.set(null);
+            m_pollBatchFuture = null;
+        }
     }
 
     public void pushExportBuffer(
@@ -537,10 +558,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                 try {
                     m_committedBuffers.truncateToTxnId(txnId, m_nullArrayLength);
                     if (m_committedBuffers.isEmpty() && m_endOfStream) {
-                        if (m_pollFuture != null) {
-                            m_pollFuture.set(null);
-                            m_pollFuture = null;
-                        }
+                        completePollsWithEndOfStream();
                         if (m_onDrain != null) {
                             m_onDrain.run();
                         }
@@ -578,7 +596,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                      * call poll a second time until a response has been given
                      * which nulls out the field
                      */
-                    if (m_pollFuture != null) {
+                    if (m_pollFuture != null || m_pollBatchFuture != null) {
                         fut.setException(new RuntimeException("Should not poll more than once"));
                         return;
                     }
@@ -593,14 +611,39 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         return fut;
     }
 
+    /**
+     * Poll for up to maxBlocks contiguous blocks of export data. The future is set as soon as at least
+     * one block is available and is set to null at the end of the stream. Discarding the returned batch
+     * acks every block in it at once.
+     */
+    public ListenableFuture<AckingBatch> poll(final int maxBlocks) {
+        Preconditions.checkArgument(maxBlocks > 0, "maxBlocks must be positive");
+        final SettableFuture<AckingBatch> fut = SettableFuture.create();
+        m_es.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (m_pollFuture != null || m_pollBatchFuture != null) {
+                        fut.setException(new RuntimeException("Should not poll more than once"));
+                        return;
+                    }
+                    pollBatchImpl(fut, maxBlocks);
+                } catch (Exception e) {
+                    exportLog.error("Exception polling export buffers", e);
+                } catch (Error e) {
+                    VoltDB.crashLocalVoltDB("Error polling export buffers", true, e);
+                }
+            }
+        });
+        return fut;
+    }
+
     private void pollImpl(SettableFuture<BBContainer> fut) {
         if (fut == null) {
             return;
         }
 
         try {
-            StreamBlock first_unpolled_block = null;
-
             if (m_endOfStream && m_committedBuffers.isEmpty()) {
                 //Returning null indicates end of stream
                 fut.set(null);
@@ -609,43 +652,14 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                 }
                 return;
             }
-            //Assemble a list of blocks to delete so that they can be deleted
-            //outside of the m_committedBuffers critical section
-            ArrayList<StreamBlock> blocksToDelete = new ArrayList<StreamBlock>();
-            //Inside this critical section do the work to find out
-            //what block should be returned by the next poll.
-            //Copying and sending the data will take place outside the critical section
-            try {
-                Iterator<StreamBlock> iter = m_committedBuffers.iterator();
-                while (iter.hasNext()) {
-                    StreamBlock block = iter.next();
-                    // find the first block that has unpolled data
-                    if (m_firstUnpolledUso < block.uso() + block.totalUso()) {
-                        first_unpolled_block = block;
-                        m_firstUnpolledUso = block.uso() + block.totalUso();
-                        break;
-                    } else {
-                        blocksToDelete.add(block);
-                        iter.remove();
-                    }
-                }
-            } catch (RuntimeException e) {
-                if (e.getCause() instanceof IOException) {
-                    VoltDB.crashLocalVoltDB("Error attempting to find unpolled export data", true, e);
-                } else {
-                    throw e;
-                }
-            } finally {
-                //Try hard not to leak memory
-                for (StreamBlock sb : blocksToDelete) {
-                    sb.discard();
-                }
-            }
+
+            List<StreamBlock> blocks = pollUnpolledBlocks(1);
 
             //If there are no unpolled blocks return the firstUnpolledUSO with no data
-            if (first_unpolled_block == null) {
+            if (blocks.isEmpty()) {
                 m_pollFuture = fut;
             } else {
+                StreamBlock first_unpolled_block = blocks.get(0);
                 fut.set(
                         new AckingContainer(first_unpolled_block.unreleasedContainer(),
                                 first_unpolled_block.uso() + first_unpolled_block.totalUso()));
@@ -656,6 +670,79 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         }
     }
 
+    private void pollBatchImpl(SettableFuture<AckingBatch> fut, int maxBlocks) {
+        if (fut == null) {
+            return;
+        }
+
+        try {
+            if (m_endOfStream && m_committedBuffers.isEmpty()) {
+                fut.set(null);
+                if (m_onDrain != null) {
+                    m_onDrain.run();
+                }
+                return;
+            }
+
+            List<StreamBlock> blocks = pollUnpolledBlocks(maxBlocks);
+            if (blocks.isEmpty()) {
+                m_pollBatchFuture = fut;
+                m_pollBatchMaxBlocks = maxBlocks;
+            } else {
+                ArrayList<BBContainer> containers = new ArrayList<BBContainer>(blocks.size());
+                for (StreamBlock block : blocks) {
+                    containers.add(block.unreleasedContainer());
+                }
+                StreamBlock last = blocks.get(blocks.size() - 1);
+                fut.set(new AckingBatch(containers, last.uso() + last.totalUso()));
+                m_pollBatchFuture = null;
+            }
+        } catch (Throwable t) {
+            fut.setException(t);
+        }
+    }
+
+    /*
+     * Find up to maxBlocks contiguous blocks that haven't been polled yet and advance
+     * the first unpolled USO past them. Blocks that have already been polled are removed
+     * from the queue along the way.
+     */
+    private List<StreamBlock> pollUnpolledBlocks(int maxBlocks) {
+        ArrayList<StreamBlock> blocks = new ArrayList<StreamBlock>();
+        //Assemble a list of blocks to delete so that they can be deleted
+        //outside of the m_committedBuffers critical section
+        ArrayList<StreamBlock> blocksToDelete = new ArrayList<StreamBlock>();
+        //Inside this critical section do the work to find out
+        //what blocks should be returned by the next poll.
+        //Copying and sending the data will take place outside the critical section
+        try {
+            Iterator<StreamBlock> iter = m_committedBuffers.iterator();
+            while (blocks.size() < maxBlocks && iter.hasNext()) {
+                StreamBlock block = iter.next();
+                // find the blocks that have unpolled data
+                if (m_firstUnpolledUso < block.uso() + block.totalUso()) {
+                    blocks.add(block);
+                    m_firstUnpolledUso = block.uso() + block.totalUso();
+                } else {
+                    blocksToDelete.add(block);
+                    iter.remove();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                VoltDB.crashLocalVoltDB("Error attempting to find unpolled export data", true, e);
+            } else {
+                throw e;
+            }
+        } finally {
+            //Try hard not to leak memory
+            for (StreamBlock sb : blocksToDelete) {
+                sb.discard();
+            }
+        }
+        return blocks;
+    }
+
     class AckingContainer extends BBContainer {
         final long m_uso;
         final BBContainer m_backingCont;
@@ -669,13 +756,92 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         public void discard() {
             checkDoubleFree();
             m_backingCont.discard();
+            localAck(m_uso);
+        }
+
+    }
+
+    /**
+     * A run of contiguous blocks returned by a batch poll. Discarding the batch releases
+     * every block and acks all of them with a single cumulative ack.
+     */
+    public class AckingBatch {
+        private final List<BBContainer> m_containers;
+        private final long m_uso;
+        private boolean m_discarded = false;
+
+        AckingBatch(List<BBContainer> containers, long uso) {
+            m_containers = ImmutableList.copyOf(containers);
+            m_uso = uso;
+        }
+
+        /**
+         * Containers for the blocks in USO order. They must not be discarded individually.
+         */
+        public List<BBContainer> getContainers() {
+            return m_containers;
+        }
+
+        /**
+         * The USO following the last block in the batch
+         */
+        public long getUso() {
+            return m_uso;
+        }
+
+        public void discard() {
+            Preconditions.checkState(!m_discarded, "Export batch discarded more than once");
+            m_discarded = true;
             try {
-                ack(m_uso);
+                for (BBContainer cont : m_containers) {
+                    cont.discard();
+                }
             } finally {
-                forwardAckToOtherReplicas(m_uso);
+                localAck(m_uso);
             }
         }
+    }
 
+    /*
+     * Ack data that was consumed locally and forward the ack to the replicas. Acks that arrive
+     * while one is already scheduled are folded into it since an ack covers everything before it.
+     * If the source is already closed the ack is still forwarded, the replicas may outlive it.
+     */
+    private void localAck(long uso) {
+        long pending;
+        do {
+            pending = m_pendingLocalAck.get();
+        } while (uso > pending && !m_pendingLocalAck.compareAndSet(pending, uso));
+
+        if (!m_localAckScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduleLocalAck();
+        } catch (RejectedExecutionException e) {
+            m_localAckScheduled.set(false);
+            forwardAckToOtherReplicas(m_pendingLocalAck.get());
+            throw e;
+        }
+    }
+
+    private void scheduleLocalAck() {
+        m_es.execute(new Runnable() {
+            @Override
+            public void run() {
+                m_localAckScheduled.set(false);
+                final long ackUso = m_pendingLocalAck.get();
+                try {
+                    ackImpl(ackUso);
+                } catch (Exception e) {
+                    exportLog.error("Error acking export buffer", e);
+                } catch (Error e) {
+                    VoltDB.crashLocalVoltDB("Error acking export buffer", true, e);
+                } finally {
+                    forwardAckToOtherReplicas(ackUso);
+                }
+            }
+        });
     }
 
     private void forwardAckToOtherReplicas(long uso) {
@@ -0,0 +1,136 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Host wide accounting of the export data held in memory by every StreamBlockQueue.
+ * Export data lives in one of three tiers, uncompressed in memory, compressed in memory,
+ * and on disk in the persistent deque of each queue. When either memory tier goes over
+ * its limit the queue with the largest in memory backlog is asked to move its oldest blocks
+ * down a tier so that a stalled consumer can't exhaust memory.
+ */
+public class ExportMemoryBudget {
+
+    public static enum Tier {
+        MEMORY,
+        COMPRESSED,
+        DISK
+    }
+
+    private static final ExportMemoryBudget m_instance = new ExportMemoryBudget(
+            Long.getLong("EXPORT_MEMORY_BUDGET", 256L * 1024 * 1024),
+            Long.getLong("EXPORT_COMPRESSED_MEMORY_BUDGET", 64L * 1024 * 1024));
+
+    public static ExportMemoryBudget instance() {
+        return m_instance;
+    }
+
+    private final long m_memoryLimit;
+    private final long m_compressedLimit;
+    private final AtomicLong m_memoryBytes = new AtomicLong(0);
+    private final AtomicLong m_compressedBytes = new AtomicLong(0);
+    private final Set<StreamBlockQueue> m_queues =
+            Collections.newSetFromMap(new ConcurrentHashMap<StreamBlockQueue, Boolean>());
+
+    public ExportMemoryBudget(long memoryLimit, long compressedLimit) {
+        m_memoryLimit = memoryLimit;
+        m_compressedLimit = compressedLimit;
+    }
+
+    void register(StreamBlockQueue queue) {
+        m_queues.add(queue);
+    }
+
+    void unregister(StreamBlockQueue queue) {
+        m_queues.remove(queue);
+    }
+
+    Set<StreamBlockQueue> getQueues() {
+        return Collections.unmodifiableSet(m_queues);
+    }
+
+    void adjust(Tier tier, long delta) {
+        switch (tier) {
+        case MEMORY:
+            m_memoryBytes.addAndGet(delta);
+            break;
+        case COMPRESSED:
+            m_compressedBytes.addAndGet(delta);
+            break;
+        default:
+            throw new IllegalArgumentException("Disk usage is tracked by the persistent deques");
+        }
+    }
+
+    public long getLimit(Tier tier) {
+        switch (tier) {
+        case MEMORY:
+            return m_memoryLimit;
+        case COMPRESSED:
+            return m_compressedLimit;
+        default:
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public long getBytes(Tier tier) {
+        switch (tier) {
+        case MEMORY:
+            return m_memoryBytes.get();
+        case COMPRESSED:
+            return m_compressedBytes.get();
+        default:
+            long bytes = 0;
+            for (StreamBlockQueue queue : m_queues) {
+                bytes += queue.getBytes(Tier.DISK);
+            }
+            return bytes;
+        }
+    }
+
+    boolean isOverBudget(Tier tier) {
+        return getBytes(tier) > getLimit(tier);
+    }
+
+    /**
+     * If either memory tier is over its limit ask the queue with the largest
+     * in memory backlog to evict its oldest blocks
+     */
+    void enforce() {
+        if (!isOverBudget(Tier.MEMORY) && !isOverBudget(Tier.COMPRESSED)) {
+            return;
+        }
+        StreamBlockQueue largest = null;
+        long largestBytes = 0;
+        for (StreamBlockQueue queue : m_queues) {
+            final long bytes = queue.getBytes(Tier.MEMORY) + queue.getBytes(Tier.COMPRESSED);
+            if (bytes > largestBytes) {
+                largest = queue;
+                largestBytes = bytes;
+            }
+        }
+        if (largest != null) {
+            largest.requestEviction();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.export.ExportMemoryBudget.Tier;
+
+/**
+ * Backlog of export data per stream broken down by the tier of the export memory budget
+ * it is stored in
+ */
+public class ExportStats extends StatsSource {
+    private final ExportMemoryBudget m_budget;
+
+    public ExportStats(ExportMemoryBudget budget) {
+        super(false);
+        m_budget = budget;
+    }
+
+    public static interface Constants {
+        public final static String STREAM = "STREAM";
+        public final static String MEMORY_BYTES = "MEMORY_BYTES";
+        public final static String COMPRESSED_BYTES = "COMPRESSED_BYTES";
+        public final static String DISK_BYTES = "DISK_BYTES";
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(Constants.STREAM, VoltType.STRING));
+        columns.add(new ColumnInfo(Constants.MEMORY_BYTES, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.COMPRESSED_BYTES, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.DISK_BYTES, VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        StreamBlockQueue queue = (StreamBlockQueue)rowKey;
+        rowValues[columnNameToIndex.get(Constants.STREAM)] = queue.getNonce();
+        rowValues[columnNameToIndex.get(Constants.MEMORY_BYTES)] = queue.getBytes(Tier.MEMORY);
+        rowValues[columnNameToIndex.get(Constants.COMPRESSED_BYTES)] = queue.getBytes(Tier.COMPRESSED);
+        rowValues[columnNameToIndex.get(Constants.DISK_BYTES)] = queue.getBytes(Tier.DISK);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        @SuppressWarnings("rawtypes")
+        Iterator iter = new ArrayList<StreamBlockQueue>(m_budget.getQueues()).iterator();
+        return (Iterator<Object>)iter;
+    }
+}
@@ -17,11 +17,14 @@
 
 package org.voltdb.export;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.VoltDB;
+import org.voltdb.utils.CompressionService;
 
 /*
  * The stream block has a default reference count of 1 for being in the queue.
@@ -63,8 +66,11 @@ public class StreamBlock {
     void discard() {
         final int count = m_refCount.decrementAndGet();
         if (count == 0) {
-            m_buffer.discard();
-            m_buffer = null;
+            if (m_buffer != null) {
+                m_buffer.discard();
+                m_buffer = null;
+            }
+            m_compressed = null;
         } else if (count < 0) {
             VoltDB.crashLocalVoltDB("Broken refcounting in export", true, null);
         }
@@ -116,13 +122,62 @@ public class StreamBlock {
     private BBContainer m_buffer;
     private long m_releaseOffset;
 
+    /*
+     * Snappy compressed contents of the block while it sits in the compressed
+     * tier of the export memory budget. m_buffer is null while this is set.
+     */
+    private byte[] m_compressed;
+
     /*
      * True if this block is still backed by a file and false
      * if the buffer is only stored in memory. No guarantees about fsync though
      */
     private final boolean m_isPersisted;
 
+    boolean isCompressed() {
+        return m_compressed != null;
+    }
+
+    int compressedSize() {
+        return m_compressed.length;
+    }
+
+    /*
+     * A block can only be compressed while the queue holds the only reference
+     * and the data only lives in memory
+     */
+    boolean canCompress() {
+        return m_compressed == null && !m_isPersisted && m_refCount.get() == 1;
+    }
+
+    /*
+     * Replace the buffer with a compressed copy of its contents, releasing the original memory
+     */
+    void compress() throws IOException {
+        assert(canCompress());
+        ByteBuffer b = m_buffer.b().duplicate();
+        b.position(0);
+        if (b.isDirect()) {
+            m_compressed = CompressionService.compressBuffer(b);
+        } else {
+            m_compressed = CompressionService.compressBytes(b.array(), b.arrayOffset(), b.limit());
+        }
+        m_buffer.discard();
+        m_buffer = null;
+    }
+
+    /*
+     * Restore the uncompressed buffer, must be done before the data is handed out
+     */
+    void decompress() throws IOException {
+        assert(isCompressed());
+        m_buffer = DBBPool.wrapBB(ByteBuffer.wrap(CompressionService.decompressBytes(m_compressed)));
+        m_buffer.b().position(HEADER_SIZE);
+        m_compressed = null;
+    }
+
     BBContainer unreleasedContainer() {
+        assert(!isCompressed());
         m_refCount.incrementAndGet();
         return getRefCountingContainer(m_buffer.b().slice().asReadOnlyBuffer());
     }
@@ -142,6 +197,7 @@ public class StreamBlock {
      * and should only be called once to get a container for pushing the data to disk
      */
     BBContainer asBBContainer() {
+        assert(!isCompressed());
         m_buffer.b().putLong(0, uso());
         m_buffer.b().position(0);
         return getRefCountingContainer(m_buffer.b().asReadOnlyBuffer());
@@ -19,8 +19,13 @@ package org.voltdb.export;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltdb.export.ExportMemoryBudget.Tier;
 import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
 import org.voltdb.utils.PersistentBinaryDeque;
 import org.voltdb.utils.BinaryDeque;
@@ -39,6 +44,10 @@ import java.nio.ByteOrder;
  *
  * portion of the queue
  *
+ * When constructed with an ExportMemoryBudget the two block limit is replaced by the host wide
+ * budget. Blocks are admitted to memory while the budget has room and the budget may ask the
+ * queue to compress or spill its oldest in memory blocks. Eviction runs on the executor
+ * that owns the queue so the queue itself is still only accessed from one thread.
  */
 public class StreamBlockQueue {
 
@@ -57,9 +66,83 @@ public class StreamBlockQueue {
 
     private final String m_nonce;
 
+    /*
+     * Null if this queue isn't accounted for in a host wide budget
+     */
+    private final ExportMemoryBudget m_budget;
+    private final Executor m_executor;
+    private final AtomicBoolean m_evictionPending = new AtomicBoolean(false);
+
+    /*
+     * Bytes held by the memory deque, updated on the owning thread and read by the budget and stats
+     */
+    private final AtomicLong m_memoryBytes = new AtomicLong(0);
+    private final AtomicLong m_compressedBytes = new AtomicLong(0);
+
     public StreamBlockQueue(String path, String nonce) throws java.io.IOException {
+        this(path, nonce, null, null);
+    }
+
+    public StreamBlockQueue(String path, String nonce,
+            ExportMemoryBudget budget, Executor executor) throws java.io.IOException {
         m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path));
         m_nonce = nonce;
+        m_budget = budget;
+        m_executor = executor;
+        if (m_budget != null) {
+            m_budget.register(this);
+        }
+    }
+
+    public String getNonce() {
+        return m_nonce;
+    }
+
+    /**
+     * Bytes of export data held by this queue in the specified tier
+     */
+    public long getBytes(Tier tier) {
+        switch (tier) {
+        case MEMORY:
+            return m_memoryBytes.get();
+        case COMPRESSED:
+            return m_compressedBytes.get();
+        default:
+            return m_persistentDeque.sizeInBytes();
+        }
+    }
+
+    private void account(StreamBlock sb, int sign) {
+        if (m_budget == null) {
+            return;
+        }
+        if (sb.isCompressed()) {
+            final long delta = sign * (long)sb.compressedSize();
+            m_compressedBytes.addAndGet(delta);
+            m_budget.adjust(Tier.COMPRESSED, delta);
+        } else {
+            final long delta = sign * sb.totalUso();
+            m_memoryBytes.addAndGet(delta);
+            m_budget.adjust(Tier.MEMORY, delta);
+        }
+    }
+
+    /*
+     * Blocks are decompressed on the way out of the queue so
+     * callers never see the compressed representation
+     */
+    private StreamBlock inflate(StreamBlock sb) {
+        if (sb != null && sb.isCompressed()) {
+            account(sb, -1);
+            try {
+                sb.decompress();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                account(sb, 1);
+            }
+        }
+        return sb;
     }
 
     public boolean isEmpty() throws IOException {
@@ -101,6 +184,7 @@ public class StreamBlockQueue {
             //Optionally store a reference to the block in the in memory deque
             if (!actuallyPoll) {
                 m_memoryDeque.offer(block);
+                account(block, 1);
             }
             return block;
         }
@@ -117,6 +201,7 @@ public class StreamBlockQueue {
     public Iterator<StreamBlock> iterator() {
         return new Iterator<StreamBlock>() {
             private Iterator<StreamBlock> m_memoryIterator = m_memoryDeque.iterator();
+            private StreamBlock m_last;
             @Override
             public boolean hasNext() {
                 if (m_memoryIterator.hasNext()) {
@@ -136,7 +221,8 @@ public class StreamBlockQueue {
             @Override
             public StreamBlock next() {
                 if (m_memoryIterator.hasNext()) {
-                    return m_memoryIterator.next();
+                    m_last = inflate(m_memoryIterator.next());
+                    return m_last;
                 }
 
                 StreamBlock block = pollPersistentDeque(false);
@@ -147,6 +233,7 @@ public class StreamBlockQueue {
                     for (int ii = 0; ii < m_memoryDeque.size(); ii++) {
                         m_memoryIterator.next();
                     }
+                    m_last = block;
                     return block;
                 }
             }
@@ -154,13 +241,14 @@ public class StreamBlockQueue {
             @Override
             public void remove() {
                 m_memoryIterator.remove();
+                account(m_last, -1);
             }
         };
     }
 
     public StreamBlock peek() {
         if (m_memoryDeque.peek() != null) {
-            return m_memoryDeque.peek();
+            return inflate(m_memoryDeque.peek());
         }
         return pollPersistentDeque(false);
     }
@@ -168,7 +256,8 @@ public class StreamBlockQueue {
     public StreamBlock poll() {
         StreamBlock sb = null;
         if (m_memoryDeque.peek() != null) {
-            sb = m_memoryDeque.poll();
+            sb = inflate(m_memoryDeque.poll());
+            account(sb, -1);
         } else {
             sb = pollPersistentDeque(true);
         }
@@ -183,7 +272,9 @@ public class StreamBlockQueue {
             }
             return sb;
         } else {
-            return m_memoryDeque.pop();
+            StreamBlock sb = inflate(m_memoryDeque.pop());
+            account(sb, -1);
+            return sb;
         }
     }
 
@@ -191,6 +282,10 @@ public class StreamBlockQueue {
      * Only allow two blocks in memory, put the rest in the persistent deque
      */
     public void offer(StreamBlock streamBlock) throws IOException {
+        if (m_budget != null) {
+            offerWithBudget(streamBlock);
+            return;
+        }
         //Already have two blocks, put it in the deque
         if (m_memoryDeque.size() > 1) {
             m_persistentDeque.offer(streamBlock.asBBContainer());
@@ -206,6 +301,101 @@ public class StreamBlockQueue {
         }
     }
 
+    /*
+     * Keep the block in memory if nothing is waiting in the persistent deque
+     * and the memory tier isn't already over budget. Either way give
+     * the budget a chance to evict from the largest backlog.
+     */
+    private void offerWithBudget(StreamBlock streamBlock) throws IOException {
+        if (m_persistentDeque.isEmpty() && !m_budget.isOverBudget(Tier.MEMORY)) {
+            m_memoryDeque.offer(streamBlock);
+            account(streamBlock, 1);
+        } else {
+            m_persistentDeque.offer(streamBlock.asBBContainer());
+        }
+        m_budget.enforce();
+    }
+
+    /*
+     * Called by the budget from any thread, the eviction itself
+     * is done on the thread that owns the queue
+     */
+    void requestEviction() {
+        if (m_executor == null || !m_evictionPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    m_evictionPending.set(false);
+                    try {
+                        evict();
+                    } catch (IOException e) {
+                        exportLog.error("Error evicting export data for " + m_nonce, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //The queue is being shut down and the memory will be released by close
+            m_evictionPending.set(false);
+        }
+    }
+
+    /*
+     * Move the oldest blocks down a tier until the budget is satisfied or there is nothing
+     * left in this queue that can be moved. Blocks are compressed while the compressed tier
+     * has room and spilled to disk after that.
+     */
+    void evict() throws IOException {
+        while (m_budget.isOverBudget(Tier.MEMORY) || m_budget.isOverBudget(Tier.COMPRESSED)) {
+            if (m_budget.isOverBudget(Tier.MEMORY) && !m_budget.isOverBudget(Tier.COMPRESSED)) {
+                if (compressOldest()) {
+                    continue;
+                }
+            }
+            if (!spill()) {
+                return;
+            }
+        }
+    }
+
+    private boolean compressOldest() throws IOException {
+        for (StreamBlock sb : m_memoryDeque) {
+            if (sb.canCompress()) {
+                account(sb, -1);
+                sb.compress();
+                account(sb, 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Push every block in memory to the front of the persistent deque and drop
+     * the in memory copies. Only possible when none of the blocks came from the persistent
+     * deque, otherwise the pushed blocks would end up behind blocks that follow them.
+     */
+    private boolean spill() throws IOException {
+        if (m_memoryDeque.isEmpty()) {
+            return false;
+        }
+        for (StreamBlock sb : m_memoryDeque) {
+            if (sb.isPersisted()) {
+                return false;
+            }
+        }
+        ArrayList<BBContainer> buffersToPush = new ArrayList<BBContainer>(m_memoryDeque.size());
+        while (m_memoryDeque.peek() != null) {
+            StreamBlock sb = inflate(m_memoryDeque.poll());
+            account(sb, -1);
+            buffersToPush.add(sb.asBBContainer());
+        }
+        m_persistentDeque.push(buffersToPush.toArray(new BBContainer[0]));
+        return true;
+    }
+
     /*
      * Push all the buffers that are in memory to disk
      * and then have the persistent deque sync.
@@ -221,6 +411,8 @@ public class StreamBlockQueue {
                     break;
                 }
                 m_memoryDeque.poll();
+                inflate(sb);
+                account(sb, -1);
                 buffersToPush.offer(sb.asBBContainer());
             }
 
@@ -233,6 +425,7 @@ public class StreamBlockQueue {
             }
             for (int ii = blocks.size() - 1; ii >= 0; ii--) {
                 m_memoryDeque.offerFirst(blocks.get(ii));
+                account(blocks.get(ii), 1);
             }
         }
 
@@ -255,16 +448,25 @@ public class StreamBlockQueue {
         sync(true);
         m_persistentDeque.close();
         for (StreamBlock sb : m_memoryDeque) {
+            account(sb, -1);
             sb.discard();
         }
         m_memoryDeque.clear();
+        if (m_budget != null) {
+            m_budget.unregister(this);
+        }
     }
 
     public void closeAndDelete() throws IOException {
         m_persistentDeque.closeAndDelete();
         for (StreamBlock sb : m_memoryDeque) {
+            account(sb, -1);
             sb.discard();
         }
+        m_memoryDeque.clear();
+        if (m_budget != null) {
+            m_budget.unregister(this);
+        }
     }
 
     public void truncateToTxnId(final long txnId, final int nullArrayLength) throws IOException {
@@ -582,6 +582,11 @@ public abstract class AbstractExpression implements JSONString, Cloneable {
         return expr;
     }
 
+    public static AbstractExpression fromJSONString(String jsontext, StmtTableScan tableScan) throws JSONException
+    {
+        return fromJSONObject(new JSONObject(jsontext), tableScan);
+    }
+
     public static List<AbstractExpression> fromJSONArrayString(String jsontext, StmtTableScan tableScan) throws JSONException
     {
         JSONArray jarray = new JSONArray(jsontext);
@@ -19,6 +19,7 @@ package org.voltdb.expressions;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
+import org.voltdb.VoltType;
 import org.voltdb.types.ExpressionType;
 
 /**
@@ -148,6 +150,126 @@ public abstract class ExpressionUtil {
         return out;
     }
 
+    /**
+     * Rewrite a disjunction of equality filters that all compare the same (column-based) expression
+     * to constants or parameters, e.g. "T.A = 1 OR T.A = ? OR 3 = T.A", as the equivalent IN LIST
+     * filter "T.A IN (1, ?, 3)", so that it can be indexed like any other IN LIST.
+     * A disjunction of conjunctions that each compare the same set of expressions,
+     * e.g. "(T.A = 1 AND T.B = 2) OR (T.B = 4 AND T.A = 3)", is the tuple IN LIST
+     * "(T.A, T.B) IN ((1, 2), (3, 4))". That is returned as one IN LIST per expression,
+     * "T.A IN (1, 3)" and "T.B IN (2, 4)", whose elements are paired up by position.
+     * Those lists are only equivalent to expr when they are zipped into tuples,
+     * NOT when they are applied as independent filters.
+     * Duplicate constant values or tuples are dropped from the lists.
+     * @param expr a candidate filter
+     * @return the equivalent IN LIST comparisons, one per compared expression,
+     *         or null if expr is not of that form.
+     */
+    public static List<AbstractExpression> convertOrOfEqualitiesToInLists(AbstractExpression expr)
+    {
+        if (expr.getExpressionType() != ExpressionType.CONJUNCTION_OR) {
+            return null;
+        }
+        List<AbstractExpression> disjuncts = new ArrayList<AbstractExpression>();
+        collectDisjuncts(expr, disjuncts);
+
+        // The first disjunct decides which expressions the others must be comparing.
+        List<AbstractExpression> keyExprs = new ArrayList<AbstractExpression>();
+        for (AbstractExpression equality : uncombineAny(disjuncts.get(0))) {
+            AbstractExpression keyExpr = getInListKey(equality);
+            if (keyExpr == null || keyExprs.contains(keyExpr)) {
+                return null;
+            }
+            keyExprs.add(keyExpr);
+        }
+
+        List<List<AbstractExpression>> tuples = new ArrayList<List<AbstractExpression>>();
+        for (AbstractExpression disjunct : disjuncts) {
+            Collection<AbstractExpression> equalities = uncombineAny(disjunct);
+            if (equalities.size() != keyExprs.size()) {
+                return null;
+            }
+            AbstractExpression[] tuple = new AbstractExpression[keyExprs.size()];
+            for (AbstractExpression equality : equalities) {
+                AbstractExpression keyExpr = getInListKey(equality);
+                int position = (keyExpr == null) ? -1 : keyExprs.indexOf(keyExpr);
+                if (position == -1 || tuple[position] != null) {
+                    return null;
+                }
+                tuple[position] = keyExpr.equals(equality.getLeft()) ? equality.getRight() : equality.getLeft();
+            }
+            List<AbstractExpression> elements = Arrays.asList(tuple);
+            if ( ! (isConstantTuple(elements) && tuples.contains(elements))) {
+                tuples.add(elements);
+            }
+        }
+
+        List<AbstractExpression> inLists = new ArrayList<AbstractExpression>();
+        for (int ii = 0; ii < keyExprs.size(); ++ii) {
+            List<AbstractExpression> listElements = new ArrayList<AbstractExpression>();
+            for (List<AbstractExpression> tuple : tuples) {
+                listElements.add(tuple.get(ii));
+            }
+            VectorValueExpression vve = new VectorValueExpression();
+            vve.setArgs(listElements);
+            InComparisonExpression inList = new InComparisonExpression();
+            inList.setLeft(keyExprs.get(ii));
+            inList.setRight(vve);
+            inList.finalizeValueTypes();
+            inLists.add(inList);
+        }
+        return inLists;
+    }
+
+    /**
+     * @return the column-based side of an equality filter that compares it to a constant or parameter,
+     *         or null if the filter is not of that form.
+     */
+    private static AbstractExpression getInListKey(AbstractExpression expr)
+    {
+        if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL) {
+            return null;
+        }
+        AbstractExpression keyExpr;
+        if (isInListElement(expr.getRight())) {
+            keyExpr = expr.getLeft();
+        } else if (isInListElement(expr.getLeft())) {
+            keyExpr = expr.getRight();
+        } else {
+            return null;
+        }
+        if ( ! keyExpr.hasAnySubexpressionOfType(ExpressionType.VALUE_TUPLE)) {
+            return null;
+        }
+        return keyExpr;
+    }
+
+    private static boolean isConstantTuple(List<AbstractExpression> elements)
+    {
+        for (AbstractExpression element : elements) {
+            if ( ! (element instanceof ConstantValueExpression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectDisjuncts(AbstractExpression expr, List<AbstractExpression> disjuncts)
+    {
+        if (expr.getExpressionType() == ExpressionType.CONJUNCTION_OR) {
+            collectDisjuncts(expr.getLeft(), disjuncts);
+            collectDisjuncts(expr.getRight(), disjuncts);
+        } else {
+            disjuncts.add(expr);
+        }
+    }
+
+    private static boolean isInListElement(AbstractExpression expr)
+    {
+        return (expr instanceof ConstantValueExpression || expr instanceof ParameterValueExpression) &&
+                expr.getValueType() != VoltType.NULL;
+    }
+
     public static boolean isColumnEquivalenceFilter(AbstractExpression expr) {
         // Ignore expressions that are not of COMPARE_EQUAL type
         if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL) {
@@ -218,5 +218,11 @@ public abstract class BaseInitiator implements Initiator
         return m_initiatorMailbox.getHSId();
     }
 
+    @Override
+    public SiteTaskerQueue getSiteTaskerQueue()
+    {
+        return m_scheduler.getQueue();
+    }
+
     abstract protected void acceptPromotion() throws Exception;
 }
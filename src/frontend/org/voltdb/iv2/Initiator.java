@@ -68,4 +68,7 @@ public interface Initiator
 
     /** Write a viable replay set to the command log */
     public void enableWritingIv2FaultLog();
+
+    /** The queue of tasks waiting to run on this initiator's site */
+    public SiteTaskerQueue getSiteTaskerQueue();
 }
@@ -42,6 +42,8 @@ class MpRoSitePool {
     final static VoltLogger tmLog = new VoltLogger("TM");
 
     static int DEFAULT_MAX_POOL_SIZE = 20;
+    static int DEFAULT_MIN_POOL_SIZE = 2;
+    static int DEFAULT_POOL_SIZE_CEILING = 100;
     static int INITIAL_POOL_SIZE = 1;
 
     class MpRoSiteContext {
@@ -104,6 +106,8 @@ class MpRoSitePool {
     private Deque<MpRoSiteContext> m_idleSites = new ArrayDeque<MpRoSiteContext>();
     // Active sites, hashed by the txnID they're working on
     private Map<Long, MpRoSiteContext> m_busySites = new HashMap<Long, MpRoSiteContext>();
+    // When each active transaction was handed to the pool, for the adaptive limit
+    private Map<Long, Long> m_startTimes = new HashMap<Long, Long>();
 
     // Stuff we need to construct new MpRoSites
     private final long m_siteId;
@@ -113,6 +117,8 @@ class MpRoSitePool {
     private CatalogContext m_catalogContext;
     private CatalogSpecificPlanner m_csp;
     private ThreadFactory m_poolThreadFactory;
+    // null when the pool size is fixed
+    private final MpRoSitePoolLimit m_adaptiveLimit;
     private final int m_poolSize;
 
     MpRoSitePool(
@@ -138,7 +144,19 @@ class MpRoSitePool {
             poolSize = DEFAULT_MAX_POOL_SIZE;
         }
         m_poolSize = poolSize;
-        tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize);
+        // The pool starts out at mpiReadPoolSize and adapts to the latency of the reads
+        // between the min and max sizes unless adaptation is turned off
+        if (Boolean.valueOf(System.getProperty("mpiReadPoolAdaptive", "true"))) {
+            int minSize = Integer.getInteger("mpiReadPoolMinSize", Math.min(DEFAULT_MIN_POOL_SIZE, m_poolSize));
+            int maxSize = Integer.getInteger("mpiReadPoolMaxSize", Math.max(DEFAULT_POOL_SIZE_CEILING, m_poolSize));
+            m_adaptiveLimit = new MpRoSitePoolLimit(m_poolSize, minSize, maxSize);
+            tmLog.info("Setting size of MPI read pool to: " + m_poolSize +
+                    ", adapting between " + minSize + " and " + maxSize);
+        }
+        else {
+            m_adaptiveLimit = null;
+            tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize);
+        }
 
         // Construct the initial pool
         for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
@@ -196,10 +214,18 @@ class MpRoSitePool {
      */
     boolean canAcceptWork()
     {
-        boolean retval = (!m_idleSites.isEmpty() || m_busySites.size() < m_poolSize);
+        boolean retval = m_busySites.size() < getPoolLimit();
         return retval;
     }
 
+    /**
+     * How many read-only transactions may run at once
+     */
+    int getPoolLimit()
+    {
+        return m_adaptiveLimit == null ? m_poolSize : m_adaptiveLimit.getLimit();
+    }
+
     /**
      * Attempt to start the transaction represented by the given task.  Need the txn ID for future reference.
      * @return true if work was started successfully, false if not.
@@ -227,6 +253,7 @@ class MpRoSitePool {
             }
             site = m_idleSites.pop();
             m_busySites.put(txnId, site);
+            m_startTimes.put(txnId, System.nanoTime());
         }
         site.offer(task);
         return true;
@@ -237,6 +264,10 @@ class MpRoSitePool {
      */
     void completeWork(long txnId)
     {
+        Long startTime = m_startTimes.remove(txnId);
+        if (m_adaptiveLimit != null && startTime != null) {
+            m_adaptiveLimit.onCompletion(System.nanoTime() - startTime, m_busySites.size());
+        }
         MpRoSiteContext site = m_busySites.remove(txnId);
         if (site == null) {
             throw new RuntimeException("No busy site for txnID: " + txnId + " found, shouldn't happen.");
@@ -244,8 +275,11 @@ class MpRoSitePool {
         // check the catalog versions, only push back onto idle if the catalog hasn't changed
         // otherwise, just let it get garbage collected and let doWork() construct new ones for the
         // pool with the updated catalog.
+        // Sites beyond what the limit allows after shrinking are shut down as well rather than
+        // keeping their threads around.
         if (site.getCatalogCRC() == m_catalogContext.getCatalogCRC()
-                && site.getCatalogVersion() == m_catalogContext.catalogVersion) {
+                && site.getCatalogVersion() == m_catalogContext.catalogVersion
+                && m_idleSites.size() + m_busySites.size() < Math.max(INITIAL_POOL_SIZE, getPoolLimit())) {
             m_idleSites.push(site);
         }
         else {
@@ -0,0 +1,91 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+/**
+ * Adapts the number of read-only multi-part transactions the MPI runs concurrently.
+ *
+ * Every read-only MP needs a turn on the site thread of each partition it touches, so
+ * running more of them than the partitions can absorb only makes them queue up there,
+ * in front of the single-partition work. Queueing at the partitions shows up as latency
+ * of the reads, so the limit follows the ratio of the best recently observed latency to
+ * the current smoothed latency: while the two agree the limit grows by roughly the square
+ * root of itself, and once latency inflates the limit shrinks in proportion. The limit
+ * only grows while the pool is actually busy enough to need it.
+ *
+ * Not thread safe, owned by the MpRoSitePool and used under the MpTransactionTaskQueue lock.
+ */
+class MpRoSitePoolLimit {
+    // weight of a new sample in the smoothed latency
+    private static final double LATENCY_SMOOTHING = 0.125;
+    // weight of a new estimate in the limit
+    private static final double LIMIT_SMOOTHING = 0.2;
+    // never shrink more than this in response to a single sample
+    private static final double MIN_GRADIENT = 0.5;
+    // forget the best latency periodically so it can follow changes in the workload
+    static final int BASELINE_WINDOW = 1000;
+
+    private final int m_minLimit;
+    private final int m_maxLimit;
+    private double m_limit;
+    private double m_smoothedLatency = 0;
+    private long m_baselineLatency = Long.MAX_VALUE;
+    private int m_samplesInWindow = 0;
+
+    MpRoSitePoolLimit(int initialLimit, int minLimit, int maxLimit) {
+        m_minLimit = Math.max(1, minLimit);
+        m_maxLimit = Math.max(m_minLimit, maxLimit);
+        m_limit = clamp(initialLimit);
+    }
+
+    int getLimit() {
+        return (int)m_limit;
+    }
+
+    /**
+     * @param latencyNanos how long a read-only transaction took from being handed to the pool
+     * until its completion
+     * @param inFlight how many read-only transactions were running when it completed,
+     * including itself
+     */
+    void onCompletion(long latencyNanos, int inFlight) {
+        latencyNanos = Math.max(1, latencyNanos);
+        if (m_smoothedLatency == 0) {
+            m_smoothedLatency = latencyNanos;
+        } else {
+            m_smoothedLatency += (latencyNanos - m_smoothedLatency) * LATENCY_SMOOTHING;
+        }
+        if (++m_samplesInWindow >= BASELINE_WINDOW) {
+            m_samplesInWindow = 0;
+            m_baselineLatency = (long)m_smoothedLatency;
+        }
+        m_baselineLatency = Math.min(m_baselineLatency, latencyNanos);
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, m_baselineLatency / m_smoothedLatency));
+        double estimate = m_limit * gradient + Math.sqrt(m_limit);
+        if (estimate > m_limit && inFlight * 2 < m_limit) {
+            // not using what we have, no evidence that more would help
+            return;
+        }
+        m_limit = clamp(m_limit * (1 - LIMIT_SMOOTHING) + estimate * LIMIT_SMOOTHING);
+    }
+
+    private double clamp(double limit) {
+        return Math.max(m_minLimit, Math.min(m_maxLimit, limit));
+    }
+}
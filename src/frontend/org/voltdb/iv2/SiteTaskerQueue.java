@@ -19,6 +19,7 @@ package org.voltdb.iv2;
 
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.StarvationTracker;
@@ -28,10 +29,16 @@ public class SiteTaskerQueue
 {
     private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
     private StarvationTracker m_starvationTracker;
+    // LinkedTransferQueue.size() walks the queue, keep a count for load reporting
+    private final AtomicInteger m_depth = new AtomicInteger(0);
 
     public boolean offer(SiteTasker task)
     {
-        return m_tasks.offer(task);
+        final boolean offered = m_tasks.offer(task);
+        if (offered) {
+            m_depth.incrementAndGet();
+        }
+        return offered;
     }
 
     // Block on the site tasker queue.
@@ -41,10 +48,13 @@ public class SiteTaskerQueue
         if (task == null) {
             m_starvationTracker.beginStarvation();
         } else {
+            m_depth.decrementAndGet();
             return task;
         }
         try {
-            return CoreUtils.queueSpinTake(m_tasks);
+            task = CoreUtils.queueSpinTake(m_tasks);
+            m_depth.decrementAndGet();
+            return task;
         } finally {
             m_starvationTracker.endStarvation();
         }
@@ -53,13 +63,22 @@ public class SiteTaskerQueue
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
-        return m_tasks.poll();
+        SiteTasker task = m_tasks.poll();
+        if (task != null) {
+            m_depth.decrementAndGet();
+        }
+        return task;
     }
 
     public boolean isEmpty() {
         return m_tasks.isEmpty();
     }
 
+    // Number of queued tasks. Can briefly lag behind the queue, good enough as a load hint.
+    public int size() {
+        return Math.max(0, m_depth.get());
+    }
+
     public void setStarvationTracker(StarvationTracker tracker) {
         m_starvationTracker = tracker;
     }
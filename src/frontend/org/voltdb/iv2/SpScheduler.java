@@ -25,7 +25,6 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +34,8 @@ import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.LongObjectHashMap;
+import org.voltcore.utils.LongPairObjectHashMap;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.CommandLog;
 import org.voltdb.CommandLog.DurabilityListener;
@@ -65,6 +66,8 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 {
     static final VoltLogger tmLog = new VoltLogger("TM");
 
+    // The duplicate counters are keyed by the two longs directly, this is only
+    // materialized to order and print them on the repair paths
     static class DuplicateCounterKey implements Comparable<DuplicateCounterKey>
     {
         private final long m_txnId;
@@ -132,10 +135,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     long m_sendToHSIds[] = new long[0];
 
     private final TransactionTaskQueue m_pendingTasks;
-    private final Map<Long, TransactionState> m_outstandingTxns =
-        new HashMap<Long, TransactionState>();
-    private final Map<DuplicateCounterKey, DuplicateCounter> m_duplicateCounters =
-        new HashMap<DuplicateCounterKey, DuplicateCounter>();
+    private final LongObjectHashMap<TransactionState> m_outstandingTxns =
+        new LongObjectHashMap<TransactionState>();
+    // keyed by (txnId, spHandle)
+    private final LongPairObjectHashMap<DuplicateCounter> m_duplicateCounters =
+        new LongPairObjectHashMap<DuplicateCounter>();
     // MP fragment tasks or completion tasks pending durability
     private final Map<Long, Queue<TransactionTask>> m_mpsPendingDurability =
         new HashMap<Long, Queue<TransactionTask>>();
@@ -238,18 +242,19 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         // Cleanup duplicate counters and collect DONE counters
         // in this list for further processing.
         List<DuplicateCounterKey> doneCounters = new LinkedList<DuplicateCounterKey>();
-        for (Entry<DuplicateCounterKey, DuplicateCounter> entry : m_duplicateCounters.entrySet()) {
-            DuplicateCounter counter = entry.getValue();
+        LongPairObjectHashMap<DuplicateCounter>.Cursor entry = m_duplicateCounters.cursor();
+        while (entry.advance()) {
+            DuplicateCounter counter = entry.value();
             int result = counter.updateReplicas(m_replicaHSIds);
             if (result == DuplicateCounter.DONE) {
-                doneCounters.add(entry.getKey());
+                doneCounters.add(new DuplicateCounterKey(entry.first(), entry.second()));
             }
         }
 
         // Maintain the CI invariant that responses arrive in txnid order.
         Collections.sort(doneCounters);
         for (DuplicateCounterKey key : doneCounters) {
-            DuplicateCounter counter = m_duplicateCounters.remove(key);
+            DuplicateCounter counter = m_duplicateCounters.remove(key.m_txnId, key.m_spHandle);
             VoltMessage resp = counter.getLastResponse();
             if (resp != null) {
                 // MPI is tracking deps per partition HSID.  We need to make
@@ -529,7 +534,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 DuplicateCounter counter = new DuplicateCounter(
                         msg.getInitiatorHSId(),
                         msg.getTxnId(), m_replicaHSIds, msg.getStoredProcedureName());
-                m_duplicateCounters.put(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
+                m_duplicateCounters.put(msg.getTxnId(), newSpHandle, counter);
             }
         }
         else {
@@ -605,7 +610,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         DuplicateCounter counter = new DuplicateCounter(
                 HostMessenger.VALHALLA,
                 message.getTxnId(), expectedHSIds, message.getStoredProcedureName());
-        m_duplicateCounters.put(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
+        m_duplicateCounters.put(message.getTxnId(), message.getSpHandle(), counter);
 
         m_uniqueIdGenerator.updateMostRecentlyGeneratedUniqueId(message.getUniqueId());
         // is local repair necessary?
@@ -635,7 +640,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         DuplicateCounter counter = new DuplicateCounter(
                 message.getCoordinatorHSId(), // Assume that the MPI's HSID hasn't changed
                 message.getTxnId(), expectedHSIds, "MP_DETERMINISM_ERROR");
-        m_duplicateCounters.put(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
+        m_duplicateCounters.put(message.getTxnId(), message.getSpHandle(), counter);
 
         // is local repair necessary?
         if (needsRepair.contains(m_mailbox.getHSId())) {
@@ -676,12 +681,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         }
 
         final long spHandle = message.getSpHandle();
-        final DuplicateCounterKey dcKey = new DuplicateCounterKey(message.getTxnId(), spHandle);
-        DuplicateCounter counter = m_duplicateCounters.get(dcKey);
+        DuplicateCounter counter = m_duplicateCounters.get(message.getTxnId(), spHandle);
         if (counter != null) {
             int result = counter.offer(message);
             if (result == DuplicateCounter.DONE) {
-                m_duplicateCounters.remove(dcKey);
+                m_duplicateCounters.remove(message.getTxnId(), spHandle);
                 m_repairLogTruncationHandle = spHandle;
                 m_mailbox.send(counter.m_destinationId, counter.getLastResponse());
             }
@@ -796,7 +800,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                             msg.getCoordinatorHSId(),
                             msg.getTxnId(), m_replicaHSIds, "MP_DETERMINISM_ERROR");
                 }
-                m_duplicateCounters.put(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
+                m_duplicateCounters.put(msg.getTxnId(), newSpHandle, counter);
             }
         }
         else {
@@ -917,11 +921,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     {
         // Send the message to the duplicate counter, if any
         DuplicateCounter counter =
-            m_duplicateCounters.get(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()));
+            m_duplicateCounters.get(message.getTxnId(), message.getSpHandle());
         if (counter != null) {
             int result = counter.offer(message);
             if (result == DuplicateCounter.DONE) {
-                m_duplicateCounters.remove(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()));
+                m_duplicateCounters.remove(message.getTxnId(), message.getSpHandle());
                 m_repairLogTruncationHandle = message.getSpHandle();
                 FragmentResponseMessage resp = (FragmentResponseMessage)counter.getLastResponse();
                 // MPI is tracking deps per partition HSID.  We need to make
@@ -992,13 +996,16 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         }
         hostLog.warn("" + who + ": most recent SP handle: " + getCurrentTxnId() + " " +
                 TxnEgo.txnIdToString(getCurrentTxnId()));
-        hostLog.warn("" + who + ": outstanding txns: " + m_outstandingTxns.keySet() + " " +
-                TxnEgo.txnIdCollectionToString(m_outstandingTxns.keySet()));
+        List<Long> outstandingTxnIds = Longs.asList(m_outstandingTxns.keys());
+        hostLog.warn("" + who + ": outstanding txns: " + outstandingTxnIds + " " +
+                TxnEgo.txnIdCollectionToString(outstandingTxnIds));
         hostLog.warn("" + who + ": TransactionTaskQueue: " + m_pendingTasks.toString());
         if (m_duplicateCounters.size() > 0) {
             hostLog.warn("" + who + ": duplicate counters: ");
-            for (Entry<DuplicateCounterKey, DuplicateCounter> e : m_duplicateCounters.entrySet()) {
-                hostLog.warn("\t" + who + ": " + e.getKey().toString() + ": " + e.getValue().toString());
+            LongPairObjectHashMap<DuplicateCounter>.Cursor e = m_duplicateCounters.cursor();
+            while (e.advance()) {
+                hostLog.warn("\t" + who + ": " + new DuplicateCounterKey(e.first(), e.second()) +
+                        ": " + e.value().toString());
             }
         }
     }
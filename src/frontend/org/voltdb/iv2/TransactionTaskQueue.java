@@ -17,12 +17,19 @@
 
 package org.voltdb.iv2;
 
+import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltdb.SiteProcedureConnection;
 import org.voltdb.dtxn.TransactionState;
+import org.voltdb.rejoin.TaskLog;
 
 public class TransactionTaskQueue
 {
@@ -42,6 +49,68 @@ public class TransactionTaskQueue
      */
     private long m_maxTaskedSpHandle;
 
+    /*
+     * Read-only multi-part fragments that complete their transaction here don't conflict
+     * with each other, so when several of them are adjacent at the head of the backlog they
+     * are handed to the site together instead of one barrier at a time. These are the txn ids
+     * of the ones in the backlog that were already handed over, they stay in the backlog
+     * as barriers for the single parts behind them until they are done.
+     */
+    private final Set<Long> m_readsOffered = new HashSet<Long>();
+
+    /*
+     * The batch the most recently handed over reads went out in, more reads can join it
+     * until the site starts running it.
+     */
+    private ReadFragmentBatch m_openBatch = null;
+
+    /**
+     * Runs a group of read-only multi-part fragments back to back as a single site task.
+     */
+    static class ReadFragmentBatch extends SiteTasker
+    {
+        private final List<TransactionTask> m_tasks = new ArrayList<TransactionTask>();
+        private boolean m_started = false;
+
+        synchronized boolean add(TransactionTask task)
+        {
+            if (m_started) {
+                return false;
+            }
+            m_tasks.add(task);
+            return true;
+        }
+
+        private synchronized List<TransactionTask> start()
+        {
+            m_started = true;
+            return m_tasks;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection)
+        {
+            for (TransactionTask task : start()) {
+                task.run(siteConnection);
+            }
+        }
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog)
+        throws IOException
+        {
+            for (TransactionTask task : start()) {
+                task.runForRejoin(siteConnection, rejoinTaskLog);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ReadFragmentBatch: " + m_tasks;
+        }
+    }
+
     TransactionTaskQueue(SiteTaskerQueue queue, long initialSpHandle)
     {
         m_taskQueue = queue;
@@ -70,13 +139,25 @@ public class TransactionTaskQueue
              * are being queued behind it. The txnid check catches tasks that are part of the multi-part
              * and immediately queues them for execution.
              */
-            if (task.getTxnId() != m_backlog.getFirst().getTxnId())
+            if (task.getTxnId() == m_backlog.getFirst().getTxnId() ||
+                m_readsOffered.contains(task.getTxnId()))
             {
+                taskQueueOffer(task);
+            }
+            else if (isBatchableRead(task) &&
+                     m_readsOffered.size() == m_backlog.size() &&
+                     !m_readsOffered.contains(task.getTxnId()))
+            {
+                // everything queued is a read that is already running or about to,
+                // this one can go along with them
                 m_backlog.addLast(task);
+                offerRead(task);
                 retval = true;
             }
-            else {
-                taskQueueOffer(task);
+            else
+            {
+                m_backlog.addLast(task);
+                retval = true;
             }
         }
         else {
@@ -90,17 +171,50 @@ public class TransactionTaskQueue
                 m_backlog.addLast(task);
                 retval = true;
             }
-            taskQueueOffer(task);
+            if (isBatchableRead(task)) {
+                offerRead(task);
+            }
+            else {
+                taskQueueOffer(task);
+            }
         }
         return retval;
     }
 
+    /**
+     * A read-only fragment that finishes its transaction at this site, so running
+     * it only has to wait for what is ahead of it in the queue.
+     */
+    private static boolean isBatchableRead(TransactionTask task)
+    {
+        if (task.getClass() != FragmentTask.class) {
+            return false;
+        }
+        TransactionState txnState = task.getTransactionState();
+        return txnState.isReadOnly() &&
+               !txnState.isSinglePartition() &&
+               ((FragmentTask)task).m_fragmentMsg.isFinalTask();
+    }
+
+    private void offerRead(TransactionTask task)
+    {
+        m_readsOffered.add(task.getTxnId());
+        Iv2Trace.logSiteTaskerQueueOffer(task);
+        if (m_openBatch == null || !m_openBatch.add(task)) {
+            m_openBatch = new ReadFragmentBatch();
+            m_openBatch.add(task);
+            m_taskQueue.offer(m_openBatch);
+        }
+    }
+
     // Add a local method to offer to the SiteTaskerQueue so we have
     // a single point we can log through.
     private void taskQueueOffer(TransactionTask task)
     {
         Iv2Trace.logSiteTaskerQueueOffer(task);
         m_taskQueue.offer(task);
+        // reads offered after this must not jump ahead of it
+        m_openBatch = null;
     }
 
     /**
@@ -135,11 +249,46 @@ public class TransactionTaskQueue
         if (m_backlog.isEmpty() || !m_backlog.getFirst().getTransactionState().isDone()) {
             return offered;
         }
-        m_backlog.removeFirst();
+        m_readsOffered.remove(m_backlog.removeFirst().getTxnId());
+        // Reads that went out along with the head are already at the site, drop
+        // the finished ones and leave the first unfinished one as the barrier
+        while (!m_backlog.isEmpty() && m_readsOffered.contains(m_backlog.getFirst().getTxnId())) {
+            if (!m_backlog.getFirst().getTransactionState().isDone()) {
+                return offered;
+            }
+            m_readsOffered.remove(m_backlog.removeFirst().getTxnId());
+        }
         Iterator<TransactionTask> iter = m_backlog.iterator();
         while (iter.hasNext()) {
             TransactionTask task = iter.next();
             long lastQueuedTxnId = task.getTxnId();
+            if (isBatchableRead(task)) {
+                // hand over the run of reads at the head of the backlog in one go,
+                // behind anything handed over before
+                m_openBatch = null;
+                offerRead(task);
+                ++offered;
+                while (iter.hasNext()) {
+                    task = iter.next();
+                    if (!isBatchableRead(task) || m_readsOffered.contains(task.getTxnId())) {
+                        break;
+                    }
+                    offerRead(task);
+                    ++offered;
+                }
+                // same kooky case as below, for every read that went out
+                Set<Long> seen = new HashSet<Long>();
+                Iterator<TransactionTask> followOns = m_backlog.iterator();
+                while (followOns.hasNext()) {
+                    task = followOns.next();
+                    if (m_readsOffered.contains(task.getTxnId()) && !seen.add(task.getTxnId())) {
+                        followOns.remove();
+                        taskQueueOffer(task);
+                        ++offered;
+                    }
+                }
+                break;
+            }
             taskQueueOffer(task);
             ++offered;
             if (task.getTransactionState().isSinglePartition()) {
@@ -37,6 +37,7 @@ import org.voltdb.client.ClientStatsContext;
 import org.voltdb.client.NoConnectionsException;
 import org.voltdb.client.ProcCallException;
 import org.voltdb.client.ProcedureCallback;
+import org.voltdb.client.ResultCursor;
 
 /**
  * Provides a high-level wrapper around the core {@link Client} class to provide performance
@@ -291,6 +292,42 @@ public class JDBC4ClientConnection implements Closeable {
         }
     }
 
+    /**
+     * Executes a procedure synchronously and returns a cursor over the chunks of its results.
+     * Only the opening call is tracked in the execution statistics.
+     *
+     * @param chunkRows
+     *            the maximum number of rows in each chunk of results.
+     * @param procedure
+     *            the name of the procedure to call.
+     * @param parameters
+     *            the list of parameters to pass to the procedure.
+     * @return the cursor over the results of the procedure execution.
+     * @throws IOException
+     * @throws NoConnectionsException
+     * @throws ProcCallException
+     */
+    public ResultCursor executeWithCursor(int chunkRows, String procedure, long timeout, Object... parameters)
+            throws NoConnectionsException, IOException, ProcCallException {
+        long start = System.currentTimeMillis();
+        ClientImpl currentClient = this.getClient();
+        try {
+            ResultCursor cursor = currentClient.callProcedureWithCursor(chunkRows, timeout, TimeUnit.SECONDS,
+                    procedure, parameters);
+            this.statistics.update(procedure, cursor.getClientResponse());
+            return cursor;
+        }
+        catch (ProcCallException pce) {
+            this.statistics.update(procedure, System.currentTimeMillis() - start, false);
+            throw pce;
+        }
+        catch (NoConnectionsException e) {
+            this.statistics.update(procedure, System.currentTimeMillis() - start, false);
+            this.dropClient(currentClient);
+            throw e;
+        }
+    }
+
     /**
      * Internal asynchronous callback used to track the execution performance of asynchronous calls.
      */
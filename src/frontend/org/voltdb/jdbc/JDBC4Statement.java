@@ -36,6 +36,7 @@ import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ResultCursor;
 
 public class JDBC4Statement implements java.sql.Statement
 {
@@ -119,29 +120,7 @@ public class JDBC4Statement implements java.sql.Statement
             }
             catch(ProcCallException e)
             {
-                ClientResponse response = e.getClientResponse();
-                if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
-                } else {
-                    throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
-                }
+                throw toSQLException(e);
             }
             catch(IOException e)
             {
@@ -149,6 +128,52 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        // Execute the query paging through its results fetchSize rows at a time.
+        protected ResultCursor executeWithCursor(JDBC4ClientConnection connection, long timeout, int fetchSize) throws SQLException {
+            try
+            {
+                if (this.type == TYPE_EXEC)
+                    return connection.executeWithCursor(fetchSize, this.sql[0], timeout, this.parameters);
+                else
+                    return connection.executeWithCursor(fetchSize, "@AdHoc", timeout, this.sql[0]);
+            }
+            catch(ProcCallException e)
+            {
+                throw toSQLException(e);
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        static SQLException toSQLException(ProcCallException e)
+        {
+            ClientResponse response = e.getClientResponse();
+            if (response != null) {
+                // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
+                // for connection problems.
+                switch (response.getStatus()) {
+                case ClientResponse.CONNECTION_LOST:
+                    return SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
+                case ClientResponse.CONNECTION_TIMEOUT:
+                    return SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
+                case ClientResponse.SERVER_UNAVAILABLE:
+                    return SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
+                case ClientResponse.USER_ABORT:
+                    return SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
+                case ClientResponse.UNEXPECTED_FAILURE:
+                    return SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
+                case ClientResponse.GRACEFUL_FAILURE:
+                    return SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
+                default:
+                    return SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
+                }
+            } else {
+                return SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -336,6 +361,22 @@ public class JDBC4Statement implements java.sql.Statement
         this.result = createTrimmedResultSet(this.tableResults[this.tableResultIndex]);
     }
 
+    private void setCurrentStreamedResult(ResultCursor cursor) throws SQLException
+    {
+        this.lastUpdateCount = -1;
+        if (this.result != null)
+            this.result.close();
+        this.result = new JDBC4StreamedResultSet(this, cursor, maxRows);
+        this.tableResults = new VoltTable[] { this.result.getVoltTable() };
+        this.tableResultIndex = 0;
+    }
+
+    // Queries only page through their results when the application asked for a fetch size.
+    private boolean streamsResults(VoltSQL query)
+    {
+        return this.fetchSize > 0 && query.isQueryOfType(VoltSQL.TYPE_SELECT);
+    }
+
     private void closeAllOpenResults() throws SQLException
     {
         if (this.openResults != null)
@@ -406,7 +447,12 @@ public class JDBC4Statement implements java.sql.Statement
     protected boolean execute(VoltSQL query) throws SQLException
     {
         checkClosed();
-        if (query.isQueryOfType(VoltSQL.TYPE_SELECT,VoltSQL.TYPE_EXEC))
+        if (streamsResults(query))
+        {
+            setCurrentStreamedResult(query.executeWithCursor(this.sourceConnection.NativeConnection, this.m_timeout, this.fetchSize));
+            return true;
+        }
+        else if (query.isQueryOfType(VoltSQL.TYPE_SELECT,VoltSQL.TYPE_EXEC))
         {
             setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout), -1);
             return true;
@@ -493,6 +539,10 @@ public class JDBC4Statement implements java.sql.Statement
 
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
+        if (streamsResults(query)) {
+            setCurrentStreamedResult(query.executeWithCursor(this.sourceConnection.NativeConnection, this.m_timeout, this.fetchSize));
+            return this.result;
+        }
         setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout), -1);
         return this.result;
     }
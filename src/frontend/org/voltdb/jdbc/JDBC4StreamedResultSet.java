@@ -0,0 +1,233 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.jdbc;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.voltdb.VoltTable;
+import org.voltdb.client.ResultCursor;
+
+/**
+ * Forward only result set over the first result table of a query, paging through it a chunk
+ * of rows at a time with a {@link ResultCursor} instead of holding the whole table. Used when
+ * the application sets a fetch size on the statement.
+ */
+public class JDBC4StreamedResultSet extends JDBC4ResultSet
+{
+    private final ResultCursor cursor;
+    private final int maxRows;
+    // rows in the chunks preceding the current one
+    private int rowsBefore = 0;
+
+    public JDBC4StreamedResultSet(Statement sourceStatement, ResultCursor sourceCursor, int maxRows) throws SQLException
+    {
+        super(sourceStatement, firstChunk(sourceCursor));
+        this.cursor = sourceCursor;
+        this.maxRows = maxRows;
+    }
+
+    private static VoltTable firstChunk(ResultCursor cursor) throws SQLException
+    {
+        try
+        {
+            if (cursor.peekTableIndex() != 0)
+                throw SQLError.get(SQLError.GENERAL_ERROR, "Query returned no results");
+            return cursor.next();
+        }
+        catch(RuntimeException x)
+        {
+            throw SQLError.get(x);
+        }
+    }
+
+    // Move on to the next chunk of the first result table, if there is one.
+    private boolean nextChunk() throws SQLException
+    {
+        try
+        {
+            if (cursor.peekTableIndex() != 0)
+                return false;
+            rowsBefore += table.getRowCount();
+            table = cursor.next();
+            return true;
+        }
+        catch(RuntimeException x)
+        {
+            throw SQLError.get(x);
+        }
+    }
+
+    private boolean hasMoreChunks() throws SQLException
+    {
+        try
+        {
+            return cursor.peekTableIndex() == 0;
+        }
+        catch(RuntimeException x)
+        {
+            throw SQLError.get(x);
+        }
+    }
+
+    private boolean reachedMaxRows()
+    {
+        return maxRows > 0 && rowsBefore + table.getActiveRowIndex() + 1 >= maxRows;
+    }
+
+    private SQLException forwardOnly()
+    {
+        return SQLError.get(SQLError.ILLEGAL_STATEMENT, "ResultSet is TYPE_FORWARD_ONLY");
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public void afterLast() throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean first() throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean last() throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean previous() throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException
+    {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    // Releases the rows still held by the server along with the local chunk.
+    @Override
+    public void close() throws SQLException
+    {
+        if (table == null)
+            return;
+        super.close();
+        try
+        {
+            cursor.close();
+        }
+        catch(IOException x)
+        {
+            throw SQLError.get(x, SQLError.CONNECTION_FAILURE, x.getMessage());
+        }
+    }
+
+    @Override
+    public int getRow() throws SQLException
+    {
+        checkClosed();
+        return rowsBefore + table.getActiveRowIndex() + 1;
+    }
+
+    @Override
+    public int getType() throws SQLException
+    {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException
+    {
+        checkClosed();
+        return table.getActiveRowIndex() >= table.getRowCount() && !hasMoreChunks();
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException
+    {
+        checkClosed();
+        return rowsBefore == 0 && table.getActiveRowIndex() < 0;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException
+    {
+        checkClosed();
+        return rowsBefore == 0 && table.getActiveRowIndex() == 0;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException
+    {
+        checkClosed();
+        if (table.getActiveRowIndex() < 0 || table.getActiveRowIndex() >= table.getRowCount())
+            return false;
+        return reachedMaxRows() ||
+               (table.getActiveRowIndex() == table.getRowCount() - 1 && !hasMoreChunks());
+    }
+
+    @Override
+    public boolean next() throws SQLException
+    {
+        checkClosed();
+        if (table.getActiveRowIndex() >= 0 && reachedMaxRows())
+            return false;
+        try
+        {
+            while (!table.advanceRow())
+            {
+                if (!nextChunk())
+                    return false;
+            }
+            return true;
+        }
+        catch(SQLException x)
+        {
+            throw x;
+        }
+        catch(Exception x)
+        {
+            throw SQLError.get(x);
+        }
+    }
+}
@@ -17,55 +17,89 @@
 
 package org.voltdb.planner;
 
-import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.json_voltpatches.JSONException;
+import org.voltcore.logging.VoltLogger;
 import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.jni.Sha1Wrapper;
 
+/**
+ * The plan fragments known to the sites of this host, shared by all of them.
+ *
+ * Lookups by hash and by id and the reference counting don't take a lock. A fragment
+ * whose count drops to 0 is queued as an eviction candidate and reclaimed later by
+ * whichever thread adds a fragment to a full cache. Only that thread orders the
+ * candidates by last use, and a fragment is only evicted if it can be marked dead
+ * while still unreferenced.
+ */
 public abstract class ActivePlanRepository {
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
 
     /// A plan fragment entry in the cache.
     private static class FragInfo {
         final Sha1Wrapper hash;
         final long fragId;
         final byte[] plan;
-        int refCount;
-        /// The ticker value current when this fragment was last (dis)used.
-        /// A new FragInfo or any other not in the LRU map because it is being referenced has value 0.
-        /// A non-zero value is either the fragment's current key in the LRU map OR its intended/future
-        /// key, if it has been lazily updated after the fragment was reused.
-        long lastUse;
+        /// The number of references, -1 once the fragment has been evicted.
+        final AtomicInteger refCount = new AtomicInteger(0);
+        /// The ticker value current when this fragment was last disused.
+        /// Only meaningful while the fragment is unreferenced. The LRU map may hold
+        /// the fragment at older keys, those entries are corrected when they are polled.
+        volatile long lastUse = 0;
+        /// Whether the fragment is queued as an eviction candidate or in the LRU map.
+        final AtomicBoolean isCandidate = new AtomicBoolean(false);
 
         FragInfo(Sha1Wrapper key, byte[] plan, long nextId)
         {
             this.hash = key;
             this.plan = plan;
             this.fragId = nextId;
-            this.refCount = 0;
-            this.lastUse = 0;
+        }
+
+        boolean tryAddRef() {
+            while (true) {
+                final int refCount = this.refCount.get();
+                if (refCount < 0) {
+                    return false;
+                }
+                if (this.refCount.compareAndSet(refCount, refCount + 1)) {
+                    return true;
+                }
+            }
         }
     }
 
-    private static HashMap<Sha1Wrapper, FragInfo> m_plansByHash = new HashMap<Sha1Wrapper, FragInfo>();
-    private static HashMap<Long, FragInfo> m_plansById = new HashMap<Long, FragInfo>();
-    private static TreeMap<Long, FragInfo> m_plansLRU = new TreeMap<Long, FragInfo>();
+    private static final ConcurrentHashMap<Sha1Wrapper, FragInfo> m_plansByHash =
+            new ConcurrentHashMap<Sha1Wrapper, FragInfo>();
+    private static final ConcurrentHashMap<Long, FragInfo> m_plansById =
+            new ConcurrentHashMap<Long, FragInfo>();
+    private static final AtomicInteger m_planCount = new AtomicInteger(0);
+    /// Fragments that became unreferenced since the last eviction, not yet in the LRU map.
+    private static final ConcurrentLinkedQueue<FragInfo> m_evictionCandidates =
+            new ConcurrentLinkedQueue<FragInfo>();
+    /// Guards the LRU map, held by the one thread evicting at a time.
+    private static final ReentrantLock m_evictionLock = new ReentrantLock();
+    private static final TreeMap<Long, FragInfo> m_plansLRU = new TreeMap<Long, FragInfo>();
     /// A ticker that provides temporary ids for all cached fragments, for communicating with the EE.
     private static final long INITIAL_FRAG_ID = 5000;
-    private static long m_nextFragId = INITIAL_FRAG_ID;
+    private static final AtomicLong m_nextFragId = new AtomicLong(INITIAL_FRAG_ID);
     /// A ticker that allows the sequencing of all fragment uses, providing a key to the LRU map.
-    private static long m_nextFragUse = 1;
+    private static final AtomicLong m_nextFragUse = new AtomicLong(1);
 
     /**
      * Get the site-local fragment id for a given plan identified by 20-byte sha-1 hash
      */
     public static long getFragmentIdForPlanHash(byte[] planHash) {
         Sha1Wrapper key = new Sha1Wrapper(planHash);
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansByHash.get(key);
-        }
+        FragInfo frag = m_plansByHash.get(key);
         assert(frag != null);
         return frag.fragId;
     }
@@ -75,79 +109,135 @@ public abstract class ActivePlanRepository {
      * If the plan isn't known to this SPC, load it up. Otherwise addref it.
      */
     public static long loadOrAddRefPlanFragment(byte[] planHash, byte[] plan) {
+        return loadOrAddRefPlanFragment(planHash, plan, null);
+    }
+
+    /**
+     * Same as {@link #loadOrAddRefPlanFragment(byte[], byte[])} for a plan that comes with
+     * its binary encoding, which is handed to the EE as is. It may be null.
+     */
+    public static long loadOrAddRefPlanFragment(byte[] planHash, byte[] plan, byte[] binaryPlan) {
         Sha1Wrapper key = new Sha1Wrapper(planHash);
-        synchronized (FragInfo.class) {
+        while (true) {
             FragInfo frag = m_plansByHash.get(key);
-            if (frag == null) {
-                frag = new FragInfo(key, plan, m_nextFragId++);
-                m_plansByHash.put(frag.hash, frag);
-                m_plansById.put(frag.fragId, frag);
-                if (m_plansById.size() > ExecutionEngine.EE_PLAN_CACHE_SIZE) {
-                    evictLRUfragment();
+            if (frag != null) {
+                // The fragment MAY be an eviction candidate.
+                // An incremented refCount is a lazy way to keep it safe from eviction
+                // without having to update the LRU map.
+                if (frag.tryAddRef()) {
+                    return frag.fragId;
                 }
+                // Lost a race with its eviction, clear the way for a new entry.
+                m_plansByHash.remove(key, frag);
+                continue;
+            }
+
+            frag = new FragInfo(key, planForEE(plan, binaryPlan), m_nextFragId.getAndIncrement());
+            frag.refCount.set(1);
+            // Publish by id first, anyone who finds the fragment by hash can then get the plan.
+            m_plansById.put(frag.fragId, frag);
+            FragInfo existing = m_plansByHash.putIfAbsent(key, frag);
+            if (existing != null) {
+                // Another site loaded the same plan first, use that one.
+                m_plansById.remove(frag.fragId);
+                continue;
+            }
+            if (m_planCount.incrementAndGet() > ExecutionEngine.EE_PLAN_CACHE_SIZE) {
+                evictLRUfragment();
             }
-            // The fragment MAY be in the LRU map.
-            // An incremented refCount is a lazy way to keep it safe from eviction
-            // without having to update the map.
-            // This optimizes for popular fragments in a small or stable cache that may be reused
-            // many times before the eviction process needs to take any notice.
-            frag.refCount++;
             return frag.fragId;
         }
     }
 
+    /*
+     * The EE gets plans in the binary encoding. Planner output already has it, catalog plans
+     * are encoded once here for all of the sites. A plan that doesn't parse is passed on as is
+     * for the EE to report.
+     */
+    private static byte[] planForEE(byte[] plan, byte[] binaryPlan) {
+        if (!BinaryPlanEncoding.ENABLED) {
+            return plan;
+        }
+        if (binaryPlan != null) {
+            return binaryPlan;
+        }
+        try {
+            return BinaryPlanEncoding.encode(plan);
+        } catch (JSONException e) {
+            hostLog.warn("Unable to encode plan fragment, passing it to the EE as JSON", e);
+            return plan;
+        }
+    }
+
     private static void evictLRUfragment() {
         /// Evict the least recently used fragment (if any are currently unused).
-        /// Along the way, update any obsolete entries that were left
-        /// by the laziness of the fragment state changes (fragment reuse).
-        /// In the rare case of a cache bloated beyond its usual limit,
-        /// keep evicting as needed and as entries are available until the bloat is gone.
-
-        while ( ! m_plansLRU.isEmpty()) {
-            // Remove the earliest entry.
-            Entry<Long, FragInfo> lru = m_plansLRU.pollFirstEntry();
-            FragInfo frag = lru.getValue();
-            if (frag.refCount > 0) {
-                // The fragment is being re-used, it is no longer an eviction candidate.
-                // It is only in the map due to the laziness in loadOrAddRefPlanFragment.
-                // It will be re-considered (at a later key) once it is no longer referenced.
-                // Resetting its lastUse to 0, here, restores it to a state identical to that
-                // of a new fragment.
-                // It eventually causes decrefPlanFragmentById to put it back in the map
-                // at its then up-to-date key.
-                // This makes it safe to keep out of the LRU map for now.
-                // See the comment in decrefPlanFragmentById and the one in the next code block.
-                frag.lastUse = 0;
-            }
-            else if (lru.getKey() != frag.lastUse) {
-                // The fragment is not in use but has been re-used more recently than the key reflects.
-                // This is a result of the laziness in decrefPlanFragmentById.
-                // Correct the entry's key in the LRU map to reflect its last use.
-                // This may STILL be the least recently used entry.
-                // If so, it will be picked off in a later iteration of this loop;
-                // its key will now match its lastUse value.
-                m_plansLRU.put(frag.lastUse, frag);
+        /// A thread that finds another one already evicting leaves it to that thread,
+        /// the cache bloats a little until the next new fragment.
+        if (!m_evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            FragInfo candidate;
+            while ((candidate = m_evictionCandidates.poll()) != null) {
+                m_plansLRU.put(candidate.lastUse, candidate);
             }
-            else {
+
+            /// Along the way, update any obsolete entries that were left
+            /// by the laziness of the fragment state changes (fragment reuse).
+            /// In the rare case of a cache bloated beyond its usual limit,
+            /// keep evicting as needed and as entries are available until the bloat is gone.
+            while ( ! m_plansLRU.isEmpty()) {
+                // Remove the earliest entry.
+                Entry<Long, FragInfo> lru = m_plansLRU.pollFirstEntry();
+                FragInfo frag = lru.getValue();
+                int refCount = frag.refCount.get();
+                if (refCount < 0) {
+                    // A stale entry for a fragment that was already evicted.
+                    continue;
+                }
+                if (refCount > 0) {
+                    // The fragment is being re-used, it is no longer an eviction candidate.
+                    // Dropping the candidate flag makes decrefPlanFragmentById queue it again
+                    // once it is no longer referenced. Check the count again after dropping it
+                    // in case the last reference went away in between without queuing it.
+                    frag.isCandidate.set(false);
+                    if (frag.refCount.get() != 0 || !frag.isCandidate.compareAndSet(false, true)) {
+                        continue;
+                    }
+                }
+                if (lru.getKey() != frag.lastUse) {
+                    // The fragment is not in use but has been re-used more recently than the key reflects.
+                    // Correct the entry's key in the LRU map to reflect its last use.
+                    // This may STILL be the least recently used entry.
+                    // If so, it will be picked off in a later iteration of this loop;
+                    // its key will now match its lastUse value.
+                    m_plansLRU.put(frag.lastUse, frag);
+                    continue;
+                }
+                if (!frag.refCount.compareAndSet(0, -1)) {
+                    // Referenced again since it was checked, treat it like any other re-used fragment.
+                    m_plansLRU.put(lru.getKey(), frag);
+                    continue;
+                }
                 // Found and removed the actual up-to-date least recently used entry from the LRU map.
                 // Remove the entry from the other collections.
-                m_plansById.remove(frag.fragId);
-                m_plansByHash.remove(frag.hash);
+                m_plansById.remove(frag.fragId, frag);
+                m_plansByHash.remove(frag.hash, frag);
                 // Normally, one eviction for each new fragment is enough to restore order.
                 // BUT, if a prior call ever failed to find an unused fragment in the cache,
                 // the cache may have grown beyond its normal size. In that rare case,
                 // one eviction is not enough to reduce the cache to the desired size,
                 // so take another bite at the apple.
-                // Otherwise, trading exactly one evicted fragment for each new fragment
-                // would never reduce the cache.
-                if (m_plansById.size() > ExecutionEngine.EE_PLAN_CACHE_SIZE) {
-                     continue;
+                if (m_planCount.decrementAndGet() > ExecutionEngine.EE_PLAN_CACHE_SIZE) {
+                    continue;
                 }
                 return;
             }
+            // Strange. All FragInfo entries appear to be in use. There's nothing to evict.
+            // Let the cache bloat a little and try again later after the next new fragment.
+        } finally {
+            m_evictionLock.unlock();
         }
-        // Strange. All FragInfo entries appear to be in use. There's nothing to evict.
-        // Let the cache bloat a little and try again later after the next new fragment.
     }
 
     /**
@@ -158,51 +248,40 @@ public abstract class ActivePlanRepository {
         // skip dummy/invalid fragment ids
         if (fragmentId <= 0) return;
 
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansById.get(fragmentId);
-            // The assert that used to be here would fail in TestAdHocQueries when it
-            // re-initialized the RealVoltDB, clearing the m_plansById before
-            // all SQLStmts were finalized. Maybe that's just a "test bug" that would be
-            // better fixed with some kind of test-only cleanup hook?
-            // OR It's possible that this early return is covering for a minor bug.
-            // Maybe SQLStmt.finalize is calling this method when it shouldn't?
-            // Maybe that's because the SQLStmt site member should be null in more cases?
-            //assert(frag != null);
-            if (frag == null) {
-                return;
-            }
-            if (--frag.refCount == 0) {
-                // The disused fragment belongs in the LRU map at the end -- at the current "ticker".
-                // If its lastUse value is 0 like a new entry's, it is not currently in the map.
-                // Put into the map in its proper position.
-                // If it is already in the LRU map (at a "too early" entry), just set its lastUse value
-                // as a cheap way to notify evictLRUfragment that it is not ready for eviction but
-                // should instead be re-ordered further forward in the map.
-                // This re-ordering only needs to happen when the eviction process considers the entry.
-                // For a popular fragment in a small or stable cache, that may be after MANY
-                // re-uses like this.
-                // This prevents thrashing of the LRU map, repositioning recent entries.
-                boolean notInLRUmap = (frag.lastUse == 0); // check this BEFORE updating lastUse
-                frag.lastUse = ++m_nextFragUse;
-                if (notInLRUmap) {
-                    m_plansLRU.put(frag.lastUse, frag);
-                }
+        FragInfo frag = m_plansById.get(fragmentId);
+        // The assert that used to be here would fail in TestAdHocQueries when it
+        // re-initialized the RealVoltDB, clearing the m_plansById before
+        // all SQLStmts were finalized. Maybe that's just a "test bug" that would be
+        // better fixed with some kind of test-only cleanup hook?
+        // OR It's possible that this early return is covering for a minor bug.
+        // Maybe SQLStmt.finalize is calling this method when it shouldn't?
+        // Maybe that's because the SQLStmt site member should be null in more cases?
+        //assert(frag != null);
+        if (frag == null) {
+            return;
+        }
+        if (frag.refCount.decrementAndGet() == 0) {
+            // The disused fragment belongs in the LRU map at the end -- at the current "ticker".
+            // If it is not a candidate yet, queue it for the next eviction to put into the map.
+            // If it already is, just set its lastUse value as a cheap way to notify evictLRUfragment
+            // that it is not ready for eviction but should instead be re-ordered further forward.
+            // This prevents thrashing of the LRU map for a popular fragment.
+            frag.lastUse = m_nextFragUse.incrementAndGet();
+            if (frag.isCandidate.compareAndSet(false, true)) {
+                m_evictionCandidates.offer(frag);
             }
         }
     }
 
     /**
-     * Get the full JSON plan associated with a given site-local fragment id.
+     * Get the plan associated with a given site-local fragment id, in the binary
+     * encoding unless it's turned off. See {@link BinaryPlanEncoding}.
      * Called by the EE
      */
     public static byte[] planForFragmentId(long fragmentId) {
         assert(fragmentId > 0);
 
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansById.get(fragmentId);
-        }
+        FragInfo frag = m_plansById.get(fragmentId);
         assert(frag != null);
         return frag.plan;
     }
@@ -210,20 +289,23 @@ public abstract class ActivePlanRepository {
     @Deprecated
     public static void addFragmentForTest(long fragmentId, byte[] plan) {
         Sha1Wrapper key = new Sha1Wrapper(new byte[20]);
-        synchronized (FragInfo.class) {
-            FragInfo frag = new FragInfo(key, plan, fragmentId);
-            m_plansById.put(frag.fragId, frag);
-            frag.refCount++;
-        }
+        FragInfo frag = new FragInfo(key, plan, fragmentId);
+        frag.refCount.set(1);
+        m_plansById.put(frag.fragId, frag);
     }
 
     public static void clear() {
-        synchronized (FragInfo.class) {
+        m_evictionLock.lock();
+        try {
             m_plansById.clear();
             m_plansByHash.clear();
+            m_planCount.set(0);
+            m_evictionCandidates.clear();
             m_plansLRU.clear();
-            m_nextFragId = INITIAL_FRAG_ID;
-            m_nextFragUse = 1;
+            m_nextFragId.set(INITIAL_FRAG_ID);
+            m_nextFragUse.set(1);
+        } finally {
+            m_evictionLock.unlock();
         }
     }
 }
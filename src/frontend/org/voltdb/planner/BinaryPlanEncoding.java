@@ -0,0 +1,763 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONString;
+import org.json_voltpatches.JSONStringer;
+import org.json_voltpatches.JSONWriter;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.plannodes.AbstractPlanNode;
+
+import com.google_voltpatches.common.base.Charsets;
+
+/**
+ * A compact binary form of a JSON plan fragment, the form the EE gets plans in.
+ *
+ * JSON is still what goes in the catalog, what the plan hashes are computed from and what
+ * EXPLAIN reads back. Plans the planner hands over for execution, the ad hoc ones, also
+ * come with the binary form written by a {@link Writer} from the same serializer calls.
+ * Catalog plans are encoded from their JSON once when they are loaded into the
+ * {@link ActivePlanRepository}. Either way every site's EE builds its DOM from the binary
+ * form on a plan cache miss without tokenizing text or parsing numbers. The member names,
+ * which repeat in every plan node and expression, are only stored once.
+ *
+ * Layout, all counts and lengths are unsigned LEB128 varints except as noted:
+ * <pre>
+ * 0x00 'V' 'P' version
+ * key count, key count * (length, UTF-8 bytes)
+ * value
+ * </pre>
+ * A value is a one byte tag followed by nothing for null/false/true, a zig-zag varint for an
+ * integer, 8 big endian bytes for a double, a length and UTF-8 bytes for a string, a 4 byte
+ * big endian count and the elements for an array, or a 4 byte big endian count of
+ * (key index, value) members for an object. A leading NUL can't start a JSON document, which
+ * is how the EE tells the two forms apart. The EE side is PlannerDomRoot in PlannerDomValue.h.
+ */
+public abstract class BinaryPlanEncoding {
+    public static final byte VERSION = 1;
+    private static final byte MAGIC[] = new byte[] { 0, 'V', 'P', VERSION };
+
+    /*
+     * Turn off to hand plans to the EE as JSON, for debugging an EE that misreads a plan
+     */
+    public static final boolean ENABLED =
+            Boolean.valueOf(System.getProperty("BINARY_PLAN_FRAGMENTS", "true"));
+
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte INT = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte ARRAY = 6;
+    static final byte OBJECT = 7;
+
+    private static final int MAX_DEPTH = 1000;
+
+    public static boolean isBinary(byte plan[]) {
+        return plan.length >= MAGIC.length && plan[0] == 0;
+    }
+
+    /**
+     * Encode a JSON plan, a plan that is already encoded is returned as is
+     */
+    public static byte[] encode(byte jsonPlan[]) throws JSONException {
+        if (isBinary(jsonPlan)) {
+            return jsonPlan;
+        }
+        final Encoder encoder = new Encoder(jsonPlan);
+        encoder.encodeValue(0);
+        encoder.skipWhitespace();
+        if (encoder.m_pos != jsonPlan.length) {
+            throw new JSONException("Unexpected content after the plan at offset " + encoder.m_pos);
+        }
+        return finish(encoder.m_body, encoder.m_keys);
+    }
+
+    /*
+     * Prefix the body with the magic and the member names
+     */
+    private static byte[] finish(ByteBuilder body, Map<String, Integer> keys) {
+        final ByteBuilder out = new ByteBuilder(body.m_length + 16 * keys.size());
+        out.put(MAGIC);
+        out.putVarint(keys.size());
+        for (String key : keys.keySet()) {
+            final byte keyBytes[] = key.getBytes(Charsets.UTF_8);
+            out.putVarint(keyBytes.length);
+            out.put(keyBytes);
+        }
+        out.put(body.m_bytes, 0, body.m_length);
+        return out.toByteArray();
+    }
+
+    private static int keyIndex(Map<String, Integer> keys, String key) {
+        Integer index = keys.get(key);
+        if (index == null) {
+            index = keys.size();
+            keys.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Decode a binary plan back to JSON, for debugging. A JSON plan is returned as is.
+     */
+    public static String decode(byte plan[]) throws JSONException {
+        if (!isBinary(plan)) {
+            return new String(plan, Charsets.UTF_8);
+        }
+        final Decoder decoder = new Decoder(plan);
+        if (plan[1] != MAGIC[1] || plan[2] != MAGIC[2] || plan[3] != VERSION) {
+            throw new JSONException("Unsupported binary plan version " + plan[3]);
+        }
+        decoder.m_pos = MAGIC.length;
+        final String keys[] = new String[decoder.readCount()];
+        for (int ii = 0; ii < keys.length; ii++) {
+            keys[ii] = decoder.readString();
+        }
+        final JSONStringer stringer = new JSONStringer();
+        decoder.decodeValue(stringer, keys);
+        return stringer.toString();
+    }
+
+    /**
+     * Writes the binary form straight from the plan serializer. It stands in for the
+     * JSONStringer that plan nodes and expressions serialize themselves to, so a plan the
+     * planner just produced never goes through JSON text on its way to the EE. The result
+     * is byte for byte what {@link #encode} makes of the JSON the same calls would write.
+     */
+    public static final class Writer extends JSONStringer {
+        private final ByteBuilder m_body = new ByteBuilder(1024);
+        private final Map<String, Integer> m_keys = new LinkedHashMap<String, Integer>();
+        // Open arrays and objects, innermost last
+        private int m_countPositions[] = new int[16];
+        private int m_counts[] = new int[16];
+        private boolean m_isObject[] = new boolean[16];
+        private int m_depth = 0;
+        private boolean m_hasKey = false;
+        private boolean m_done = false;
+
+        /*
+         * Account for a value about to be written in the innermost array or object
+         */
+        private void beginValue() throws JSONException {
+            if (m_done) {
+                throw new JSONException("Value out of sequence.");
+            }
+            if (m_depth > 0) {
+                if (m_isObject[m_depth - 1]) {
+                    if (!m_hasKey) {
+                        throw new JSONException("Value out of sequence.");
+                    }
+                    m_hasKey = false;
+                } else {
+                    m_counts[m_depth - 1]++;
+                }
+            }
+        }
+
+        private void endValue() {
+            if (m_depth == 0) {
+                m_done = true;
+            }
+        }
+
+        private void push(byte tag) throws JSONException {
+            beginValue();
+            if (m_depth >= MAX_DEPTH) {
+                throw new JSONException("Plan is nested too deeply");
+            }
+            if (m_depth == m_counts.length) {
+                m_countPositions = Arrays.copyOf(m_countPositions, m_depth * 2);
+                m_counts = Arrays.copyOf(m_counts, m_depth * 2);
+                m_isObject = Arrays.copyOf(m_isObject, m_depth * 2);
+            }
+            m_body.put(tag);
+            m_countPositions[m_depth] = m_body.reserveInt();
+            m_counts[m_depth] = 0;
+            m_isObject[m_depth] = tag == OBJECT;
+            m_depth++;
+        }
+
+        private Writer pop(boolean isObject) throws JSONException {
+            if (m_depth == 0 || m_isObject[m_depth - 1] != isObject || m_hasKey) {
+                throw new JSONException(isObject ? "Misplaced endObject." : "Misplaced endArray.");
+            }
+            m_depth--;
+            m_body.putInt(m_countPositions[m_depth], m_counts[m_depth]);
+            endValue();
+            return this;
+        }
+
+        @Override
+        public Writer object() throws JSONException {
+            push(OBJECT);
+            return this;
+        }
+
+        @Override
+        public Writer endObject() throws JSONException {
+            return pop(true);
+        }
+
+        @Override
+        public Writer array() throws JSONException {
+            push(ARRAY);
+            return this;
+        }
+
+        @Override
+        public Writer endArray() throws JSONException {
+            return pop(false);
+        }
+
+        @Override
+        public Writer key(String key) throws JSONException {
+            if (key == null) {
+                throw new JSONException("Null key.");
+            }
+            if (m_depth == 0 || !m_isObject[m_depth - 1] || m_hasKey) {
+                throw new JSONException("Misplaced key.");
+            }
+            m_body.putVarint(keyIndex(m_keys, key));
+            m_counts[m_depth - 1]++;
+            m_hasKey = true;
+            return this;
+        }
+
+        @Override
+        public Writer value(boolean b) throws JSONException {
+            beginValue();
+            m_body.put(b ? TRUE : FALSE);
+            endValue();
+            return this;
+        }
+
+        @Override
+        public Writer value(long l) throws JSONException {
+            beginValue();
+            m_body.put(INT);
+            m_body.putVarint((l << 1) ^ (l >> 63));
+            endValue();
+            return this;
+        }
+
+        @Override
+        public Writer value(double d) throws JSONException {
+            return value(Double.valueOf(d));
+        }
+
+        @Override
+        public Writer value(Object o) throws JSONException {
+            // Plan nodes and expressions write their members straight to this writer
+            if (o instanceof AbstractPlanNode) {
+                object();
+                ((AbstractPlanNode)o).toJSONString(this);
+                return endObject();
+            }
+            if (o instanceof AbstractExpression) {
+                object();
+                ((AbstractExpression)o).toJSONString(this);
+                return endObject();
+            }
+            if (o == null || o.equals(null)) {
+                beginValue();
+                m_body.put(NULL);
+                endValue();
+                return this;
+            }
+            if (o instanceof Number) {
+                // Same text as the JSON writer, so the same integer or double choice
+                final String text = JSONObject.numberToString((Number)o);
+                beginValue();
+                m_body.putNumber(text);
+                endValue();
+                return this;
+            }
+            if (o instanceof Boolean) {
+                return value(((Boolean)o).booleanValue());
+            }
+            if (o instanceof JSONString || o instanceof JSONObject || o instanceof JSONArray ||
+                    o instanceof Map || o instanceof Collection || o.getClass().isArray()) {
+                return embed(o);
+            }
+            beginValue();
+            m_body.putString(o.toString());
+            endValue();
+            return this;
+        }
+
+        /*
+         * Anything else that writes itself as JSON goes through its text
+         */
+        private Writer embed(Object o) throws JSONException {
+            final JSONStringer stringer = new JSONStringer();
+            stringer.array().value(o).endArray();
+            final String text = stringer.toString();
+            final byte json[] = text.substring(1, text.length() - 1).getBytes(Charsets.UTF_8);
+            beginValue();
+            final Encoder encoder = new Encoder(json, m_body, m_keys);
+            encoder.encodeValue(m_depth);
+            encoder.skipWhitespace();
+            if (encoder.m_pos != json.length) {
+                throw new JSONException("Unexpected content after a value at offset " + encoder.m_pos);
+            }
+            endValue();
+            return this;
+        }
+
+        /**
+         * The finished binary plan
+         */
+        public byte[] toByteArray() throws JSONException {
+            if (!m_done) {
+                throw new JSONException("Unbalanced binary plan");
+            }
+            return finish(m_body, m_keys);
+        }
+
+        /**
+         * The plan as JSON, for debugging, or null if it isn't finished like a JSONStringer
+         */
+        @Override
+        public String toString() {
+            if (!m_done) {
+                return null;
+            }
+            try {
+                return decode(toByteArray());
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final class ByteBuilder {
+        private byte m_bytes[];
+        private int m_length = 0;
+
+        ByteBuilder(int capacity) {
+            m_bytes = new byte[Math.max(capacity, 64)];
+        }
+
+        private void ensure(int more) {
+            if (m_length + more > m_bytes.length) {
+                m_bytes = Arrays.copyOf(m_bytes, Math.max(m_bytes.length * 2, m_length + more));
+            }
+        }
+
+        void put(byte b) {
+            ensure(1);
+            m_bytes[m_length++] = b;
+        }
+
+        void put(byte bytes[]) {
+            put(bytes, 0, bytes.length);
+        }
+
+        void put(byte bytes[], int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, m_bytes, m_length, length);
+            m_length += length;
+        }
+
+        void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                m_bytes[m_length++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            m_bytes[m_length++] = (byte)value;
+        }
+
+        void putInt(int position, int value) {
+            m_bytes[position] = (byte)(value >>> 24);
+            m_bytes[position + 1] = (byte)(value >>> 16);
+            m_bytes[position + 2] = (byte)(value >>> 8);
+            m_bytes[position + 3] = (byte)value;
+        }
+
+        int reserveInt() {
+            ensure(4);
+            m_length += 4;
+            return m_length - 4;
+        }
+
+        void putString(String value) {
+            final byte string[] = value.getBytes(Charsets.UTF_8);
+            put(STRING);
+            putVarint(string.length);
+            put(string);
+        }
+
+        /*
+         * Same as the EE's JSON parser, a number without a fraction or exponent that
+         * fits in 64 bits is an integer and anything else is a double
+         */
+        void putNumber(String text) throws NumberFormatException {
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                try {
+                    final long value = Long.parseLong(text);
+                    put(INT);
+                    putVarint((value << 1) ^ (value >> 63));
+                    return;
+                } catch (NumberFormatException e) {
+                    //Out of range of a long, fall through to a double
+                }
+            }
+            final long bits = Double.doubleToLongBits(Double.parseDouble(text));
+            put(DOUBLE);
+            putInt(reserveInt(), (int)(bits >>> 32));
+            putInt(reserveInt(), (int)bits);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(m_bytes, m_length);
+        }
+    }
+
+    /*
+     * Single pass over the JSON text, the body is written as the values are
+     * read and the counts of arrays and objects are filled in at their ends
+     */
+    private static final class Encoder {
+        private final byte m_json[];
+        private int m_pos = 0;
+        private final ByteBuilder m_body;
+        private final Map<String, Integer> m_keys;
+        private final StringBuilder m_scratch = new StringBuilder();
+
+        Encoder(byte json[]) {
+            //Binary plans tend to come out at less than half of the JSON
+            this(json, new ByteBuilder(json.length / 2), new LinkedHashMap<String, Integer>());
+        }
+
+        Encoder(byte json[], ByteBuilder body, Map<String, Integer> keys) {
+            m_json = json;
+            m_body = body;
+            m_keys = keys;
+        }
+
+        private JSONException error(String message) {
+            return new JSONException(message + " at offset " + m_pos);
+        }
+
+        void skipWhitespace() {
+            while (m_pos < m_json.length) {
+                final byte b = m_json[m_pos];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    return;
+                }
+                m_pos++;
+            }
+        }
+
+        private byte next() throws JSONException {
+            skipWhitespace();
+            if (m_pos >= m_json.length) {
+                throw error("Unexpected end of plan");
+            }
+            return m_json[m_pos];
+        }
+
+        private void expect(String literal) throws JSONException {
+            for (int ii = 0; ii < literal.length(); ii++) {
+                if (m_pos >= m_json.length || m_json[m_pos++] != literal.charAt(ii)) {
+                    throw error("Expected " + literal);
+                }
+            }
+        }
+
+        void encodeValue(int depth) throws JSONException {
+            if (depth > MAX_DEPTH) {
+                throw error("Plan is nested too deeply");
+            }
+            final byte b = next();
+            switch (b) {
+            case '{': {
+                m_pos++;
+                m_body.put(OBJECT);
+                final int countPosition = m_body.reserveInt();
+                int count = 0;
+                if (next() == '}') {
+                    m_pos++;
+                } else {
+                    while (true) {
+                        if (next() != '"') {
+                            throw error("Expected a member name");
+                        }
+                        m_body.putVarint(keyIndex(m_keys, readString()));
+                        if (next() != ':') {
+                            throw error("Expected ':'");
+                        }
+                        m_pos++;
+                        encodeValue(depth + 1);
+                        count++;
+                        final byte separator = next();
+                        m_pos++;
+                        if (separator == '}') {
+                            break;
+                        } else if (separator != ',') {
+                            throw error("Expected ',' or '}'");
+                        }
+                    }
+                }
+                m_body.putInt(countPosition, count);
+                break;
+            }
+            case '[': {
+                m_pos++;
+                m_body.put(ARRAY);
+                final int countPosition = m_body.reserveInt();
+                int count = 0;
+                if (next() == ']') {
+                    m_pos++;
+                } else {
+                    while (true) {
+                        encodeValue(depth + 1);
+                        count++;
+                        final byte separator = next();
+                        m_pos++;
+                        if (separator == ']') {
+                            break;
+                        } else if (separator != ',') {
+                            throw error("Expected ',' or ']'");
+                        }
+                    }
+                }
+                m_body.putInt(countPosition, count);
+                break;
+            }
+            case '"':
+                m_body.putString(readString());
+                break;
+            case 't':
+                expect("true");
+                m_body.put(TRUE);
+                break;
+            case 'f':
+                expect("false");
+                m_body.put(FALSE);
+                break;
+            case 'n':
+                expect("null");
+                m_body.put(NULL);
+                break;
+            default:
+                encodeNumber();
+            }
+        }
+
+        private void encodeNumber() throws JSONException {
+            final int start = m_pos;
+            while (m_pos < m_json.length) {
+                final byte b = m_json[m_pos];
+                if ((b < '0' || b > '9') && b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E') {
+                    break;
+                }
+                m_pos++;
+            }
+            if (start == m_pos) {
+                throw error("Unexpected character '" + (char)m_json[m_pos] + "'");
+            }
+            final String text = new String(m_json, start, m_pos - start, Charsets.US_ASCII);
+            try {
+                m_body.putNumber(text);
+            } catch (NumberFormatException e) {
+                throw error("Bad number " + text);
+            }
+        }
+
+        /*
+         * Read a quoted string starting at the opening quote and undo its escapes
+         */
+        private String readString() throws JSONException {
+            m_pos++;
+            final int start = m_pos;
+            //Most strings in a plan have no escapes and are ASCII
+            while (m_pos < m_json.length) {
+                final byte b = m_json[m_pos];
+                if (b == '"') {
+                    m_pos++;
+                    return new String(m_json, start, m_pos - 1 - start, Charsets.UTF_8);
+                } else if (b == '\\') {
+                    break;
+                }
+                m_pos++;
+            }
+            m_scratch.setLength(0);
+            m_scratch.append(new String(m_json, start, m_pos - start, Charsets.UTF_8));
+            int runStart = m_pos;
+            while (true) {
+                if (m_pos >= m_json.length) {
+                    throw error("Unterminated string");
+                }
+                final byte b = m_json[m_pos];
+                if (b == '"') {
+                    m_scratch.append(new String(m_json, runStart, m_pos - runStart, Charsets.UTF_8));
+                    m_pos++;
+                    return m_scratch.toString();
+                } else if (b != '\\') {
+                    m_pos++;
+                    continue;
+                }
+                m_scratch.append(new String(m_json, runStart, m_pos - runStart, Charsets.UTF_8));
+                m_pos++;
+                if (m_pos >= m_json.length) {
+                    throw error("Unterminated string");
+                }
+                final byte escaped = m_json[m_pos++];
+                switch (escaped) {
+                case 'b': m_scratch.append('\b'); break;
+                case 't': m_scratch.append('\t'); break;
+                case 'n': m_scratch.append('\n'); break;
+                case 'f': m_scratch.append('\f'); break;
+                case 'r': m_scratch.append('\r'); break;
+                case 'u':
+                    if (m_pos + 4 > m_json.length) {
+                        throw error("Bad unicode escape");
+                    }
+                    try {
+                        m_scratch.append((char)Integer.parseInt(
+                                new String(m_json, m_pos, 4, Charsets.US_ASCII), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Bad unicode escape");
+                    }
+                    m_pos += 4;
+                    break;
+                default:
+                    m_scratch.append((char)escaped);
+                }
+                runStart = m_pos;
+            }
+        }
+    }
+
+    private static final class Decoder {
+        private final byte m_bytes[];
+        private int m_pos;
+
+        Decoder(byte bytes[]) {
+            m_bytes = bytes;
+        }
+
+        private byte readByte() throws JSONException {
+            if (m_pos >= m_bytes.length) {
+                throw new JSONException("Binary plan is truncated");
+            }
+            return m_bytes[m_pos++];
+        }
+
+        private long readVarint() throws JSONException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = readByte();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new JSONException("Bad varint in binary plan");
+        }
+
+        private int readCount() throws JSONException {
+            final long count = readVarint();
+            if (count > m_bytes.length - m_pos) {
+                throw new JSONException("Binary plan is truncated");
+            }
+            return (int)count;
+        }
+
+        private int readInt() throws JSONException {
+            int value = 0;
+            for (int ii = 0; ii < 4; ii++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private String readString() throws JSONException {
+            final int length = readCount();
+            final String s = new String(m_bytes, m_pos, length, Charsets.UTF_8);
+            m_pos += length;
+            return s;
+        }
+
+        void decodeValue(JSONWriter writer, String keys[]) throws JSONException {
+            final byte tag = readByte();
+            switch (tag) {
+            case NULL:
+                writer.value(JSONObject.NULL);
+                break;
+            case FALSE:
+                writer.value(false);
+                break;
+            case TRUE:
+                writer.value(true);
+                break;
+            case INT: {
+                final long zigzag = readVarint();
+                writer.value((zigzag >>> 1) ^ -(zigzag & 1));
+                break;
+            }
+            case DOUBLE: {
+                final long high = readInt() & 0xFFFFFFFFL;
+                final long low = readInt() & 0xFFFFFFFFL;
+                writer.value(Double.longBitsToDouble((high << 32) | low));
+                break;
+            }
+            case STRING:
+                writer.value(readString());
+                break;
+            case ARRAY: {
+                final int count = readInt();
+                writer.array();
+                for (int ii = 0; ii < count; ii++) {
+                    decodeValue(writer, keys);
+                }
+                writer.endArray();
+                break;
+            }
+            case OBJECT: {
+                final int count = readInt();
+                writer.object();
+                for (int ii = 0; ii < count; ii++) {
+                    final long index = readVarint();
+                    if (index >= keys.length) {
+                        throw new JSONException("Bad member name index " + index + " in binary plan");
+                    }
+                    writer.key(keys[(int)index]);
+                    decodeValue(writer, keys);
+                }
+                writer.endObject();
+                break;
+            }
+            default:
+                throw new JSONException("Unknown value tag " + tag + " in binary plan");
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
+import org.json_voltpatches.JSONException;
 import org.voltdb.ParameterSet;
 import org.voltdb.VoltType;
 import org.voltdb.common.Constants;
@@ -202,6 +203,24 @@ public class CompiledPlan {
         return planList.toJSONString().getBytes(Constants.UTF8ENCODING);
     }
 
+    /**
+     * The plan graph in the binary encoding the EE loads, see {@link BinaryPlanEncoding}.
+     * Null when binary plans are turned off or the graph can't be written, the JSON
+     * is then handed over instead.
+     */
+    public static byte[] binaryBytesForPlan(AbstractPlanNode planGraph) {
+        if (planGraph == null || !BinaryPlanEncoding.ENABLED) {
+            return null;
+        }
+
+        PlanNodeList planList = new PlanNodeList(planGraph);
+        try {
+            return planList.toBinaryPlan();
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
     // A reusable step extracted from boundParamIndexes so it can be applied to two different
     // sources of bindings, IndexScans and IndexCounts.
     private static void setParamIndexes(BitSet ints, List<AbstractExpression> params) {
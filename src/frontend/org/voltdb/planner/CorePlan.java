@@ -40,6 +40,13 @@ public class CorePlan {
     public final byte[] aggregatorFragment;
     public final byte[] collectorFragment;
 
+    /**
+     * The same plans in the EE's binary encoding, null when binary plans
+     * are turned off. Not part of the hashes. See {@link BinaryPlanEncoding}.
+     */
+    public final byte[] aggregatorBinaryFragment;
+    public final byte[] collectorBinaryFragment;
+
     /** hashes */
     public final byte[] aggregatorHash;
     public final byte[] collectorHash;
@@ -77,6 +84,8 @@ public class CorePlan {
     public CorePlan(CompiledPlan plan, int catalogVersion) {
         aggregatorFragment = CompiledPlan.bytesForPlan(plan.rootPlanGraph);
         collectorFragment = CompiledPlan.bytesForPlan(plan.subPlanGraph);
+        aggregatorBinaryFragment = CompiledPlan.binaryBytesForPlan(plan.rootPlanGraph);
+        collectorBinaryFragment = CompiledPlan.binaryBytesForPlan(plan.subPlanGraph);
 
         // compute the hashes
         MessageDigest md = null;
@@ -121,8 +130,36 @@ public class CorePlan {
                     boolean isReadOnly,
                     VoltType[] paramTypes,
                     int catalogVersion) {
+        this(aggregatorFragment, collectorFragment, null, null, aggregatorHash, collectorHash,
+             isReplicatedTableDML, isReadOnly, paramTypes, catalogVersion);
+    }
+
+    /***
+     * Constructor for deserialization
+     *
+     * @param aggregatorFragment        planned aggregator fragment
+     * @param collectorFragment         planned collector fragment
+     * @param aggregatorBinaryFragment  binary aggregator fragment, or null
+     * @param collectorBinaryFragment   binary collector fragment, or null
+     * @param isReplicatedTableDML      replication flag
+     * @param isReadOnly                does it write
+     * @param paramTypes                parameter type array
+     * @param catalogVersion            catalog version
+     */
+    public CorePlan(byte[] aggregatorFragment,
+                    byte[] collectorFragment,
+                    byte[] aggregatorBinaryFragment,
+                    byte[] collectorBinaryFragment,
+                    byte[] aggregatorHash,
+                    byte[] collectorHash,
+                    boolean isReplicatedTableDML,
+                    boolean isReadOnly,
+                    VoltType[] paramTypes,
+                    int catalogVersion) {
         this.aggregatorFragment = aggregatorFragment;
         this.collectorFragment = collectorFragment;
+        this.aggregatorBinaryFragment = aggregatorBinaryFragment;
+        this.collectorBinaryFragment = collectorBinaryFragment;
         this.aggregatorHash = aggregatorHash;
         this.collectorHash = collectorHash;
         this.isReplicatedTableDML = isReplicatedTableDML;
@@ -153,6 +190,8 @@ public class CorePlan {
         else {
             size += 4;
         }
+        size += 4 + (aggregatorBinaryFragment == null ? 0 : aggregatorBinaryFragment.length);
+        size += 4 + (collectorBinaryFragment == null ? 0 : collectorBinaryFragment.length);
         size += 3; // booleans
         size += 4; // catalog version
 
@@ -175,6 +214,8 @@ public class CorePlan {
             buf.put(collectorFragment);
             buf.put(collectorHash);
         }
+        putOptionalFragment(buf, aggregatorBinaryFragment);
+        putOptionalFragment(buf, collectorBinaryFragment);
 
         // booleans
         buf.put((byte) (isReplicatedTableDML ? 1 : 0));
@@ -205,6 +246,8 @@ public class CorePlan {
             collectorHash = new byte[20]; // sha-1 hash is 20b
             buf.get(collectorHash);
         }
+        byte[] aggregatorBinaryFragment = getOptionalFragment(buf);
+        byte[] collectorBinaryFragment = getOptionalFragment(buf);
 
         // booleans
         boolean isReplicatedTableDML = buf.get() == 1;
@@ -223,6 +266,8 @@ public class CorePlan {
         return new CorePlan(
                 aggregatorFragment,
                 collectorFragment,
+                aggregatorBinaryFragment,
+                collectorBinaryFragment,
                 aggregatorHash,
                 collectorHash,
                 isReplicatedTableDML,
@@ -231,6 +276,26 @@ public class CorePlan {
                 catalogVersion);
     }
 
+    private static void putOptionalFragment(ByteBuffer buf, byte[] fragment) {
+        if (fragment == null) {
+            buf.putInt(-1);
+        }
+        else {
+            buf.putInt(fragment.length);
+            buf.put(fragment);
+        }
+    }
+
+    private static byte[] getOptionalFragment(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] fragment = new byte[length];
+        buf.get(fragment);
+        return fragment;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#equals(java.lang.Object)
      *
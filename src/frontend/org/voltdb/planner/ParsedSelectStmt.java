@@ -1175,6 +1175,10 @@ public class ParsedSelectStmt extends AbstractParsedStmt {
                 if ( ! index.getUnique()) {
                     continue;
                 }
+                // skip partial indexes, which only enforce uniqueness among some of the rows
+                if ( ! index.getPredicatejson().isEmpty()) {
+                    continue;
+                }
 
                 // get the list of expressions for the index
                 List<AbstractExpression> indexExpressions = new ArrayList<AbstractExpression>();
@@ -50,6 +50,7 @@ import org.voltdb.planner.parseinfo.BranchNode;
 import org.voltdb.planner.parseinfo.JoinNode;
 import org.voltdb.planner.parseinfo.StmtSubqueryScan;
 import org.voltdb.planner.parseinfo.StmtTableScan;
+import org.voltdb.planner.parseinfo.StmtTargetTableScan;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
@@ -846,8 +847,11 @@ public class PlanAssembler {
         // If the scan matches all rows, we can throw away the scan
         // nodes and use a truncate delete node.
         // Assume all index scans have filters in this context, so only consider seq scans.
+        // A table joined into a materialized view must delete row by row so that the view
+        // sees each deleted row.
         if ( (subSelectRoot instanceof SeqScanPlanNode) &&
-                (((SeqScanPlanNode) subSelectRoot).getPredicate() == null)) {
+                (((SeqScanPlanNode) subSelectRoot).getPredicate() == null) &&
+                ! CatalogUtil.isTableMaterializeViewJoin(m_catalogDb, targetTable)) {
             deleteNode.setTruncate(true);
 
             if (m_partitioning.wasSpecifiedAsSingle()) {
@@ -1662,6 +1666,10 @@ public class PlanAssembler {
                 if ( ! IndexType.isScannable(index.getType())) {
                     continue;
                 }
+                // A partial index does not cover all of the rows of a sequential scan.
+                if ( ! index.getPredicatejson().isEmpty()) {
+                    continue;
+                }
 
                 ArrayList<AbstractExpression> allBindings = new ArrayList<AbstractExpression>();
                 boolean replacable = true;
@@ -1990,6 +1998,20 @@ public class PlanAssembler {
             for (ColumnRef colRef : index.getColumns()) {
                 columns.add(colRef.getColumn().getTypeName());
             }
+            // The columns of a partial index's WHERE clause decide which rows the index holds.
+            String predicatejson = index.getPredicatejson();
+            if ( ! predicatejson.isEmpty()) {
+                StmtTableScan tableScan = new StmtTargetTableScan(table, table.getTypeName());
+                try {
+                    AbstractExpression predicate = AbstractExpression.fromJSONString(predicatejson, tableScan);
+                    for (AbstractExpression tve : predicate.findAllSubexpressionsOfClass(TupleValueExpression.class)) {
+                        columns.add(((TupleValueExpression) tve).getColumnName());
+                    }
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                    assert(false);
+                }
+            }
         }
 
         return columns;
@@ -173,6 +173,25 @@ public class StatementPartitioning implements Cloneable{
         return new StatementPartitioning(m_inferPartitioning, m_forceSP);
     }
 
+    /**
+     * Take on the analysis results of an equivalent partitioning that was used to plan
+     * the same statement on another thread.
+     * @param planned a partitioning created with the same settings as this one
+     */
+    public void adoptAnalysis(StatementPartitioning planned) {
+        assert(planned.m_inferPartitioning == m_inferPartitioning);
+        assert(planned.m_forceSP == m_forceSP);
+        m_partitionColForDML = planned.m_partitionColForDML;
+        m_inferredValue = planned.m_inferredValue;
+        m_inferredParameterIndex = planned.m_inferredParameterIndex;
+        m_inferredExpression.clear();
+        m_inferredExpression.addAll(planned.m_inferredExpression);
+        m_countOfPartitionedTables = planned.m_countOfPartitionedTables;
+        m_countOfIndependentlyPartitionedTables = planned.m_countOfIndependentlyPartitionedTables;
+        m_isDML = planned.m_isDML;
+        m_fullColumnName = planned.m_fullColumnName;
+    }
+
     /**
      * accessor
      */
@@ -207,6 +226,14 @@ public class StatementPartitioning implements Cloneable{
     }
 
 
+    /**
+     * @return false if the statement's plan was reused without planning it,
+     * which leaves the counts and inferred partitioning unknown
+     */
+    public boolean isAnalyzed() {
+        return m_countOfPartitionedTables != -1;
+    }
+
     /**
      * accessor
      */
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.List;
 
 import org.json_voltpatches.JSONException;
+import org.voltcore.utils.Pair;
 import org.voltdb.VoltType;
 import org.voltdb.catalog.ColumnRef;
 import org.voltdb.catalog.Database;
@@ -211,6 +212,50 @@ public abstract class SubPlanAssembler {
         }
     };
 
+    /**
+     * Determine whether a set of filters implies the WHERE clause of a partial index.
+     * This is a conservative test: each conjunct of the index predicate must match one
+     * of the filters exactly, or, for a comparison, with its operands swapped.
+     *
+     * @param tableScan The table scan the index belongs to.
+     * @param exprs The conjunctive filters that every row of the scan must satisfy.
+     * @param predicatejson The serialized WHERE clause of the partial index.
+     * @return The parameter bindings the match depends on, or null if the predicate is not implied.
+     */
+    private static List<AbstractExpression> bindingsForPartialIndexPredicate(StmtTableScan tableScan,
+                                                                             List<AbstractExpression> exprs,
+                                                                             String predicatejson)
+    {
+        AbstractExpression predicate;
+        try {
+            predicate = AbstractExpression.fromJSONString(predicatejson, tableScan);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            assert(false);
+            return null;
+        }
+
+        List<AbstractExpression> bindings = new ArrayList<AbstractExpression>();
+        for (AbstractExpression conjunct : ExpressionUtil.uncombine(predicate)) {
+            List<AbstractExpression> conjunctBindings = null;
+            for (AbstractExpression expr : exprs) {
+                conjunctBindings = expr.bindingToIndexedExpression(conjunct);
+                if (conjunctBindings == null && expr instanceof ComparisonExpression &&
+                        ComparisonExpression.reverses.containsKey(expr.getExpressionType())) {
+                    conjunctBindings = ((ComparisonExpression) expr).reverseOperator().bindingToIndexedExpression(conjunct);
+                }
+                if (conjunctBindings != null) {
+                    break;
+                }
+            }
+            if (conjunctBindings == null) {
+                return null;
+            }
+            bindings.addAll(conjunctBindings);
+        }
+        return bindings;
+    }
+
     /**
      * Given a table, a set of predicate expressions and a specific index, find the best way to
      * access the data using the given index, or return null if no good way exists.
@@ -226,10 +271,40 @@ public abstract class SubPlanAssembler {
             return null;
         }
 
+        // A partial index is only usable when the filters imply its WHERE clause,
+        // so that no row the query wants can be missing from the index.
+        List<AbstractExpression> predicateBindings = null;
+        String predicatejson = index.getPredicatejson();
+        if ( ! predicatejson.isEmpty()) {
+            predicateBindings = bindingsForPartialIndexPredicate(tableScan, exprs, predicatejson);
+            if (predicateBindings == null) {
+                return null;
+            }
+        }
+
         // Track the running list of filter expressions that remain as each is either cherry-picked
         // for optimized coverage via the index keys.
         List<AbstractExpression> filtersToCover = new ArrayList<AbstractExpression>();
         filtersToCover.addAll(exprs);
+        // A disjunction of equality filters on one key expression can be indexed
+        // exactly like the equivalent IN LIST, with a MaterializedScan driving the lookups.
+        // A disjunction over several key expressions is a tuple IN LIST. Its per-expression
+        // IN LISTs are only valid together, zipped into the rows of one MaterializedScan,
+        // so the original filter stays in place until they are all matched to key components.
+        List<Pair<AbstractExpression, List<AbstractExpression>>> tupleInLists =
+            new ArrayList<Pair<AbstractExpression, List<AbstractExpression>>>();
+        for (int ii = 0; ii < filtersToCover.size(); ++ii) {
+            List<AbstractExpression> inLists =
+                ExpressionUtil.convertOrOfEqualitiesToInLists(filtersToCover.get(ii));
+            if (inLists == null) {
+                continue;
+            }
+            if (inLists.size() == 1) {
+                filtersToCover.set(ii, inLists.get(0));
+            } else {
+                tupleInLists.add(Pair.of(filtersToCover.get(ii), inLists));
+            }
+        }
 
         String exprsjson = index.getExpressionsjson();
         // This list remains null if the index is just on simple columns.
@@ -266,6 +341,11 @@ public abstract class SubPlanAssembler {
         AccessPath retval = new AccessPath();
         retval.use = IndexUseType.COVERING_UNIQUE_EQUALITY;
         retval.index = index;
+        if (predicateBindings != null) {
+            // A cached plan that relies on the partial index must not be reused
+            // with parameter values that no longer imply its WHERE clause.
+            retval.bindings.addAll(predicateBindings);
+        }
 
         // Try to use the index scan's inherent ordering to implement the ORDER BY clause.
         // The effects of determineIndexOrdering are reflected in
@@ -302,6 +382,8 @@ public abstract class SubPlanAssembler {
         // Otherwise, MaterializedScans would have to be multi-column and populated by a cross-product
         // of multiple lists OR multiple MaterializedScans would have to be cross-joined to get a
         // multi-column LHS for the injected NestLoopIndexJoin used for IN LIST indexing.
+        // The one exception is a tuple IN LIST, whose per-key-component lists are zipped rather than
+        // cross-producted into the rows of a single multi-column MaterializedScan.
         // So, note the one IN LIST filter when it is found, mostly to remember that one has been found.
         // This has implications for what kinds of filters on other key components can be included in
         // the index scan.
@@ -352,6 +434,31 @@ public abstract class SubPlanAssembler {
                         }
                         eqExpr = inListExpr;
                     }
+                    if (inListExpr == null) {
+                        List<IndexableExpression> tupleInList =
+                            getIndexableTupleInList(coveredCount, keyComponentCount,
+                                                    indexedExprs, indexedColIds, tableScan,
+                                                    tupleInLists, retval.indexExprs, filtersToCover);
+                        if (tupleInList != null) {
+                            // All but the last key component covered by the tuple IN LIST
+                            // are added here. The last one is handled like any other IN LIST.
+                            int lastInList = tupleInList.size() - 1;
+                            for (IndexableExpression columnInList : tupleInList.subList(0, lastInList)) {
+                                AbstractExpression comparator = columnInList.getFilter();
+                                retval.indexExprs.add(comparator);
+                                retval.bindings.addAll(columnInList.getBindings());
+                                retval.endExprs.add(comparator);
+                                ++coveredCount;
+                            }
+                            if (indexedExprs == null) {
+                                coveringColId = indexedColIds[coveredCount];
+                            } else {
+                                coveringExpr = indexedExprs.get(coveredCount);
+                            }
+                            inListExpr = tupleInList.get(lastInList);
+                            eqExpr = inListExpr;
+                        }
+                    }
                 }
                 if (eqExpr == null) {
                     break;
@@ -925,6 +1032,64 @@ public abstract class SubPlanAssembler {
         return otherBindingsForOrder;
     }
 
+    /**
+     * Find a tuple IN LIST whose compared expressions match the index key components
+     * starting at the first one not yet covered, in any order.
+     * Like any indexed IN LIST, it can not be combined with prior equality filters
+     * on other tables' columns.
+     * @param coveredCount the number of key components already covered
+     * @param tupleInLists the candidate tuple IN LISTs, keyed by their original filters
+     * @param indexExprs the filters that already cover the prior key components
+     * @param filtersToCover the remaining filters, from which the original filter is removed
+     *        when its tuple IN LIST is used
+     * @return the IN LISTs of the tuple IN LIST, one per key component in key order,
+     *         or null if there is no usable tuple IN LIST.
+     */
+    private static List<IndexableExpression> getIndexableTupleInList(
+        int coveredCount, int keyComponentCount,
+        List<AbstractExpression> indexedExprs, int[] indexedColIds, StmtTableScan tableScan,
+        List<Pair<AbstractExpression, List<AbstractExpression>>> tupleInLists,
+        List<AbstractExpression> indexExprs, List<AbstractExpression> filtersToCover)
+    {
+        for (AbstractExpression eq_comparator : indexExprs) {
+            if (eq_comparator.getRight().hasAnySubexpressionOfType(ExpressionType.VALUE_TUPLE)) {
+                return null;
+            }
+        }
+        for (Pair<AbstractExpression, List<AbstractExpression>> tupleInList : tupleInLists) {
+            if ( ! filtersToCover.contains(tupleInList.getFirst())) {
+                continue;
+            }
+            List<AbstractExpression> columnInLists = new ArrayList<AbstractExpression>(tupleInList.getSecond());
+            if (coveredCount + columnInLists.size() > keyComponentCount) {
+                continue;
+            }
+            List<IndexableExpression> result = new ArrayList<IndexableExpression>();
+            for (int ii = coveredCount; ! columnInLists.isEmpty(); ++ii) {
+                AbstractExpression coveringExpr = null;
+                int coveringColId = -1;
+                if (indexedExprs == null) {
+                    coveringColId = indexedColIds[ii];
+                } else {
+                    coveringExpr = indexedExprs.get(ii);
+                }
+                IndexableExpression columnInList = getIndexableExpressionFromFilters(
+                    ExpressionType.COMPARE_IN, ExpressionType.COMPARE_IN,
+                    coveringExpr, coveringColId, tableScan, columnInLists,
+                    false, EXCLUDE_FROM_POST_FILTERS);
+                if (columnInList == null) {
+                    break;
+                }
+                result.add(columnInList);
+            }
+            if (columnInLists.isEmpty()) {
+                filtersToCover.remove(tupleInList.getFirst());
+                return result;
+            }
+        }
+        return null;
+    }
+
     /**
      * For a given filter expression, return a normalized version of it that is always a comparison operator whose
      * left-hand-side references the table specified and whose right-hand-side does not.
@@ -1234,17 +1399,29 @@ public abstract class SubPlanAssembler {
         AbstractPlanNode resultNode = scanNode;
         // set sortDirection here becase it might be used for IN list
         scanNode.setSortDirection(path.sortDirection);
+        // An IN LIST on one key component, or the IN LISTs of a tuple IN LIST on consecutive
+        // key components, get their elements from the columns of one MaterializedScan.
+        List<AbstractExpression> listElements = new ArrayList<AbstractExpression>();
+        for (AbstractExpression expr : path.indexExprs) {
+            if (expr.getExpressionType() == ExpressionType.COMPARE_IN) {
+                listElements.add(expr.getRight());
+            }
+        }
+        MaterializedScanPlanNode matscan = null;
+        if ( ! listElements.isEmpty()) {
+            // Replace this method's result with an injected NLIJ.
+            resultNode = injectIndexedJoinWithMaterializedScan(listElements, scanNode);
+            matscan = (MaterializedScanPlanNode)resultNode.getChild(0);
+        }
         // Build the list of search-keys for the index in question
         // They are the rhs expressions of the normalized indexExpr comparisons.
+        int listColumn = 0;
         for (AbstractExpression expr : path.indexExprs) {
             AbstractExpression expr2 = expr.getRight();
             assert(expr2 != null);
             if (expr.getExpressionType() == ExpressionType.COMPARE_IN) {
-                // Replace this method's result with an injected NLIJ.
-                resultNode = injectIndexedJoinWithMaterializedScan(expr2, scanNode);
                 // Extract a TVE from the LHS MaterializedScan for use by the IndexScan in its new role.
-                MaterializedScanPlanNode matscan = (MaterializedScanPlanNode)resultNode.getChild(0);
-                AbstractExpression elemExpr = matscan.getOutputExpression();
+                AbstractExpression elemExpr = matscan.getOutputExpression(listColumn++);
                 assert(elemExpr != null);
                 // Replace the IN LIST condition in the end expression referencing all the list elements
                 // with a more efficient equality filter referencing the TVE for each element in turn.
@@ -1268,12 +1445,17 @@ public abstract class SubPlanAssembler {
 
 
     // Generate a plan for an IN-LIST-driven index scan
-    private static AbstractPlanNode injectIndexedJoinWithMaterializedScan(AbstractExpression listElements,
+    private static AbstractPlanNode injectIndexedJoinWithMaterializedScan(List<AbstractExpression> listElements,
                                                                    IndexScanPlanNode scanNode)
     {
         MaterializedScanPlanNode matScan = new MaterializedScanPlanNode();
-        assert(listElements instanceof VectorValueExpression || listElements instanceof ParameterValueExpression);
-        matScan.setRowData(listElements);
+        if (listElements.size() == 1) {
+            AbstractExpression elements = listElements.get(0);
+            assert(elements instanceof VectorValueExpression || elements instanceof ParameterValueExpression);
+            matScan.setRowData(elements);
+        } else {
+            matScan.setTupleData(listElements);
+        }
         matScan.setSortDirection(scanNode.getSortDirection());
 
         NestLoopIndexPlanNode nlijNode = new NestLoopIndexPlanNode();
@@ -324,6 +324,11 @@ public class ReplaceWithIndexLimit extends MicroOptimization {
             return false;
         }
 
+        // A partial index may not contain the row holding the MIN or MAX value.
+        if ( ! index.getPredicatejson().isEmpty()) {
+            return false;
+        }
+
         String exprsjson = index.getExpressionsjson();
 
         if (exprsjson.isEmpty()) {
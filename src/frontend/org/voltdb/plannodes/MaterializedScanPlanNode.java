@@ -17,6 +17,10 @@
 
 package org.voltdb.plannodes;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.json_voltpatches.JSONStringer;
@@ -43,10 +47,15 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
     private AbstractExpression m_tableData;
     private final TupleValueExpression m_outputExpression = new TupleValueExpression(
             "materialized_temp_table", "materialized_temp_table", "list_element", null, 0);
+    // For a tuple IN LIST, the lists of the elements for each column,
+    // which are zipped into the rows of the materialized table.
+    private final List<AbstractExpression> m_tupleData = new ArrayList<AbstractExpression>();
+    private final List<TupleValueExpression> m_tupleOutputExpressions = new ArrayList<TupleValueExpression>();
     private SortDirectionType m_sortDirection = SortDirectionType.INVALID;
 
     public enum Members {
         TABLE_DATA,
+        TUPLE_DATA,
         SORT_DIRECTION;
     }
 
@@ -67,6 +76,38 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
         m_outputExpression.setInBytes(m_tableData.getInBytes());
     }
 
+    /**
+     * Materialize the rows of a tuple IN LIST, such as "(A, B) IN ((1, 2), (3, 4))",
+     * from the lists of the elements for each of its columns, here "(1, 3)" and "(2, 4)".
+     */
+    public void setTupleData(List<AbstractExpression> columnsData) {
+        assert(columnsData.size() > 1);
+        m_tupleData.clear();
+        m_tupleOutputExpressions.clear();
+        for (AbstractExpression columnData : columnsData) {
+            assert(columnData instanceof VectorValueExpression);
+            TupleValueExpression outputExpression = (m_tupleOutputExpressions.isEmpty()) ?
+                m_outputExpression :
+                new TupleValueExpression("materialized_temp_table", "materialized_temp_table",
+                                         "list_element_" + m_tupleData.size(), null,
+                                         m_tupleData.size());
+            outputExpression.setValueType(columnData.getValueType());
+            outputExpression.setValueSize(columnData.getValueSize());
+            outputExpression.setInBytes(columnData.getInBytes());
+            m_tupleData.add(columnData);
+            m_tupleOutputExpressions.add(outputExpression);
+        }
+        m_tableData = m_tupleData.get(0);
+    }
+
+    public AbstractExpression getTableRowsExpression() {
+        return m_tableData;
+    }
+
+    public List<AbstractExpression> getTupleData() {
+        return m_tupleData;
+    }
+
     public void setSortDirection(SortDirectionType direction) {
         m_sortDirection = direction;
     }
@@ -81,6 +122,16 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
         return m_outputExpression;
     }
 
+    // Extract a TVE for one column of a MaterializedScan for use as a join key for an IndexScan
+    public AbstractExpression getOutputExpression(int column)
+    {
+        if (m_tupleOutputExpressions.isEmpty()) {
+            assert(column == 0);
+            return m_outputExpression;
+        }
+        return m_tupleOutputExpressions.get(column);
+    }
+
     /**
      * Accessor for flag marking the plan as guaranteeing an identical result/effect
      * when "replayed" against the same database state, such as during replication or CL recovery.
@@ -100,7 +151,8 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
 
     @Override
     protected String explainPlanForNode(String indent) {
-        return "MATERIALIZED SCAN of SQL-IN-LIST (Sort " + m_sortDirection.toString() + ")";
+        String tupleColumns = (m_tupleData.isEmpty()) ? "" : " of " + m_tupleData.size() + "-column tuples";
+        return "MATERIALIZED SCAN of SQL-IN-LIST" + tupleColumns + " (Sort " + m_sortDirection.toString() + ")";
     }
 
     @Override
@@ -111,13 +163,20 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
         // fill in the table schema if we haven't already
         if (m_outputSchema == null) {
             m_outputSchema = new NodeSchema();
-            // must produce a tuple value expression for the one column.
-            m_outputSchema.addColumn(
-                new SchemaColumn(m_outputExpression.getTableName(),
-                                 m_outputExpression.getTableAlias(),
-                                 m_outputExpression.getColumnName(),
-                                 m_outputExpression.getColumnAlias(),
-                                 m_outputExpression));
+            // must produce a tuple value expression for the one column,
+            // or for each column of a tuple IN LIST.
+            List<TupleValueExpression> outputExpressions = m_tupleOutputExpressions;
+            if (outputExpressions.isEmpty()) {
+                outputExpressions = Collections.singletonList(m_outputExpression);
+            }
+            for (TupleValueExpression outputExpression : outputExpressions) {
+                m_outputSchema.addColumn(
+                    new SchemaColumn(outputExpression.getTableName(),
+                                     outputExpression.getTableAlias(),
+                                     outputExpression.getColumnName(),
+                                     outputExpression.getColumnAlias(),
+                                     outputExpression));
+            }
         }
     }
 
@@ -131,11 +190,21 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
     public void toJSONString(JSONStringer stringer) throws JSONException {
         super.toJSONString(stringer);
 
-        stringer.key(Members.TABLE_DATA.name());
-        stringer.object();
-        assert(m_tableData != null);
-        m_tableData.toJSONString(stringer);
-        stringer.endObject();
+        if (m_tupleData.isEmpty()) {
+            stringer.key(Members.TABLE_DATA.name());
+            stringer.object();
+            assert(m_tableData != null);
+            m_tableData.toJSONString(stringer);
+            stringer.endObject();
+        } else {
+            stringer.key(Members.TUPLE_DATA.name()).array();
+            for (AbstractExpression columnData : m_tupleData) {
+                stringer.object();
+                columnData.toJSONString(stringer);
+                stringer.endObject();
+            }
+            stringer.endArray();
+        }
 
         if (m_sortDirection == SortDirectionType.DESC) {
             stringer.key(Members.SORT_DIRECTION.name()).value(m_sortDirection.toString());
@@ -146,8 +215,14 @@ public class MaterializedScanPlanNode extends AbstractPlanNode {
     protected void loadFromJSONObject(JSONObject obj, Database db) throws JSONException {
         helpLoadFromJSONObject(obj, db);
 
-        assert(!obj.isNull(Members.TABLE_DATA.name()));
-        m_tableData = AbstractExpression.fromJSONChild(obj, Members.TABLE_DATA.name());
+        if (obj.isNull(Members.TUPLE_DATA.name())) {
+            assert(!obj.isNull(Members.TABLE_DATA.name()));
+            m_tableData = AbstractExpression.fromJSONChild(obj, Members.TABLE_DATA.name());
+        } else {
+            List<AbstractExpression> columnsData = new ArrayList<AbstractExpression>();
+            AbstractExpression.loadFromJSONArrayChild(columnsData, obj, Members.TUPLE_DATA.name(), null);
+            setTupleData(columnsData);
+        }
 
         if (!obj.isNull(Members.SORT_DIRECTION.name())) {
             m_sortDirection = SortDirectionType.get(obj.getString( Members.SORT_DIRECTION.name()));
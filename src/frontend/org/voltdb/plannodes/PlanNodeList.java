@@ -25,6 +25,7 @@ import java.util.Map;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONStringer;
+import org.voltdb.planner.BinaryPlanEncoding;
 
 /**
  *
@@ -133,14 +134,7 @@ public class PlanNodeList extends PlanNodeTree implements Comparable<PlanNodeLis
         JSONStringer stringer = new JSONStringer();
         try {
             stringer.object();
-            super.toJSONString(stringer);
-
-            stringer.key(Members.EXECUTE_LIST.name()).array();
-            for (AbstractPlanNode node : m_list) {
-                stringer.value(node.getPlanNodeId().intValue());
-            }
-            stringer.endArray(); //end execution list
-
+            toJSONString(stringer);
             stringer.endObject(); //end PlanNodeList
         } catch (JSONException e) {
             // HACK ugly ugly to make the JSON handling
@@ -154,6 +148,29 @@ public class PlanNodeList extends PlanNodeTree implements Comparable<PlanNodeLis
         return stringer.toString();
     }
 
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException {
+        super.toJSONString(stringer);
+
+        stringer.key(Members.EXECUTE_LIST.name()).array();
+        for (AbstractPlanNode node : m_list) {
+            stringer.value(node.getPlanNodeId().intValue());
+        }
+        stringer.endArray(); //end execution list
+    }
+
+    /**
+     * The plan in the EE's binary encoding, written from the plan nodes
+     * rather than encoded from the JSON text. See {@link BinaryPlanEncoding}.
+     */
+    public byte[] toBinaryPlan() throws JSONException {
+        BinaryPlanEncoding.Writer writer = new BinaryPlanEncoding.Writer();
+        writer.object();
+        toJSONString(writer);
+        writer.endObject();
+        return writer.toByteArray();
+    }
+
     public String toDOTString(String name) {
         StringBuilder sb = new StringBuilder();
         sb.append("digraph ").append(name).append(" {\n");
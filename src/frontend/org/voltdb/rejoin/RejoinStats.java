@@ -0,0 +1,92 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Reports the progress of the rejoin streams sent from this host, one row per
+ * stream snapshot data target that is still streaming.
+ */
+public class RejoinStats extends StatsSource {
+
+    public RejoinStats() {
+        super(false);
+    }
+
+    public static interface Constants {
+        public final static String TARGET_ID = "TARGET_ID";
+        public final static String DESTINATION_SITE = "DESTINATION_SITE";
+        public final static String BLOCKS_SENT = "BLOCKS_SENT";
+        public final static String BLOCKS_OUTSTANDING = "BLOCKS_OUTSTANDING";
+        public final static String BYTES_SENT = "BYTES_SENT";
+        public final static String WINDOW_BLOCKS = "WINDOW_BLOCKS";
+        public final static String MIN_RTT_MS = "MIN_RTT_MS";
+        public final static String MEGABYTES_PER_SECOND = "MEGABYTES_PER_SECOND";
+        public final static String PERCENTAGE_SENT = "PERCENTAGE_SENT";
+        public final static String ESTIMATED_REMAINING = "ESTIMATED_REMAINING";
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(Constants.TARGET_ID, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.DESTINATION_SITE, VoltType.STRING));
+        columns.add(new ColumnInfo(Constants.BLOCKS_SENT, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.BLOCKS_OUTSTANDING, VoltType.INTEGER));
+        columns.add(new ColumnInfo(Constants.BYTES_SENT, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.WINDOW_BLOCKS, VoltType.INTEGER));
+        columns.add(new ColumnInfo(Constants.MIN_RTT_MS, VoltType.FLOAT));
+        columns.add(new ColumnInfo(Constants.MEGABYTES_PER_SECOND, VoltType.FLOAT));
+        columns.add(new ColumnInfo(Constants.PERCENTAGE_SENT, VoltType.FLOAT));
+        columns.add(new ColumnInfo(Constants.ESTIMATED_REMAINING, VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        super.updateStatsRow(rowKey, rowValues);
+        StreamSnapshotDataTarget target = (StreamSnapshotDataTarget) rowKey;
+        StreamSnapshotWindow window = target.getWindow();
+        double completed = target.getCompletedFraction();
+
+        rowValues[columnNameToIndex.get(Constants.TARGET_ID)] = target.m_targetId;
+        rowValues[columnNameToIndex.get(Constants.DESTINATION_SITE)] = CoreUtils.hsIdToString(target.getDestHSId());
+        rowValues[columnNameToIndex.get(Constants.BLOCKS_SENT)] = target.getWorksWritten();
+        rowValues[columnNameToIndex.get(Constants.BLOCKS_OUTSTANDING)] = target.getOutstandingWorkCount();
+        rowValues[columnNameToIndex.get(Constants.BYTES_SENT)] = target.getBytesWritten();
+        rowValues[columnNameToIndex.get(Constants.WINDOW_BLOCKS)] = window.getWindow();
+        rowValues[columnNameToIndex.get(Constants.MIN_RTT_MS)] = window.getMinRttMillis();
+        rowValues[columnNameToIndex.get(Constants.MEGABYTES_PER_SECOND)] = window.getBytesPerSecond() / (1024 * 1024);
+        rowValues[columnNameToIndex.get(Constants.PERCENTAGE_SENT)] = completed < 0 ? -1.0 : completed * 100.0;
+        rowValues[columnNameToIndex.get(Constants.ESTIMATED_REMAINING)] = target.getEstimatedRemainingMillis();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        @SuppressWarnings("rawtypes")
+        Iterator iter = new ArrayList<StreamSnapshotDataTarget>(StreamSnapshotDataTarget.getActiveTargets()).iterator();
+        return (Iterator<Object>)iter;
+    }
+}
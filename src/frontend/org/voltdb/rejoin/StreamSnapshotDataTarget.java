@@ -19,12 +19,14 @@ package org.voltdb.rejoin;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -39,6 +41,7 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.SnapshotDataTarget;
 import org.voltdb.SnapshotFormat;
+import org.voltdb.SnapshotSiteProcessor;
 import org.voltdb.VoltDB;
 import org.voltdb.utils.CompressionService;
 
@@ -59,6 +62,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     static boolean m_rejoinDeathTestMode = System.getProperties().containsKey("rejoindeathtest");
 
     private static AtomicLong m_totalSnapshotTargetCount = new AtomicLong(0);
+    // targets that are still streaming, reported by @Statistics REJOIN
+    private static final Map<Long, StreamSnapshotDataTarget> m_activeTargets =
+            new ConcurrentHashMap<Long, StreamSnapshotDataTarget>();
     final long m_targetId;
 
     // shortened when in test mode
@@ -87,6 +93,11 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     int m_blockIndex = 0;
     private final AtomicReference<Runnable> m_onCloseHandler = new AtomicReference<Runnable>(null);
 
+    // progress in uncompressed bytes, used to estimate the time remaining
+    private final long m_startNanos = System.nanoTime();
+    private volatile long m_estimatedBytes = -1;
+    private volatile long m_rawBytesAcked = 0;
+
     private final AtomicBoolean m_closed = new AtomicBoolean(false);
 
     public StreamSnapshotDataTarget(long HSId, byte[] hashinatorConfig, Map<Integer, byte[]> schemas,
@@ -106,6 +117,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         m_sender.registerDataTarget(m_targetId);
         m_ackReceiver = ackReceiver;
         m_ackReceiver.setCallback(m_targetId, this);
+        m_activeTargets.put(m_targetId, this);
 
         rejoinLog.debug(String.format("Initializing snapshot stream processor " +
                 "for source site id: %s, and with processorid: %d",
@@ -129,9 +141,14 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         final long m_targetId;
         final long m_destHSId;
         final long m_ts;
+        final int m_rawBytes;
 
         final boolean m_isEmpty;
 
+        // when and how many bytes were put on the wire, to measure the ack round trip
+        volatile long m_sentNanos = 0;
+        volatile int m_sentBytes = 0;
+
         // A listenable future used to notify a listener when this buffer is discarded
         final SettableFuture<Boolean> m_future;
 
@@ -143,6 +160,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_targetId = -1;
             m_destHSId = -1;
             m_ts = -1;
+            m_rawBytes = 0;
             m_future = null;
         }
 
@@ -154,6 +172,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_destHSId = destHSId;
             m_message = message;
             m_ts = System.currentTimeMillis();
+            m_rawBytes = message.b().remaining();
             m_future = future;
         }
 
@@ -208,7 +227,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             }
 
             try {
-                return send(mb, msgFactory, m_message);
+                m_sentNanos = System.nanoTime();
+                m_sentBytes = send(mb, msgFactory, m_message);
+                return m_sentBytes;
             } finally {
                 // Buffers are only discarded after they are acked. Discarding them here would cause the sender to
                 // generate too much work for the receiver.
@@ -299,18 +320,41 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         m_outstandingWorkCount.decrementAndGet();
         SendWork work = m_outstandingWork.remove(blockIndex);
 
+        if (work.m_sentNanos != 0) {
+            m_rawBytesAcked += work.m_rawBytes;
+            m_sender.ackReceived(System.nanoTime() - work.m_sentNanos, work.m_sentBytes);
+        }
+
         // releases the BBContainers and cleans up
         work.discard();
     }
 
     /**
-     * Thread that runs send work (sending snapshot blocks). One per node
+     * Sends snapshot blocks to the rejoining node. One per node.
+     *
+     * Data targets are spread round robin over a number of send streams, each
+     * with its own thread, so blocks of different partitions are compressed and
+     * put on the wire in parallel while the blocks of a single target stay in
+     * order. Compressing the next block overlaps with the network sending the
+     * previous one because mailbox sends are asynchronous.
+     *
+     * The number of un-acked blocks is bounded by the snapshot buffer pool,
+     * which the sender grows and shrinks to follow the {@link StreamSnapshotWindow}.
      */
-    public static class SnapshotSender implements Runnable {
+    public static class SnapshotSender {
+        public static final int DEFAULT_STREAM_COUNT =
+            Integer.getInteger("REJOIN_SEND_STREAMS", Math.max(1, Math.min(8, CoreUtils.availableProcessors() / 4)));
+
         private final Mailbox m_mb;
         private final MessageFactory m_msgFactory;
-        private final LinkedBlockingQueue<SendWork> m_workQueue;
-        private final AtomicInteger m_expectedEOFs;
+        private final SendStream[] m_streams;
+        private final Map<Long, SendStream> m_targetStreams = new ConcurrentHashMap<Long, SendStream>();
+        private final AtomicInteger m_registeredTargets = new AtomicInteger();
+        private final AtomicInteger m_runningStreams = new AtomicInteger();
+
+        private final StreamSnapshotWindow m_window;
+        // snapshot buffers added to the pool on behalf of the window
+        private int m_windowGrowth = 0;
 
         final Map<Long, AtomicLong> m_bytesSent;
         final Map<Long, AtomicLong> m_worksSent;
@@ -322,64 +366,122 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         }
 
         public SnapshotSender(Mailbox mb, MessageFactory msgFactory)
+        {
+            this(mb, msgFactory, DEFAULT_STREAM_COUNT, new StreamSnapshotWindow());
+        }
+
+        public SnapshotSender(Mailbox mb, MessageFactory msgFactory, int streamCount, StreamSnapshotWindow window)
         {
             Preconditions.checkArgument(mb != null);
+            Preconditions.checkArgument(streamCount > 0);
             m_mb = mb;
             m_msgFactory = msgFactory;
-            m_workQueue = new LinkedBlockingQueue<SendWork>();
-            m_expectedEOFs = new AtomicInteger();
+            m_window = window;
+            m_streams = new SendStream[streamCount];
+            for (int i = 0; i < streamCount; i++) {
+                m_streams[i] = new SendStream(i);
+            }
             m_bytesSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
             m_worksSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
         }
 
+        /**
+         * Assign the data target to a send stream. The stream thread is started
+         * when it gets its first target and exits once all of its targets sent
+         * their end-of-queue work.
+         */
         public void registerDataTarget(long targetId)
         {
-            m_expectedEOFs.incrementAndGet();
             m_bytesSent.put(targetId, new AtomicLong());
             m_worksSent.put(targetId, new AtomicLong());
+
+            SendStream stream = m_streams[m_registeredTargets.getAndIncrement() % m_streams.length];
+            m_targetStreams.put(targetId, stream);
+            if (stream.m_expectedEOFs.getAndIncrement() == 0) {
+                m_runningStreams.incrementAndGet();
+                new Thread(stream, "Stream Snapshot Sender " + stream.m_index).start();
+            }
         }
 
         public void offer(SendWork work)
         {
-            m_workQueue.offer(work);
+            m_targetStreams.get(work.m_targetId).m_workQueue.offer(work);
         }
 
-        @Override
-        public void run() {
-            rejoinLog.trace("Starting stream sender thread");
-
-            while (true) {
-                SendWork work;
-
-                try {
-                    rejoinLog.trace("Blocking on sending work queue");
-                    work = m_workQueue.poll(10, TimeUnit.MINUTES);
-
-                    if (work == null) {
-                        rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
-                        break;
-                    } else if (work.m_isEmpty) {
-                        // Empty work indicates the end of the queue.
-                        // The sender is shared by multiple data targets, each of them will
-                        // send an end-of-queue work, must wait until all end-of-queue works
-                        // are received before terminating the thread.
-                        if (m_expectedEOFs.decrementAndGet() == 0) {
+        void ackReceived(long rttNanos, int bytes)
+        {
+            resizeWindow(m_window.ackReceived(System.nanoTime(), rttNanos, bytes));
+        }
+
+        private synchronized void resizeWindow(int window)
+        {
+            int growth = window - m_window.getMinWindow();
+            if (growth != m_windowGrowth) {
+                SnapshotSiteProcessor.adjustSnapshotBufferLimit(growth - m_windowGrowth);
+                m_windowGrowth = growth;
+            }
+        }
+
+        public StreamSnapshotWindow getWindow()
+        {
+            return m_window;
+        }
+
+        /**
+         * Thread that runs the send work of the data targets assigned to it.
+         */
+        private class SendStream implements Runnable {
+            private final int m_index;
+            private final LinkedBlockingQueue<SendWork> m_workQueue = new LinkedBlockingQueue<SendWork>();
+            private final AtomicInteger m_expectedEOFs = new AtomicInteger();
+
+            SendStream(int index)
+            {
+                m_index = index;
+            }
+
+            @Override
+            public void run() {
+                rejoinLog.trace("Starting stream sender thread " + m_index);
+
+                while (true) {
+                    SendWork work;
+
+                    try {
+                        rejoinLog.trace("Blocking on sending work queue");
+                        work = m_workQueue.poll(10, TimeUnit.MINUTES);
+
+                        if (work == null) {
+                            rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
                             break;
-                        } else {
-                            continue;
+                        } else if (work.m_isEmpty) {
+                            // Empty work indicates the end of the queue.
+                            // The stream is shared by multiple data targets, each of them will
+                            // send an end-of-queue work, must wait until all end-of-queue works
+                            // are received before terminating the thread.
+                            if (m_expectedEOFs.decrementAndGet() == 0) {
+                                break;
+                            } else {
+                                continue;
+                            }
                         }
-                    }
 
-                    m_bytesSent.get(work.m_targetId).addAndGet(work.doWork(m_mb, m_msgFactory));
-                    m_worksSent.get(work.m_targetId).incrementAndGet();
+                        m_bytesSent.get(work.m_targetId).addAndGet(work.doWork(m_mb, m_msgFactory));
+                        m_worksSent.get(work.m_targetId).incrementAndGet();
+                    }
+                    catch (Exception e) {
+                        m_lastException = e;
+                        rejoinLog.error("Error sending a recovery stream message", e);
+                    }
                 }
-                catch (Exception e) {
-                    m_lastException = e;
-                    rejoinLog.error("Error sending a recovery stream message", e);
+                CompressionService.releaseThreadLocal();
+
+                // Hand the buffers the window borrowed back to the snapshot buffer pool
+                if (m_runningStreams.decrementAndGet() == 0) {
+                    resizeWindow(m_window.getMinWindow());
                 }
+                rejoinLog.trace("Stream sender thread " + m_index + " exiting");
             }
-            CompressionService.releaseThreadLocal();
-            rejoinLog.trace("Stream sender thread exiting");
         }
     }
 
@@ -516,6 +618,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
                 assert(m_outstandingWork.size() == 0);
             }
+            m_activeTargets.remove(m_targetId);
 
             rejoinLog.trace("Closed stream snapshot target");
         }
@@ -572,6 +675,64 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         return m_sender.m_worksSent.get(m_targetId).get();
     }
 
+    public long getDestHSId()
+    {
+        return m_destHSId;
+    }
+
+    public int getOutstandingWorkCount()
+    {
+        return m_outstandingWorkCount.get();
+    }
+
+    public StreamSnapshotWindow getWindow()
+    {
+        return m_sender.getWindow();
+    }
+
+    /**
+     * Set the estimated number of uncompressed bytes this target will stream,
+     * or -1 if unknown.
+     */
+    public void setEstimatedBytes(long estimatedBytes)
+    {
+        m_estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * @return The fraction of the estimated bytes that were acked, or -1 if there is no estimate
+     */
+    public double getCompletedFraction()
+    {
+        final long estimate = m_estimatedBytes;
+        if (estimate <= 0) {
+            return -1.0;
+        }
+        return Math.min(1.0, m_rawBytesAcked / (double) estimate);
+    }
+
+    /**
+     * Extrapolate the time remaining from the rate the estimated bytes were acked at so far.
+     * @return The estimated milliseconds remaining, or -1 if unknown
+     */
+    public long getEstimatedRemainingMillis()
+    {
+        final double completed = getCompletedFraction();
+        if (completed <= 0.0) {
+            return -1;
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_startNanos);
+        return (long) (elapsedMillis * (1.0 - completed) / completed);
+    }
+
+    /**
+     * @return The data targets that are still streaming on this host
+     */
+    public static Collection<StreamSnapshotDataTarget> getActiveTargets()
+    {
+        return m_activeTargets.values();
+    }
+
     @Override
     public void setOnCloseHandler(Runnable onClose) {
         m_onCloseHandler.set(onClose);
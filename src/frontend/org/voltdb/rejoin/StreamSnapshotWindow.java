@@ -0,0 +1,134 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the number of un-acked stream snapshot blocks allowed in flight from
+ * this host to the bandwidth-delay product of the rejoin streams.
+ *
+ * The delivery rate is sampled from acked bytes, and the propagation delay is
+ * the smallest ack round trip seen recently. The window is twice the BDP in
+ * blocks so that the pipe stays full while the acks for the previous window
+ * are in flight. Queueing delay inflates the round trip of new samples but not
+ * the minimum, so a window that outgrows the link shrinks back on its own.
+ *
+ * This class is thread-safe.
+ */
+public class StreamSnapshotWindow {
+    public static final int DEFAULT_MIN_WINDOW = Integer.getInteger("REJOIN_MIN_WINDOW_BLOCKS", 16);
+    public static final int DEFAULT_MAX_WINDOW = Integer.getInteger("REJOIN_MAX_WINDOW_BLOCKS", 128);
+
+    // how often the delivery rate is sampled
+    static final long RATE_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // how long a minimum round trip is trusted before it is re-measured
+    static final long MIN_RTT_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final int m_minWindow;
+    private final int m_maxWindow;
+    private int m_window;
+
+    private long m_minRttNanos = Long.MAX_VALUE;
+    private long m_minRttTimestamp = 0;
+
+    private long m_sampleStartNanos = -1;
+    private long m_sampleBytes = 0;
+    private long m_sampleBlocks = 0;
+
+    // last measured delivery rate and block size
+    private double m_bytesPerNano = 0;
+    private double m_bytesPerBlock = 0;
+
+    public StreamSnapshotWindow()
+    {
+        this(DEFAULT_MIN_WINDOW, DEFAULT_MAX_WINDOW);
+    }
+
+    public StreamSnapshotWindow(int minWindow, int maxWindow)
+    {
+        if (minWindow < 1 || maxWindow < minWindow) {
+            throw new IllegalArgumentException("Invalid rejoin window bounds [" + minWindow + ", " + maxWindow + "]");
+        }
+        m_minWindow = minWindow;
+        m_maxWindow = maxWindow;
+        m_window = minWindow;
+    }
+
+    /**
+     * Record the ack of a block and recompute the window.
+     *
+     * @param nowNanos  Time the ack arrived
+     * @param rttNanos  Time between sending the block and receiving the ack
+     * @param bytes     Number of bytes put on the wire for the block
+     * @return The new window size in blocks
+     */
+    public synchronized int ackReceived(long nowNanos, long rttNanos, int bytes)
+    {
+        if (rttNanos > 0 && (rttNanos <= m_minRttNanos || nowNanos - m_minRttTimestamp > MIN_RTT_EXPIRY_NANOS)) {
+            m_minRttNanos = rttNanos;
+            m_minRttTimestamp = nowNanos;
+        }
+
+        if (m_sampleStartNanos == -1) {
+            m_sampleStartNanos = nowNanos;
+        }
+        m_sampleBytes += bytes;
+        m_sampleBlocks++;
+
+        final long elapsed = nowNanos - m_sampleStartNanos;
+        if (elapsed >= RATE_SAMPLE_NANOS) {
+            m_bytesPerNano = m_sampleBytes / (double) elapsed;
+            m_bytesPerBlock = m_sampleBytes / (double) m_sampleBlocks;
+            m_sampleStartNanos = nowNanos;
+            m_sampleBytes = 0;
+            m_sampleBlocks = 0;
+
+            final double bdpBlocks = m_bytesPerNano * m_minRttNanos / m_bytesPerBlock;
+            m_window = (int) Math.max(m_minWindow, Math.min(m_maxWindow, Math.ceil(2 * bdpBlocks)));
+        }
+
+        return m_window;
+    }
+
+    public synchronized int getWindow()
+    {
+        return m_window;
+    }
+
+    public int getMinWindow()
+    {
+        return m_minWindow;
+    }
+
+    /**
+     * @return The smallest recent ack round trip in milliseconds, or 0 if no block was acked yet
+     */
+    public synchronized double getMinRttMillis()
+    {
+        return m_minRttNanos == Long.MAX_VALUE ? 0.0 : m_minRttNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return The last sampled delivery rate in bytes per second
+     */
+    public synchronized double getBytesPerSecond()
+    {
+        return m_bytesPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -101,11 +101,13 @@ public abstract class AdHocBase extends VoltSystemProcedure {
             }
 
             long aggFragId = ActivePlanRepository.loadOrAddRefPlanFragment(
-                    statement.core.aggregatorHash, statement.core.aggregatorFragment);
+                    statement.core.aggregatorHash, statement.core.aggregatorFragment,
+                    statement.core.aggregatorBinaryFragment);
             long collectorFragId = 0;
             if (statement.core.collectorFragment != null) {
                 collectorFragId = ActivePlanRepository.loadOrAddRefPlanFragment(
-                        statement.core.collectorHash, statement.core.collectorFragment);
+                        statement.core.collectorHash, statement.core.collectorFragment,
+                        statement.core.collectorBinaryFragment);
             }
             SQLStmt stmt = SQLStmtAdHocHelper.createWithPlan(
                     statement.sql,
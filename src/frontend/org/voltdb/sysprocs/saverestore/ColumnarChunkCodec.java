@@ -0,0 +1,511 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Converts a chunk of snapshot tuple data between the row format produced by the EE
+ * (a row count followed by length prefixed rows) and a columnar format that stores each
+ * column contiguously with an encoding picked per column and chunk.
+ *
+ * Integral and timestamp columns are stored as plain values, zig-zag varint deltas
+ * or varint offsets from the chunk minimum, whichever is smallest. String and varbinary
+ * columns are stored as varint length prefixed values or as a dictionary
+ * when the column is repetitive. Float and decimal columns are stored as is.
+ *
+ * The first byte of an encoded chunk says whether it is columnar or the original
+ * row format, which is kept when encoding wouldn't make the chunk smaller.
+ * All values are stored as the raw bytes from the row format so null sentinels
+ * survive the round trip unchanged.
+ */
+public class ColumnarChunkCodec {
+
+    public static final byte ROW_FORMAT = 0;
+    public static final byte COLUMNAR_FORMAT = 1;
+
+    static final byte PLAIN = 0;
+    static final byte DELTA = 1;
+    static final byte FRAME_OF_REFERENCE = 2;
+    static final byte DICTIONARY = 3;
+
+    private final VoltType m_types[];
+
+    public ColumnarChunkCodec(VoltTable schema) {
+        m_types = new VoltType[schema.getColumnCount()];
+        for (int ii = 0; ii < m_types.length; ii++) {
+            m_types[ii] = schema.getColumnType(ii);
+        }
+    }
+
+    private static boolean isIntegral(VoltType type) {
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case TIMESTAMP:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isVariableLength(VoltType type) {
+        return type == VoltType.STRING || type == VoltType.VARBINARY;
+    }
+
+    private static long getIntegral(ByteBuffer buf, int position, VoltType type) {
+        switch (type) {
+        case TINYINT:
+            return buf.get(position);
+        case SMALLINT:
+            return buf.getShort(position);
+        case INTEGER:
+            return buf.getInt(position);
+        default:
+            return buf.getLong(position);
+        }
+    }
+
+    private static void putIntegral(ByteBuffer buf, long value, VoltType type) {
+        switch (type) {
+        case TINYINT:
+            buf.put((byte)value);
+            break;
+        case SMALLINT:
+            buf.putShort((short)value);
+            break;
+        case INTEGER:
+            buf.putInt((int)value);
+            break;
+        default:
+            buf.putLong(value);
+        }
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarint(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte)value);
+    }
+
+    static long getVarint(ByteBuffer buf) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed varint in columnar chunk");
+            }
+            b = buf.get();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /*
+     * Key for the string dictionary that compares the bytes of a value in the chunk
+     */
+    private static final class ValueKey {
+        final ByteBuffer m_buf;
+        final int m_offset;
+        final int m_length;
+        final int m_hash;
+
+        ValueKey(ByteBuffer buf, int offset, int length) {
+            m_buf = buf;
+            m_offset = offset;
+            m_length = length;
+            int hash = length;
+            for (int ii = 0; ii < length; ii++) {
+                hash = 31 * hash + buf.get(offset + ii);
+            }
+            m_hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ValueKey)) {
+                return false;
+            }
+            ValueKey other = (ValueKey)o;
+            if (other.m_length != m_length || other.m_hash != m_hash) {
+                return false;
+            }
+            for (int ii = 0; ii < m_length; ii++) {
+                if (m_buf.get(m_offset + ii) != other.m_buf.get(other.m_offset + ii)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Encode the row format tuple data between the position and limit of rows,
+     * starting with the row count, into out. The position of rows is left unchanged.
+     */
+    public void encode(ByteBuffer rows, ByteBuffer out) {
+        final int outStart = out.position();
+        final int rowsStart = rows.position();
+        final int inputLength = rows.remaining();
+        try {
+            encodeColumnar(rows, out);
+            if (out.position() - outStart <= inputLength) {
+                return;
+            }
+        } catch (BufferOverflowException e) {
+            //Fall back to the row format below
+        }
+        out.position(outStart);
+        out.put(ROW_FORMAT);
+        ByteBuffer dup = rows.duplicate();
+        dup.position(rowsStart);
+        out.put(dup);
+    }
+
+    private void encodeColumnar(ByteBuffer rows, ByteBuffer out) {
+        final int rowCount = rows.getInt(rows.position());
+        final int columnCount = m_types.length;
+
+        //Find the offset of every value, the values themselves are read out of the row buffer
+        final int offsets[][] = new int[columnCount][rowCount];
+        final int lengths[][] = new int[columnCount][];
+        for (int col = 0; col < columnCount; col++) {
+            if (isVariableLength(m_types[col])) {
+                lengths[col] = new int[rowCount];
+            }
+        }
+        int position = rows.position() + 4;
+        for (int row = 0; row < rowCount; row++) {
+            final int rowLength = rows.getInt(position);
+            position += 4;
+            final int rowEnd = position + rowLength;
+            for (int col = 0; col < columnCount; col++) {
+                final VoltType type = m_types[col];
+                if (isVariableLength(type)) {
+                    final int length = rows.getInt(position);
+                    position += 4;
+                    offsets[col][row] = position;
+                    lengths[col][row] = length;
+                    if (length > 0) {
+                        position += length;
+                    }
+                } else {
+                    offsets[col][row] = position;
+                    position += type.getLengthInBytesForFixedTypes();
+                }
+            }
+            if (position != rowEnd) {
+                throw new IllegalArgumentException("Row length doesn't match the table schema");
+            }
+        }
+
+        out.put(COLUMNAR_FORMAT);
+        out.putInt(rowCount);
+        for (int col = 0; col < columnCount; col++) {
+            final VoltType type = m_types[col];
+            final int lengthPosition = out.position() + 1;
+            if (isIntegral(type)) {
+                encodeIntegral(rows, type, offsets[col], out);
+            } else if (isVariableLength(type)) {
+                encodeVariableLength(rows, offsets[col], lengths[col], out);
+            } else {
+                out.put(PLAIN);
+                out.putInt(0);
+                final int width = type.getLengthInBytesForFixedTypes();
+                for (int row = 0; row < rowCount; row++) {
+                    for (int ii = 0; ii < width; ii++) {
+                        out.put(rows.get(offsets[col][row] + ii));
+                    }
+                }
+            }
+            out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+        }
+    }
+
+    private static void encodeIntegral(ByteBuffer rows, VoltType type, int offsets[], ByteBuffer out) {
+        final int rowCount = offsets.length;
+        final long values[] = new long[rowCount];
+        long min = Long.MAX_VALUE;
+        long previous = 0;
+        long deltaSize = 0;
+        for (int row = 0; row < rowCount; row++) {
+            final long value = getIntegral(rows, offsets[row], type);
+            values[row] = value;
+            min = Math.min(min, value);
+            deltaSize += varintSize(zigzag(value - previous));
+            previous = value;
+        }
+        long forSize = 8;
+        for (int row = 0; row < rowCount; row++) {
+            forSize += varintSize(values[row] - min);
+        }
+        final long plainSize = (long)rowCount * type.getLengthInBytesForFixedTypes();
+
+        if (plainSize <= deltaSize && plainSize <= forSize) {
+            out.put(PLAIN);
+            out.putInt(0);
+            for (int row = 0; row < rowCount; row++) {
+                putIntegral(out, values[row], type);
+            }
+        } else if (deltaSize <= forSize) {
+            out.put(DELTA);
+            out.putInt(0);
+            previous = 0;
+            for (int row = 0; row < rowCount; row++) {
+                putVarint(out, zigzag(values[row] - previous));
+                previous = values[row];
+            }
+        } else {
+            out.put(FRAME_OF_REFERENCE);
+            out.putInt(0);
+            out.putLong(min);
+            for (int row = 0; row < rowCount; row++) {
+                putVarint(out, values[row] - min);
+            }
+        }
+    }
+
+    private static void encodeVariableLength(ByteBuffer rows, int offsets[], int lengths[], ByteBuffer out) {
+        final int rowCount = offsets.length;
+        long plainSize = 0;
+        for (int row = 0; row < rowCount; row++) {
+            final int length = Math.max(lengths[row], -1);
+            plainSize += varintSize(length + 1) + Math.max(length, 0);
+        }
+
+        //Only bother with a dictionary if at least half the values are repeats
+        final HashMap<ValueKey, Integer> dictionary = new HashMap<ValueKey, Integer>();
+        final int indexes[] = new int[rowCount];
+        final int maxEntries = rowCount / 2;
+        long dictionarySize = 0;
+        for (int row = 0; row < rowCount && dictionary.size() <= maxEntries; row++) {
+            //Nulls have a length of -1 and all compare equal to each other
+            final ValueKey key = new ValueKey(rows, offsets[row], Math.max(lengths[row], -1));
+            Integer index = dictionary.get(key);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(key, index);
+                dictionarySize += varintSize(key.m_length + 1) + Math.max(key.m_length, 0);
+            }
+            indexes[row] = index;
+        }
+
+        if (dictionary.size() <= maxEntries) {
+            for (int row = 0; row < rowCount; row++) {
+                dictionarySize += varintSize(indexes[row]);
+            }
+            dictionarySize += varintSize(dictionary.size());
+        }
+
+        if (dictionary.size() > maxEntries || dictionarySize >= plainSize) {
+            out.put(PLAIN);
+            out.putInt(0);
+            for (int row = 0; row < rowCount; row++) {
+                putValue(rows, offsets[row], lengths[row], out);
+            }
+        } else {
+            out.put(DICTIONARY);
+            out.putInt(0);
+            final ValueKey entries[] = new ValueKey[dictionary.size()];
+            for (Map.Entry<ValueKey, Integer> e : dictionary.entrySet()) {
+                entries[e.getValue()] = e.getKey();
+            }
+            putVarint(out, entries.length);
+            for (ValueKey entry : entries) {
+                putValue(rows, entry.m_offset, entry.m_length, out);
+            }
+            for (int row = 0; row < rowCount; row++) {
+                putVarint(out, indexes[row]);
+            }
+        }
+    }
+
+    /*
+     * Values are prefixed with length + 1 so that zero means null
+     */
+    private static void putValue(ByteBuffer rows, int offset, int length, ByteBuffer out) {
+        if (length < 0) {
+            putVarint(out, 0);
+            return;
+        }
+        putVarint(out, length + 1);
+        for (int ii = 0; ii < length; ii++) {
+            out.put(rows.get(offset + ii));
+        }
+    }
+
+    /**
+     * Decode an encoded chunk between the position and limit of in, writing the row format
+     * tuple data starting with the row count to out at its position.
+     */
+    public void decode(ByteBuffer in, ByteBuffer out) {
+        final byte format = in.get();
+        if (format == ROW_FORMAT) {
+            out.put(in);
+            return;
+        }
+        if (format != COLUMNAR_FORMAT) {
+            throw new IllegalArgumentException("Unknown snapshot chunk format " + format);
+        }
+
+        final int rowCount = in.getInt();
+        final int columnCount = m_types.length;
+        final long integralValues[][] = new long[columnCount][];
+        final int offsets[][] = new int[columnCount][];
+        final int lengths[][] = new int[columnCount][];
+        for (int col = 0; col < columnCount; col++) {
+            final VoltType type = m_types[col];
+            final byte encoding = in.get();
+            final int sectionLength = in.getInt();
+            final int sectionEnd = in.position() + sectionLength;
+            if (isIntegral(type)) {
+                integralValues[col] = decodeIntegral(in, type, encoding, rowCount);
+            } else if (isVariableLength(type)) {
+                offsets[col] = new int[rowCount];
+                lengths[col] = new int[rowCount];
+                decodeVariableLength(in, encoding, offsets[col], lengths[col]);
+            } else {
+                if (encoding != PLAIN) {
+                    throw new IllegalArgumentException("Unknown encoding " + encoding + " for " + type);
+                }
+                offsets[col] = new int[rowCount];
+                final int width = type.getLengthInBytesForFixedTypes();
+                for (int row = 0; row < rowCount; row++) {
+                    offsets[col][row] = in.position() + row * width;
+                }
+            }
+            if (sectionEnd > in.limit()) {
+                throw new IllegalArgumentException("Column section overruns the chunk");
+            }
+            in.position(sectionEnd);
+        }
+
+        out.putInt(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            final int lengthPosition = out.position();
+            out.putInt(0);
+            for (int col = 0; col < columnCount; col++) {
+                final VoltType type = m_types[col];
+                if (isIntegral(type)) {
+                    putIntegral(out, integralValues[col][row], type);
+                } else if (isVariableLength(type)) {
+                    final int length = lengths[col][row];
+                    out.putInt(length);
+                    for (int ii = 0; ii < length; ii++) {
+                        out.put(in.get(offsets[col][row] + ii));
+                    }
+                } else {
+                    final int width = type.getLengthInBytesForFixedTypes();
+                    for (int ii = 0; ii < width; ii++) {
+                        out.put(in.get(offsets[col][row] + ii));
+                    }
+                }
+            }
+            out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+        }
+    }
+
+    private static long[] decodeIntegral(ByteBuffer in, VoltType type, byte encoding, int rowCount) {
+        final long values[] = new long[rowCount];
+        switch (encoding) {
+        case PLAIN:
+            final int width = type.getLengthInBytesForFixedTypes();
+            for (int row = 0; row < rowCount; row++) {
+                values[row] = getIntegral(in, in.position(), type);
+                in.position(in.position() + width);
+            }
+            break;
+        case DELTA:
+            long previous = 0;
+            for (int row = 0; row < rowCount; row++) {
+                previous += unzigzag(getVarint(in));
+                values[row] = previous;
+            }
+            break;
+        case FRAME_OF_REFERENCE:
+            final long min = in.getLong();
+            for (int row = 0; row < rowCount; row++) {
+                values[row] = min + getVarint(in);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown encoding " + encoding + " for " + type);
+        }
+        return values;
+    }
+
+    private static void decodeVariableLength(ByteBuffer in, byte encoding, int offsets[], int lengths[]) {
+        if (encoding == PLAIN) {
+            for (int row = 0; row < offsets.length; row++) {
+                lengths[row] = (int)getVarint(in) - 1;
+                offsets[row] = in.position();
+                in.position(in.position() + Math.max(lengths[row], 0));
+            }
+        } else if (encoding == DICTIONARY) {
+            final int entryCount = (int)getVarint(in);
+            final int entryOffsets[] = new int[entryCount];
+            final int entryLengths[] = new int[entryCount];
+            for (int ii = 0; ii < entryCount; ii++) {
+                entryLengths[ii] = (int)getVarint(in) - 1;
+                entryOffsets[ii] = in.position();
+                in.position(in.position() + Math.max(entryLengths[ii], 0));
+            }
+            for (int row = 0; row < offsets.length; row++) {
+                final int index = (int)getVarint(in);
+                offsets[row] = entryOffsets[index];
+                lengths[row] = entryLengths[index];
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown encoding " + encoding + " for variable length column");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import org.voltdb.SnapshotFormat;
+
+/**
+ * Create a snapshot write plan for a columnar snapshot. The files, digests and layout are
+ * the same as a native snapshot, only the encoding of the chunks inside each table file
+ * differs. See {@link ColumnarChunkCodec}. Restore and the snapshot tools read the
+ * chunks back in the native row format through {@link TableSaveFile}.
+ */
+public class ColumnarSnapshotWritePlan extends NativeSnapshotWritePlan
+{
+    @Override
+    protected SnapshotFormat getFormat() {
+        return SnapshotFormat.COLUMNAR;
+    }
+}
@@ -0,0 +1,157 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google_voltpatches.common.hash.HashCode;
+import com.google_voltpatches.common.hash.Hashing;
+
+/**
+ * Cuts the rows of one partition of a table into content defined segments for delta snapshots.
+ *
+ * A segment ends after a row selected by a hash of the row's bytes, so the boundaries
+ * depend only on the rows themselves and not on where the EE happened to end a snapshot
+ * buffer. An insert or delete only changes the segment it lands in and the segments
+ * resynchronize right after it, which is what lets a delta snapshot reference most
+ * segments of the previous snapshot instead of writing them again.
+ *
+ * Segments are laid out like snapshot tuple data, a row count followed by length prefixed rows.
+ * Not thread safe, there is one segmenter per partition and it is only used by that partition's site.
+ */
+public class DeltaSegmenter {
+    public static final int TARGET_SEGMENT_BYTES =
+            Integer.getInteger("DELTA_SNAPSHOT_SEGMENT_BYTES", 1024 * 64);
+    static final int MIN_SEGMENT_BYTES = TARGET_SEGMENT_BYTES / 4;
+    static final int MAX_SEGMENT_BYTES = TARGET_SEGMENT_BYTES * 4;
+
+    /*
+     * First byte of every chunk payload in a delta snapshot file,
+     * either the rows of the segment or a reference to the rows in an earlier file
+     */
+    public static final byte SEGMENT_ROWS = 0;
+    public static final byte SEGMENT_REFERENCE = 2;
+    public static final int HASH_LENGTH = 32;
+
+    private ByteBuffer m_pending = newSegment(MAX_SEGMENT_BYTES);
+    private int m_pendingRows = 0;
+
+    private static ByteBuffer newSegment(int capacity) {
+        ByteBuffer segment = ByteBuffer.allocate(capacity);
+        segment.putInt(0);
+        return segment;
+    }
+
+    /**
+     * Add the tuple data between the position and limit of rows, starting with the row count.
+     * The rows are copied, the position of the buffer is left unchanged.
+     *
+     * @return The segments completed by these rows, each ready to read from position 0
+     */
+    public List<ByteBuffer> add(ByteBuffer rows) {
+        final List<ByteBuffer> segments = new ArrayList<ByteBuffer>(2);
+        final int rowCount = rows.getInt(rows.position());
+        int position = rows.position() + 4;
+        for (int ii = 0; ii < rowCount; ii++) {
+            final int rowLength = rows.getInt(position) + 4;
+            if (m_pending.remaining() < rowLength) {
+                //Only a row bigger than the maximum segment can get here with rows pending
+                if (m_pendingRows > 0) {
+                    segments.add(cut());
+                }
+                if (m_pending.remaining() < rowLength) {
+                    m_pending = newSegment(rowLength + 4);
+                }
+            }
+            final ByteBuffer row = rows.duplicate();
+            row.position(position).limit(position + rowLength);
+            m_pending.put(row);
+            m_pendingRows++;
+
+            final int segmentBytes = m_pending.position();
+            if (segmentBytes >= MAX_SEGMENT_BYTES ||
+                    (segmentBytes >= MIN_SEGMENT_BYTES && isBoundary(rows, position, rowLength))) {
+                segments.add(cut());
+            }
+            position += rowLength;
+        }
+        return segments;
+    }
+
+    /**
+     * @return The last, partial, segment or null if there are no rows pending
+     */
+    public ByteBuffer flush() {
+        if (m_pendingRows == 0) {
+            return null;
+        }
+        return cut();
+    }
+
+    private ByteBuffer cut() {
+        final ByteBuffer segment = m_pending;
+        segment.putInt(0, m_pendingRows);
+        segment.flip();
+        m_pending = newSegment(MAX_SEGMENT_BYTES);
+        m_pendingRows = 0;
+        return segment;
+    }
+
+    /*
+     * Pick boundaries so that on average a segment is TARGET_SEGMENT_BYTES long, a cheap mix of
+     * the row's length and its leading and trailing bytes is enough to spread them out
+     */
+    private static boolean isBoundary(ByteBuffer rows, int position, int rowLength) {
+        long h = rowLength;
+        final int end = position + rowLength;
+        for (int ii = position + 4; ii < end && ii < position + 36; ii += 8) {
+            h = mix(h ^ (end - ii >= 8 ? rows.getLong(ii) : rows.get(ii)));
+        }
+        if (end - position >= 12) {
+            h = mix(h ^ rows.getLong(end - 8));
+        }
+        final int rowsPerSegment = Math.max(1, TARGET_SEGMENT_BYTES / rowLength);
+        return ((h >>> 1) % rowsPerSegment) == 0;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Identify the bytes between the position and limit of a segment. A delta snapshot trusts
+     * a matching hash to mean the base already holds the same rows, so it has to be a
+     * cryptographic digest that can't be made to collide.
+     */
+    public static HashCode hash(ByteBuffer segment) {
+        if (segment.hasArray()) {
+            return Hashing.sha256().hashBytes(
+                    segment.array(), segment.arrayOffset() + segment.position(), segment.remaining());
+        }
+        final byte bytes[] = new byte[segment.remaining()];
+        segment.duplicate().get(bytes);
+        return Hashing.sha256().hashBytes(bytes);
+    }
+}
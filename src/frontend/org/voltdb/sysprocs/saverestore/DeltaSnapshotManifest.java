@@ -0,0 +1,169 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google_voltpatches.common.hash.HashCode;
+
+/**
+ * Where the rows of every segment of a table save file written by a delta snapshot
+ * physically live. Segments that were unchanged since the base snapshot point into the
+ * file that first wrote them, so a manifest always describes the whole table and a chain
+ * of deltas never needs more than one hop to find a segment.
+ *
+ * The manifest of a snapshot is written next to each table file when it is closed and
+ * is what the next delta snapshot of the table compares its segments against. File names
+ * are relative to the directory of the manifest, the files of a base snapshot are kept
+ * next to the deltas that reference them and @SnapshotDelete refuses to delete them.
+ */
+public class DeltaSnapshotManifest {
+    public static final String MANIFEST_EXTENSION = ".manifest";
+    private static final int MANIFEST_VERSION = 1;
+
+    public static class Location {
+        public final int partitionId;
+        public final String fileName;
+        public final long offset;
+
+        public Location(int partitionId, String fileName, long offset) {
+            this.partitionId = partitionId;
+            this.fileName = fileName;
+            this.offset = offset;
+        }
+    }
+
+    private final Map<HashCode, Location> m_segments = new HashMap<HashCode, Location>();
+
+    public static File getManifestFile(File tableFile) {
+        return new File(tableFile.getParentFile(), tableFile.getName() + MANIFEST_EXTENSION);
+    }
+
+    public synchronized void put(HashCode hash, Location location) {
+        m_segments.put(hash, location);
+    }
+
+    public synchronized Location get(HashCode hash) {
+        return m_segments.get(hash);
+    }
+
+    public synchronized int size() {
+        return m_segments.size();
+    }
+
+    /**
+     * Read the manifest of a table file, a table file without one yields an empty manifest
+     * and the delta snapshot based on it writes every segment.
+     */
+    public static DeltaSnapshotManifest read(File tableFile) throws IOException {
+        final DeltaSnapshotManifest manifest = new DeltaSnapshotManifest();
+        final File file = getManifestFile(tableFile);
+        if (!file.exists()) {
+            return manifest;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            final int version = in.readInt();
+            if (version != MANIFEST_VERSION) {
+                throw new IOException("Unsupported delta snapshot manifest version " + version + " in " + file);
+            }
+            final int count = in.readInt();
+            final byte hash[] = new byte[DeltaSegmenter.HASH_LENGTH];
+            for (int ii = 0; ii < count; ii++) {
+                in.readFully(hash);
+                final int partitionId = in.readInt();
+                final String fileName = in.readUTF();
+                final long offset = in.readLong();
+                manifest.m_segments.put(HashCode.fromBytes(hash.clone()), new Location(partitionId, fileName, offset));
+            }
+        } finally {
+            in.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * Find the files in a directory that delta snapshots reference. A delta's table file can
+     * only be read as long as the files its manifest points to exist.
+     *
+     * @param ignored Table files whose references don't count, typically because they are
+     *                deleted along with the files being checked
+     * @return Names of the referenced files, relative to the directory
+     */
+    public static Set<String> getReferencedFiles(File directory, Collection<File> ignored) throws IOException {
+        final Set<String> ignoredNames = new HashSet<String>();
+        for (File f : ignored) {
+            if (directory.getAbsoluteFile().equals(f.getAbsoluteFile().getParentFile())) {
+                ignoredNames.add(f.getName());
+            }
+        }
+        final Set<String> referenced = new HashSet<String>();
+        final File manifests[] = directory.listFiles();
+        if (manifests == null) {
+            return referenced;
+        }
+        for (File manifestFile : manifests) {
+            final String name = manifestFile.getName();
+            if (!name.endsWith(MANIFEST_EXTENSION)) {
+                continue;
+            }
+            final String tableFileName = name.substring(0, name.length() - MANIFEST_EXTENSION.length());
+            if (ignoredNames.contains(tableFileName)) {
+                continue;
+            }
+            for (Location location : read(new File(directory, tableFileName)).m_segments.values()) {
+                if (!location.fileName.equals(tableFileName)) {
+                    referenced.add(location.fileName);
+                }
+            }
+        }
+        return referenced;
+    }
+
+    public synchronized void write(File tableFile) throws IOException {
+        final File file = getManifestFile(tableFile);
+        final FileOutputStream fos = new FileOutputStream(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            out.writeInt(MANIFEST_VERSION);
+            out.writeInt(m_segments.size());
+            for (Map.Entry<HashCode, Location> e : m_segments.entrySet()) {
+                out.write(e.getKey().asBytes());
+                out.writeInt(e.getValue().partitionId);
+                out.writeUTF(e.getValue().fileName);
+                out.writeLong(e.getValue().offset);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.json_voltpatches.JSONObject;
+import org.voltcore.utils.Pair;
+import org.voltdb.SnapshotFormat;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Table;
+import org.voltdb.dtxn.SiteTracker;
+
+/**
+ * Create a snapshot write plan for a delta snapshot. The table files are split into content
+ * defined segments, see {@link DeltaSegmenter}, and a segment the base snapshot named by
+ * the "baseNonce" key of the JSON parameter already wrote is only written as a reference to
+ * the base file. Without a base, or for a table the base doesn't have, every segment is
+ * written in full and the snapshot can serve as the base of the next one.
+ *
+ * The files of the base snapshot must be kept in the same directory as long as a delta
+ * references them, @SnapshotDelete won't delete them before the delta. Restore resolves
+ * the references relative to the delta file through {@link TableSaveFile}.
+ */
+public class DeltaSnapshotWritePlan extends NativeSnapshotWritePlan
+{
+    private String m_baseNonce;
+
+    @Override
+    public Callable<Boolean> createSetup(String file_path,
+                                            String file_nonce,
+                                            long txnId,
+                                            Map<Integer, Long> partitionTransactionIds,
+                                            JSONObject jsData,
+                                            SystemProcedureExecutionContext context,
+                                            final VoltTable result,
+                                            Map<String, Map<Integer, Pair<Long, Long>>> exportSequenceNumbers,
+                                            SiteTracker tracker,
+                                            HashinatorSnapshotData hashinatorData,
+                                            long timestamp)
+    {
+        m_baseNonce = jsData == null ? null : jsData.optString("baseNonce", null);
+        return super.createSetup(file_path, file_nonce, txnId, partitionTransactionIds, jsData, context,
+                result, exportSequenceNumbers, tracker, hashinatorData, timestamp);
+    }
+
+    @Override
+    protected SnapshotFormat getFormat() {
+        return SnapshotFormat.DELTA;
+    }
+
+    @Override
+    protected DeltaSnapshotManifest getDeltaBase(Table table, String file_path, int hostId)
+            throws IOException {
+        if (m_baseNonce == null) {
+            return new DeltaSnapshotManifest();
+        }
+        File baseFile = SnapshotUtil.constructFileForTable(table, file_path, m_baseNonce, getFormat(), hostId);
+        return DeltaSnapshotManifest.read(baseFile);
+    }
+}
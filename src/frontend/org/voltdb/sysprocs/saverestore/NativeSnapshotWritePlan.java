@@ -101,7 +101,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     context.getHostId(),
                     file_path,
                     file_nonce,
-                    SnapshotFormat.NATIVE,
+                    getFormat(),
                     tables.toArray(new Table[0]));
 
         final ArrayList<SnapshotTableTask> partitionedSnapshotTasks =
@@ -205,6 +205,23 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         };
     }
 
+    /**
+     * Format of the data targets created by this plan, all formats produced
+     * here share the native file container.
+     */
+    protected SnapshotFormat getFormat() {
+        return SnapshotFormat.NATIVE;
+    }
+
+    /**
+     * Manifest of the snapshot the table's data target should only write the changes
+     * against, null unless the format is {@link SnapshotFormat#DELTA}.
+     */
+    protected DeltaSnapshotManifest getDeltaBase(Table table, String file_path, int hostId)
+            throws IOException {
+        return null;
+    }
+
     private SnapshotDataTarget createDataTargetForTable(String file_path,
                                                         String file_nonce,
                                                         Table table,
@@ -225,7 +242,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 table,
                 file_path,
                 file_nonce,
-                SnapshotFormat.NATIVE,
+                getFormat(),
                 hostId);
 
         sdt = new DefaultSnapshotDataTarget(saveFilePath,
@@ -238,7 +255,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 tracker.getPartitionsForHost(hostId),
                 CatalogUtil.getVoltTable(table),
                 txnId,
-                timestamp);
+                timestamp,
+                getFormat(),
+                getDeltaBase(table, file_path, hostId));
 
         m_targets.add(sdt);
         final Runnable onClose = new TargetStatsClosure(sdt, table.getTypeName(), numTables, snapshotRecord);
@@ -0,0 +1,97 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Reports the progress of snapshot restore on this host, one row per table
+ * save file that is still being read.
+ */
+public class RestoreStats extends StatsSource {
+
+    public RestoreStats() {
+        super(false);
+    }
+
+    public static interface Constants {
+        public final static String TABLE = "TABLE";
+        public final static String PARTITIONS = "PARTITIONS";
+        public final static String CHUNKS_READ = "CHUNKS_READ";
+        public final static String ROWS_READ = "ROWS_READ";
+        public final static String BYTES_READ = "BYTES_READ";
+        public final static String FILE_BYTES = "FILE_BYTES";
+        public final static String PERCENTAGE_READ = "PERCENTAGE_READ";
+        public final static String MEGABYTES_PER_SECOND = "MEGABYTES_PER_SECOND";
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(Constants.TABLE, VoltType.STRING));
+        columns.add(new ColumnInfo(Constants.PARTITIONS, VoltType.STRING));
+        columns.add(new ColumnInfo(Constants.CHUNKS_READ, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.ROWS_READ, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.BYTES_READ, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.FILE_BYTES, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Constants.PERCENTAGE_READ, VoltType.FLOAT));
+        columns.add(new ColumnInfo(Constants.MEGABYTES_PER_SECOND, VoltType.FLOAT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        super.updateStatsRow(rowKey, rowValues);
+        TableSaveFile file = (TableSaveFile) rowKey;
+        final long bytesRead = file.getBytesRead();
+        final long fileBytes = file.getFileSize();
+        final long elapsed = System.currentTimeMillis() - file.getReadStartTime();
+
+        StringBuilder partitions = new StringBuilder();
+        for (int partitionId : file.getPartitionIds()) {
+            if (partitions.length() > 0) {
+                partitions.append(',');
+            }
+            partitions.append(partitionId);
+        }
+
+        rowValues[columnNameToIndex.get(Constants.TABLE)] = file.getTableName();
+        rowValues[columnNameToIndex.get(Constants.PARTITIONS)] =
+                file.isReplicated() ? "REPLICATED" : partitions.toString();
+        rowValues[columnNameToIndex.get(Constants.CHUNKS_READ)] = file.getChunksRead();
+        rowValues[columnNameToIndex.get(Constants.ROWS_READ)] = file.getRowsRead();
+        rowValues[columnNameToIndex.get(Constants.BYTES_READ)] = bytesRead;
+        rowValues[columnNameToIndex.get(Constants.FILE_BYTES)] = fileBytes;
+        rowValues[columnNameToIndex.get(Constants.PERCENTAGE_READ)] =
+                fileBytes > 0 ? Math.min(100.0, bytesRead * 100.0 / fileBytes) : 100.0;
+        rowValues[columnNameToIndex.get(Constants.MEGABYTES_PER_SECOND)] =
+                elapsed > 0 ? (bytesRead / (1024.0 * 1024.0)) / (elapsed / 1000.0) : 0.0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        @SuppressWarnings("rawtypes")
+        Iterator iter = new ArrayList<TableSaveFile>(TableSaveFile.getActiveFiles()).iterator();
+        return (Iterator<Object>)iter;
+    }
+}
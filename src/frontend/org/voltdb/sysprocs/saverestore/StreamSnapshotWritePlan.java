@@ -40,6 +40,7 @@ import org.voltdb.SnapshotDataFilter;
 import org.voltdb.SnapshotFormat;
 import org.voltdb.SnapshotSiteProcessor;
 import org.voltdb.SnapshotTableTask;
+import org.voltdb.StatsSelector;
 import org.voltdb.SystemProcedureExecutionContext;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
@@ -138,6 +139,12 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
         }
 
         List<DataTargetInfo> sdts = createDataTargets(localStreams, hashinatorData, schemas);
+        if (!sdts.isEmpty()) {
+            long estimatedBytes = estimateStreamBytes(context, config.tables);
+            for (DataTargetInfo sdt : sdts) {
+                sdt.dataTarget.setEstimatedBytes(estimatedBytes);
+            }
+        }
 
         // If there's no work to do on this host, just claim success, return an empty plan,
         // and things will sort themselves out properly
@@ -185,7 +192,6 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
             Mailbox mb = VoltDB.instance().getHostMessenger().createMailbox();
             StreamSnapshotDataTarget.SnapshotSender sender = new StreamSnapshotDataTarget.SnapshotSender(mb);
             StreamSnapshotAckReceiver ackReceiver = new StreamSnapshotAckReceiver(mb);
-            new Thread(sender, "Stream Snapshot Sender").start();
             new Thread(ackReceiver, "Stream Snapshot Ack Receiver").start();
             // The mailbox will be removed after all snapshot data targets are finished
             SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(createCompletionTask(mb));
@@ -210,6 +216,33 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
         return sdts;
     }
 
+    /**
+     * Estimate the uncompressed bytes each data target will stream from the table
+     * memory of this site. Every source site streams all of the tables, so the
+     * numbers of this site stand in for the other local sites.
+     * @return The estimate, or -1 if the table statistics are not available
+     */
+    private static long estimateStreamBytes(SystemProcedureExecutionContext context, Table[] tables)
+    {
+        int[] tableIds = new int[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            tableIds[i] = tables[i].getRelativeIndex();
+        }
+
+        VoltTable[] stats = context.getSiteProcedureConnection().getStats(StatsSelector.TABLE, tableIds,
+                                                                          false, System.currentTimeMillis());
+        if (stats == null || stats.length == 0) {
+            return -1;
+        }
+
+        // memory stats are in KB
+        long kilobytes = 0;
+        while (stats[0].advanceRow()) {
+            kilobytes += stats[0].getLong("TUPLE_DATA_MEMORY") + stats[0].getLong("STRING_DATA_MEMORY");
+        }
+        return kilobytes * 1024;
+    }
+
     /**
      * Remove the mailbox from the host messenger after all data targets are done.
      */
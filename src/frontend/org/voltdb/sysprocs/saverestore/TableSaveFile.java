@@ -18,6 +18,7 @@
 package org.voltdb.sysprocs.saverestore;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -26,10 +27,17 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Checksum;
 
 import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
@@ -42,7 +50,9 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
 import org.voltdb.EELibraryLoader;
+import org.voltdb.PrivateVoltTableFactory;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
@@ -98,14 +108,37 @@ public class TableSaveFile
         this(fis, readAheadChunks, relevantPartitionIds, false);
     }
 
-    // XXX maybe consider an IOException subclass at some point
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
             Integer[] relevantPartitionIds,
+            boolean continueOnCorruptedChunk) throws IOException {
+        this(fis, null, readAheadChunks, relevantPartitionIds, continueOnCorruptedChunk);
+    }
+
+    /**
+     * Open a save file by path. The rows of a delta file can only be read this way, the segments
+     * it shares with earlier snapshots are found in the files next to it.
+     */
+    public TableSaveFile(
+            File file,
+            int readAheadChunks,
+            Integer[] relevantPartitionIds,
+            boolean continueOnCorruptedChunk) throws IOException {
+        this(new FileInputStream(file), file.getAbsoluteFile().getParentFile(),
+                readAheadChunks, relevantPartitionIds, continueOnCorruptedChunk);
+    }
+
+    // XXX maybe consider an IOException subclass at some point
+    private TableSaveFile(
+            FileInputStream fis,
+            File directory,
+            int readAheadChunks,
+            Integer[] relevantPartitionIds,
             boolean continueOnCorruptedChunk) throws IOException
             {
                 m_fd = fis.getFD();
+                m_directory = directory;
                 FileChannel dataIn = fis.getChannel();
         try {
             EELibraryLoader.loadExecutionEngineLibrary(true);
@@ -119,6 +152,7 @@ public class TableSaveFile
             }
             m_chunkReads = new Semaphore(readAheadChunks);
             m_saveFile = dataIn;
+            m_fileSize = dataIn.size();
             m_continueOnCorruptedChunk = continueOnCorruptedChunk;
 
             final PureJavaCrc32 crc = new PureJavaCrc32();
@@ -261,8 +295,24 @@ public class TableSaveFile
                     }
                 }
                 m_hasVersion2FormatChunks = false;
+                m_columnarCodec = null;
+                m_isDelta = false;
             } else {
-                assert(m_versionNum[3] == 1 || m_versionNum[3] == 2);
+                assert(m_versionNum[3] >= 1 && m_versionNum[3] <= DefaultSnapshotDataTarget.DELTA_VERSION);
+                if (m_versionNum[3] == DefaultSnapshotDataTarget.COLUMNAR_VERSION) {
+                    /*
+                     * Chunks have to be decoded back into rows, the codec
+                     * gets the column types from the cached table header
+                     */
+                    ByteBuffer schema = ByteBuffer.allocate(m_tableHeader.capacity() + 4);
+                    schema.put((ByteBuffer)m_tableHeader.duplicate().position(0));
+                    schema.putInt(0);
+                    schema.flip();
+                    m_columnarCodec = new ColumnarChunkCodec(
+                            PrivateVoltTableFactory.createVoltTableFromBuffer(schema, true));
+                } else {
+                    m_columnarCodec = null;
+                }
                 if (m_versionNum[3] >= 2) {
                     m_hasVersion2FormatChunks = true;
                 } else {
@@ -290,6 +340,7 @@ public class TableSaveFile
                 m_isReplicated = obj.getBoolean("isReplicated");
                 m_isCompressed = obj.optBoolean("isCompressed", false);
                 m_checksumType = ChecksumType.valueOf(obj.optString("checksumType", "CRC32"));
+                m_isDelta = m_versionNum[3] == DefaultSnapshotDataTarget.DELTA_VERSION;
                 if (!m_isReplicated) {
                     JSONArray partitionIds = obj.getJSONArray("partitionIds");
                     m_partitionIds = new int[partitionIds.length()];
@@ -385,6 +436,37 @@ public class TableSaveFile
         return m_timestamp;
     }
 
+    /*
+     * Referenced files are named relative to this file's directory, so a snapshot
+     * directory can be moved or copied as a whole
+     */
+    private FileChannel getReferencedFile(String fileName) throws IOException {
+        if (m_directory == null) {
+            throw new IOException("Delta snapshot file must be opened by path to resolve its references");
+        }
+        if (!new File(fileName).getName().equals(fileName)) {
+            throw new IOException("Delta snapshot references a file outside of its directory: " + fileName);
+        }
+        synchronized (m_referencedFiles) {
+            FileChannel fc = m_referencedFiles.get(fileName);
+            if (fc == null) {
+                fc = new FileInputStream(new File(m_directory, fileName)).getChannel();
+                m_referencedFiles.put(fileName, fc);
+            }
+            return fc;
+        }
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            final int read = fc.read(buf, position);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
     public void close() throws IOException {
         Thread chunkReader;
         synchronized (this) {
@@ -402,11 +484,26 @@ public class TableSaveFile
         }
 
         synchronized (this) {
+            //Let chunks that are being decompressed land so their buffers can be freed
+            while (m_pendingChunks > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
             while (!m_availableChunks.isEmpty()) {
                 m_availableChunks.poll().discard();
             }
             notifyAll();
         }
+        m_activeFiles.remove(this);
+        synchronized (m_referencedFiles) {
+            for (FileChannel fc : m_referencedFiles.values()) {
+                fc.close();
+            }
+            m_referencedFiles.clear();
+        }
 
         /*
          * Free buffers used to pull snapshot data in process
@@ -425,13 +522,40 @@ public class TableSaveFile
         return m_tableHeader;
     }
 
+    /**
+     * @return The save files on this host that are currently being read
+     */
+    public static Set<TableSaveFile> getActiveFiles() {
+        return m_activeFiles;
+    }
+
+    public long getFileSize() {
+        return m_fileSize;
+    }
+
+    public long getReadStartTime() {
+        return m_readStartTime;
+    }
+
+    public long getBytesRead() {
+        return m_bytesRead.get();
+    }
+
+    public long getChunksRead() {
+        return m_chunksRead.get();
+    }
+
+    public long getRowsRead() {
+        return m_rowsRead.get();
+    }
+
     // Will get the next chunk of the table that is just over the chunk size
     public synchronized BBContainer getNextChunk() throws IOException
     {
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        if (!m_hasMoreChunks) {
+        if (!m_hasMoreChunks && m_pendingChunks == 0) {
             final Container c = m_availableChunks.poll();
             return c;
         }
@@ -439,11 +563,13 @@ public class TableSaveFile
         if (m_chunkReader == null) {
             m_chunkReader = new ChunkReader();
             m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
+            m_readStartTime = System.currentTimeMillis();
+            m_activeFiles.add(this);
             m_chunkReaderThread.start();
         }
 
         Container c = null;
-        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
+        while (c == null && (m_hasMoreChunks || m_pendingChunks > 0 || !m_availableChunks.isEmpty())) {
             c = m_availableChunks.poll();
             if (c == null) {
                 try {
@@ -468,7 +594,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        return m_hasMoreChunks || !m_availableChunks.isEmpty();
+        return m_hasMoreChunks || m_pendingChunks > 0 || !m_availableChunks.isEmpty();
     }
 
     private final FileChannel m_saveFile;
@@ -499,6 +625,16 @@ public class TableSaveFile
      * of the block is very different.
      */
     private final boolean m_hasVersion2FormatChunks;
+    private final ColumnarChunkCodec m_columnarCodec;
+
+    /*
+     * Delta files have chunks that reference chunks of the files of earlier snapshots
+     * in the same directory, see DeltaSnapshotWritePlan. The directory is only known
+     * when the file was opened by path.
+     */
+    private final boolean m_isDelta;
+    private final File m_directory;
+    private final Map<String, FileChannel> m_referencedFiles = new HashMap<String, FileChannel>();
 
     /**
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
@@ -520,6 +656,23 @@ public class TableSaveFile
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
 
+    /**
+     * Chunks that have been read from disk and are still being decompressed
+     */
+    private int m_pendingChunks = 0;
+
+    /*
+     * Progress of reading the file, reported by RestoreStats
+     */
+    private final long m_fileSize;
+    private volatile long m_readStartTime = 0;
+    private final AtomicLong m_bytesRead = new AtomicLong();
+    private final AtomicLong m_chunksRead = new AtomicLong();
+    private final AtomicLong m_rowsRead = new AtomicLong();
+
+    private static final Set<TableSaveFile> m_activeFiles =
+            Collections.newSetFromMap(new ConcurrentHashMap<TableSaveFile, Boolean>());
+
     /**
      * Thread to read chunks from the disk
      */
@@ -530,10 +683,6 @@ public class TableSaveFile
          * that should be easier to understand and validate.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
             long sinceLastFAdvise = Long.MAX_VALUE;
             long positionAtLastFAdvise = 0;
             while (m_hasMoreChunks) {
@@ -574,7 +723,8 @@ public class TableSaveFile
                 }
 
                 /*
-                 * Limit the number of chunk materialized into memory at one time
+                 * Limit the number of chunk materialized into memory at one time,
+                 * this includes chunks that are still being decompressed
                  */
                 try {
                     m_chunkReads.acquire();
@@ -582,8 +732,11 @@ public class TableSaveFile
                     return;
                 }
                 boolean expectedAnotherChunk = false;
-                Container c = null;
+                //For reading the compressed input, handed off to the decompression task
+                BBContainer fileInputBufferC =
+                        DBBPool.allocateDirectAndPool(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
                 try {
+                    final ByteBuffer fileInputBuffer = fileInputBufferC.b();
 
                     /*
                      * Get the length of the next chunk, partition id, crc for partition id, and length prefix,
@@ -615,8 +768,10 @@ public class TableSaveFile
                     int generatedValue = (int)partitionIdCRC.getValue();
                     if (generatedValue != nextChunkPartitionIdCRC) {
                         chunkLengthB.position(0);
-                        for (int partitionId : m_partitionIds) {
-                            m_corruptedPartitions.add(partitionId);
+                        synchronized (TableSaveFile.this) {
+                            for (int partitionId : m_partitionIds) {
+                                m_corruptedPartitions.add(partitionId);
+                            }
                         }
                         throw new IOException("Chunk partition ID CRC check failed. " +
                                 "This corrupts all partitions in this file");
@@ -656,7 +811,7 @@ public class TableSaveFile
                         sinceLastFAdvise += read;
                     }
                     fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
+                    m_bytesRead.addAndGet(nextChunkLength + chunkLengthB.capacity());
 
                     /*
                      * Validate the rest of the chunk. This can fail if the data is corrupted
@@ -665,7 +820,9 @@ public class TableSaveFile
                     final int calculatedCRC =
                             DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
                     if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
+                        synchronized (TableSaveFile.this) {
+                            m_corruptedPartitions.add(nextChunkPartitionId);
+                        }
                         if (m_continueOnCorruptedChunk) {
                             m_chunkReads.release();
                             continue;
@@ -674,53 +831,10 @@ public class TableSaveFile
                         }
                     }
 
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        final ByteBuffer buf = c.b();
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
-                            }
-                        }
-                    }
-
                     /*
                      * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
+                     * in case it is the length value that is corrupted. Skipping before
+                     * decompression spares the work for chunks that aren't wanted.
                      */
                     if (m_relevantPartitionIds != null) {
                         if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
@@ -730,15 +844,16 @@ public class TableSaveFile
                     }
 
                     /*
-                     * VoltTable wants the buffer at the home position 0
+                     * Decompression and decoding happen on the compression service so that
+                     * this thread only does I/O and several chunks of the file can be
+                     * decompressed at once, bounded by the read ahead.
                      */
-                    c.b().position(0);
-
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
-                        TableSaveFile.this.notifyAll();
+                        m_pendingChunks++;
                     }
+                    CompressionService.submitCompressionTask(
+                            new ChunkDecompressor(fileInputBufferC, nextChunkPartitionId));
+                    fileInputBufferC = null;
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
                         m_hasMoreChunks = false;
@@ -774,10 +889,9 @@ public class TableSaveFile
                         TableSaveFile.this.notifyAll();
                     }
                 } finally {
-                    if (c != null) c.discard();
+                    if (fileInputBufferC != null) fileInputBufferC.discard();
                 }
             }
-            fileInputBufferC.discard();
         }
 
         private void readChunks() {
@@ -1042,6 +1156,166 @@ public class TableSaveFile
             }
             fileInputBufferC.discard();
         }
+        /*
+         * Position the decompressed segment of a delta file at its row count and rows. A segment
+         * the base snapshot wrote only holds a reference that is read back from the base file,
+         * each hop is checked the same way as a chunk read in sequence.
+         */
+        private ByteBuffer resolveSegment(ByteBuffer segment) throws IOException {
+            final byte hash[] = new byte[DeltaSegmenter.HASH_LENGTH];
+            final byte type = segment.get();
+            segment.get(hash);
+            if (type == DeltaSegmenter.SEGMENT_ROWS) {
+                return segment;
+            } else if (type != DeltaSegmenter.SEGMENT_REFERENCE) {
+                throw new IOException("Unknown delta segment type " + type);
+            }
+            final byte fileName[] = new byte[segment.getInt()];
+            segment.get(fileName);
+            final long offset = segment.getLong();
+            final FileChannel fc = getReferencedFile(new String(fileName, "UTF-8"));
+
+            final ByteBuffer header = ByteBuffer.allocate(16);
+            readFully(fc, header, offset);
+            final Checksum headerCRC = new PureJavaCrc32C();
+            headerCRC.update(header.array(), 0, 8);
+            if ((int)headerCRC.getValue() != header.getInt(8)) {
+                throw new IOException("Referenced chunk partition ID CRC check failed");
+            }
+            final int length = header.getInt(0);
+            if (length < 0 || length > CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE)) {
+                throw new IOException("Referenced chunk has unreasonable length " + length);
+            }
+
+            final BBContainer referencedC = DBBPool.allocateDirectAndPool(length);
+            try {
+                final ByteBuffer referenced = referencedC.b();
+                referenced.clear();
+                referenced.limit(length);
+                readFully(fc, referenced, offset + header.capacity());
+                referenced.flip();
+                if (DBBPool.getBufferCRC32C(referenced, 0, referenced.remaining()) != header.getInt(12)) {
+                    throw new IOException("CRC mismatch in referenced chunk");
+                }
+                segment.clear();
+                CompressionService.decompressBuffer(referenced, segment);
+            } finally {
+                referencedC.discard();
+            }
+
+            final byte referencedHash[] = new byte[DeltaSegmenter.HASH_LENGTH];
+            if (segment.get() != DeltaSegmenter.SEGMENT_ROWS) {
+                throw new IOException("Referenced chunk does not contain rows");
+            }
+            segment.get(referencedHash);
+            if (!Arrays.equals(hash, referencedHash)) {
+                throw new IOException("Referenced chunk does not match the delta segment");
+            }
+            return segment;
+        }
+
+        /*
+         * Decompresses (and decodes for columnar files) a chunk read by the chunk reader
+         * and makes it available. Runs on the compression service.
+         */
+        private class ChunkDecompressor implements Callable<Object> {
+            private final BBContainer m_compressed;
+            private final int m_partitionId;
+
+            ChunkDecompressor(BBContainer compressed, int partitionId) {
+                m_compressed = compressed;
+                m_partitionId = partitionId;
+            }
+
+            @Override
+            public Object call() {
+                Container c = null;
+                try {
+                    final ByteBuffer compressed = m_compressed.b();
+                    /*
+                     * Now allocate space to store the chunk using the VoltTable serialization representation.
+                     * The chunk will contain an integer row count preceding it so it can
+                     * be sucked straight in.
+                     */
+                    c = getOutputBuffer(m_partitionId);
+                    final ByteBuffer buf = c.b();
+                    /*
+                     * Assemble a VoltTable out of the chunk of tuples.
+                     * Put in the header that was cached in the constructor,
+                     * then copy the tuple data. The header is shared by all decompressors.
+                     */
+                    final ByteBuffer tableHeader = m_tableHeader.duplicate();
+                    tableHeader.position(0);
+                    buf.clear();
+                    if (m_isDelta) {
+                        buf.put(tableHeader);
+                        final BBContainer segmentC = DBBPool.allocateDirectAndPool(DEFAULT_CHUNKSIZE);
+                        try {
+                            final ByteBuffer segment = segmentC.b();
+                            CompressionService.decompressBuffer(compressed, segment);
+                            buf.put(resolveSegment(segment));
+                            buf.flip();
+                        } finally {
+                            segmentC.discard();
+                        }
+                    } else if (m_columnarCodec == null) {
+                        buf.limit(CompressionService.uncompressedLength(compressed) + tableHeader.capacity());
+                        buf.put(tableHeader);
+                        //Doesn't move buffer position, does change the limit
+                        CompressionService.decompressBuffer(compressed, buf);
+                    } else {
+                        buf.put(tableHeader);
+                        final BBContainer encodedC = DBBPool.allocateDirectAndPool(DEFAULT_CHUNKSIZE);
+                        try {
+                            final ByteBuffer encoded = encodedC.b();
+                            CompressionService.decompressBuffer(compressed, encoded);
+                            m_columnarCodec.decode(encoded, buf);
+                            buf.flip();
+                        } finally {
+                            encodedC.discard();
+                        }
+                    }
+                    m_rowsRead.addAndGet(buf.getInt(tableHeader.capacity()));
+                    m_chunksRead.incrementAndGet();
+
+                    /*
+                     * VoltTable wants the buffer at the home position 0
+                     */
+                    buf.position(0);
+
+                    synchronized (TableSaveFile.this) {
+                        m_availableChunks.offer(c);
+                        c = null;
+                    }
+                } catch (Exception e) {
+                    /*
+                     * If the length value is wrong or not all data made it to disk decompression
+                     * will not complete correctly. There could be overflow, underflow etc.
+                     * so indicate that all partitions are now corrupt.
+                     */
+                    synchronized (TableSaveFile.this) {
+                        for (int partitionId : m_partitionIds) {
+                            m_corruptedPartitions.add(partitionId);
+                        }
+                        if (m_continueOnCorruptedChunk) {
+                            m_chunkReads.release();
+                        } else if (m_chunkReaderException == null) {
+                            m_hasMoreChunks = false;
+                            m_chunkReaderException = new IOException("Failed decompression of saved table chunk", e);
+                        }
+                    }
+                } finally {
+                    m_compressed.discard();
+                    if (c != null) c.discard();
+                    synchronized (TableSaveFile.this) {
+                        m_pendingChunks--;
+                        TableSaveFile.this.notifyAll();
+                    }
+                }
+                return null;
+            }
+        }
+
         private Container getOutputBuffer(final int nextChunkPartitionId) {
             BBContainer c = m_buffers.poll();
             if (c == null) {
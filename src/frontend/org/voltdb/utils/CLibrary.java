@@ -18,6 +18,7 @@ package org.voltdb.utils;
 
 import org.voltcore.logging.VoltLogger;
 import com.sun.jna.Native;
+import com.sun.jna.Pointer;
 import sun.misc.SharedSecrets;
 
 import java.io.FileDescriptor;
@@ -69,4 +70,60 @@ public class CLibrary {
 
     public static native final int getpid();
 
+    /*
+     * Linux only calls for writing files with O_DIRECT, kept apart so a libc
+     * without them doesn't keep the calls above from registering
+     */
+    public static final class DirectIO {
+        /*
+         * Open flags are architecture specific, these are from the Linux asm-generic headers
+         * that x86, x86_64, arm and aarch64 share except for O_DIRECT. Other architectures
+         * write snapshots through the page cache.
+         */
+        public static final int O_RDWR = 02;
+        public static final int O_CREAT = 0100;
+        public static final int O_TRUNC = 01000;
+        public static final int O_DIRECT = getODirect(System.getProperty("os.name"), System.getProperty("os.arch"));
+        public static final int FALLOC_FL_KEEP_SIZE = 0x01;
+        public static final int ENOSPC = 28;
+
+        public static final boolean SUPPORTED;
+        static {
+            boolean supported = false;
+            if (O_DIRECT != 0) {
+                try {
+                    Native.register("c");
+                    supported = true;
+                } catch (Throwable t) {
+                    hostLog.warn("Failed to load direct I/O calls from libc via JNA", t);
+                }
+            }
+            SUPPORTED = supported;
+        }
+
+        /*
+         * The value of O_DIRECT for the platform, or 0 if it isn't known
+         */
+        static int getODirect(String osName, String osArch) {
+            if (osName == null || osArch == null || !osName.equalsIgnoreCase("linux")) {
+                return 0;
+            }
+            if (osArch.equals("amd64") || osArch.equals("x86_64") ||
+                    osArch.equals("x86") || osArch.matches("i[3-6]86")) {
+                return 040000;
+            }
+            if (osArch.equals("aarch64") || osArch.equals("arm")) {
+                return 0200000;
+            }
+            return 0;
+        }
+
+        public static native final int open(String path, int flags, int mode);
+        public static native final int close(int fd);
+        public static native final long pwrite(int fd, Pointer buf, long count, long offset);
+        public static native final long pread(int fd, Pointer buf, long count, long offset);
+        public static native final int fallocate(int fd, int mode, long offset, long len);
+        public static native final int ftruncate(int fd, long length);
+        public static native final int fdatasync(int fd);
+    }
 }
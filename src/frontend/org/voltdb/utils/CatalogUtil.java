@@ -33,10 +33,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.zip.CRC32;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -59,6 +59,7 @@ import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.VoltZK;
+import org.voltdb.catalog.BinaryCatalog;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.CatalogType;
@@ -72,6 +73,8 @@ import org.voltdb.catalog.Deployment;
 import org.voltdb.catalog.Group;
 import org.voltdb.catalog.GroupRef;
 import org.voltdb.catalog.Index;
+import org.voltdb.catalog.MaterializedViewInfo;
+import org.voltdb.catalog.MaterializedViewJoin;
 import org.voltdb.catalog.PlanFragment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
@@ -103,8 +106,6 @@ import org.voltdb.compilereport.StatementAnnotation;
 import org.voltdb.compilereport.TableAnnotation;
 import org.voltdb.export.ExportDataProcessor;
 import org.voltdb.expressions.AbstractExpression;
-import org.voltdb.planner.parseinfo.StmtTargetTableScan;
-import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.types.ConstraintType;
 import org.xml.sax.SAXException;
 
@@ -119,6 +120,8 @@ public abstract class CatalogUtil {
 
     public static final String CATALOG_FILENAME = "catalog.txt";
     public static final String CATALOG_BUILDINFO_FILENAME = "buildinfo.txt";
+    // binary form of catalog.txt, see BinaryCatalog
+    public static final String CATALOG_BINARY_FILENAME = "catalog.bin";
 
     /**
      * Load a catalog from the jar bytes.
@@ -135,6 +138,19 @@ public abstract class CatalogUtil {
     {
         // Throws IOException on load failure.
         InMemoryJarfile jarfile = loadInMemoryJarFile(catalogBytes);
+        return loadAndUpgradeCatalogFromJar(jarfile);
+    }
+
+    /**
+     * Load a catalog from an in-memory jar, upgrading the jar in place if needed.
+     *
+     * @param jarfile in-memory catalog jar file
+     * @return Pair containing catalog serialized string and upgraded version (or null if it wasn't upgraded)
+     * @throws IOException If the catalog is incompatible.
+     */
+    public static Pair<String, String> loadAndUpgradeCatalogFromJar(InMemoryJarfile jarfile)
+            throws IOException
+    {
         // Let VoltCompiler do a version check and upgrade the catalog on the fly.
         // I.e. jarfile may be modified.
         VoltCompiler compiler = new VoltCompiler();
@@ -144,6 +160,46 @@ public abstract class CatalogUtil {
         return new Pair<String, String>(serializedCatalog, upgradedFromVersion);
     }
 
+    /**
+     * Build the catalog held by a catalog jar. Uses the binary form of the catalog
+     * when the jar has one that was written along with its current catalog.txt,
+     * and falls back to executing the text commands otherwise.
+     *
+     * @param jarfile in-memory catalog jar file
+     * @return the catalog
+     */
+    public static Catalog deserializeCatalogFromJar(InMemoryJarfile jarfile)
+    {
+        byte[] serializedCatalogBytes = jarfile.get(CATALOG_FILENAME);
+        byte[] binaryCatalogBytes = jarfile.get(CATALOG_BINARY_FILENAME);
+        if (BinaryCatalog.isBinaryCatalog(binaryCatalogBytes)) {
+            try {
+                BinaryCatalog binaryCatalog = new BinaryCatalog(binaryCatalogBytes);
+                if (binaryCatalog.getSourceChecksum() == getTextCatalogChecksum(serializedCatalogBytes)) {
+                    Catalog catalog = new Catalog();
+                    binaryCatalog.apply(catalog);
+                    return catalog;
+                }
+            } catch (Exception e) {
+                hostLog.warn("Unable to load the binary catalog, using the text catalog instead", e);
+            }
+        }
+        Catalog catalog = new Catalog();
+        catalog.execute(new String(serializedCatalogBytes, Constants.UTF8ENCODING));
+        return catalog;
+    }
+
+    /**
+     * Checksum of catalog.txt recorded in catalog.bin, so a binary catalog left
+     * behind by something that rewrote only catalog.txt is never used.
+     */
+    public static long getTextCatalogChecksum(byte[] serializedCatalogBytes)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(serializedCatalogBytes);
+        return crc.getValue();
+    }
+
     /**
      * Get the catalog build info from the jar bytes.
      * Performs sanity checks on the build info and version strings.
@@ -370,6 +426,24 @@ public abstract class CatalogUtil {
         return false;
     }
 
+    /**
+     * Return true if a table is joined to the source table of a materialized view.
+     */
+    public static boolean isTableMaterializeViewJoin(org.voltdb.catalog.Database database,
+                                                     org.voltdb.catalog.Table table)
+    {
+        for (Table t : database.getTables()) {
+            for (MaterializedViewInfo mvi : t.getViews()) {
+                for (MaterializedViewJoin join : mvi.getJoins()) {
+                    if (join.getTable().getRelativeIndex() == table.getRelativeIndex()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Check if a catalog compiled with the given version of VoltDB is
      * compatible with the current version of VoltDB.
@@ -1334,35 +1408,19 @@ public abstract class CatalogUtil {
     }
 
     /**
-     * Given plan graphs and a SQL stmt, compute a bi-directonal usage map between
-     * schema (indexes, table & views) and SQL/Procedures.
+     * Given the tables and indexes used by a SQL stmt's plan, compute a bi-directonal
+     * usage map between schema (indexes, table & views) and SQL/Procedures.
      * Use "annotation" objects to store this extra information in the catalog
      * during compilation and catalog report generation.
+     * @param updated the name of the table the statement updates or null if read-only
      */
     public static void updateUsageAnnotations(Database db,
                                               Statement stmt,
-                                              AbstractPlanNode topPlan,
-                                              AbstractPlanNode bottomPlan)
+                                              Collection<String> tablesRead,
+                                              Collection<String> indexes,
+                                              String updated)
     {
-        Map<String, StmtTargetTableScan> tablesRead = new TreeMap<String, StmtTargetTableScan>();
-        Collection<String> indexes = new TreeSet<String>();
-        if (topPlan != null) {
-            topPlan.getTablesAndIndexes(tablesRead, indexes);
-        }
-        if (bottomPlan != null) {
-            bottomPlan.getTablesAndIndexes(tablesRead, indexes);
-        }
-
-        String updated = null;
-        if ( ! stmt.getReadonly()) {
-            updated = topPlan.getUpdatedTable();
-            if (updated == null) {
-                updated = bottomPlan.getUpdatedTable();
-            }
-            assert(updated != null);
-        }
-
-        Set<String> readTableNames = tablesRead.keySet();
+        Set<String> readTableNames = new TreeSet<String>(tablesRead);
 
         for (Table table : db.getTables()) {
             if (readTableNames.contains(table.getTypeName())) {
@@ -1387,7 +1445,7 @@ public abstract class CatalogUtil {
             }
         }
 
-        assert(tablesRead.size() == 0);
+        assert(readTableNames.size() == 0);
         assert(updated == null);
     }
 
@@ -130,21 +130,32 @@ public final class CompressionService {
 
             @Override
             public BBContainer call() throws Exception {
-                final ByteBuffer outBuffer = outBufferC.b();
-                //Reserve 4-bytes for the CRC
-                final int crcPosition = outBuffer.position();
-                outBuffer.position(outBuffer.position() + 4);
-                final int crcCalcStart = outBuffer.position();
-                compressBuffer(inBuffer, outBuffer);
-                final int crc32c =
-                        DBBPool.getCRC32C( outBufferC.address(), crcCalcStart, outBuffer.limit() - crcCalcStart);
-                outBuffer.putInt(crcPosition, crc32c);
-                return outBufferC;
+                return compressAndCRC32cBuffer(inBuffer, outBufferC);
             }
 
         });
     }
 
+    /**
+     * Synchronous version of {@link #compressAndCRC32cBufferAsync} for callers that are already
+     * running in a compression task, reserves 4 bytes at the output position for the CRC32C
+     * of the compressed payload.
+     */
+    public static BBContainer compressAndCRC32cBuffer(ByteBuffer inBuffer, BBContainer outBufferC) throws IOException {
+        assert(inBuffer.isDirect());
+        assert(outBufferC.b().isDirect());
+        final ByteBuffer outBuffer = outBufferC.b();
+        //Reserve 4-bytes for the CRC
+        final int crcPosition = outBuffer.position();
+        outBuffer.position(outBuffer.position() + 4);
+        final int crcCalcStart = outBuffer.position();
+        compressBuffer(inBuffer, outBuffer);
+        final int crc32c =
+                DBBPool.getCRC32C( outBufferC.address(), crcCalcStart, outBuffer.limit() - crcCalcStart);
+        outBuffer.putInt(crcPosition, crc32c);
+        return outBufferC;
+    }
+
     public static int compressBuffer(ByteBuffer buffer, ByteBuffer output) throws IOException {
         assert(buffer.isDirect());
         assert(output.isDirect());
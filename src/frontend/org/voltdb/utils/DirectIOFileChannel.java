@@ -0,0 +1,309 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.CLibrary.DirectIO;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * A write only file channel that bypasses the page cache with O_DIRECT. Appends are staged
+ * in an aligned buffer and written out a full buffer at a time, the unaligned tail of the
+ * file is padded when the channel is forced and truncated to the real size when it is forced
+ * or closed. Space is reserved ahead of the appends with fallocate so the file stays contiguous
+ * and running out of disk is found before the data is written.
+ *
+ * Writes before the end of the file, like patching a header, are supported but have to read
+ * and rewrite the blocks they touch.
+ */
+public class DirectIOFileChannel implements WriteOnlyFileChannel {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    public static final int ALIGNMENT = Integer.getInteger("DIRECT_IO_ALIGNMENT", 4096);
+
+    private final File m_file;
+    private final int m_fd;
+    private final BBContainer m_bufferC;
+    private final ByteBuffer m_buffer;
+    private final Pointer m_bufferPointer;
+    private final long m_preallocateBytes;
+    private boolean m_preallocate;
+
+    //File offset of the first byte of the staging buffer, always aligned
+    private long m_bufferFileOffset = 0;
+    private long m_position = 0;
+    private long m_size = 0;
+    private long m_allocated = 0;
+    private boolean m_open = true;
+
+    /**
+     * Create or truncate a file and open it for direct I/O.
+     *
+     * @param bufferBytes Size of the staging buffer, rounded up to the alignment
+     * @param preallocateBytes How far to reserve space ahead of the appends, 0 to not preallocate
+     * @return The channel or null if the platform or file system doesn't support O_DIRECT
+     */
+    public static DirectIOFileChannel open(File file, int bufferBytes, long preallocateBytes) {
+        if (!DirectIO.SUPPORTED) {
+            return null;
+        }
+        final int fd = DirectIO.open(
+                file.getPath(),
+                DirectIO.O_RDWR | DirectIO.O_CREAT | DirectIO.O_TRUNC | DirectIO.O_DIRECT,
+                0644);
+        if (fd < 0) {
+            LOG.debug("Unable to open " + file + " for direct I/O, errno " + Native.getLastError());
+            return null;
+        }
+        return new DirectIOFileChannel(file, fd, roundUp(Math.max(bufferBytes, 1)), preallocateBytes);
+    }
+
+    private DirectIOFileChannel(File file, int fd, long bufferBytes, long preallocateBytes) {
+        m_file = file;
+        m_fd = fd;
+        m_bufferC = DBBPool.allocateDirect((int)bufferBytes + ALIGNMENT);
+        m_buffer = alignedSlice(m_bufferC, (int)bufferBytes);
+        m_bufferPointer = new Pointer(m_bufferC.address() + alignmentShift(m_bufferC));
+        m_preallocateBytes = preallocateBytes;
+        m_preallocate = preallocateBytes > 0;
+    }
+
+    private static long roundUp(long value) {
+        return ((value + ALIGNMENT - 1) / ALIGNMENT) * ALIGNMENT;
+    }
+
+    private static int alignmentShift(BBContainer c) {
+        return (int)((ALIGNMENT - (c.address() % ALIGNMENT)) % ALIGNMENT);
+    }
+
+    private static ByteBuffer alignedSlice(BBContainer c, int capacity) {
+        final ByteBuffer b = c.b().duplicate();
+        final int shift = alignmentShift(c);
+        b.position(shift);
+        b.limit(shift + capacity);
+        return b.slice();
+    }
+
+    private IOException error(String call) {
+        return new IOException(call + " failed with errno " + Native.getLastError() + " for " + m_file);
+    }
+
+    private void pwriteFully(Pointer buf, long count, long offset) throws IOException {
+        long written = 0;
+        while (written < count) {
+            final long retval = DirectIO.pwrite(m_fd, buf.share(written), count - written, offset + written);
+            if (retval < 0) {
+                throw error("pwrite");
+            }
+            written += retval;
+        }
+    }
+
+    private void preadFully(Pointer buf, long count, long offset) throws IOException {
+        long read = 0;
+        while (read < count) {
+            final long retval = DirectIO.pread(m_fd, buf.share(read), count - read, offset + read);
+            if (retval < 0) {
+                throw error("pread");
+            } else if (retval == 0) {
+                throw new IOException("Unexpected end of file reading " + m_file);
+            }
+            read += retval;
+        }
+    }
+
+    /*
+     * Reserve space up to and past end, a file system that can't do it is only logged
+     */
+    private void preallocate(long end) throws IOException {
+        if (!m_preallocate || end <= m_allocated) {
+            return;
+        }
+        final long allocateTo = ((end + m_preallocateBytes - 1) / m_preallocateBytes) * m_preallocateBytes;
+        if (DirectIO.fallocate(m_fd, DirectIO.FALLOC_FL_KEEP_SIZE, m_allocated, allocateTo - m_allocated) != 0) {
+            final int errno = Native.getLastError();
+            if (errno == DirectIO.ENOSPC) {
+                throw new IOException("Disk full preallocating " + m_file);
+            }
+            LOG.debug("Not preallocating " + m_file + ", fallocate failed with errno " + errno);
+            m_preallocate = false;
+            return;
+        }
+        m_allocated = allocateTo;
+    }
+
+    /*
+     * Write the staged bytes padded to the alignment, the padding is overwritten
+     * by later appends or truncated away
+     */
+    private void writeStaged() throws IOException {
+        final int staged = m_buffer.position();
+        if (staged == 0) {
+            return;
+        }
+        final int padded = (int)roundUp(staged);
+        for (int ii = staged; ii < padded; ii++) {
+            m_buffer.put(ii, (byte)0);
+        }
+        preallocate(m_bufferFileOffset + padded);
+        pwriteFully(m_bufferPointer, padded, m_bufferFileOffset);
+    }
+
+    private int append(ByteBuffer src) throws IOException {
+        final int length = src.remaining();
+        while (src.hasRemaining()) {
+            final ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + Math.min(slice.remaining(), m_buffer.remaining()));
+            src.position(slice.limit());
+            m_buffer.put(slice);
+            if (!m_buffer.hasRemaining()) {
+                preallocate(m_bufferFileOffset + m_buffer.capacity());
+                pwriteFully(m_bufferPointer, m_buffer.capacity(), m_bufferFileOffset);
+                m_bufferFileOffset += m_buffer.capacity();
+                m_buffer.clear();
+            }
+        }
+        m_size += length;
+        return length;
+    }
+
+    /*
+     * Overwrite bytes before the end of the file, the ones that were already written
+     * out are patched a block at a time
+     */
+    private int overwrite(ByteBuffer src, long position) throws IOException {
+        final int length = src.remaining();
+        if (position + length > m_size) {
+            throw new IOException("Writes to " + m_file + " can't extend the file from before its end");
+        }
+        BBContainer blockC = null;
+        try {
+            while (src.hasRemaining()) {
+                if (position >= m_bufferFileOffset) {
+                    m_buffer.put((int)(position - m_bufferFileOffset), src.get());
+                    position++;
+                    continue;
+                }
+                if (blockC == null) {
+                    blockC = DBBPool.allocateDirect(ALIGNMENT * 2);
+                }
+                final ByteBuffer block = alignedSlice(blockC, ALIGNMENT);
+                final Pointer blockPointer = new Pointer(blockC.address() + alignmentShift(blockC));
+                final long blockStart = position - (position % ALIGNMENT);
+                preadFully(blockPointer, ALIGNMENT, blockStart);
+                final int count = (int)Math.min(src.remaining(), blockStart + ALIGNMENT - position);
+                for (int ii = 0; ii < count; ii++) {
+                    block.put((int)(position - blockStart) + ii, src.get());
+                }
+                pwriteFully(blockPointer, ALIGNMENT, blockStart);
+                position += count;
+            }
+        } finally {
+            if (blockC != null) {
+                blockC.discard();
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        final int written = m_position == m_size ? append(src) : overwrite(src, m_position);
+        m_position += written;
+        return written;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        return position == m_size ? append(src) : overwrite(src, position);
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        return m_position;
+    }
+
+    @Override
+    public synchronized DirectIOFileChannel position(long newPosition) throws IOException {
+        if (newPosition < 0 || newPosition > m_size) {
+            throw new IllegalArgumentException("Position " + newPosition + " is outside of " + m_file);
+        }
+        m_position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        return m_size;
+    }
+
+    /**
+     * Write out the staged tail of the file and make the file's data durable
+     */
+    @Override
+    public synchronized void force(boolean metaData) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        writeStaged();
+        if (DirectIO.ftruncate(m_fd, m_size) != 0) {
+            throw error("ftruncate");
+        }
+        if (DirectIO.fdatasync(m_fd) != 0) {
+            throw error("fdatasync");
+        }
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return m_open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!m_open) {
+            return;
+        }
+        m_open = false;
+        try {
+            writeStaged();
+            //Also releases the space preallocated past the end
+            if (DirectIO.ftruncate(m_fd, m_size) != 0) {
+                throw error("ftruncate");
+            }
+        } finally {
+            DirectIO.close(m_fd);
+            m_bufferC.discard();
+        }
+    }
+}
@@ -422,7 +422,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * although incredibly unlikely
      */
     @Override
-    public long sizeInBytes() {
+    public synchronized long sizeInBytes() {
         assertions();
         long size = 0;
         for (PBDSegment segment : m_segments) {
@@ -0,0 +1,55 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The part of a FileChannel needed to write a file front to back and patch bytes already
+ * written, which is all a snapshot does with its files. Lets a file be written by something
+ * that can't offer the rest of FileChannel, like {@link DirectIOFileChannel}.
+ */
+public interface WriteOnlyFileChannel extends WritableByteChannel {
+    /**
+     * @see java.nio.channels.FileChannel#position()
+     */
+    public long position() throws IOException;
+
+    /**
+     * Move to a position no further than the end of the file
+     * @see java.nio.channels.FileChannel#position(long)
+     */
+    public WriteOnlyFileChannel position(long newPosition) throws IOException;
+
+    /**
+     * @see java.nio.channels.FileChannel#write(ByteBuffer, long)
+     */
+    public int write(ByteBuffer src, long position) throws IOException;
+
+    /**
+     * @see java.nio.channels.FileChannel#size()
+     */
+    public long size() throws IOException;
+
+    /**
+     * @see java.nio.channels.FileChannel#force(boolean)
+     */
+    public void force(boolean metaData) throws IOException;
+}
@@ -18,6 +18,7 @@
 package org.hsqldb_voltpatches;
 
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hsqldb_voltpatches.lib.HashMappedList;
 import org.hsqldb_voltpatches.persist.HsqlProperties;
@@ -86,7 +87,7 @@ public class HSQLInterface {
     }
 
     Session sessionProxy;
-    static int instanceId = 0;
+    static final AtomicInteger instanceId = new AtomicInteger();
 
     private HSQLInterface(Session sessionProxy) {
         this.sessionProxy = sessionProxy;
@@ -108,8 +109,7 @@ public class HSQLInterface {
      */
     public static HSQLInterface loadHsqldb() {
         Session sessionProxy = null;
-        String name = "hsqldbinstance-" + String.valueOf(instanceId) + "-" + String.valueOf(System.currentTimeMillis());
-        instanceId++;
+        String name = "hsqldbinstance-" + String.valueOf(instanceId.getAndIncrement()) + "-" + String.valueOf(System.currentTimeMillis());
 
         HsqlProperties props = new HsqlProperties();
         try {
@@ -3092,10 +3092,20 @@ public class ParserDDL extends ParserRoutine {
         }
 
         indexColumns = getColumnList(set, table);
+        // A VoltDB extension to support partial indexes
+        Expression predicate = null;
+        if (readIfThis(Tokens.WHERE)) {
+            predicate = XreadBooleanValueExpression();
+            // Reject references to columns that are not in the indexed table.
+            java.util.List<Expression> predicateExprs = new java.util.ArrayList<Expression>();
+            predicateExprs.add(predicate);
+            getColumnList(getBaseColumnNames(predicateExprs), table);
+        }
+        // End of VoltDB extension
         String   sql          = getLastPart();
         Object[] args         = new Object[] {
             table, indexColumns, indexHsqlName, Boolean.valueOf(unique), indexExprs,
-            Boolean.valueOf(assumeUnique)
+            Boolean.valueOf(assumeUnique), predicate
         /* disable 4 lines ...
         int[]    indexColumns = readColumnList(table, true);
         String   sql          = getLastPart();
@@ -970,15 +970,16 @@ public class StatementSchema extends Statement {
                     @SuppressWarnings("unchecked")
                     java.util.List<Expression> indexExprs = (java.util.List<Expression>)arguments[4];
                     boolean assumeUnique = ((Boolean) arguments[5]).booleanValue();
+                    Expression predicate = (Expression) arguments[6];
                     if (indexExprs != null) {
-                        tableWorks.addExprIndex(indexColumns, indexExprs.toArray(new Expression[indexExprs.size()]), name, unique).setAssumeUnique(assumeUnique);
+                        tableWorks.addExprIndex(indexColumns, indexExprs.toArray(new Expression[indexExprs.size()]), name, unique).setAssumeUnique(assumeUnique).withPredicate(predicate);
                         break;
                     }
                     org.hsqldb_voltpatches.index.Index addedIndex = 
                     // End of VoltDB extension
                     tableWorks.addIndex(indexColumns, name, unique);
-                    // A VoltDB extension to support assume unique attribute
-                    addedIndex.setAssumeUnique(assumeUnique);
+                    // A VoltDB extension to support assume unique attribute and partial indexes
+                    addedIndex.setAssumeUnique(assumeUnique).withPredicate(predicate);
                     // End of VoltDB extension
 
                     break;
@@ -1043,6 +1043,7 @@ public class Table extends TableBase implements SchemaObject {
             // A VoltDB extension to support indexed expressions and assume unique attribute
             Expression[] exprArr = idx.getExpressions();
             boolean assumeUnique = idx.isAssumeUnique();
+            Expression predicate = idx.getPredicate();
             // End of VoltDB extension
             idx = tn.createIndexStructure(idx.getName(), colarr,
                                           idx.getColumnDesc(), null,
@@ -1053,7 +1054,7 @@ public class Table extends TableBase implements SchemaObject {
             if (exprArr != null) {
                 idx = idx.withExpressions(adjustExprs(exprArr, colIndex, adjust));
             }
-            idx = idx.setAssumeUnique(assumeUnique);
+            idx = idx.setAssumeUnique(assumeUnique).withPredicate(predicate);
             // End of VoltDB extension
             tn.addIndex(idx);
         }
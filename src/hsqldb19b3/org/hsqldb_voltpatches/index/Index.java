@@ -296,5 +296,13 @@ public interface Index extends SchemaObject {
     Index setAssumeUnique(boolean assumeUnique);
 
     Index withExpressions(org.hsqldb_voltpatches.Expression[] adjustExprs);
+
+    /**
+     * VoltDB added method to get the WHERE clause of a partial index.
+     * @return the predicate, or null if every row of the table is indexed.
+     */
+    public org.hsqldb_voltpatches.Expression getPredicate();
+
+    Index withPredicate(org.hsqldb_voltpatches.Expression predicate);
     /**********************************************************************/
 }
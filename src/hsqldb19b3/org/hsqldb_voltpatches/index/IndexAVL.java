@@ -1587,6 +1587,7 @@ public class IndexAVL implements Index {
 
     private org.hsqldb_voltpatches.Expression[]    exprs; // A VoltDB extension to support indexed expressions
     private boolean         isAssumeUnique;  // A VoltDB extension to allow unique index on partitioned table without partition column included.
+    private org.hsqldb_voltpatches.Expression predicate; // A VoltDB extension to support partial indexes
 
     /**
      * VoltDB-specific Expression Index Constructor supports indexed expressions
@@ -1680,6 +1681,13 @@ public class IndexAVL implements Index {
         }
         index.attributes.put("assumeunique", isAssumeUnique() ? "true" : "false");
 
+        // Support partial indexes
+        if (predicate != null) {
+            org.hsqldb_voltpatches.VoltXMLElement predicateXML = new org.hsqldb_voltpatches.VoltXMLElement("predicate");
+            index.children.add(predicateXML);
+            predicateXML.children.add(predicate.voltGetExpressionXML(session, (Table) table));
+        }
+
         Object[] columnList = getColumnNameList().toArray();
         if (columnList.length > 0) {
             if (!autoGenIndexName.equals("") &&
@@ -1721,5 +1729,20 @@ public class IndexAVL implements Index {
         this.isAssumeUnique = assumeUnique;
         return this;
     }
+
+    /**
+     * VoltDB added method to get the WHERE clause of a partial index.
+     * @return the predicate, or null if every row of the table is indexed.
+     */
+    @Override
+    public org.hsqldb_voltpatches.Expression getPredicate() {
+        return predicate;
+    }
+
+    @Override
+    public Index withPredicate(org.hsqldb_voltpatches.Expression predicate) {
+        this.predicate = predicate;
+        return this;
+    }
     /**********************************************************************/
 }
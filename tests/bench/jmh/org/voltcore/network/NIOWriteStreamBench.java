@@ -0,0 +1,166 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.utils.DeferredSerialization;
+
+/**
+ * Enqueues a batch of responses on a write stream and drains them the way the
+ * network thread does: swap the queues, serialize into pooled buffers and gather
+ * write to the channel. The channel accepts everything, so this measures the
+ * queueing and copying overhead rather than the socket.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NIOWriteStreamBench {
+
+    @Param({"64", "4096"})
+    public int messageSize;
+
+    @Param({"1", "32"})
+    public int batch;
+
+    private static class BenchPort extends VoltPort {
+        BenchPort(NetworkDBBPool pool) throws IOException {
+            super(null, null, new InetSocketAddress(InetAddress.getLoopbackAddress(), 21212), pool);
+        }
+
+        @Override
+        public void setInterests(int opsToAdd, int opsToRemove) {}
+
+        @Override
+        public String toString() {
+            return "bench";
+        }
+    }
+
+    private static class NullChannel implements GatheringByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private NetworkDBBPool m_pool;
+    private NIOWriteStream m_stream;
+    private final NullChannel m_channel = new NullChannel();
+    private ByteBuffer m_message;
+    private DeferredSerialization m_deferred;
+
+    @Setup
+    public void setup() throws IOException {
+        m_pool = new NetworkDBBPool();
+        m_stream = new NIOWriteStream(new BenchPort(m_pool));
+        m_message = ByteBuffer.allocate(messageSize);
+        while (m_message.hasRemaining()) {
+            m_message.put((byte) m_message.position());
+        }
+        m_message.flip();
+        m_deferred = new DeferredSerialization() {
+            @Override
+            public void serialize(ByteBuffer outbuf) {
+                outbuf.put(m_message.duplicate());
+            }
+
+            @Override
+            public void cancel() {}
+
+            @Override
+            public int getSerializedSize() {
+                return messageSize;
+            }
+        };
+    }
+
+    @TearDown
+    public void teardown() {
+        m_stream.shutdown();
+        m_pool.clear();
+    }
+
+    @Benchmark
+    public int enqueueBufferAndDrain() throws IOException {
+        for (int i = 0; i < batch; i++) {
+            m_stream.enqueue(m_message.duplicate());
+        }
+        m_stream.swapAndSerializeQueuedWrites(m_pool);
+        return m_stream.drainTo(m_channel);
+    }
+
+    @Benchmark
+    public int enqueueDeferredAndDrain() throws IOException {
+        for (int i = 0; i < batch; i++) {
+            m_stream.enqueue(m_deferred);
+        }
+        m_stream.swapAndSerializeQueuedWrites(m_pool);
+        return m_stream.drainTo(m_channel);
+    }
+}
@@ -0,0 +1,143 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the primitive keyed maps against the boxed HashMaps they replaced in the
+ * iv2 schedulers and ClientInterfaceHandleManager. Each operation mimics the life of one
+ * transaction: put a new id, look it up once and remove it, with a window of
+ * outstanding transactions in the map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongObjectHashMapBench {
+
+    @Param({"16", "1024"})
+    public int outstanding;
+
+    private final Object m_value = new Object();
+    private long m_nextTxnId;
+
+    private Map<Long, Object> m_hashMap;
+    private LongObjectHashMap<Object> m_longMap;
+    private Map<SpSchedulerKey, Object> m_pairHashMap;
+    private LongPairObjectHashMap<Object> m_pairMap;
+
+    // Same shape as SpScheduler's old DuplicateCounterKey
+    private static final class SpSchedulerKey {
+        final long m_txnId;
+        final long m_spHandle;
+
+        SpSchedulerKey(long txnId, long spHandle) {
+            m_txnId = txnId;
+            m_spHandle = spHandle;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SpSchedulerKey)) {
+                return false;
+            }
+            SpSchedulerKey other = (SpSchedulerKey)o;
+            return m_txnId == other.m_txnId && m_spHandle == other.m_spHandle;
+        }
+
+        @Override
+        public int hashCode() {
+            return (37 * (int)(m_txnId ^ (m_txnId >>> 32))) + ((int)(m_spHandle ^ (m_spHandle >>> 32)));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        m_hashMap = new HashMap<Long, Object>();
+        m_longMap = new LongObjectHashMap<Object>();
+        m_pairHashMap = new HashMap<SpSchedulerKey, Object>();
+        m_pairMap = new LongPairObjectHashMap<Object>();
+        // txn ids move in steps like TxnEgo sequence numbers
+        for (m_nextTxnId = 0; m_nextTxnId < outstanding; m_nextTxnId++) {
+            long txnId = m_nextTxnId << 14;
+            m_hashMap.put(txnId, m_value);
+            m_longMap.put(txnId, m_value);
+            m_pairHashMap.put(new SpSchedulerKey(txnId, txnId + 1), m_value);
+            m_pairMap.put(txnId, txnId + 1, m_value);
+        }
+    }
+
+    @Benchmark
+    public Object hashMap() {
+        long txnId = m_nextTxnId++ << 14;
+        long doneTxnId = txnId - ((long)outstanding << 14);
+        m_hashMap.put(txnId, m_value);
+        m_hashMap.get(doneTxnId);
+        return m_hashMap.remove(doneTxnId);
+    }
+
+    @Benchmark
+    public Object longObjectHashMap() {
+        long txnId = m_nextTxnId++ << 14;
+        long doneTxnId = txnId - ((long)outstanding << 14);
+        m_longMap.put(txnId, m_value);
+        m_longMap.get(doneTxnId);
+        return m_longMap.remove(doneTxnId);
+    }
+
+    @Benchmark
+    public Object pairKeyHashMap() {
+        long txnId = m_nextTxnId++ << 14;
+        long doneTxnId = txnId - ((long)outstanding << 14);
+        m_pairHashMap.put(new SpSchedulerKey(txnId, txnId + 1), m_value);
+        m_pairHashMap.get(new SpSchedulerKey(doneTxnId, doneTxnId + 1));
+        return m_pairHashMap.remove(new SpSchedulerKey(doneTxnId, doneTxnId + 1));
+    }
+
+    @Benchmark
+    public Object longPairObjectHashMap() {
+        long txnId = m_nextTxnId++ << 14;
+        long doneTxnId = txnId - ((long)outstanding << 14);
+        m_pairMap.put(txnId, txnId + 1, m_value);
+        m_pairMap.get(doneTxnId, doneTxnId + 1);
+        return m_pairMap.remove(doneTxnId, doneTxnId + 1);
+    }
+}
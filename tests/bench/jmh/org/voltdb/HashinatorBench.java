@@ -0,0 +1,120 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra_voltpatches.MurmurHash3;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Partition routing of long, string and byte array keys with the elastic hashinator.
+ * Compares encoding the key to a fresh byte array and wrapping it (the old path)
+ * against hashing the key directly, and deserializing the partition parameter of an
+ * invocation against hashing it in place in the serialized parameter set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashinatorBench {
+
+    @Param({"long", "string", "bytes"})
+    public String keyType;
+
+    @Param({"16", "64"})
+    public int keyLength;
+
+    private ElasticHashinator m_hashinator;
+    private VoltType m_type;
+    private Object m_key;
+    private ByteBuffer m_params;
+
+    @Setup
+    public void setup() throws IOException {
+        m_hashinator = new ElasticHashinator(
+                ElasticHashinator.getConfigureBytes(24, ElasticHashinator.DEFAULT_TOTAL_TOKENS), false);
+        Random r = new Random(0);
+        if (keyType.equals("long")) {
+            m_type = VoltType.BIGINT;
+            m_key = r.nextLong();
+        } else if (keyType.equals("string")) {
+            m_type = VoltType.STRING;
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < keyLength) {
+                sb.append(Long.toString(r.nextLong(), 36));
+            }
+            m_key = sb.substring(0, keyLength);
+        } else {
+            m_type = VoltType.VARBINARY;
+            byte[] bytes = new byte[keyLength];
+            r.nextBytes(bytes);
+            m_key = bytes;
+        }
+
+        // a typical invocation, partition key first
+        ParameterSet params = ParameterSet.fromArrayNoCopy(m_key, 42L, "some other parameter");
+        m_params = ByteBuffer.allocate(params.getSerializedSize());
+        params.flattenToBuffer(m_params);
+        m_params.flip();
+    }
+
+    @Benchmark
+    public int valueToBytes() {
+        byte[] bytes = TheHashinator.valueToBytes(m_key);
+        return m_hashinator.partitionForToken(
+                MurmurHash3.hash3_x64_128(ByteBuffer.wrap(bytes), 0, bytes.length, 0));
+    }
+
+    @Benchmark
+    public int direct() {
+        return m_hashinator.getHashedPartitionForParameter(m_type, m_key);
+    }
+
+    @Benchmark
+    public int deserializedParameter() throws IOException {
+        Object key = ParameterSet.getParameterAtIndex(0, m_params.duplicate());
+        return m_hashinator.getHashedPartitionForParameter(m_type, key);
+    }
+
+    @Benchmark
+    public int serializedParameter() throws IOException {
+        return m_hashinator.getHashedPartitionForSerializedParameter(m_type, m_params, 0);
+    }
+}
@@ -0,0 +1,100 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Flattens and parses the parameters of a typical invocation, either scalars only
+ * or with an array parameter, as the client and the ClientInterface do per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterSetBench {
+
+    @Param({"scalars", "arrays"})
+    public String shape;
+
+    private ParameterSet m_params;
+    private ByteBuffer m_buffer;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        if (shape.equals("scalars")) {
+            m_params = ParameterSet.fromArrayNoCopy(
+                    42L, 7, "a string parameter", 3.5, new BigDecimal("12.345"), new TimestampType(0));
+        } else {
+            long[] ids = new long[64];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = i * 17L;
+            }
+            m_params = ParameterSet.fromArrayNoCopy(
+                    42L, ids, new String[] { "one", "two", "three" }, new byte[128]);
+        }
+        m_buffer = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_params.flattenToBuffer(m_buffer);
+        m_buffer.flip();
+        m_serialized = m_buffer.asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public int flatten() throws IOException {
+        m_buffer.clear();
+        m_params.flattenToBuffer(m_buffer);
+        return m_buffer.position();
+    }
+
+    @Benchmark
+    public int flattenWithSizing() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_params.flattenToBuffer(buf);
+        return buf.position();
+    }
+
+    @Benchmark
+    public ParameterSet parse() throws IOException {
+        return ParameterSet.fromByteBuffer(m_serialized.duplicate());
+    }
+}
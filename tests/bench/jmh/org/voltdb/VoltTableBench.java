@@ -0,0 +1,106 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds a table row by row with addRow, iterates it with the typed getters and
+ * round trips it through its flattened form, as the client does with each response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoltTableBench {
+
+    @Param({"10", "1000"})
+    public int rows;
+
+    private static final VoltTable.ColumnInfo[] COLUMNS = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("COUNT", VoltType.INTEGER),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+        new VoltTable.ColumnInfo("PRICE", VoltType.FLOAT)
+    };
+
+    private VoltTable m_table;
+    private ByteBuffer m_flattened;
+
+    @Setup
+    public void setup() {
+        m_table = build();
+        m_flattened = ByteBuffer.allocate(m_table.getSerializedSize());
+        m_table.flattenToBuffer(m_flattened);
+        m_flattened.flip();
+    }
+
+    private VoltTable build() {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            table.addRow((long) i, i % 100, "name" + (i % 37), i * 1.25);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public VoltTable buildTable() {
+        return build();
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        m_table.resetRowPosition();
+        while (m_table.advanceRow()) {
+            sum += m_table.getLong(0);
+            sum += m_table.getLong(1);
+            sum += m_table.getString(2).length();
+            sum += (long) m_table.getDouble(3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int deserialize() {
+        VoltTable table = PrivateVoltTableFactory.createVoltTableFromSharedBuffer(
+                m_flattened.duplicate());
+        return table.getRowCount();
+    }
+}
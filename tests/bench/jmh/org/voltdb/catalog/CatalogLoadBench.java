@@ -0,0 +1,119 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.catalog;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.common.Constants;
+import org.voltdb.compiler.VoltCompiler;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.InMemoryJarfile;
+import org.voltdb.utils.MiscUtils;
+
+/**
+ * Node startup cost of turning the catalog in a catalog jar into a Catalog,
+ * from the text commands and from the binary form, on a generated schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CatalogLoadBench {
+
+    @Param({"1000"})
+    public int tables;
+
+    private String m_text;
+    private byte[] m_binary;
+    private InMemoryJarfile m_jar;
+
+    @Setup
+    public void setup() throws Exception {
+        File ddl = File.createTempFile("catalogloadbench", ".sql");
+        File jar = File.createTempFile("catalogloadbench", ".jar");
+        ddl.deleteOnExit();
+        jar.deleteOnExit();
+        FileWriter writer = new FileWriter(ddl);
+        for (int t = 0; t < tables; t++) {
+            writer.write("CREATE TABLE T" + t + " (ID INTEGER NOT NULL, ");
+            for (int c = 0; c < 10; c++) {
+                writer.write("C" + c + " VARCHAR(32), ");
+            }
+            writer.write("PRIMARY KEY (ID));\n");
+            if (t % 2 == 0) {
+                writer.write("PARTITION TABLE T" + t + " ON COLUMN ID;\n");
+            }
+            writer.write("CREATE INDEX T" + t + "_C0 ON T" + t + " (C0);\n");
+        }
+        writer.close();
+        if (!new VoltCompiler().compileFromDDL(jar.getPath(), ddl.getPath())) {
+            throw new RuntimeException("Failed to compile the benchmark schema");
+        }
+        m_jar = new InMemoryJarfile(MiscUtils.fileToBytes(jar));
+        m_text = new String(m_jar.get(CatalogUtil.CATALOG_FILENAME), Constants.UTF8ENCODING);
+        m_binary = m_jar.get(CatalogUtil.CATALOG_BINARY_FILENAME);
+    }
+
+    @Benchmark
+    public Catalog text() {
+        Catalog catalog = new Catalog();
+        catalog.execute(m_text);
+        return catalog;
+    }
+
+    @Benchmark
+    public Catalog binary() {
+        Catalog catalog = new Catalog();
+        catalog.executeBinary(m_binary);
+        return catalog;
+    }
+
+    @Benchmark
+    public Catalog binaryFromJar() {
+        return CatalogUtil.deserializeCatalogFromJar(m_jar);
+    }
+
+    @Benchmark
+    public Object binaryOneTable() {
+        BinaryCatalog binary = new BinaryCatalog(m_binary);
+        Catalog catalog = new Catalog();
+        binary.applySection(catalog, 0);
+        return binary.applySections(catalog, "/clusters[cluster]/databases[database]/tables[T0]");
+    }
+}
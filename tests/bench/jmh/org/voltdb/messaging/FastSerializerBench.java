@@ -0,0 +1,111 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes and reads back a message shaped like a small stored procedure response:
+ * a few fixed width fields, a string and a varbinary, repeated fields times.
+ * The serializer is cleared between operations, so once warm this measures
+ * encoding cost rather than buffer growth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastSerializerBench {
+
+    @Param({"1", "32"})
+    public int fields;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private FastSerializer m_serializer;
+    private String m_string;
+    private byte[] m_varbinary;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        m_serializer = new FastSerializer(true, direct);
+        Random r = new Random(0);
+        m_string = Long.toString(r.nextLong(), 36) + "é" + Long.toString(r.nextLong(), 36);
+        m_varbinary = new byte[24];
+        r.nextBytes(m_varbinary);
+        write();
+        m_serialized = ByteBuffer.wrap(m_serializer.getBytes());
+    }
+
+    private void write() throws IOException {
+        m_serializer.clear();
+        for (int i = 0; i < fields; i++) {
+            m_serializer.writeByte(i);
+            m_serializer.writeInt(i);
+            m_serializer.writeLong(i * 31L);
+            m_serializer.writeDouble(i * 0.5);
+            m_serializer.writeString(m_string);
+            m_serializer.writeVarbinary(m_varbinary);
+        }
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        write();
+        return m_serializer.size();
+    }
+
+    @Benchmark
+    public long deserialize() throws IOException {
+        FastDeserializer in = new FastDeserializer(m_serialized.duplicate());
+        long sum = 0;
+        for (int i = 0; i < fields; i++) {
+            sum += in.readByte();
+            sum += in.readInt();
+            sum += in.readLong();
+            sum += (long) in.readDouble();
+            sum += in.readString().length();
+            sum += in.readVarbinary().length;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,171 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb_voltpatches.HSQLInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.DeterminismMode;
+import org.voltdb.compiler.StatementCompiler;
+import org.voltdb.compiler.VoltCompiler;
+import org.voltdb.compiler.VoltCompiler.DdlProceduresToLoad;
+import org.voltdb.plannodes.AbstractPlanNode;
+
+/**
+ * The ad hoc round trip of a planned statement to the form the EE loads, the plan graph
+ * written as JSON and then encoded against the plan graph written as binary directly,
+ * over a handful of typical ad hoc queries. decode is the way back, as used by debugging.
+ * plan includes planning, for scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanFragmentBench {
+
+    private static final String[] QUERIES = {
+        "SELECT * FROM ORDERS WHERE O_ID = 5 AND O_W_ID = 2;",
+        "SELECT O_C_ID, COUNT(*), SUM(O_TOTAL) FROM ORDERS WHERE O_W_ID = 2 AND O_TOTAL > 10.5 " +
+                "GROUP BY O_C_ID ORDER BY O_C_ID LIMIT 20;",
+        "SELECT C.C_NAME, O.O_TOTAL FROM CUSTOMER C, ORDERS O " +
+                "WHERE C.C_ID = O.O_C_ID AND C.C_W_ID = O.O_W_ID AND C.C_NAME LIKE 'A%' " +
+                "ORDER BY O.O_TOTAL DESC LIMIT 10;",
+        "UPDATE CUSTOMER SET C_BALANCE = C_BALANCE - 42.5 WHERE C_ID = 7 AND C_W_ID = 2;",
+        "DELETE FROM ORDERS WHERE O_W_ID = 2 AND O_ID < 100;"
+    };
+
+    private HSQLInterface m_hsql;
+    private Cluster m_cluster;
+    private Database m_database;
+    private final List<AbstractPlanNode> m_fragments = new ArrayList<AbstractPlanNode>();
+    private final List<byte[]> m_binary = new ArrayList<byte[]>();
+
+    @Setup
+    public void setup() throws Exception {
+        File ddl = File.createTempFile("planfragmentbench", ".sql");
+        ddl.deleteOnExit();
+        FileWriter writer = new FileWriter(ddl);
+        writer.write("CREATE TABLE CUSTOMER (C_ID INTEGER NOT NULL, C_W_ID INTEGER NOT NULL, " +
+                     "C_NAME VARCHAR(32), C_BALANCE FLOAT, PRIMARY KEY (C_ID, C_W_ID));\n");
+        writer.write("PARTITION TABLE CUSTOMER ON COLUMN C_W_ID;\n");
+        writer.write("CREATE TABLE ORDERS (O_ID INTEGER NOT NULL, O_W_ID INTEGER NOT NULL, " +
+                     "O_C_ID INTEGER NOT NULL, O_TOTAL FLOAT, PRIMARY KEY (O_ID, O_W_ID));\n");
+        writer.write("PARTITION TABLE ORDERS ON COLUMN O_W_ID;\n");
+        writer.write("CREATE INDEX ORDERS_C ON ORDERS (O_W_ID, O_C_ID);\n");
+        writer.close();
+
+        VoltCompiler compiler = new VoltCompiler();
+        m_hsql = HSQLInterface.loadHsqldb();
+        Catalog catalog = compiler.loadSchema(m_hsql, DdlProceduresToLoad.NO_DDL_PROCEDURES, ddl.getPath());
+        m_cluster = catalog.getClusters().get("cluster");
+        m_database = compiler.getCatalogDatabase();
+
+        for (String sql : QUERIES) {
+            CompiledPlan plan = planSql(sql);
+            m_fragments.add(plan.rootPlanGraph);
+            if (plan.subPlanGraph != null) {
+                m_fragments.add(plan.subPlanGraph);
+            }
+        }
+        for (AbstractPlanNode fragment : m_fragments) {
+            m_binary.add(CompiledPlan.binaryBytesForPlan(fragment));
+        }
+    }
+
+    private CompiledPlan planSql(String sql) {
+        AbstractPlanNode.resetPlanNodeIds();
+        QueryPlanner planner = new QueryPlanner(sql, "bench", "PlanFragmentBench", m_cluster, m_database,
+                StatementPartitioning.inferPartitioning(), m_hsql, new DatabaseEstimates(), true,
+                StatementCompiler.DEFAULT_MAX_JOIN_TABLES, new TrivialCostModel(), null, null,
+                DeterminismMode.FASTER);
+        planner.parse();
+        planner.parameterize();
+        return planner.plan();
+    }
+
+    @Benchmark
+    public int jsonOnly() {
+        int size = 0;
+        for (AbstractPlanNode fragment : m_fragments) {
+            size += CompiledPlan.bytesForPlan(fragment).length;
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int jsonThenEncode() throws Exception {
+        int size = 0;
+        for (AbstractPlanNode fragment : m_fragments) {
+            size += BinaryPlanEncoding.encode(CompiledPlan.bytesForPlan(fragment)).length;
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int binary() {
+        int size = 0;
+        for (AbstractPlanNode fragment : m_fragments) {
+            size += CompiledPlan.binaryBytesForPlan(fragment).length;
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int decode() throws Exception {
+        int size = 0;
+        for (byte[] plan : m_binary) {
+            size += BinaryPlanEncoding.decode(plan).length();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int plan() {
+        int size = 0;
+        for (String sql : QUERIES) {
+            size += new CorePlan(planSql(sql), 0).aggregatorBinaryFragment.length;
+        }
+        return size;
+    }
+}
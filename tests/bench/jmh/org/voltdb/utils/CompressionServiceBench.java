@@ -0,0 +1,121 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * Snappy compression and decompression through CompressionService, on direct
+ * buffers as the snapshot and export paths use it and on byte arrays as the
+ * catalog and ad hoc paths do. The payload is table-like: repetitive row
+ * structure with random keys, so it compresses roughly as real tuple data does.
+ * The CRC32C variants are left out because they need the native library.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionServiceBench {
+
+    @Param({"4096", "2097152"})
+    public int size;
+
+    private BBContainer m_input;
+    private BBContainer m_compressed;
+    private BBContainer m_output;
+    private byte[] m_bytes;
+    private byte[] m_compressedBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        Random r = new Random(0);
+        m_bytes = new byte[size];
+        ByteBuffer rows = ByteBuffer.wrap(m_bytes);
+        while (rows.remaining() >= 32) {
+            rows.putLong(r.nextLong());
+            rows.putInt(r.nextInt(100));
+            rows.put("row padding ".getBytes());
+            rows.putLong(0);
+        }
+        m_input = DBBPool.allocateDirect(size);
+        m_input.b().put(m_bytes);
+        m_input.b().flip();
+        m_compressed = DBBPool.allocateDirect(CompressionService.maxCompressedLength(size));
+        m_output = DBBPool.allocateDirect(size);
+        CompressionService.compressBuffer(m_input.b().duplicate(), m_compressed.b());
+        m_compressedBytes = CompressionService.compressBytes(m_bytes);
+    }
+
+    @TearDown
+    public void teardown() {
+        m_input.discard();
+        m_compressed.discard();
+        m_output.discard();
+        CompressionService.releaseThreadLocal();
+    }
+
+    @Benchmark
+    public int compressDirect() throws IOException {
+        ByteBuffer compressed = m_compressed.b().duplicate();
+        compressed.clear();
+        return CompressionService.compressBuffer(m_input.b().duplicate(), compressed);
+    }
+
+    @Benchmark
+    public int decompressDirect() throws IOException {
+        ByteBuffer out = m_output.b();
+        out.clear();
+        return CompressionService.decompressBuffer(m_compressed.b().duplicate(), out);
+    }
+
+    @Benchmark
+    public byte[] compressBytes() throws IOException {
+        return CompressionService.compressBytes(m_bytes);
+    }
+
+    @Benchmark
+    public byte[] decompressBytes() throws IOException {
+        return CompressionService.decompressBytes(m_compressedBytes);
+    }
+}
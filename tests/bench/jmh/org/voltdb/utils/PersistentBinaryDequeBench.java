@@ -0,0 +1,112 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
+
+/**
+ * Offers and polls export-sized buffers through a PersistentBinaryDeque with a
+ * standing backlog, so segments roll over and, past the first half megabyte,
+ * entries are compressed as they are when export falls behind.
+ * The deque loads the EE library for its compression, so this needs
+ * java.library.path to point at the native build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistentBinaryDequeBench {
+
+    @Param({"2048", "65536"})
+    public int entrySize;
+
+    @Param({"0", "1024"})
+    public int backlog;
+
+    private static final OutputContainerFactory HEAP_FACTORY = new OutputContainerFactory() {
+        @Override
+        public BBContainer getContainer(int minimumSize) {
+            return DBBPool.wrapBB(ByteBuffer.allocate(minimumSize));
+        }
+    };
+
+    private File m_dir;
+    private PersistentBinaryDeque m_pbd;
+    private ByteBuffer m_entry;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        m_dir = File.createTempFile("pbdbench", "");
+        m_dir.delete();
+        m_dir.mkdir();
+        m_pbd = new PersistentBinaryDeque("pbdbench", m_dir);
+        m_entry = ByteBuffer.allocateDirect(entrySize);
+        while (m_entry.remaining() >= 8) {
+            m_entry.putLong(m_entry.position());
+        }
+        m_entry.clear();
+        for (int i = 0; i < backlog; i++) {
+            m_pbd.offer(DBBPool.wrapBB(m_entry.duplicate()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        m_pbd.closeAndDelete();
+        m_dir.delete();
+    }
+
+    @Benchmark
+    public int offerPoll() throws IOException {
+        m_pbd.offer(DBBPool.wrapBB(m_entry.duplicate()));
+        BBContainer polled = m_pbd.poll(HEAP_FACTORY);
+        try {
+            return polled.b().remaining();
+        } finally {
+            polled.discard();
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/*
+ * Maintenance of a materialized view whose source table is joined to a
+ * replicated table:
+ *
+ *   CREATE VIEW BY_REGION (REGION, CNT, AMT) AS
+ *     SELECT CUSTOMERS.REGION, COUNT(*), SUM(ORDERS.AMOUNT)
+ *     FROM ORDERS, CUSTOMERS
+ *     WHERE ORDERS.CUST = CUSTOMERS.ID AND ORDERS.AMOUNT > 0
+ *     GROUP BY CUSTOMERS.REGION;
+ *
+ * After every change to either table, and after every undo, the view must
+ * hold exactly what the GROUP BY query would compute from the tables.
+ */
+
+#include "harness.h"
+#include "common/TupleSchema.h"
+#include "common/types.h"
+#include "common/NValue.hpp"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
+#include "catalog/catalog.h"
+#include "catalog/cluster.h"
+#include "catalog/database.h"
+#include "catalog/materializedviewinfo.h"
+#include "catalog/table.h"
+#include "execution/VoltDBEngine.h"
+#include "indexes/tableindex.h"
+#include "indexes/tableindexfactory.h"
+#include "storage/MaterializedViewMetadata.h"
+#include "storage/persistenttable.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+#include <map>
+#include <string>
+#include <utility>
+#include <vector>
+#include <stdint.h>
+
+using namespace voltdb;
+
+// columns of the joined row: ORDERS (0..2) followed by CUSTOMERS (3..4)
+static const int ORDERS_ID = 0;
+static const int ORDERS_CUST = 1;
+static const int ORDERS_AMOUNT = 2;
+static const int CUSTOMERS_ID = 0;
+static const int CUSTOMERS_REGION = 1;
+
+static const std::string TVE_ORDERS_CUST = "{\"TYPE\":32,\"VALUE_TYPE\":5,\"COLUMN_IDX\":1}";
+static const std::string TVE_ORDERS_AMOUNT = "{\"TYPE\":32,\"VALUE_TYPE\":6,\"COLUMN_IDX\":2}";
+static const std::string TVE_CUSTOMERS_ID = "{\"TYPE\":32,\"VALUE_TYPE\":5,\"COLUMN_IDX\":3}";
+static const std::string TVE_CUSTOMERS_REGION = "{\"TYPE\":32,\"VALUE_TYPE\":5,\"COLUMN_IDX\":4}";
+
+// REGION -> (COUNT(*), SUM(AMOUNT))
+typedef std::map<int32_t, std::pair<int64_t, int64_t> > ViewContents;
+
+class MaterializedViewJoinTest : public Test {
+public:
+    MaterializedViewJoinTest() : m_orders(NULL), m_customers(NULL), m_byRegion(NULL),
+                                 m_undoToken(INT64_MIN + 1) {
+        m_engine = new VoltDBEngine();
+        int partitionCount = 1;
+        m_engine->initialize(1, 1, 0, 0, "", DEFAULT_TEMP_TABLE_MEMORY);
+        m_engine->updateHashinator(HASHINATOR_LEGACY, (char*)&partitionCount, NULL, 0);
+        beginUndoQuantum();
+    }
+
+    ~MaterializedViewJoinTest() {
+        m_engine->releaseUndoToken(m_undoToken);
+        delete m_engine;
+        // Dropping the source table drops the view and its references to the other tables.
+        if (m_orders) {
+            m_orders->decrementRefcount();
+        }
+        if (m_customers) {
+            m_customers->decrementRefcount();
+        }
+        if (m_byRegion) {
+            m_byRegion->decrementRefcount();
+        }
+    }
+
+    void initTables() {
+        std::vector<ValueType> types;
+        std::vector<int32_t> sizes;
+        std::vector<bool> allowNull;
+        std::vector<std::string> names;
+
+        addColumn(types, sizes, allowNull, names, "ID", VALUE_TYPE_INTEGER);
+        addColumn(types, sizes, allowNull, names, "CUST", VALUE_TYPE_INTEGER);
+        addColumn(types, sizes, allowNull, names, "AMOUNT", VALUE_TYPE_BIGINT);
+        m_orders = createTable("ORDERS", types, sizes, allowNull, names);
+        addIndex(m_orders, "ORDERS_PK", ORDERS_ID, true);
+        addIndex(m_orders, "ORDERS_CUST", ORDERS_CUST, false);
+
+        types.clear(); sizes.clear(); allowNull.clear(); names.clear();
+        addColumn(types, sizes, allowNull, names, "ID", VALUE_TYPE_INTEGER);
+        addColumn(types, sizes, allowNull, names, "REGION", VALUE_TYPE_INTEGER);
+        m_customers = createTable("CUSTOMERS", types, sizes, allowNull, names);
+        addIndex(m_customers, "CUSTOMERS_PK", CUSTOMERS_ID, true);
+
+        types.clear(); sizes.clear(); allowNull.clear(); names.clear();
+        addColumn(types, sizes, allowNull, names, "REGION", VALUE_TYPE_INTEGER);
+        addColumn(types, sizes, allowNull, names, "CNT", VALUE_TYPE_BIGINT);
+        addColumn(types, sizes, allowNull, names, "AMT", VALUE_TYPE_BIGINT);
+        m_byRegion = createTable("BY_REGION", types, sizes, allowNull, names);
+        addIndex(m_byRegion, "BY_REGION_PK", 0, true);
+    }
+
+    /**
+     * Describe the view in a catalog and attach it to the tables. Without the
+     * source index, a change to CUSTOMERS has to scan ORDERS for the rows it joins.
+     */
+    void initView(bool withSourceIndex = true) {
+        char predicate[1024];
+        std::string predicateJson =
+            "{\"TYPE\":20,\"VALUE_TYPE\":6,"
+            "\"LEFT\":{\"TYPE\":10,\"VALUE_TYPE\":6,\"LEFT\":" + TVE_ORDERS_CUST +
+                ",\"RIGHT\":" + TVE_CUSTOMERS_ID + "},"
+            "\"RIGHT\":{\"TYPE\":13,\"VALUE_TYPE\":6,\"LEFT\":" + TVE_ORDERS_AMOUNT +
+                ",\"RIGHT\":{\"TYPE\":30,\"VALUE_TYPE\":6,\"ISNULL\":false,\"VALUE\":0}}}";
+        catalog::Catalog::hexEncodeString(predicateJson.c_str(), predicate);
+
+        const std::string db = "/clusters[cluster]/databases[database]";
+        const std::string dest = db + "/tables[BY_REGION]";
+        const std::string view = db + "/tables[ORDERS]/views[BY_REGION]";
+        const std::string join = view + "/joins[CUSTOMERS]";
+        m_catalog.execute(
+            "add / clusters cluster"
+            "\nadd /clusters[cluster] databases database"
+            "\nadd " + db + " tables ORDERS" +
+            "\nadd " + db + " tables CUSTOMERS" +
+            "\nadd " + db + " tables BY_REGION" +
+            "\nadd " + dest + " columns REGION" +
+            "\nset " + dest + "/columns[REGION] index 0" +
+            "\nadd " + dest + " columns CNT" +
+            "\nset " + dest + "/columns[CNT] index 1" +
+            "\nset " + dest + "/columns[CNT] aggregatetype 40" +
+            "\nadd " + dest + " columns AMT" +
+            "\nset " + dest + "/columns[AMT] index 2" +
+            "\nset " + dest + "/columns[AMT] aggregatetype 42" +
+            "\nadd " + db + "/tables[ORDERS] views BY_REGION" +
+            "\nset " + view + " dest " + dest +
+            "\nset " + view + " predicate \"" + predicate + "\"" +
+            "\nset " + view + " groupbyExpressionsJson \"[" + TVE_CUSTOMERS_REGION + "]\"" +
+            "\nset " + view + " aggregationExpressionsJson \"[" + TVE_ORDERS_AMOUNT + "]\"" +
+            "\nset " + view + " indexForMinMax \"\"" +
+            "\nadd " + view + " joins CUSTOMERS" +
+            "\nset " + join + " index 1" +
+            "\nset " + join + " table " + db + "/tables[CUSTOMERS]" +
+            "\nset " + join + " lookupIndex \"CUSTOMERS_PK\"" +
+            "\nset " + join + " lookupKeysJson \"[" + TVE_ORDERS_CUST + "]\"" +
+            "\nset " + join + " sourceIndex \"" + (withSourceIndex ? "ORDERS_CUST" : "") + "\"" +
+            "\nset " + join + " sourceKeysJson \"[" + TVE_CUSTOMERS_ID + "]\"");
+
+        catalog::MaterializedViewInfo *mvInfo = m_catalog.clusters().get("cluster")->
+            databases().get("database")->tables().get("ORDERS")->views().get("BY_REGION");
+        ASSERT_TRUE(mvInfo != NULL);
+        std::vector<PersistentTable*> joinTables;
+        joinTables.push_back(m_customers);
+        // The source table takes ownership of the view.
+        new MaterializedViewMetadata(m_orders, m_byRegion, mvInfo, joinTables);
+    }
+
+    void beginUndoQuantum() {
+        m_engine->setUndoToken(++m_undoToken);
+        // this next line is a testing hack until engine data is
+        // de-duplicated with executorcontext data
+        m_engine->updateExecutorContextUndoQuantumForTest();
+    }
+
+    void commit() {
+        m_engine->releaseUndoToken(m_undoToken);
+        beginUndoQuantum();
+    }
+
+    void rollback() {
+        m_engine->undoUndoToken(m_undoToken);
+        beginUndoQuantum();
+    }
+
+    void insertOrder(int32_t id, int32_t cust, int64_t amount) {
+        TableTuple &tuple = m_orders->tempTuple();
+        tuple.setNValue(ORDERS_ID, ValueFactory::getIntegerValue(id));
+        tuple.setNValue(ORDERS_CUST, ValueFactory::getIntegerValue(cust));
+        tuple.setNValue(ORDERS_AMOUNT, ValueFactory::getBigIntValue(amount));
+        m_orders->insertTuple(tuple);
+    }
+
+    void insertCustomer(int32_t id, int32_t region) {
+        TableTuple &tuple = m_customers->tempTuple();
+        tuple.setNValue(CUSTOMERS_ID, ValueFactory::getIntegerValue(id));
+        tuple.setNValue(CUSTOMERS_REGION, ValueFactory::getIntegerValue(region));
+        m_customers->insertTuple(tuple);
+    }
+
+    void updateRow(PersistentTable *table, int32_t id, int column, NValue value) {
+        TableTuple target = findRow(table, id);
+        ASSERT_FALSE(target.isNullTuple());
+        TableTuple &tuple = table->tempTuple();
+        tuple.copy(target);
+        tuple.setNValue(column, value);
+        table->updateTupleWithSpecificIndexes(target, tuple, table->allIndexes(), true);
+    }
+
+    void deleteRow(PersistentTable *table, int32_t id) {
+        TableTuple target = findRow(table, id);
+        ASSERT_FALSE(target.isNullTuple());
+        table->deleteTuple(target, true);
+    }
+
+    /** The view's contents, which must match those recomputed from its tables */
+    ViewContents checkView() {
+        ViewContents expected;
+        TableTuple order(m_orders->schema());
+        TableIterator &orders = m_orders->iterator();
+        while (orders.next(order)) {
+            int64_t amount = ValuePeeker::peekAsBigInt(order.getNValue(ORDERS_AMOUNT));
+            if (amount <= 0) {
+                continue;
+            }
+            int32_t cust = ValuePeeker::peekAsInteger(order.getNValue(ORDERS_CUST));
+            TableTuple customer = findRow(m_customers, cust);
+            if (customer.isNullTuple()) {
+                continue;
+            }
+            std::pair<int64_t, int64_t> &group =
+                expected[ValuePeeker::peekAsInteger(customer.getNValue(CUSTOMERS_REGION))];
+            group.first += 1;
+            group.second += amount;
+        }
+
+        ViewContents actual;
+        TableTuple row(m_byRegion->schema());
+        TableIterator &rows = m_byRegion->iterator();
+        while (rows.next(row)) {
+            actual[ValuePeeker::peekAsInteger(row.getNValue(0))] =
+                std::make_pair(ValuePeeker::peekAsBigInt(row.getNValue(1)),
+                               ValuePeeker::peekAsBigInt(row.getNValue(2)));
+        }
+        EXPECT_TRUE(expected == actual);
+        return actual;
+    }
+
+    PersistentTable *m_orders;
+    PersistentTable *m_customers;
+    PersistentTable *m_byRegion;
+
+private:
+    static void addColumn(std::vector<ValueType> &types, std::vector<int32_t> &sizes,
+                          std::vector<bool> &allowNull, std::vector<std::string> &names,
+                          const std::string &name, ValueType type) {
+        types.push_back(type);
+        sizes.push_back(NValue::getTupleStorageSize(type));
+        allowNull.push_back(false);
+        names.push_back(name);
+    }
+
+    static PersistentTable *createTable(const std::string &name, std::vector<ValueType> &types,
+                                        std::vector<int32_t> &sizes, std::vector<bool> &allowNull,
+                                        std::vector<std::string> &names) {
+        TupleSchema *schema = TupleSchema::createTupleSchemaForTest(types, sizes, allowNull);
+        PersistentTable *table = dynamic_cast<PersistentTable*>(
+            TableFactory::getPersistentTable(0, name, schema, names));
+        table->incrementRefcount();
+        return table;
+    }
+
+    static void addIndex(PersistentTable *table, const std::string &name, int column, bool unique) {
+        std::vector<int32_t> columns(1, column);
+        TableIndexScheme scheme(name, BALANCED_TREE_INDEX, columns,
+                                TableIndex::simplyIndexColumns(),
+                                unique, true, table->schema());
+        TableIndex *index = TableIndexFactory::getInstance(scheme);
+        assert(index);
+        table->addIndex(index);
+        if (unique && table->primaryKeyIndex() == NULL) {
+            table->setPrimaryKeyIndex(index);
+        }
+    }
+
+    static TableTuple findRow(PersistentTable *table, int32_t id) {
+        TableTuple row(table->schema());
+        TableIterator &rows = table->iterator();
+        while (rows.next(row)) {
+            if (ValuePeeker::peekAsInteger(row.getNValue(0)) == id) {
+                return row;
+            }
+        }
+        return TableTuple();
+    }
+
+    VoltDBEngine *m_engine;
+    catalog::Catalog m_catalog;
+    int64_t m_undoToken;
+};
+
+TEST_F(MaterializedViewJoinTest, SourceTableChanges) {
+    initTables();
+    initView();
+    insertCustomer(1, 10);
+    insertCustomer(2, 10);
+    insertCustomer(3, 20);
+
+    insertOrder(100, 1, 5);
+    insertOrder(101, 2, 7);
+    insertOrder(102, 3, 11);
+    insertOrder(103, 4, 13);   // no such customer yet
+    insertOrder(104, 3, 0);    // filtered out by AMOUNT > 0
+    ViewContents contents = checkView();
+    ASSERT_EQ(2, (int)contents.size());
+    ASSERT_EQ(2, contents[10].first);
+    ASSERT_EQ(12, contents[10].second);
+
+    // change the join column and move a row into and out of the filter
+    updateRow(m_orders, 100, ORDERS_CUST, ValueFactory::getIntegerValue(3));
+    checkView();
+    updateRow(m_orders, 104, ORDERS_AMOUNT, ValueFactory::getBigIntValue(17));
+    checkView();
+    updateRow(m_orders, 101, ORDERS_AMOUNT, ValueFactory::getBigIntValue(-1));
+    contents = checkView();
+    ASSERT_EQ(1, (int)contents.size());
+
+    deleteRow(m_orders, 102);
+    checkView();
+    deleteRow(m_orders, 100);
+    deleteRow(m_orders, 104);
+    contents = checkView();
+    ASSERT_EQ(0, (int)contents.size());
+    commit();
+}
+
+TEST_F(MaterializedViewJoinTest, JoinedTableChanges) {
+    initTables();
+    initView();
+    insertOrder(100, 1, 5);
+    insertOrder(101, 1, 7);
+    insertOrder(102, 2, 11);
+    insertOrder(103, 3, -2);
+    ASSERT_EQ(0, (int)checkView().size());
+
+    // each new customer picks up the orders already waiting for it
+    insertCustomer(1, 10);
+    ViewContents contents = checkView();
+    ASSERT_EQ(2, contents[10].first);
+    insertCustomer(2, 20);
+    insertCustomer(3, 20);
+    contents = checkView();
+    ASSERT_EQ(1, contents[20].first);
+
+    // moving a customer moves all of its orders to the other group
+    updateRow(m_customers, 1, CUSTOMERS_REGION, ValueFactory::getIntegerValue(20));
+    contents = checkView();
+    ASSERT_EQ(1, (int)contents.size());
+    ASSERT_EQ(3, contents[20].first);
+
+    // changing a customer's id changes which orders join with it
+    insertOrder(104, 4, 13);
+    updateRow(m_customers, 2, CUSTOMERS_ID, ValueFactory::getIntegerValue(4));
+    contents = checkView();
+    ASSERT_EQ(3, contents[20].first);
+    ASSERT_EQ(25, contents[20].second);
+    deleteRow(m_customers, 1);
+    contents = checkView();
+    ASSERT_EQ(1, (int)contents.size());
+    ASSERT_EQ(1, contents[20].first);
+    commit();
+}
+
+TEST_F(MaterializedViewJoinTest, ViewOnPopulatedTables) {
+    initTables();
+    insertCustomer(1, 10);
+    insertCustomer(2, 20);
+    insertOrder(100, 1, 5);
+    insertOrder(101, 2, 7);
+    insertOrder(102, 2, 9);
+    commit();
+    initView();
+    ViewContents contents = checkView();
+    ASSERT_EQ(2, (int)contents.size());
+    ASSERT_EQ(2, contents[20].first);
+    ASSERT_EQ(16, contents[20].second);
+}
+
+TEST_F(MaterializedViewJoinTest, UndoRestoresView) {
+    initTables();
+    initView();
+    insertCustomer(1, 10);
+    insertCustomer(2, 20);
+    insertOrder(100, 1, 5);
+    insertOrder(101, 2, 7);
+    commit();
+    ViewContents committed = checkView();
+
+    insertOrder(102, 2, 9);
+    insertCustomer(3, 30);
+    insertOrder(103, 3, 4);
+    checkView();
+    rollback();
+    ASSERT_TRUE(committed == checkView());
+
+    updateRow(m_orders, 100, ORDERS_CUST, ValueFactory::getIntegerValue(2));
+    updateRow(m_orders, 101, ORDERS_AMOUNT, ValueFactory::getBigIntValue(0));
+    checkView();
+    rollback();
+    ASSERT_TRUE(committed == checkView());
+
+    updateRow(m_customers, 1, CUSTOMERS_REGION, ValueFactory::getIntegerValue(20));
+    deleteRow(m_customers, 2);
+    checkView();
+    rollback();
+    ASSERT_TRUE(committed == checkView());
+
+    deleteRow(m_orders, 100);
+    deleteRow(m_orders, 101);
+    ASSERT_EQ(0, (int)checkView().size());
+    rollback();
+    ASSERT_TRUE(committed == checkView());
+}
+
+TEST_F(MaterializedViewJoinTest, ScanWithoutSourceIndex) {
+    // a catalog from before the compiler required the source index
+    initTables();
+    initView(false);
+    insertOrder(100, 1, 5);
+    insertOrder(101, 2, 7);
+    insertCustomer(1, 10);
+    insertCustomer(2, 10);
+    ViewContents contents = checkView();
+    ASSERT_EQ(2, contents[10].first);
+    updateRow(m_customers, 2, CUSTOMERS_REGION, ValueFactory::getIntegerValue(20));
+    checkView();
+    deleteRow(m_customers, 1);
+    checkView();
+    rollback();
+    ASSERT_EQ(0, (int)checkView().size());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
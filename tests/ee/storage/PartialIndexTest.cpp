@@ -0,0 +1,336 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/*
+ * Maintenance of a partial unique index:
+ *
+ *   CREATE UNIQUE INDEX ACTIVE_GRP ON T (GRP) WHERE ACTIVE > 0;
+ *
+ * After every change to the table, and after every undo, the index must
+ * hold exactly the rows that satisfy its predicate, under their current
+ * keys, and uniqueness must only be enforced among those rows.
+ */
+
+#include "harness.h"
+#include "common/TupleSchema.h"
+#include "common/types.h"
+#include "common/NValue.hpp"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
+#include "execution/VoltDBEngine.h"
+#include "expressions/expressionutil.h"
+#include "indexes/tableindex.h"
+#include "indexes/tableindexfactory.h"
+#include "storage/ConstraintFailureException.h"
+#include "storage/persistenttable.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+#include <map>
+#include <string>
+#include <vector>
+#include <stdint.h>
+
+using namespace voltdb;
+
+static const int ID = 0;
+static const int GRP = 1;
+static const int ACTIVE = 2;
+
+// ACTIVE > 0
+static const std::string PREDICATE_JSON =
+    "{\"TYPE\":13,\"VALUE_TYPE\":6,"
+    "\"LEFT\":{\"TYPE\":32,\"VALUE_TYPE\":5,\"COLUMN_IDX\":2},"
+    "\"RIGHT\":{\"TYPE\":30,\"VALUE_TYPE\":5,\"ISNULL\":false,\"VALUE\":0}}";
+
+// GRP -> ID
+typedef std::map<int32_t, int32_t> IndexContents;
+
+class PartialIndexTest : public Test {
+public:
+    PartialIndexTest() : m_table(NULL), m_partialIndex(NULL), m_undoToken(INT64_MIN + 1) {
+        m_engine = new VoltDBEngine();
+        int partitionCount = 1;
+        m_engine->initialize(1, 1, 0, 0, "", DEFAULT_TEMP_TABLE_MEMORY);
+        m_engine->updateHashinator(HASHINATOR_LEGACY, (char*)&partitionCount, NULL, 0);
+        beginUndoQuantum();
+
+        std::vector<ValueType> types(3, VALUE_TYPE_INTEGER);
+        std::vector<int32_t> sizes(3, NValue::getTupleStorageSize(VALUE_TYPE_INTEGER));
+        std::vector<bool> allowNull(3, false);
+        std::vector<std::string> names;
+        names.push_back("ID");
+        names.push_back("GRP");
+        names.push_back("ACTIVE");
+        TupleSchema *schema = TupleSchema::createTupleSchemaForTest(types, sizes, allowNull);
+        m_table = dynamic_cast<PersistentTable*>(
+            TableFactory::getPersistentTable(0, "T", schema, names));
+        m_table->incrementRefcount();
+
+        std::vector<int32_t> pkeyColumns(1, ID);
+        TableIndexScheme pkeyScheme("T_PK", BALANCED_TREE_INDEX, pkeyColumns,
+                                    TableIndex::simplyIndexColumns(),
+                                    true, true, m_table->schema());
+        TableIndex *pkeyIndex = TableIndexFactory::getInstance(pkeyScheme);
+        m_table->addIndex(pkeyIndex);
+        m_table->setPrimaryKeyIndex(pkeyIndex);
+    }
+
+    ~PartialIndexTest() {
+        m_engine->releaseUndoToken(m_undoToken);
+        delete m_engine;
+        m_table->decrementRefcount();
+    }
+
+    void addPartialIndex() {
+        std::vector<int32_t> columns(1, GRP);
+        TableIndexScheme scheme("ACTIVE_GRP", BALANCED_TREE_INDEX, columns,
+                                TableIndex::simplyIndexColumns(),
+                                true, true, "", m_table->schema(),
+                                ExpressionUtil::loadExpressionFromJson(PREDICATE_JSON),
+                                PREDICATE_JSON);
+        m_partialIndex = TableIndexFactory::getInstance(scheme);
+        ASSERT_TRUE(m_partialIndex->isPartialIndex());
+        m_table->addIndex(m_partialIndex);
+    }
+
+    void beginUndoQuantum() {
+        m_engine->setUndoToken(++m_undoToken);
+        // this next line is a testing hack until engine data is
+        // de-duplicated with executorcontext data
+        m_engine->updateExecutorContextUndoQuantumForTest();
+    }
+
+    void commit() {
+        m_engine->releaseUndoToken(m_undoToken);
+        beginUndoQuantum();
+    }
+
+    void rollback() {
+        m_engine->undoUndoToken(m_undoToken);
+        beginUndoQuantum();
+    }
+
+    void insertRow(int32_t id, int32_t grp, int32_t active) {
+        TableTuple &tuple = m_table->tempTuple();
+        tuple.setNValue(ID, ValueFactory::getIntegerValue(id));
+        tuple.setNValue(GRP, ValueFactory::getIntegerValue(grp));
+        tuple.setNValue(ACTIVE, ValueFactory::getIntegerValue(active));
+        m_table->insertTuple(tuple);
+    }
+
+    void updateRow(int32_t id, int column, int32_t value) {
+        TableTuple target = findRow(id);
+        ASSERT_FALSE(target.isNullTuple());
+        TableTuple &tuple = m_table->tempTuple();
+        tuple.copy(target);
+        tuple.setNValue(column, ValueFactory::getIntegerValue(value));
+        m_table->updateTupleWithSpecificIndexes(target, tuple, m_table->allIndexes(), true);
+    }
+
+    void deleteRow(int32_t id) {
+        TableTuple target = findRow(id);
+        ASSERT_FALSE(target.isNullTuple());
+        m_table->deleteTuple(target, true);
+    }
+
+    bool insertViolatesUniqueness(int32_t id, int32_t grp, int32_t active) {
+        try {
+            insertRow(id, grp, active);
+        } catch (ConstraintFailureException &e) {
+            return true;
+        }
+        return false;
+    }
+
+    bool updateViolatesUniqueness(int32_t id, int column, int32_t value) {
+        try {
+            updateRow(id, column, value);
+        } catch (ConstraintFailureException &e) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The partial index's contents, which must be exactly the table's rows
+     * satisfying the predicate, each found under its current key.
+     */
+    IndexContents checkIndex() {
+        IndexContents expected;
+        TableTuple row(m_table->schema());
+        TableIterator &rows = m_table->iterator();
+        while (rows.next(row)) {
+            if (ValuePeeker::peekAsInteger(row.getNValue(ACTIVE)) > 0) {
+                expected[ValuePeeker::peekAsInteger(row.getNValue(GRP))] =
+                    ValuePeeker::peekAsInteger(row.getNValue(ID));
+            }
+        }
+
+        IndexContents actual;
+        m_partialIndex->moveToEnd(true);
+        TableTuple entry;
+        while ( ! (entry = m_partialIndex->nextValue()).isNullTuple()) {
+            actual[ValuePeeker::peekAsInteger(entry.getNValue(GRP))] =
+                ValuePeeker::peekAsInteger(entry.getNValue(ID));
+        }
+        EXPECT_TRUE(expected == actual);
+        EXPECT_EQ(expected.size(), m_partialIndex->getSize());
+
+        // A stale key would still iterate to the right tuple, so look each one up.
+        TableTuple searchKey(m_partialIndex->getKeySchema());
+        std::vector<char> keyStorage(searchKey.tupleLength());
+        searchKey.move(&keyStorage[0]);
+        for (IndexContents::const_iterator it = expected.begin(); it != expected.end(); ++it) {
+            searchKey.setNValue(0, ValueFactory::getIntegerValue(it->first));
+            EXPECT_TRUE(m_partialIndex->moveToKey(&searchKey));
+            TableTuple found = m_partialIndex->nextValueAtKey();
+            EXPECT_FALSE(found.isNullTuple());
+            if ( ! found.isNullTuple()) {
+                EXPECT_EQ(it->second, ValuePeeker::peekAsInteger(found.getNValue(ID)));
+            }
+        }
+        return actual;
+    }
+
+    PersistentTable *m_table;
+    TableIndex *m_partialIndex;
+
+private:
+    TableTuple findRow(int32_t id) {
+        TableTuple row(m_table->schema());
+        TableIterator &rows = m_table->iterator();
+        while (rows.next(row)) {
+            if (ValuePeeker::peekAsInteger(row.getNValue(ID)) == id) {
+                return row;
+            }
+        }
+        return TableTuple();
+    }
+
+    VoltDBEngine *m_engine;
+    int64_t m_undoToken;
+};
+
+TEST_F(PartialIndexTest, UpdateMovesRowIntoAndOutOfIndex) {
+    addPartialIndex();
+    insertRow(1, 10, 1);
+    insertRow(2, 20, 0);
+    EXPECT_EQ(1, checkIndex().size());
+
+    // into the index without any change to the key
+    updateRow(2, ACTIVE, 1);
+    EXPECT_EQ(2, checkIndex().size());
+
+    // out of the index without any change to the key
+    updateRow(1, ACTIVE, 0);
+    EXPECT_EQ(1, checkIndex().size());
+
+    // a key change outside the index leaves it alone
+    updateRow(1, GRP, 30);
+    EXPECT_EQ(1, checkIndex().size());
+
+    // a key change inside the index moves the entry
+    updateRow(2, GRP, 25);
+    EXPECT_EQ(1, checkIndex().count(25));
+
+    // back in under the new key
+    updateRow(1, ACTIVE, 5);
+    EXPECT_EQ(2, checkIndex().size());
+
+    deleteRow(2);
+    deleteRow(1);
+    EXPECT_EQ(0, checkIndex().size());
+    commit();
+}
+
+TEST_F(PartialIndexTest, UniqueAmongCoveredRowsOnly) {
+    addPartialIndex();
+    insertRow(1, 10, 1);
+
+    // uncovered rows may share a key with each other and with a covered row
+    insertRow(2, 10, 0);
+    insertRow(3, 10, 0);
+    EXPECT_EQ(1, checkIndex().size());
+
+    // but a second covered row may not
+    EXPECT_TRUE(insertViolatesUniqueness(4, 10, 1));
+    EXPECT_TRUE(updateViolatesUniqueness(2, ACTIVE, 1));
+    insertRow(4, 20, 1);
+    EXPECT_TRUE(updateViolatesUniqueness(4, GRP, 10));
+    EXPECT_EQ(2, checkIndex().size());
+
+    // once the covered row leaves the index, another can take its key
+    updateRow(1, ACTIVE, 0);
+    updateRow(2, ACTIVE, 1);
+    IndexContents contents = checkIndex();
+    EXPECT_EQ(2, contents[10]);
+    commit();
+}
+
+TEST_F(PartialIndexTest, UndoRestoresIndex) {
+    addPartialIndex();
+    insertRow(1, 10, 1);
+    insertRow(2, 20, 0);
+    insertRow(3, 30, 1);
+    commit();
+    IndexContents before = checkIndex();
+
+    updateRow(1, ACTIVE, 0);        // out
+    updateRow(2, ACTIVE, 1);        // in
+    updateRow(3, GRP, 35);          // key change inside
+    updateRow(2, GRP, 10);          // key taken over from the row that left
+    deleteRow(3);
+    insertRow(4, 30, 1);
+    checkIndex();
+    rollback();
+    EXPECT_TRUE(before == checkIndex());
+
+    // a failed update is rolled back along with the rest of its quantum
+    updateRow(2, ACTIVE, 1);
+    EXPECT_TRUE(updateViolatesUniqueness(2, GRP, 10));
+    rollback();
+    EXPECT_TRUE(before == checkIndex());
+}
+
+TEST_F(PartialIndexTest, IndexAddedToPopulatedTable) {
+    insertRow(1, 10, 1);
+    insertRow(2, 10, 0);   // would violate a full unique index
+    insertRow(3, 20, 0);
+    insertRow(4, 30, 2);
+    commit();
+
+    addPartialIndex();
+    IndexContents contents = checkIndex();
+    EXPECT_EQ(2, contents.size());
+    EXPECT_EQ(1, contents[10]);
+    EXPECT_EQ(4, contents[30]);
+
+    updateRow(3, ACTIVE, 1);
+    EXPECT_TRUE(insertViolatesUniqueness(5, 20, 1));
+    EXPECT_EQ(3, checkIndex().size());
+    commit();
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
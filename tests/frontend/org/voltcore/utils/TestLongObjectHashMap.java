@@ -0,0 +1,138 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TestLongObjectHashMap extends TestCase {
+
+    @Test
+    public void testBasicOps() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(5, "five"));
+        assertNull(map.put(-5, "minus five"));
+        assertEquals("five", map.put(5, "FIVE"));
+        assertEquals(2, map.size());
+        assertEquals("FIVE", map.get(5));
+        assertTrue(map.containsKey(-5));
+        assertFalse(map.containsKey(6));
+        assertNull(map.remove(6));
+        assertEquals("minus five", map.remove(-5));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+        try {
+            map.put(1, null);
+            fail();
+        } catch (NullPointerException expected) {}
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        final long seed = System.currentTimeMillis();
+        System.out.println("Seed is " + seed);
+        Random r = new Random(seed);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<Long>(4);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        // Sequential ids with a narrow window like the transaction ids, plus some collisions
+        long next = 0;
+        for (int ii = 0; ii < 200000; ii++) {
+            long key = r.nextBoolean() ? next++ : next - r.nextInt(64);
+            Long value = r.nextLong();
+            switch (r.nextInt(3)) {
+            case 0:
+                assertEquals(expected.remove(key), map.remove(key));
+                break;
+            default:
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        Long[] expectedKeys = expected.keySet().toArray(new Long[0]);
+        Arrays.sort(expectedKeys);
+        assertEquals(expectedKeys.length, keys.length);
+        for (int ii = 0; ii < keys.length; ii++) {
+            assertEquals(expectedKeys[ii].longValue(), keys[ii]);
+        }
+
+        int count = 0;
+        LongObjectHashMap<Long>.Cursor cursor = map.cursor();
+        while (cursor.advance()) {
+            assertEquals(expected.get(cursor.key()), cursor.value());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+        assertEquals(expected.size(), map.values().size());
+    }
+
+    @Test
+    public void testPairKeys() {
+        LongPairObjectHashMap<String> map = new LongPairObjectHashMap<String>(4);
+        Map<Pair<Long, Long>, String> expected = new HashMap<Pair<Long, Long>, String>();
+        Random r = new Random(0);
+        for (int ii = 0; ii < 100000; ii++) {
+            long txnId = r.nextInt(500);
+            long spHandle = r.nextInt(4);
+            Pair<Long, Long> key = Pair.of(txnId, spHandle);
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(txnId, spHandle));
+            } else {
+                String value = Integer.toString(ii);
+                assertEquals(expected.put(key, value), map.put(txnId, spHandle, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Pair<Long, Long>, String> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey().getFirst(), e.getKey().getSecond()));
+        }
+        // (a, b) and (b, a) are different keys
+        map.clear();
+        map.put(1, 2, "a");
+        map.put(2, 1, "b");
+        assertEquals("a", map.get(1, 2));
+        assertEquals("b", map.get(2, 1));
+        int count = 0;
+        LongPairObjectHashMap<String>.Cursor cursor = map.cursor();
+        while (cursor.advance()) {
+            assertEquals(map.get(cursor.first(), cursor.second()), cursor.value());
+            count++;
+        }
+        assertEquals(2, count);
+    }
+}
@@ -61,6 +61,40 @@ public class TestMurmur3 extends TestCase {
         }
     }
 
+    /*
+     * The allocation free variants must hash exactly like hashing the encoded bytes.
+     */
+    @Test
+    public void testVariantsMatchBuffer() throws Exception {
+        final long seed = ByteBuffer.wrap(SecureRandom.getSeed(8)).getInt();
+        Random r = new Random(seed);
+        System.out.println("Seed is " + seed);
+
+        for (int ii = 0; ii < 10000; ii++) {
+            final long value = r.nextLong();
+            ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putLong(0, value);
+            assertEquals(MurmurHash3.hash3_x64_128(buf, 0, 8, 0), MurmurHash3.hash3_x64_128(value));
+
+            byte bytes[] = new byte[r.nextInt(100)];
+            r.nextBytes(bytes);
+            final int expected = MurmurHash3.hash3_x64_128(ByteBuffer.wrap(bytes), 0, bytes.length, 0);
+            assertEquals(expected, MurmurHash3.hash3_x64_128(bytes, 0, bytes.length, 0));
+            ByteBuffer littleEndian = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(expected, MurmurHash3.hash3_x64_128(littleEndian, 0, bytes.length, 0));
+
+            // random chars cover 1 to 3 byte encodings and unpaired surrogates
+            char chars[] = new char[r.nextInt(40)];
+            for (int jj = 0; jj < chars.length; jj++) {
+                chars[jj] = (char) (r.nextBoolean() ? r.nextInt(0x80) : r.nextInt(0x10000));
+            }
+            String string = new String(chars) + "\ud83d\ude00";
+            byte encoded[] = string.getBytes("UTF-8");
+            assertEquals(MurmurHash3.hash3_x64_128(encoded, 0, encoded.length, 0),
+                         MurmurHash3.hash3_x64_128(string, 0));
+        }
+    }
+
     @Test
     public void testMatchesNativeBytes() throws Exception {
         final long seed = ByteBuffer.wrap(SecureRandom.getSeed(8)).getInt();
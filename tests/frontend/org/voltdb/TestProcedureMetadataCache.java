@@ -0,0 +1,98 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ProcedureMetadataCache.ProcedureMetadata;
+import org.voltdb.ProcedureMetadataCache.StatementMetadata;
+import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.compiler.Language;
+import org.voltdb.planner.ActivePlanRepository;
+
+public class TestProcedureMetadataCache extends TestCase {
+
+    Catalog m_catalog;
+
+    @Override
+    public void setUp() throws Exception {
+        ActivePlanRepository.clear();
+        m_catalog = TPCCProjectBuilder.getTPCCSchemaCatalog();
+    }
+
+    private CatalogContext makeContext(int version) {
+        long now = System.currentTimeMillis();
+        return new CatalogContext(now, now, m_catalog.deepCopy(), null, null, version, 0);
+    }
+
+    public void testJavaProcedureSharedOnce() throws Exception {
+        CatalogContext context = makeContext(0);
+        Procedure catProc = context.procedures.get("delivery");
+        assertNotNull(catProc);
+
+        ProcedureMetadata metadata = context.m_procedureMetadata.get(catProc);
+        assertSame(metadata, context.m_procedureMetadata.get(catProc));
+        assertEquals(Language.JAVA, metadata.language);
+        assertEquals(org.voltdb.benchmark.tpcc.procedures.delivery.class, metadata.procClass);
+        assertNull(metadata.paramTypes);
+
+        assertEquals(catProc.getStatements().size(), metadata.statements.size());
+        for (Statement catStmt : catProc.getStatements()) {
+            StatementMetadata stmt = metadata.getStatement(catStmt.getTypeName());
+            assertNotNull(stmt.aggregator);
+            assertNotNull(ActivePlanRepository.planForFragmentId(stmt.aggregator.id));
+            assertEquals(catStmt.getReadonly(), stmt.isReadOnly);
+            assertEquals(catStmt.getParameters().size(), stmt.statementParamJavaTypes.length);
+        }
+    }
+
+    public void testSingleStatementProcedure() throws Exception {
+        CatalogContext context = makeContext(0);
+        Procedure catProc = context.procedures.get("InsertItem");
+        ProcedureMetadata metadata = context.m_procedureMetadata.get(catProc);
+        assertNull(metadata.procClass);
+        assertEquals(catProc.getParameters().size(), metadata.paramTypes.length);
+        // integer parameters are widened to BIGINT
+        for (Class<?> type : metadata.paramTypes) {
+            assertFalse(type == int.class || type == short.class || type == byte.class);
+        }
+        assertEquals(1, metadata.statements.size());
+        StatementMetadata stmt = metadata.getStatement(VoltDB.ANON_STMT_NAME);
+        assertFalse(stmt.isReadOnly);
+    }
+
+    public void testCatalogVersionsShareFragments() throws Exception {
+        CatalogContext context1 = makeContext(0);
+        CatalogContext context2 = makeContext(1);
+        ProcedureMetadata metadata1 = context1.m_procedureMetadata.get(context1.procedures.get("InsertItem"));
+        ProcedureMetadata metadata2 = context2.m_procedureMetadata.get(context2.procedures.get("InsertItem"));
+        assertNotSame(metadata1, metadata2);
+        // the same plan is registered once, under the same fragment id
+        assertEquals(metadata1.getStatement(VoltDB.ANON_STMT_NAME).aggregator.id,
+                     metadata2.getStatement(VoltDB.ANON_STMT_NAME).aggregator.id);
+    }
+}
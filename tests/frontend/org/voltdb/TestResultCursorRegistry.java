@@ -0,0 +1,281 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+
+public class TestResultCursorRegistry {
+
+    private static final long CONNECTION_ID = 42;
+
+    private static VoltTable makeTable(int rows, String prefix) {
+        VoltTable table = new VoltTable(new ColumnInfo("ID", VoltType.BIGINT),
+                                        new ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < rows; i++) {
+            table.addRow(i, prefix + i);
+        }
+        return table;
+    }
+
+    private static StoredProcedureInvocation makeInvocation(long handle, String procName, Object... params) {
+        StoredProcedureInvocation task = new StoredProcedureInvocation();
+        task.setProcName(procName);
+        task.setParams(params);
+        task.setClientHandle(handle);
+        return task;
+    }
+
+    /** Send the response through its wire format as the client would see it */
+    private static ClientResponseImpl roundTrip(ClientResponseImpl response) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(buf).flip();
+        ClientResponseImpl copy = new ClientResponseImpl();
+        copy.initFromBuffer(buf);
+        return copy;
+    }
+
+    private static void collect(ClientResponseImpl response, List<List<String>> rowsByTable) {
+        VoltTable results[] = response.getResults();
+        int table = (int)results[0].fetchRow(0).getLong(1);
+        for (int i = 1; i < results.length; i++, table++) {
+            while (rowsByTable.size() <= table) {
+                rowsByTable.add(new ArrayList<String>());
+            }
+            VoltTable chunk = results[i];
+            while (chunk.advanceRow()) {
+                rowsByTable.get(table).add(chunk.getLong(0) + ":" + chunk.getString(1));
+            }
+        }
+    }
+
+    private static long cursorId(ClientResponseImpl response) {
+        return response.getResults()[0].fetchRow(0).getLong(0);
+    }
+
+    @Test
+    public void testPagesResultsOfReadOnlyInvocations() throws Exception {
+        ResultCursorRegistry cursors = new ResultCursorRegistry();
+        StoredProcedureInvocation task = makeInvocation(7, "@OpenCursor", 10, "Foo", 5L, "bar");
+        assertEquals(null, cursors.prepareOpen(CONNECTION_ID, task));
+        assertEquals("Foo", task.getProcName());
+        assertEquals(2, task.getParams().toArray().length);
+        assertEquals(5L, task.getParams().toArray()[0]);
+
+        VoltTable results[] = new VoltTable[] { makeTable(25, "a"), makeTable(0, "b"), makeTable(3, "c") };
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, results, null, 7);
+        response = roundTrip(cursors.open(CONNECTION_ID, response, true));
+        assertEquals(7, response.getClientHandle());
+        assertEquals(2, response.getResults().length);
+        assertEquals(10, response.getResults()[1].getRowCount());
+        assertEquals(1, cursors.getOpenCursorCount(CONNECTION_ID));
+
+        List<List<String>> rowsByTable = new ArrayList<List<String>>();
+        collect(response, rowsByTable);
+        long cursorId = cursorId(response);
+        int fetches = 0;
+        while (cursorId != ResultCursorRegistry.NO_CURSOR) {
+            response = roundTrip(cursors.fetch(CONNECTION_ID, makeInvocation(8 + fetches, "@FetchCursor", cursorId)));
+            assertEquals(ClientResponse.SUCCESS, response.getStatus());
+            collect(response, rowsByTable);
+            cursorId = cursorId(response);
+            fetches++;
+        }
+        // 25 rows of the first table in chunks of 10, the empty table and the last 3 rows fit in one
+        assertEquals(2, fetches);
+        assertEquals(0, cursors.getOpenCursorCount(CONNECTION_ID));
+
+        assertEquals(3, rowsByTable.size());
+        for (int t = 0; t < results.length; t++) {
+            List<String> expected = new ArrayList<String>();
+            results[t].resetRowPosition();
+            while (results[t].advanceRow()) {
+                expected.add(results[t].getLong(0) + ":" + results[t].getString(1));
+            }
+            assertEquals(expected, rowsByTable.get(t));
+        }
+
+        // the cursor is gone once exhausted
+        response = cursors.fetch(CONNECTION_ID, makeInvocation(20, "@FetchCursor", cursorId(response)));
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, response.getStatus());
+    }
+
+    @Test
+    public void testReadWriteResultsAreReturnedWhole() throws Exception {
+        ResultCursorRegistry cursors = new ResultCursorRegistry();
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(1, "@OpenCursor", 2, "Foo"));
+        VoltTable results[] = new VoltTable[] { makeTable(10, "a"), makeTable(10, "b") };
+        ClientResponseImpl response = cursors.open(CONNECTION_ID,
+                new ClientResponseImpl(ClientResponse.SUCCESS, results, null, 1), false);
+        assertEquals(ResultCursorRegistry.NO_CURSOR, cursorId(response));
+        assertEquals(3, response.getResults().length);
+        assertSame(results[0], response.getResults()[1]);
+        assertSame(results[1], response.getResults()[2]);
+        assertEquals(0, cursors.getOpenCursorCount(CONNECTION_ID));
+    }
+
+    @Test
+    public void testOnlyRequestedResponsesArePaged() throws Exception {
+        ResultCursorRegistry cursors = new ResultCursorRegistry();
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(1, "@OpenCursor", 2, "Foo"));
+        ClientResponseImpl other = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { makeTable(10, "a") }, null, 2);
+        assertSame(other, cursors.open(CONNECTION_ID, other, true));
+
+        ClientResponseImpl failure = new ClientResponseImpl(ClientResponse.USER_ABORT,
+                new VoltTable[0], "aborted", 1);
+        assertSame(failure, cursors.open(CONNECTION_ID, failure, true));
+
+        ClientResponseImpl error = cursors.prepareOpen(CONNECTION_ID, makeInvocation(3, "@OpenCursor", "Foo"));
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, error.getStatus());
+        error = cursors.prepareOpen(CONNECTION_ID, makeInvocation(3, "@OpenCursor", 2, "@FetchCursor", 1L));
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, error.getStatus());
+    }
+
+    @Test
+    public void testCursorsAreReleased() throws Exception {
+        ResultCursorRegistry cursors = new ResultCursorRegistry();
+        long ids[] = new long[2];
+        for (int i = 0; i < 2; i++) {
+            cursors.prepareOpen(CONNECTION_ID, makeInvocation(i, "@OpenCursor", 1, "Foo"));
+            ClientResponseImpl response = cursors.open(CONNECTION_ID,
+                    new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { makeTable(5, "a") }, null, i),
+                    true);
+            ids[i] = cursorId(response);
+            assertTrue(ids[i] != ResultCursorRegistry.NO_CURSOR);
+        }
+        assertTrue(ids[0] != ids[1]);
+        assertEquals(2, cursors.getOpenCursorCount(CONNECTION_ID));
+
+        // a cursor can only be used by the connection that opened it
+        ClientResponseImpl response = cursors.fetch(CONNECTION_ID + 1, makeInvocation(3, "@FetchCursor", ids[0]));
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, response.getStatus());
+
+        response = cursors.close(CONNECTION_ID, makeInvocation(3, "@CloseCursor", ids[0]));
+        assertEquals(ClientResponse.SUCCESS, response.getStatus());
+        assertEquals(1, cursors.getOpenCursorCount(CONNECTION_ID));
+
+        cursors.connectionClosed(CONNECTION_ID);
+        assertEquals(0, cursors.getOpenCursorCount(CONNECTION_ID));
+    }
+
+    @Test
+    public void testResponsesAreFlagged() throws Exception {
+        ResultCursorRegistry cursors = new ResultCursorRegistry();
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(1, "@OpenCursor", 2, "Foo"));
+        ClientResponseImpl response = roundTrip(cursors.open(CONNECTION_ID,
+                new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { makeTable(5, "a") }, null, 1),
+                true));
+        assertTrue(response.hasCursorDescriptor());
+        response = roundTrip(cursors.fetch(CONNECTION_ID, makeInvocation(2, "@FetchCursor", cursorId(response))));
+        assertTrue(response.hasCursorDescriptor());
+
+        // a response that looks like a descriptor but wasn't paged isn't mistaken for one
+        VoltTable lookalike = new VoltTable(ResultCursorRegistry.DESCRIPTOR_SCHEMA);
+        lookalike.addRow(5L, 0);
+        response = roundTrip(cursors.open(CONNECTION_ID,
+                new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { lookalike }, null, 3), true));
+        assertFalse(response.hasCursorDescriptor());
+    }
+
+    @Test
+    public void testHeldBytesAreBounded() throws Exception {
+        final int tableBytes = makeTable(25, "a").getSerializedSize();
+        ResultCursorRegistry cursors = new ResultCursorRegistry(tableBytes + tableBytes / 2);
+
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(1, "@OpenCursor", 10, "Foo"));
+        ClientResponseImpl first = cursors.open(CONNECTION_ID,
+                new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { makeTable(25, "a") }, null, 1),
+                true);
+        assertTrue(cursorId(first) != ResultCursorRegistry.NO_CURSOR);
+        assertEquals(tableBytes, cursors.getHeldBytes());
+
+        // a second cursor would go over the budget
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(2, "@OpenCursor", 10, "Foo"));
+        ClientResponseImpl rejected = cursors.open(CONNECTION_ID,
+                new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { makeTable(25, "b") }, null, 2),
+                true);
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, rejected.getStatus());
+        assertFalse(rejected.hasCursorDescriptor());
+        assertEquals(tableBytes, cursors.getHeldBytes());
+        assertEquals(1, cursors.getOpenCursorCount(CONNECTION_ID));
+
+        // results that fit in one chunk don't hold anything
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(3, "@OpenCursor", 10, "Foo"));
+        ClientResponseImpl whole = cursors.open(CONNECTION_ID,
+                new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { makeTable(5, "c") }, null, 3),
+                true);
+        assertEquals(ClientResponse.SUCCESS, whole.getStatus());
+        assertEquals(ResultCursorRegistry.NO_CURSOR, cursorId(whole));
+
+        // reading the cursor to the end gives the budget back
+        long cursorId = cursorId(first);
+        while (cursorId != ResultCursorRegistry.NO_CURSOR) {
+            cursorId = cursorId(cursors.fetch(CONNECTION_ID, makeInvocation(4, "@FetchCursor", cursorId)));
+        }
+        assertEquals(0, cursors.getHeldBytes());
+
+        // and so do closing it, expiring it, or losing the connection
+        for (int i = 0; i < 3; i++) {
+            cursors.prepareOpen(CONNECTION_ID, makeInvocation(5, "@OpenCursor", 10, "Foo"));
+            ClientResponseImpl response = cursors.open(CONNECTION_ID,
+                    new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { makeTable(25, "d") }, null, 5),
+                    true);
+            assertEquals(ClientResponse.SUCCESS, response.getStatus());
+            assertEquals(tableBytes, cursors.getHeldBytes());
+            if (i == 0) {
+                cursors.close(CONNECTION_ID, makeInvocation(6, "@CloseCursor", cursorId(response)));
+            } else if (i == 1) {
+                cursors.expireIdleCursors(System.nanoTime() + ResultCursorRegistry.CURSOR_IDLE_TIMEOUT_NANOS + 1);
+            } else {
+                cursors.connectionClosed(CONNECTION_ID);
+            }
+            assertEquals(0, cursors.getHeldBytes());
+            assertEquals(0, cursors.getOpenCursorCount(CONNECTION_ID));
+        }
+    }
+
+    @Test
+    public void testUnansweredRequestsExpire() throws Exception {
+        ResultCursorRegistry cursors = new ResultCursorRegistry();
+        cursors.prepareOpen(CONNECTION_ID, makeInvocation(1, "@OpenCursor", 2, "Foo"));
+        cursors.expireIdleCursors(System.nanoTime() + ResultCursorRegistry.CURSOR_IDLE_TIMEOUT_NANOS + 1);
+
+        // the request was forgotten, so a response reusing its handle isn't paged
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { makeTable(10, "a") }, null, 1);
+        assertSame(response, cursors.open(CONNECTION_ID, response, true));
+        assertEquals(0, cursors.getOpenCursorCount(CONNECTION_ID));
+    }
+}
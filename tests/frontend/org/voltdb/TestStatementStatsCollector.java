@@ -0,0 +1,156 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.junit.Test;
+import org.voltcore.utils.CompressionStrategySnappy;
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestStatementStatsCollector {
+
+    private static VoltTable statsTable(StatementStatsCollector dut, boolean interval) {
+        VoltTable vt = new VoltTable(dut.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : dut.getStatsRows(interval, System.currentTimeMillis())) {
+            vt.addRow(row);
+        }
+        return vt;
+    }
+
+    private static VoltTable rows(int count) {
+        VoltTable vt = new VoltTable(new ColumnInfo("C", VoltType.INTEGER));
+        for (int i = 0; i < count; i++) {
+            vt.addRow(i);
+        }
+        return vt;
+    }
+
+    private static VoltTable modified(long count) {
+        VoltTable vt = new VoltTable(new ColumnInfo("modified_tuples", VoltType.BIGINT));
+        vt.addRow(count);
+        return vt;
+    }
+
+    @Test
+    public void testCountsAndSampledTimings() throws Exception {
+        StatementStatsCollector dut = new StatementStatsCollector(0, 3, "proc");
+        SQLStmt select = new SQLStmt("select c from t where c = ?;");
+        select.isReadOnly = true;
+        SQLStmt insert = new SQLStmt("insert into t values (?);");
+        dut.registerStatement("select", select);
+        dut.registerStatement("insert", insert);
+
+        // Only the first of each interval of batches is timed.
+        assertTrue(dut.beginBatch());
+        dut.endStatement(select, rows(2), 5000);
+        dut.endStatement(insert, modified(1), 7000);
+        for (int i = 1; i < dut.timeCollectionInterval; i++) {
+            assertFalse(dut.beginBatch());
+            dut.endStatement(select, rows(1), -1);
+            dut.endStatement(insert, modified(1), -1);
+        }
+
+        VoltTable vt = statsTable(dut, false);
+        assertEquals(2, vt.getRowCount());
+
+        vt.advanceRow();
+        assertEquals(3, vt.getLong("PARTITION_ID"));
+        assertEquals("proc", vt.getString("PROCEDURE"));
+        assertEquals("select", vt.getString("STATEMENT"));
+        assertEquals(dut.timeCollectionInterval, vt.getLong("INVOCATIONS"));
+        assertEquals(1, vt.getLong("TIMED_INVOCATIONS"));
+        assertEquals(5000, vt.getLong("MIN_EXECUTION_TIME"));
+        assertEquals(5000, vt.getLong("AVG_EXECUTION_TIME"));
+        assertEquals(dut.timeCollectionInterval + 1, vt.getLong("ROWS_RETURNED"));
+        assertEquals(0, vt.getLong("ROWS_MODIFIED"));
+        assertEquals(rows(2).getSerializedSize(), vt.getLong("MAX_RESULT_SIZE"));
+        assertEquals(rows(2).getSerializedSize(), vt.getLong("AVG_RESULT_SIZE"));
+        byte[] histogramBytes = vt.getVarbinary("HISTOGRAM");
+        assertNotNull(histogramBytes);
+        AbstractHistogram histogram =
+                AbstractHistogram.fromCompressedBytes(histogramBytes, CompressionStrategySnappy.INSTANCE);
+        assertEquals(1, histogram.getHistogramData().getTotalCount());
+        assertEquals(5, histogram.getHistogramData().getMaxValue());
+
+        vt.advanceRow();
+        assertEquals("insert", vt.getString("STATEMENT"));
+        assertEquals(dut.timeCollectionInterval, vt.getLong("INVOCATIONS"));
+        assertEquals(7000, vt.getLong("MAX_EXECUTION_TIME"));
+        assertEquals(0, vt.getLong("ROWS_RETURNED"));
+        assertEquals(dut.timeCollectionInterval, vt.getLong("ROWS_MODIFIED"));
+    }
+
+    @Test
+    public void testIntervalAndUnknownStatements() throws Exception {
+        StatementStatsCollector dut = new StatementStatsCollector(0, 0, "proc");
+        SQLStmt select = new SQLStmt("select c from t;");
+        select.isReadOnly = true;
+        dut.registerStatement("select", select);
+
+        // A collector without statements never asks for a timed batch and
+        // ignores statements it does not know about.
+        StatementStatsCollector empty = new StatementStatsCollector(0, 0, "adhoc");
+        assertFalse(empty.beginBatch());
+        empty.endStatement(select, rows(1), 100);
+        assertEquals(0, statsTable(empty, false).getRowCount());
+
+        dut.beginBatch();
+        dut.endStatement(select, rows(1), 2000);
+        dut.endStatement(new SQLStmt("select c from t;"), rows(1), 2000);
+
+        VoltTable vt = statsTable(dut, true);
+        assertEquals(1, vt.getRowCount());
+        vt.advanceRow();
+        assertEquals(1, vt.getLong("INVOCATIONS"));
+        assertEquals(2000, vt.getLong("P99_EXECUTION_TIME"));
+
+        // Nothing ran since the last interval.
+        assertEquals(0, statsTable(dut, true).getRowCount());
+
+        dut.beginBatch();
+        dut.endStatement(select, rows(1), -1);
+        vt = statsTable(dut, true);
+        assertEquals(1, vt.getRowCount());
+        vt.advanceRow();
+        assertEquals(1, vt.getLong("INVOCATIONS"));
+        assertEquals(0, vt.getLong("TIMED_INVOCATIONS"));
+        assertEquals(0, vt.getLong("P99_EXECUTION_TIME"));
+        // no sampled executions, so no min/max either
+        assertEquals(0, vt.getLong("MIN_EXECUTION_TIME"));
+        assertEquals(0, vt.getLong("MAX_EXECUTION_TIME"));
+        assertEquals(0, vt.getLong("MIN_RESULT_SIZE"));
+        assertEquals(0, vt.getLong("MAX_RESULT_SIZE"));
+        assertEquals(0, vt.getLong("AVG_RESULT_SIZE"));
+
+        // The cumulative view still has everything.
+        vt = statsTable(dut, false);
+        vt.advanceRow();
+        assertEquals(2, vt.getLong("INVOCATIONS"));
+        assertEquals(1, vt.getLong("TIMED_INVOCATIONS"));
+    }
+}
@@ -614,6 +614,62 @@ public class TestTheHashinator {
         try { ee.release(); } catch (Exception e) {}
     }
 
+    /*
+     * Hashing a partition parameter in place from a serialized parameter set must
+     * give the same partition as deserializing it first.
+     */
+    @Test
+    public void testSerializedParameterHash() throws Exception {
+        final ElasticHashinator hashinator =
+            new ElasticHashinator(ElasticHashinator.getConfigureBytes(8, ElasticHashinator.DEFAULT_TOTAL_TOKENS), false);
+        final VoltType types[] = new VoltType[] {
+                VoltType.BIGINT, VoltType.INTEGER, VoltType.STRING, VoltType.VARBINARY };
+
+        for (int i = 0; i < 2000; i++) {
+            byte[] bytes = new byte[r.nextInt(40)];
+            r.nextBytes(bytes);
+            final Object[] params = new Object[] {
+                    r.nextLong(), r.nextInt(), (short) r.nextInt(), (byte) r.nextInt(),
+                    Long.toString(r.nextLong()), "caf\u00e9 \ud83d\ude00 " + r.nextInt(), bytes,
+                    null, VoltType.NULL_BIGINT, VoltType.NULL_STRING_OR_VARBINARY, 1.5d };
+            ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+            ByteBuffer buf = ByteBuffer.allocate(pset.getSerializedSize());
+            pset.flattenToBuffer(buf);
+            buf.flip();
+
+            for (int index = 0; index < params.length; index++) {
+                for (VoltType type : types) {
+                    int expected;
+                    try {
+                        expected = hashinator.getHashedPartitionForParameter(type, params[index]);
+                    } catch (RuntimeException e) {
+                        // values that can't be coerced to numeric columns fail either way
+                        try {
+                            hashinator.getHashedPartitionForSerializedParameter(type, buf, index);
+                            fail();
+                        } catch (RuntimeException expectedException) {}
+                        continue;
+                    }
+                    assertEquals(expected, hashinator.getHashedPartitionForSerializedParameter(type, buf, index));
+                    assertEquals(0, buf.position());
+                }
+            }
+        }
+
+        // malformed UTF-8 changes when it is decoded and must be hashed decoded
+        final byte[][] malformed = new byte[][] {
+                { (byte) 0xC0, (byte) 0xAF }, { (byte) 0xED, (byte) 0xA0, (byte) 0x80 },
+                { (byte) 0xE2, (byte) 0x82 }, { 'a', (byte) 0xFF, 'b' } };
+        for (byte[] value : malformed) {
+            ByteBuffer buf = ByteBuffer.allocate(2 + 1 + 4 + value.length);
+            buf.putShort((short) 1).put(VoltType.STRING.getValue()).putInt(value.length).put(value);
+            buf.flip();
+            assertEquals(hashinator.getHashedPartitionForParameter(VoltType.STRING,
+                                                                   new String(value, "UTF-8")),
+                         hashinator.getHashedPartitionForSerializedParameter(VoltType.STRING, buf, 0));
+        }
+    }
+
     @Test
     public void testElasticHashinatorPartitionMapping() {
         if (hashinatorType == HashinatorType.LEGACY) return;
@@ -470,11 +470,16 @@ public class TestVoltProcedure extends TestCase {
 
     private class MockStatsAgent extends StatsAgent {
         public StatsSource m_source = null;
+        public StatsSource m_statementSource = null;
         public StatsSelector m_selector = null;
         public long m_catalogId = 0;
 
         @Override
         public void registerStatsSource(StatsSelector selector, long catalogId, StatsSource source) {
+            if (selector == StatsSelector.STATEMENT) {
+                m_statementSource = source;
+                return;
+            }
             m_source = source;
             m_selector = selector;
             m_catalogId = catalogId;
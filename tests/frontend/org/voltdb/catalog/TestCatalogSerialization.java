@@ -27,6 +27,9 @@ import java.io.IOException;
 
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.common.Constants;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.InMemoryJarfile;
 
 import junit.framework.*;
 
@@ -56,4 +59,63 @@ public class TestCatalogSerialization extends TestCase {
         assertTrue(catalog1.equals(catalog2));
         assertTrue(catalog1.equals(catalog3));
     }
+
+    public void testBinary() throws IOException
+    {
+        Catalog catalog1 = TPCCProjectBuilder.getTPCCSchemaCatalog();
+        String commands = catalog1.serialize();
+
+        byte[] binary = catalog1.serializeBinary(42);
+        assertTrue(BinaryCatalog.isBinaryCatalog(binary));
+        assertFalse(BinaryCatalog.isBinaryCatalog(commands.getBytes(Constants.UTF8ENCODING)));
+        assertTrue(binary.length < commands.length());
+
+        Catalog catalog2 = new Catalog();
+        catalog2.executeBinary(binary);
+        assertEquals(commands, catalog2.serialize());
+        assertTrue(catalog1.equals(catalog2));
+
+        // Every table and procedure is a section of its own
+        BinaryCatalog binaryCatalog = new BinaryCatalog(binary);
+        assertEquals(42, binaryCatalog.getSourceChecksum());
+        assertEquals(BinaryCatalog.ROOT_SECTION, binaryCatalog.getSectionPath(0));
+        Database db1 = catalog1.getClusters().get("cluster").getDatabases().get("database");
+        int tables = db1.getTables().size();
+        assertTrue(tables > 0);
+
+        // Apply only the tables on top of the root section
+        Catalog catalog3 = new Catalog();
+        binaryCatalog.applySection(catalog3, 0);
+        Database db3 = catalog3.getClusters().get("cluster").getDatabases().get("database");
+        assertEquals(0, db3.getTables().size());
+        assertEquals(tables, binaryCatalog.applySections(catalog3, db3.getPath() + "/tables["));
+        assertEquals(tables, db3.getTables().size());
+        for (Table table : db1.getTables()) {
+            Table other = db3.getTables().get(table.getTypeName());
+            assertEquals(table.getRelativeIndex(), other.getRelativeIndex());
+            assertEquals(table.serializeSubtree(), other.serializeSubtree());
+        }
+    }
+
+    public void testBinaryInJar() throws IOException
+    {
+        Catalog catalog1 = TPCCProjectBuilder.getTPCCSchemaCatalog();
+        byte[] text = catalog1.serialize().getBytes(Constants.UTF8ENCODING);
+        InMemoryJarfile jarfile = new InMemoryJarfile();
+        jarfile.put(CatalogUtil.CATALOG_FILENAME, text);
+        jarfile.put(CatalogUtil.CATALOG_BINARY_FILENAME,
+                catalog1.serializeBinary(CatalogUtil.getTextCatalogChecksum(text)));
+        assertTrue(catalog1.equals(CatalogUtil.deserializeCatalogFromJar(jarfile)));
+
+        // A binary catalog that doesn't go with catalog.txt is ignored
+        Catalog empty = new Catalog();
+        empty.execute("add / clusters cluster");
+        jarfile.put(CatalogUtil.CATALOG_BINARY_FILENAME,
+                empty.serializeBinary(CatalogUtil.getTextCatalogChecksum(text) + 1));
+        assertTrue(catalog1.equals(CatalogUtil.deserializeCatalogFromJar(jarfile)));
+
+        // as is a broken one
+        jarfile.put(CatalogUtil.CATALOG_BINARY_FILENAME, new byte[] { 0x56, 0x43, 0x41, 0x54, 1 });
+        assertTrue(catalog1.equals(CatalogUtil.deserializeCatalogFromJar(jarfile)));
+    }
 }
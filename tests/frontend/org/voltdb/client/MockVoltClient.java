@@ -169,6 +169,18 @@ public class MockVoltClient implements Client, ReplicaProcCaller{
 
     }
 
+    @Override
+    public PreparedInvocation prepareInvocation(String procName) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
+    @Override
+    public ResultCursor callProcedureWithCursor(int chunkRows, String procName, Object... parameters) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
     @Override
     public int calculateInvocationSerializedSize(String procName,
             Object... parameters) {
@@ -29,6 +29,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
@@ -47,6 +48,7 @@ import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
 
 public class TestDistributer extends TestCase {
 
@@ -55,6 +57,10 @@ public class TestDistributer extends TestCase {
         volatile boolean gotPing = false;
         AtomicBoolean sendResponses = new AtomicBoolean(true);
         AtomicBoolean sendProcTimeout = new AtomicBoolean(false);
+        AtomicBoolean compressResponses = new AtomicBoolean(false);
+        AtomicInteger compressedResponses = new AtomicInteger(0);
+        AtomicBoolean sendLoadHints = new AtomicBoolean(false);
+        volatile int reportedLoad = 0;
         volatile Semaphore invokedSubscribe = new Semaphore(0);
         volatile Semaphore invokedTopology = new Semaphore(0);
         volatile Semaphore invokedSystemInformation = new Semaphore(0);
@@ -73,8 +79,10 @@ public class TestDistributer extends TestCase {
                 final String proc = spi.getProcName();
 
                 // record if we got a ping
-                if (proc.equals("@Ping"))
+                if (proc.equals("@Ping")) {
                     gotPing = true;
+                    pings.incrementAndGet();
+                }
 
                 if (sendResponses.get()) {
                     VoltTable vt[] = new VoltTable[0];
@@ -88,6 +96,10 @@ public class TestDistributer extends TestCase {
                         vt = new VoltTable[1];
                         vt[0] = new VoltTable(new VoltTable.ColumnInfo("Foo", VoltType.BIGINT));
                         vt[0].addRow(1);
+                        // give the clients that asked for compression something worth compressing
+                        for (int ii = 1; compressResponses.get() && ii < 1000; ii++) {
+                            vt[0].addRow(ii % 10);
+                        }
                     }
                     ClientResponseImpl response;
                     if (sendProcTimeout.get()) {
@@ -97,12 +109,26 @@ public class TestDistributer extends TestCase {
                         response = new ClientResponseImpl(ClientResponseImpl.SUCCESS, vt,
                                 "Extra String", spi.getClientHandle());
                     }
-                    ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
-                    buf.putInt(buf.capacity() - 4);
-                    response.flattenToBuffer(buf);
-                    buf.clear();
+                    if (sendLoadHints.get()) {
+                        response.setLoadHint(reportedLoad, 0);
+                    }
+                    ByteBuffer buf;
+                    if (compressResponses.get()) {
+                        buf = response.flattenToCompressedFrame();
+                        if (buf.get(4) == Constants.COMPRESSED_RESPONSE_VERSION) {
+                            compressedResponses.incrementAndGet();
+                        }
+                    }
+                    else {
+                        buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+                        buf.putInt(buf.capacity() - 4);
+                        response.flattenToBuffer(buf);
+                        buf.clear();
+                    }
                     c.writeStream().enqueue(buf);
-                    roundTrips.incrementAndGet();
+                    if (!proc.equals("@Ping")) {
+                        roundTrips.incrementAndGet();
+                    }
                     System.err.println("Sending response.");
                 }
                 else {
@@ -138,6 +164,7 @@ public class TestDistributer extends TestCase {
 
         }
         AtomicInteger roundTrips = new AtomicInteger();
+        AtomicInteger pings = new AtomicInteger();
 
         @Override
         public Runnable offBackPressure() {
@@ -184,7 +211,9 @@ public class TestDistributer extends TestCase {
                     if (client != null) {
                         client.configureBlocking(true);
                         final ByteBuffer lengthBuffer = ByteBuffer.allocate(5);//Extra byte for version also
-                        client.read(lengthBuffer);
+                        while (lengthBuffer.remaining() > 0)
+                            client.read(lengthBuffer);
+                        final byte loginVersion = lengthBuffer.get(4);
 
                         final ByteBuffer serviceLengthBuffer = ByteBuffer.allocate(4);
                         while (serviceLengthBuffer.remaining() > 0)
@@ -229,6 +258,11 @@ public class TestDistributer extends TestCase {
                         responseBuffer.putInt(0);
                         responseBuffer.flip();
                         handler = new MockInputHandler();
+                        handler.compressResponses.set(
+                                (loginVersion & Constants.LOGIN_VERSION_COMPRESSED_RESPONSES) != 0);
+                        handler.sendLoadHints.set(
+                                (loginVersion & Constants.LOGIN_VERSION_LOAD_HINTS) != 0);
+                        handler.reportedLoad = reportedLoad;
                         client.write(responseBuffer);
 
                         client.configureBlocking(false);
@@ -270,6 +304,7 @@ public class TestDistributer extends TestCase {
         private AtomicBoolean shutdown = new AtomicBoolean(false);
         volatile ServerSocketChannel socket = null;
         volatile MockInputHandler handler = null;
+        volatile int reportedLoad = 0;
         volatile VoltNetworkPool network;
         List<SocketChannel> channels = new ArrayList<SocketChannel>();
     }
@@ -613,6 +648,41 @@ public class TestDistributer extends TestCase {
        }
     }
 
+    public void testPreparedInvocation() throws Exception {
+        // a prepared invocation serializes exactly like a regular one
+        PreparedInvocation prepared = new PreparedInvocation(null, "Foo");
+        ProcedureInvocation regular = new ProcedureInvocation(12, "Foo", new Integer(1), "bar");
+        ProcedureInvocation fromPrepared = new ProcedureInvocation(12, prepared, new Integer(1), "bar");
+        assertSame(prepared, fromPrepared.getPrepared());
+        assertEquals(regular.getSerializedSize(), fromPrepared.getSerializedSize());
+        ByteBuffer expected = regular.flattenToBuffer(ByteBuffer.allocate(regular.getSerializedSize()));
+        ByteBuffer actual = fromPrepared.flattenToBuffer(ByteBuffer.allocate(fromPrepared.getSerializedSize()));
+        assertTrue(Arrays.equals(expected.array(), actual.array()));
+
+        MockVolt volt = null;
+        try {
+            volt = new MockVolt(21212);
+            volt.start();
+
+            Client clt = ClientFactory.createClient();
+            clt.createConnection("localhost");
+
+            PreparedInvocation foo = clt.prepareInvocation("Foo");
+            assertEquals("Foo", foo.getProcName());
+            foo.callProcedure(new Integer(1));
+            assertEquals(4, volt.handler.roundTrips.get());
+
+            assertTrue(foo.callProcedure(new ProcCallback(), new Integer(2)));
+            clt.drain();
+            assertEquals(5, volt.handler.roundTrips.get());
+        }
+        finally {
+            if (volt != null) {
+                volt.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testClientBlockedOnMaxOutstanding() throws Exception {
         // create a fake server and connect to it.
@@ -661,6 +731,134 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    public void testCompressedResponseFrame() throws Exception {
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("Foo", VoltType.STRING));
+        for (int ii = 0; ii < 1000; ii++) {
+            vt.addRow("row " + (ii % 10));
+        }
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { vt }, "Extra String", 42);
+
+        ByteBuffer frame = response.flattenToCompressedFrame();
+        assertEquals(frame.remaining() - 4, frame.getInt());
+        assertEquals(Constants.COMPRESSED_RESPONSE_VERSION, frame.get(frame.position()));
+        assertTrue(frame.remaining() < response.getSerializedSize() / 4);
+
+        ClientResponseImpl decompressed = new ClientResponseImpl();
+        decompressed.initFromBuffer(ClientResponseImpl.decompressFrame(frame));
+        assertEquals(42, decompressed.getClientHandle());
+        assertEquals("Extra String", decompressed.getStatusString());
+        assertEquals(vt, decompressed.getResults()[0]);
+
+        // A response that doesn't shrink goes out in the regular format.
+        response = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], null, 7);
+        frame = response.flattenToCompressedFrame();
+        assertEquals(response.getSerializedSize(), frame.getInt());
+        assertEquals(0, frame.get(frame.position()));
+        assertSame(frame, ClientResponseImpl.decompressFrame(frame));
+    }
+
+    public void testCompressedResponsesNegotiatedAtLogin() throws Exception {
+        MockVolt volt = new MockVolt(20000);
+        volt.start();
+        Distributer dist = new Distributer(false,
+                ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                false, true /* compress responses */, null /* subject */);
+        try {
+            dist.createConnection("localhost", "", "", 20000);
+            assertTrue(volt.handler.compressResponses.get());
+
+            SyncCallback cb = new SyncCallback();
+            dist.queue(new ProcedureInvocation(88, "i1", new Integer(1)), cb, true, System.nanoTime(), 0);
+            cb.waitForResponse();
+            assertEquals(ClientResponse.SUCCESS, cb.getResponse().getStatus());
+            VoltTable result = cb.getResponse().getResults()[0];
+            assertEquals(1000, result.getRowCount());
+            assertEquals(1, volt.handler.compressedResponses.get());
+        }
+        finally {
+            dist.shutdown();
+            volt.shutdown();
+        }
+    }
+
+    public void testLoadHintSerialization() throws Exception {
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[0], "Extra String", 42);
+        assertFalse(response.hasLoadHint());
+        response.setLoadHint(12, 34);
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(buf).flip();
+
+        ClientResponseImpl copy = new ClientResponseImpl();
+        copy.initFromBuffer(buf);
+        assertEquals(42, copy.getClientHandle());
+        assertEquals("Extra String", copy.getStatusString());
+        assertTrue(copy.hasLoadHint());
+        assertEquals(12, copy.getSiteQueueDepth());
+        assertEquals(34, copy.getOutstandingTxns());
+    }
+
+    public void testLoadAwareRouting() throws Exception {
+        MockVolt volt0 = new MockVolt(20000);
+        volt0.reportedLoad = 1000;
+        volt0.start();
+        MockVolt volt1 = new MockVolt(20001);
+        volt1.start();
+        Distributer dist = new Distributer(false,
+                ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                false, false, true /* load aware routing */, null /* subject */);
+        try {
+            dist.createConnection("localhost", "", "", 20000);
+            dist.createConnection("localhost", "", "", 20001);
+            assertTrue(volt0.handler.sendLoadHints.get());
+            assertTrue(volt1.handler.sendLoadHints.get());
+
+            // once the busy node has reported its load everything goes to the idle one
+            for (int i = 0; i < 10; i++) {
+                SyncCallback cb = new SyncCallback();
+                assertTrue(dist.queue(new ProcedureInvocation(i, "i1", new Integer(1)), cb, true,
+                                      System.nanoTime(), 0));
+                cb.waitForResponse();
+                assertEquals(ClientResponse.SUCCESS, cb.getResponse().getStatus());
+            }
+            assertTrue(volt0.handler.roundTrips.get() <= 1);
+            assertEquals(10, volt0.handler.roundTrips.get() + volt1.handler.roundTrips.get());
+
+            long routed = 0;
+            for (long count : dist.createStatsContext().getLoadAwareRoutingStats().values()) {
+                routed += count;
+            }
+            assertEquals(10, routed);
+
+            // the busy node calms down, its stale hint is aged out and a ping fetches a fresh one
+            volt0.handler.reportedLoad = 0;
+            Distributer.LOAD_HINT_MAX_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (volt0.handler.pings.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(volt0.handler.pings.get() > 0);
+
+            final int volt0Calls = volt0.handler.roundTrips.get();
+            for (int i = 0; i < 10; i++) {
+                SyncCallback cb = new SyncCallback();
+                assertTrue(dist.queue(new ProcedureInvocation(i, "i1", new Integer(1)), cb, true,
+                                      System.nanoTime(), 0));
+                cb.waitForResponse();
+            }
+            assertTrue(volt0.handler.roundTrips.get() > volt0Calls);
+        }
+        finally {
+            Distributer.LOAD_HINT_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+            dist.shutdown();
+            volt0.shutdown();
+            volt1.shutdown();
+        }
+    }
+
     public void testUnresolvedHost() throws IOException {
         final String hostname = "doesnotexist";
         boolean threwException = false;
@@ -0,0 +1,121 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltDB.Configuration;
+
+public class TestParallelStatementPlanner extends TestCase {
+
+    static final String SCHEMA =
+        "create table blah (" +
+        "ival bigint default 0 not null, " +
+        "sval varchar(255) not null, " +
+        "PRIMARY KEY(ival)" +
+        ");\n" +
+        "partition table blah on column ival;\n" +
+        "create table repl (" +
+        "ival bigint default 0 not null, " +
+        "dval float, " +
+        "PRIMARY KEY(ival)" +
+        ");\n" +
+        "create index repl_dval on repl (dval);\n" +
+        "create procedure SelectOne as select * from blah where ival = ?;\n" +
+        "partition procedure SelectOne on table blah column ival;\n" +
+        "create procedure Join as select b.sval, r.dval from blah b, repl r where b.ival = r.ival and r.dval > ?;\n" +
+        "create procedure Ordered as select * from repl order by dval limit 10;\n" +
+        "create procedure Upsert as upsert into repl values (?, ?);\n" +
+        "create procedure Agg as select sval, count(*) from blah group by sval;\n";
+
+    private String compileWithPlannerThreads(int threads, String jarName) throws Exception {
+        String saved = System.getProperty("COMPILER_PLANNER_THREADS");
+        System.setProperty("COMPILER_PLANNER_THREADS", String.valueOf(threads));
+        try {
+            File schemaFile = VoltProjectBuilder.writeStringToTempFile(SCHEMA);
+            VoltCompiler compiler = new VoltCompiler();
+            assertTrue(compiler.compileFromDDL(Configuration.getPathToCatalogForTest(jarName),
+                                               schemaFile.getPath()));
+            return compiler.getCatalog().serialize();
+        }
+        finally {
+            if (saved == null) {
+                System.clearProperty("COMPILER_PLANNER_THREADS");
+            }
+            else {
+                System.setProperty("COMPILER_PLANNER_THREADS", saved);
+            }
+        }
+    }
+
+    public void testParallelPlanningMatchesSerial() throws Exception {
+        String serial = compileWithPlannerThreads(1, "parallel_planner_serial.jar");
+        String parallel = compileWithPlannerThreads(4, "parallel_planner_parallel.jar");
+        assertEquals(serial, parallel);
+    }
+
+    public void testPlanningErrorsSurviveParallelPlanning() throws Exception {
+        String saved = System.getProperty("COMPILER_PLANNER_THREADS");
+        System.setProperty("COMPILER_PLANNER_THREADS", "4");
+        try {
+            File schemaFile = VoltProjectBuilder.writeStringToTempFile(
+                    SCHEMA + "create procedure Bad as select nosuchcolumn from repl;\n");
+            VoltCompiler compiler = new VoltCompiler();
+            assertFalse(compiler.compileFromDDL(Configuration.getPathToCatalogForTest("parallel_planner_bad.jar"),
+                                                schemaFile.getPath()));
+            boolean found = false;
+            for (VoltCompiler.Feedback fb : compiler.m_errors) {
+                if (fb.getLogString().contains("Failed to plan for statement")) {
+                    found = true;
+                }
+            }
+            assertTrue(found);
+        }
+        finally {
+            if (saved == null) {
+                System.clearProperty("COMPILER_PLANNER_THREADS");
+            }
+            else {
+                System.setProperty("COMPILER_PLANNER_THREADS", saved);
+            }
+        }
+    }
+
+    public void testSlowestStatementsReport() {
+        Map<String, Long> times = new HashMap<String, Long>();
+        times.put("A-sql", 3000000L);
+        times.put("B-sql", 9000000L);
+        times.put("C-sql", 1000000L);
+        List<String> lines = ParallelStatementPlanner.slowestStatementsReport(times, 2);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("3 statements"));
+        assertTrue(lines.get(1).contains("B-sql"));
+        assertTrue(lines.get(2).contains("A-sql"));
+    }
+}
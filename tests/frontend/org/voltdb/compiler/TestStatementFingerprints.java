@@ -0,0 +1,108 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltDB.Configuration;
+import org.voltdb.common.Constants;
+import org.voltdb.utils.InMemoryJarfile;
+
+public class TestStatementFingerprints extends TestCase {
+
+    static final String SCHEMA =
+        "create table blah (" +
+        "ival bigint default 0 not null, " +
+        "sval varchar(255) not null, " +
+        "PRIMARY KEY(ival)" +
+        ");\n" +
+        "partition table blah on column ival;\n" +
+        "create table repl (" +
+        "ival bigint default 0 not null, " +
+        "dval float, " +
+        "PRIMARY KEY(ival)" +
+        ");\n" +
+        "create procedure SelectOne as select * from blah where ival = ?;\n" +
+        "partition procedure SelectOne on table blah column ival;\n" +
+        "create procedure BySval as select * from blah where sval = ?;\n" +
+        "create procedure Ordered as select * from repl order by dval limit 10;\n";
+
+    private InMemoryJarfile compile(String ddl, String jarName) throws Exception {
+        File schemaFile = VoltProjectBuilder.writeStringToTempFile(ddl);
+        String jarPath = Configuration.getPathToCatalogForTest(jarName);
+        VoltCompiler compiler = new VoltCompiler();
+        assertTrue(compiler.compileFromDDL(jarPath, schemaFile.getPath()));
+        return new InMemoryJarfile(jarPath);
+    }
+
+    /**
+     * Recompile a jar with some DDL appended, the way ad hoc DDL does, and check
+     * that the result is the same catalog a compile from scratch produces.
+     * @return the number of statements whose plans were reused
+     */
+    private int recompileWith(String addedDDL) throws Exception {
+        InMemoryJarfile jarfile = compile(SCHEMA, "fingerprints-before.jar");
+        assertNotNull(jarfile.get(StatementFingerprints.FINGERPRINTS_FILE_NAME));
+
+        String ddl = new String(jarfile.get(VoltCompiler.AUTOGEN_DDL_FILE_NAME), Constants.UTF8ENCODING) +
+                     "\n" + addedDDL;
+        new VoltCompilerStringReader(VoltCompiler.AUTOGEN_DDL_FILE_NAME, ddl)
+                .putInJar(jarfile, VoltCompiler.AUTOGEN_DDL_FILE_NAME);
+        VoltCompiler recompiler = new VoltCompiler();
+        recompiler.compileInMemoryJarfile(jarfile);
+        String recompiled = recompiler.getCatalog().serialize();
+
+        VoltCompiler scratch = new VoltCompiler();
+        assertTrue(scratch.compileFromDDL(Configuration.getPathToCatalogForTest("fingerprints-scratch.jar"),
+                                          VoltProjectBuilder.writeStringToTempFile(ddl).getPath()));
+        assertEquals(scratch.getCatalog().serialize(), recompiled);
+
+        int reused = 0;
+        for (VoltCompiler.Feedback fb : recompiler.m_infos) {
+            String line = fb.getLogString();
+            int start = line.indexOf("Reused the plans of ");
+            if (start >= 0) {
+                reused = Integer.parseInt(line.substring(start + 20).split(" ")[0]);
+            }
+        }
+        return reused;
+    }
+
+    public void testUnrelatedChangeReusesPlans() throws Exception {
+        int reused = recompileWith("create table other (ival bigint not null);\n" +
+                                   "create procedure SelectOther as select * from other;\n");
+        // Every statement on blah and repl, including the CRUD procedures, keeps its plan.
+        assertTrue(reused > 3);
+    }
+
+    public void testSchemaChangeReplansTouchedStatements() throws Exception {
+        int reusedUnrelated = recompileWith("create table other (ival bigint not null);\n");
+        int reusedIndexed = recompileWith("create index blah_sval on blah (sval);\n");
+        // The new index invalidates every statement on blah but none on repl.
+        assertTrue(reusedIndexed > 0);
+        assertTrue(reusedIndexed < reusedUnrelated);
+    }
+}
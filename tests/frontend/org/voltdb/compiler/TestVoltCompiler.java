@@ -49,7 +49,10 @@ import org.voltdb.catalog.Connector;
 import org.voltdb.catalog.ConnectorTableInfo;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Group;
+import org.voltdb.catalog.Index;
 import org.voltdb.catalog.GroupRef;
+import org.voltdb.catalog.MaterializedViewInfo;
+import org.voltdb.catalog.MaterializedViewJoin;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.catalog.Table;
@@ -2115,6 +2118,120 @@ public class TestVoltCompiler extends TestCase {
         checkDDLErrorMessage(ddl, "A materialized view (MY_VIEW2) can not be defined on another view (MY_VIEW1)");
     }
 
+    public void testDDLCompilerJoinMatView()
+    {
+        final String tables =
+                "create table orders(id integer not null, cust integer not null, amount integer);\n" +
+                "partition table orders on column id;\n" +
+                "create index orders_cust on orders(cust);\n" +
+                "create table customers(id integer not null, region varchar(16), primary key (id));\n" +
+                "create table regions(name varchar(16) not null, zone integer);\n";
+        String ddl;
+
+        // A replicated table joined on its primary key is found with an index lookup.
+        ddl = tables +
+                "create view by_region (region, cnt, amt) as " +
+                "select customers.region, count(*), sum(orders.amount) from orders, customers " +
+                "where orders.cust = customers.id group by customers.region;";
+        VoltCompiler compiler = new VoltCompiler();
+        assertTrue(compileFromDDL(compiler, testout_jar, getPathForSchema(ddl)));
+        Database db = compiler.getCatalog().getClusters().get("cluster").getDatabases().get("database");
+        MaterializedViewInfo mvi = db.getTables().get("ORDERS").getViews().get("BY_REGION");
+        assertNotNull(mvi);
+        assertEquals(1, mvi.getJoins().size());
+        MaterializedViewJoin join = mvi.getJoins().get("CUSTOMERS");
+        assertEquals(1, join.getIndex());
+        assertEquals("CUSTOMERS", join.getTable().getTypeName());
+        assertFalse(join.getLookupindex().isEmpty());
+        assertFalse(join.getLookupkeysjson().isEmpty());
+        assertEquals("ORDERS_CUST", join.getSourceindex());
+        assertFalse(join.getSourcekeysjson().isEmpty());
+        assertFalse(mvi.getPredicate().isEmpty());
+        assertFalse(mvi.getGroupbyexpressionsjson().isEmpty());
+        assertFalse(db.getTables().get("BY_REGION").getIsreplicated());
+
+        // A second replicated table without a usable index is scanned.
+        ddl = tables +
+                "create index orders_amount on orders(amount);\n" +
+                "create view by_zone (zone, cnt) as " +
+                "select regions.zone, count(*) from orders, customers, regions " +
+                "where orders.cust = customers.id and orders.amount = regions.zone group by regions.zone;";
+        compiler = new VoltCompiler();
+        assertTrue(compileFromDDL(compiler, testout_jar, getPathForSchema(ddl)));
+        db = compiler.getCatalog().getClusters().get("cluster").getDatabases().get("database");
+        mvi = db.getTables().get("ORDERS").getViews().get("BY_ZONE");
+        assertEquals(2, mvi.getJoins().size());
+        join = mvi.getJoins().get("REGIONS");
+        assertEquals(2, join.getIndex());
+        assertTrue(join.getLookupindex().isEmpty());
+        assertEquals("ORDERS_AMOUNT", join.getSourceindex());
+
+        // A change to a joined table must find the source rows it joins with through an index.
+        ddl = tables +
+                "create view by_zone (zone, cnt) as " +
+                "select regions.zone, count(*) from orders, customers, regions " +
+                "where orders.cust = customers.id and customers.region = regions.name group by regions.zone;";
+        checkDDLErrorMessage(ddl, "Materialized view \"BY_ZONE\" joins table REGIONS to its source table ORDERS, " +
+                "but no index on ORDERS has all of its columns equated to columns of REGIONS by the view's " +
+                "join conditions. Every change to REGIONS would have to scan ORDERS. Create such an index on ORDERS.");
+
+        ddl = tables.replace("create index orders_cust on orders(cust);\n", "") +
+                "create view by_region (region, cnt) as " +
+                "select customers.region, count(*) from orders, customers " +
+                "where orders.cust = customers.id group by customers.region;";
+        checkDDLErrorMessage(ddl, "Materialized view \"BY_REGION\" joins table CUSTOMERS to its source table ORDERS, " +
+                "but no index on ORDERS has all of its columns equated to columns of CUSTOMERS by the view's " +
+                "join conditions. Every change to CUSTOMERS would have to scan ORDERS. Create such an index on ORDERS.");
+
+        ddl = tables +
+                "create view by_customer (id, cnt) as " +
+                "select customers.id, count(*) from customers, orders " +
+                "where orders.cust = customers.id group by customers.id;";
+        checkDDLErrorMessage(ddl, "Materialized view \"BY_CUSTOMER\" joins partitioned table ORDERS. " +
+                "Only replicated tables may be joined to the source table of a materialized view.");
+
+        ddl = tables +
+                "create view by_region (region, cnt, amt) as " +
+                "select customers.region, count(*), max(orders.amount) from orders, customers " +
+                "where orders.cust = customers.id group by customers.region;";
+        checkDDLErrorMessage(ddl, "Materialized view \"BY_REGION\" joins more than one table and so can not use min or max.");
+
+        ddl = tables +
+                "create view by_region (region, cnt) as " +
+                "select customers.region, count(*) from orders left join customers " +
+                "on orders.cust = customers.id group by customers.region;";
+        checkDDLErrorMessage(ddl, "Materialized view \"BY_REGION\" uses an outer join. Only inner joins are allowed.");
+    }
+
+    public void testDDLCompilerPartialIndex()
+    {
+        final String table = "create table t(id integer not null, status varchar(16), tm timestamp);\n";
+        String ddl;
+
+        ddl = table +
+                "create index idx_t_id on t(id);\n" +
+                "create index idx_t_pending on t(id) where status = 'PENDING';\n" +
+                "create index idx_t_shipped on t(id) where status = 'SHIPPED' and tm is not null;";
+        VoltCompiler compiler = new VoltCompiler();
+        assertTrue(compileFromDDL(compiler, testout_jar, getPathForSchema(ddl)));
+        Database db = compiler.getCatalog().getClusters().get("cluster").getDatabases().get("database");
+        CatalogMap<Index> indexes = db.getTables().get("T").getIndexes();
+        // Indexes on the same columns over different rows are not duplicates.
+        assertEquals(3, indexes.size());
+        assertTrue(indexes.get("IDX_T_ID").getPredicatejson().isEmpty());
+        assertFalse(indexes.get("IDX_T_PENDING").getPredicatejson().isEmpty());
+        assertFalse(indexes.get("IDX_T_SHIPPED").getPredicatejson().isEmpty());
+
+        ddl = table +
+                "create index idx_t_recent on t(id) where since_epoch(second, NOW) - since_epoch(second, tm) < 60;";
+        checkDDLErrorMessage(ddl, "Partial index IDX_T_RECENT cannot include the function NOW or CURRENT_TIMESTAMP " +
+                "in its WHERE clause.");
+
+        ddl = table +
+                "create index idx_t_bad on t(id) where region = 'EAST';";
+        checkDDLErrorMessage(ddl, "REGION");
+    }
+
     public void testDDLCompilerTableLimit()
     {
         String ddl;
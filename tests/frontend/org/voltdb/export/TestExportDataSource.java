@@ -0,0 +1,284 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json_voltpatches.JSONStringer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.messaging.BinaryPayloadMessage;
+import org.voltcore.messaging.MockMailbox;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.Pair;
+import org.voltdb.export.ExportDataSource.AckingBatch;
+
+import com.google_voltpatches.common.base.Charsets;
+import com.google_voltpatches.common.collect.ImmutableList;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+
+public class TestExportDataSource {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name") + "/export_ds");
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final long REPLICAS[] = new long[] { 11, 12 };
+
+    private ExportDataSource m_source;
+    private MockMailbox m_mailbox;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        TEST_DIR.mkdirs();
+
+        JSONStringer stringer = new JSONStringer();
+        stringer.object();
+        stringer.key("adVersion").value(0);
+        stringer.key("database").value("database");
+        stringer.key("generation").value(1);
+        stringer.key("partitionId").value(3);
+        stringer.key("signature").value("sig");
+        stringer.key("tableName").value("FOO");
+        stringer.key("columns").array().endArray();
+        stringer.endObject();
+        File adFile = new File(TEST_DIR, "sig_3.ad");
+        try (FileOutputStream fos = new FileOutputStream(adFile)) {
+            fos.write(stringer.toString().getBytes(Charsets.UTF_8));
+        }
+
+        m_source = new ExportDataSource(new Runnable() {
+            @Override
+            public void run() {}
+        }, adFile, true);
+        m_mailbox = new MockMailbox();
+        m_source.updateAckMailboxes(Pair.of((org.voltcore.messaging.Mailbox)m_mailbox,
+                ImmutableList.of(REPLICAS[0], REPLICAS[1])));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_source != null) {
+            try {
+                m_source.closeAndDelete().get();
+            } catch (RejectedExecutionException e) {
+                // already closed by the test
+            }
+            m_source = null;
+        }
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                f.delete();
+            }
+            TEST_DIR.delete();
+        }
+    }
+
+    private void pushBlock(long uso, long fillValue) {
+        ByteBuffer buf = ByteBuffer.allocate(StreamBlock.HEADER_SIZE + BLOCK_SIZE);
+        buf.position(StreamBlock.HEADER_SIZE);
+        while (buf.hasRemaining()) {
+            buf.putLong(fillValue);
+        }
+        buf.clear();
+        m_source.pushExportBuffer(uso, buf, false, false);
+    }
+
+    private static void checkContainer(BBContainer cont, long fillValue) {
+        ByteBuffer b = cont.b().duplicate();
+        assertEquals(BLOCK_SIZE, b.remaining());
+        while (b.hasRemaining()) {
+            assertEquals(fillValue, b.getLong());
+        }
+    }
+
+    /** Wait for the tasks queued on the source so far and return the unacked bytes */
+    private long unackedBytes() {
+        return m_source.sizeInBytes();
+    }
+
+    /** Acks sent to the replicas since the last call, each must have gone to every replica */
+    private List<Long> forwardedAcks() {
+        List<Long> acks = new ArrayList<Long>();
+        while (!m_mailbox.noSentMessages()) {
+            long uso = -1;
+            for (int i = 0; i < REPLICAS.length; i++) {
+                BinaryPayloadMessage bpm = (BinaryPayloadMessage)m_mailbox.pollMessage();
+                ByteBuffer payload = ByteBuffer.wrap(bpm.m_payload);
+                assertEquals(3, payload.getInt());
+                long ackUso = payload.getLong(payload.limit() - 8);
+                assertTrue(i == 0 || uso == ackUso);
+                uso = ackUso;
+            }
+            acks.add(uso);
+        }
+        return acks;
+    }
+
+    @Test
+    public void testBatchedPoll() throws Exception {
+        for (int ii = 0; ii < 5; ii++) {
+            pushBlock(ii * BLOCK_SIZE, ii);
+        }
+
+        AckingBatch batch = m_source.poll(3).get();
+        assertEquals(3, batch.getContainers().size());
+        assertEquals(3 * BLOCK_SIZE, batch.getUso());
+        for (int ii = 0; ii < 3; ii++) {
+            checkContainer(batch.getContainers().get(ii), ii);
+        }
+
+        AckingBatch rest = m_source.poll(3).get();
+        assertEquals(2, rest.getContainers().size());
+        assertEquals(5 * BLOCK_SIZE, rest.getUso());
+        checkContainer(rest.getContainers().get(0), 3);
+        checkContainer(rest.getContainers().get(1), 4);
+
+        // nothing left to poll, the batch completes once data arrives
+        ListenableFuture<AckingBatch> pending = m_source.poll(3);
+        unackedBytes();
+        assertFalse(pending.isDone());
+        pushBlock(5 * BLOCK_SIZE, 5);
+        AckingBatch last = pending.get(10, TimeUnit.SECONDS);
+        assertEquals(1, last.getContainers().size());
+        assertEquals(6 * BLOCK_SIZE, last.getUso());
+        checkContainer(last.getContainers().get(0), 5);
+
+        // polling is exclusive until the outstanding poll is answered
+        m_source.poll(3);
+        try {
+            m_source.poll().get();
+            fail();
+        } catch (Exception expected) {}
+
+        batch.discard();
+        rest.discard();
+        last.discard();
+        assertEquals(0, unackedBytes());
+    }
+
+    @Test
+    public void testPartialAck() throws Exception {
+        for (int ii = 0; ii < 4; ii++) {
+            pushBlock(ii * BLOCK_SIZE, ii);
+        }
+        AckingBatch batch = m_source.poll(3).get();
+        assertEquals(4 * BLOCK_SIZE, unackedBytes());
+
+        // discarding the batch acks all of its blocks and nothing after them
+        batch.discard();
+        assertEquals(BLOCK_SIZE, unackedBytes());
+        assertEquals(ImmutableList.of(3L * BLOCK_SIZE), forwardedAcks());
+        try {
+            batch.discard();
+            fail();
+        } catch (IllegalStateException expected) {}
+
+        // an ack from a replica can release part of a block and isn't forwarded again
+        m_source.ack(3 * BLOCK_SIZE + BLOCK_SIZE / 2);
+        assertEquals(BLOCK_SIZE / 2, unackedBytes());
+        assertTrue(forwardedAcks().isEmpty());
+
+        // the rest of the partially acked block is what gets polled next
+        AckingBatch rest = m_source.poll(3).get();
+        assertEquals(1, rest.getContainers().size());
+        assertEquals(BLOCK_SIZE / 2, rest.getContainers().get(0).b().remaining());
+        rest.discard();
+        assertEquals(0, unackedBytes());
+        assertEquals(ImmutableList.of(4L * BLOCK_SIZE), forwardedAcks());
+    }
+
+    @Test
+    public void testAckCoalescing() throws Exception {
+        List<BBContainer> containers = new ArrayList<BBContainer>();
+        for (int ii = 0; ii < 3; ii++) {
+            pushBlock(ii * BLOCK_SIZE, ii);
+            containers.add(m_source.poll().get());
+        }
+
+        // hold the source's thread so the acks pile up behind it
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ListenableFuture<AckingBatch> pending = m_source.poll(1);
+        pending.addListener(new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {}
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        pushBlock(3 * BLOCK_SIZE, 3);
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // discarded out of order, the highest USO wins
+        containers.get(1).discard();
+        containers.get(2).discard();
+        containers.get(0).discard();
+        release.countDown();
+
+        assertEquals(BLOCK_SIZE, unackedBytes());
+        assertEquals(ImmutableList.of(3L * BLOCK_SIZE), forwardedAcks());
+
+        // later acks are scheduled again
+        pending.get().discard();
+        assertEquals(0, unackedBytes());
+        assertEquals(ImmutableList.of(4L * BLOCK_SIZE), forwardedAcks());
+    }
+
+    @Test
+    public void testAckAfterCloseIsForwarded() throws Exception {
+        List<BBContainer> containers = new ArrayList<BBContainer>();
+        for (int ii = 0; ii < 2; ii++) {
+            pushBlock(ii * BLOCK_SIZE, ii);
+            containers.add(m_source.poll().get());
+        }
+        m_source.close().get();
+
+        // the ack can't be applied locally but the replicas still hear about it,
+        // and the next ack isn't swallowed as if one was still scheduled
+        for (int ii = 0; ii < 2; ii++) {
+            try {
+                containers.get(ii).discard();
+                fail();
+            } catch (RejectedExecutionException expected) {}
+            assertEquals(ImmutableList.of((ii + 1L) * BLOCK_SIZE), forwardedAcks());
+        }
+    }
+}
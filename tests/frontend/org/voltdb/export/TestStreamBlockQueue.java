@@ -0,0 +1,194 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.export.ExportMemoryBudget.Tier;
+import org.voltdb.utils.VoltFile;
+
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+
+public class TestStreamBlockQueue {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"));
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private StreamBlockQueue m_large;
+    private StreamBlockQueue m_small;
+
+    private static StreamBlock getBlock(long uso, long fillValue) {
+        ByteBuffer buf = ByteBuffer.allocate(StreamBlock.HEADER_SIZE + BLOCK_SIZE);
+        buf.position(StreamBlock.HEADER_SIZE);
+        while (buf.hasRemaining()) {
+            buf.putLong(fillValue);
+        }
+        buf.clear();
+        return new StreamBlock(DBBPool.wrapBB(buf), uso, false);
+    }
+
+    private static void checkBlock(StreamBlock sb, long uso, long fillValue) {
+        assertEquals(uso, sb.uso());
+        BBContainer cont = sb.unreleasedContainer();
+        try {
+            ByteBuffer b = cont.b();
+            assertEquals(BLOCK_SIZE, b.remaining());
+            while (b.hasRemaining()) {
+                assertEquals(fillValue, b.getLong());
+            }
+        } finally {
+            cont.discard();
+        }
+    }
+
+    private void setupQueues(ExportMemoryBudget budget) throws Exception {
+        m_large = new StreamBlockQueue(TEST_DIR.getPath(), "large",
+                budget, MoreExecutors.sameThreadExecutor());
+        m_small = new StreamBlockQueue(TEST_DIR.getPath(), "small",
+                budget, MoreExecutors.sameThreadExecutor());
+    }
+
+    @Test
+    public void testCompressesLargestBacklog() throws Exception {
+        ExportMemoryBudget budget = new ExportMemoryBudget(BLOCK_SIZE * 5 / 2, Long.MAX_VALUE);
+        setupQueues(budget);
+
+        m_small.offer(getBlock(0, 100));
+        for (int ii = 0; ii < 6; ii++) {
+            m_large.offer(getBlock(ii * BLOCK_SIZE, ii));
+        }
+
+        //Everything stays in memory, the oldest blocks of the large backlog are compressed
+        assertTrue(budget.getBytes(Tier.MEMORY) <= BLOCK_SIZE * 5 / 2);
+        assertTrue(m_large.getBytes(Tier.COMPRESSED) > 0);
+        assertEquals(BLOCK_SIZE, m_small.getBytes(Tier.MEMORY));
+        assertEquals(0, m_small.getBytes(Tier.COMPRESSED));
+        assertEquals(0, budget.getBytes(Tier.DISK));
+
+        for (int ii = 0; ii < 6; ii++) {
+            StreamBlock sb = m_large.poll();
+            checkBlock(sb, ii * BLOCK_SIZE, ii);
+            sb.discard();
+        }
+        assertTrue(m_large.isEmpty());
+        assertEquals(0, m_large.getBytes(Tier.MEMORY));
+        assertEquals(0, m_large.getBytes(Tier.COMPRESSED));
+        assertEquals(BLOCK_SIZE, budget.getBytes(Tier.MEMORY));
+        assertEquals(0, budget.getBytes(Tier.COMPRESSED));
+    }
+
+    @Test
+    public void testSpillsWhenCompressedTierIsFull() throws Exception {
+        ExportMemoryBudget budget = new ExportMemoryBudget(BLOCK_SIZE * 5 / 2, 0);
+        setupQueues(budget);
+
+        m_small.offer(getBlock(0, 100));
+        for (int ii = 0; ii < 6; ii++) {
+            m_large.offer(getBlock(ii * BLOCK_SIZE, ii));
+        }
+
+        assertTrue(budget.getBytes(Tier.MEMORY) <= BLOCK_SIZE * 5 / 2);
+        assertEquals(0, budget.getBytes(Tier.COMPRESSED));
+        assertTrue(m_large.getBytes(Tier.DISK) > 0);
+        assertEquals(BLOCK_SIZE, m_small.getBytes(Tier.MEMORY));
+
+        //Order is preserved across the memory and disk tiers
+        for (int ii = 0; ii < 6; ii++) {
+            StreamBlock sb = m_large.poll();
+            checkBlock(sb, ii * BLOCK_SIZE, ii);
+            sb.discard();
+        }
+        assertTrue(m_large.isEmpty());
+    }
+
+    @Test
+    public void testSyncAndIteratorAccounting() throws Exception {
+        ExportMemoryBudget budget = new ExportMemoryBudget(BLOCK_SIZE * 5 / 2, Long.MAX_VALUE);
+        setupQueues(budget);
+
+        for (int ii = 0; ii < 4; ii++) {
+            m_large.offer(getBlock(ii * BLOCK_SIZE, ii));
+        }
+        assertTrue(m_large.getBytes(Tier.COMPRESSED) > 0);
+
+        m_large.sync(true);
+        assertEquals(0, budget.getBytes(Tier.COMPRESSED));
+        assertTrue(m_large.getBytes(Tier.DISK) > 0);
+
+        java.util.Iterator<StreamBlock> iter = m_large.iterator();
+        int count = 0;
+        while (iter.hasNext()) {
+            StreamBlock sb = iter.next();
+            checkBlock(sb, count * BLOCK_SIZE, count);
+            iter.remove();
+            sb.discard();
+            count++;
+        }
+        assertEquals(4, count);
+        assertEquals(0, budget.getBytes(Tier.MEMORY));
+        assertFalse(budget.getQueues().isEmpty());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                VoltFile.recursivelyDelete(f);
+            }
+            TEST_DIR.delete();
+        }
+        TEST_DIR.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (m_large != null) {
+                m_large.closeAndDelete();
+            }
+            if (m_small != null) {
+                m_small.closeAndDelete();
+            }
+            if (TEST_DIR.exists()) {
+                for (File f : TEST_DIR.listFiles()) {
+                    f.delete();
+                }
+                TEST_DIR.delete();
+            }
+        } finally {
+            m_large = null;
+            m_small = null;
+        }
+    }
+}
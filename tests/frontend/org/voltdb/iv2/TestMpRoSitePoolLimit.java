@@ -0,0 +1,69 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import junit.framework.TestCase;
+
+public class TestMpRoSitePoolLimit extends TestCase
+{
+    private static final long MS = 1000000l;
+
+    public void testGrowsWhileLatencyHolds()
+    {
+        MpRoSitePoolLimit limit = new MpRoSitePoolLimit(10, 2, 100);
+        for (int i = 0; i < 200; i++) {
+            limit.onCompletion(5 * MS, limit.getLimit());
+        }
+        assertEquals(100, limit.getLimit());
+    }
+
+    public void testShrinksWhenLatencyInflates()
+    {
+        MpRoSitePoolLimit limit = new MpRoSitePoolLimit(50, 2, 100);
+        limit.onCompletion(5 * MS, 50);
+        int before = limit.getLimit();
+        for (int i = 0; i < 200; i++) {
+            limit.onCompletion(50 * MS, limit.getLimit());
+        }
+        assertTrue(limit.getLimit() < before);
+        assertTrue(limit.getLimit() < 10);
+    }
+
+    public void testNoGrowthWhenUnderused()
+    {
+        MpRoSitePoolLimit limit = new MpRoSitePoolLimit(20, 2, 100);
+        for (int i = 0; i < 200; i++) {
+            limit.onCompletion(5 * MS, 1);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    public void testBounds()
+    {
+        MpRoSitePoolLimit limit = new MpRoSitePoolLimit(500, 0, 100);
+        assertEquals(100, limit.getLimit());
+        limit = new MpRoSitePoolLimit(0, 0, 100);
+        assertEquals(1, limit.getLimit());
+    }
+}
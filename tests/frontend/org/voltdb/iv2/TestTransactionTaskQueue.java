@@ -101,6 +101,23 @@ public class TestTransactionTaskQueue extends TestCase
         return task;
     }
 
+    // Create the only fragment of a read-only MP txn
+    private FragmentTask createReadFrag(long localTxnId, long mpTxnId,
+                                        TransactionTaskQueue queue)
+    {
+        FragmentTaskMessage msg = mock(FragmentTaskMessage.class);
+        when(msg.getTxnId()).thenReturn(mpTxnId);
+        when(msg.isReadOnly()).thenReturn(true);
+        when(msg.isFinalTask()).thenReturn(true);
+        InitiatorMailbox mbox = mock(InitiatorMailbox.class);
+        when(mbox.getHSId()).thenReturn(1337l);
+        ParticipantTransactionState pft =
+            new ParticipantTransactionState(localTxnId, msg);
+        FragmentTask task =
+            new FragmentTask(mbox, pft, queue, msg, null);
+        return task;
+    }
+
     private CompleteTransactionTask createComplete(TransactionState txn,
                                                    long mpTxnId,
                                                    TransactionTaskQueue queue)
@@ -196,4 +213,47 @@ public class TestTransactionTaskQueue extends TestCase
             assertEquals(expected.getTxnId(), next_poll.getTxnId());
         }
     }
+
+    @Test
+    public void testAdjacentReadOnlyFragmentsBatched() throws InterruptedException
+    {
+        long localTxnId = 0;
+        long mpTxnId = 0;
+        SiteTaskerQueue task_queue = getSiteTaskerQueue();
+        TransactionTaskQueue dut = new TransactionTaskQueue(task_queue,localTxnId);
+
+        // Three adjacent reads all go out to the site together
+        TransactionTask read1 = createReadFrag(localTxnId++, mpTxnId++, dut);
+        addTask(read1, dut, null);
+        TransactionTask read2 = createReadFrag(localTxnId++, mpTxnId++, dut);
+        addTask(read2, dut, null);
+        TransactionTask read3 = createReadFrag(localTxnId++, mpTxnId++, dut);
+        addTask(read3, dut, null);
+        assertEquals(3, dut.size());
+
+        // An SP proc waits behind them, and so does a read after it
+        TransactionTask sp = createSpProc(localTxnId++, dut);
+        addTask(sp, dut, null);
+        TransactionTask read4 = createReadFrag(localTxnId++, mpTxnId++, dut);
+        addTask(read4, dut, null);
+        assertEquals(5, dut.size());
+
+        SiteTasker batch = task_queue.poll();
+        assertTrue(batch instanceof TransactionTaskQueue.ReadFragmentBatch);
+        assertTrue(batch.toString().contains(read3.toString()));
+        assertNull(task_queue.poll());
+
+        // Reads finishing out of order don't release anything until the head is done
+        read2.getTransactionState().setDone();
+        assertEquals(0, dut.flush(read2.getTxnId()));
+        read3.getTransactionState().setDone();
+        assertEquals(0, dut.flush(read3.getTxnId()));
+        read1.getTransactionState().setDone();
+        // The SP proc goes, and the read behind it becomes the next barrier
+        assertEquals(2, dut.flush(read1.getTxnId()));
+        assertEquals(1, dut.size());
+        assertEquals(sp.getSpHandle(), ((TransactionTask)task_queue.poll()).getSpHandle());
+        assertTrue(task_queue.poll() instanceof TransactionTaskQueue.ReadFragmentBatch);
+        assertNull(task_queue.poll());
+    }
 }
@@ -0,0 +1,134 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.voltdb.jni.ExecutionEngine;
+
+public class TestActivePlanRepository extends TestCase {
+
+    @Override
+    public void setUp() {
+        ActivePlanRepository.clear();
+    }
+
+    @Override
+    public void tearDown() {
+        ActivePlanRepository.clear();
+    }
+
+    private static byte[] hash(int planNumber) {
+        return ByteBuffer.allocate(20).putInt(planNumber).array();
+    }
+
+    private static byte[] plan(int planNumber) {
+        return ("plan" + planNumber).getBytes();
+    }
+
+    public void testAddRefSharesFragment() {
+        long id = ActivePlanRepository.loadOrAddRefPlanFragment(hash(1), plan(1));
+        assertEquals(id, ActivePlanRepository.loadOrAddRefPlanFragment(hash(1), plan(1)));
+        assertEquals(id, ActivePlanRepository.getFragmentIdForPlanHash(hash(1)));
+        assertTrue(id != ActivePlanRepository.loadOrAddRefPlanFragment(hash(2), plan(2)));
+        assertEquals("plan1", new String(ActivePlanRepository.planForFragmentId(id)));
+    }
+
+    public void testEvictsLeastRecentlyUsedUnreferenced() {
+        final int size = ExecutionEngine.EE_PLAN_CACHE_SIZE;
+        final long ids[] = new long[size];
+        for (int ii = 0; ii < size; ii++) {
+            ids[ii] = ActivePlanRepository.loadOrAddRefPlanFragment(hash(ii), plan(ii));
+        }
+        //Plan 0 stays referenced, the others are released in order except plan 1 which is used again
+        for (int ii = 1; ii < size; ii++) {
+            ActivePlanRepository.decrefPlanFragmentById(ids[ii]);
+        }
+        assertEquals(ids[1], ActivePlanRepository.loadOrAddRefPlanFragment(hash(1), plan(1)));
+        ActivePlanRepository.decrefPlanFragmentById(ids[1]);
+
+        long newId = ActivePlanRepository.loadOrAddRefPlanFragment(hash(size), plan(size));
+        assertEquals("plan" + size, new String(ActivePlanRepository.planForFragmentId(newId)));
+        assertEquals(ids[0], ActivePlanRepository.getFragmentIdForPlanHash(hash(0)));
+        assertEquals(ids[1], ActivePlanRepository.getFragmentIdForPlanHash(hash(1)));
+        assertEquals(ids[3], ActivePlanRepository.getFragmentIdForPlanHash(hash(3)));
+        //Plan 2 was the least recently used unreferenced fragment, it comes back with a new id
+        assertTrue(ids[2] != ActivePlanRepository.loadOrAddRefPlanFragment(hash(2), plan(2)));
+    }
+
+    public void testReferencedFragmentsAreNotEvicted() {
+        final int size = ExecutionEngine.EE_PLAN_CACHE_SIZE;
+        final long ids[] = new long[size * 2];
+        for (int ii = 0; ii < size * 2; ii++) {
+            ids[ii] = ActivePlanRepository.loadOrAddRefPlanFragment(hash(ii), plan(ii));
+        }
+        for (int ii = 0; ii < size * 2; ii++) {
+            assertEquals("plan" + ii, new String(ActivePlanRepository.planForFragmentId(ids[ii])));
+            assertEquals(ids[ii], ActivePlanRepository.getFragmentIdForPlanHash(hash(ii)));
+        }
+    }
+
+    /*
+     * Sites loading and releasing overlapping plans concurrently always see
+     * the plan they asked for under the id they were given
+     */
+    public void testConcurrentSites() throws Exception {
+        final int planCount = ExecutionEngine.EE_PLAN_CACHE_SIZE * 3;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> sites = new ArrayList<Thread>();
+        for (int site = 0; site < 8; site++) {
+            final Random r = new Random(site);
+            sites.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int ii = 0; ii < 20000; ii++) {
+                            final int planNumber = r.nextInt(planCount);
+                            final long id = ActivePlanRepository.loadOrAddRefPlanFragment(hash(planNumber), plan(planNumber));
+                            assertEquals("plan" + planNumber, new String(ActivePlanRepository.planForFragmentId(id)));
+                            ActivePlanRepository.decrefPlanFragmentById(id);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+        for (Thread site : sites) {
+            site.start();
+        }
+        for (Thread site : sites) {
+            site.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
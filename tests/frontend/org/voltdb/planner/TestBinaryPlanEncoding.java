@@ -0,0 +1,191 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.VoltType;
+import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
+import org.voltdb.plannodes.AbstractPlanNode;
+
+import com.google_voltpatches.common.base.Charsets;
+
+public class TestBinaryPlanEncoding extends PlannerTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        setupSchema(TPCCProjectBuilder.class.getResource("tpcc-ddl.sql"), "testbinaryplanencoding", false);
+    }
+
+    private static void assertRoundTrip(String json) throws Exception {
+        byte plan[] = json.getBytes(Charsets.UTF_8);
+        byte binary[] = BinaryPlanEncoding.encode(plan);
+        assertTrue(BinaryPlanEncoding.isBinary(binary));
+        assertFalse(BinaryPlanEncoding.isBinary(plan));
+        String decoded = BinaryPlanEncoding.decode(binary);
+        assertEquals(new JSONObject(json).toString(), new JSONObject(decoded).toString());
+        // Encoding an already encoded plan is a no-op
+        assertSame(binary, BinaryPlanEncoding.encode(binary));
+    }
+
+    public void testScalarsAndNesting() throws Exception {
+        assertRoundTrip("{\"A\":null,\"B\":true,\"C\":false,\"D\":-42,\"E\":9007199254740993," +
+                        "\"F\":1.5,\"G\":\"a\\\"b\\u00e9\\n\",\"H\":[[],[1,[2,{}]],\"x\"]," +
+                        "\"I\":{\"A\":{\"B\":-0.25e3}}}");
+    }
+
+    public void testPlannerFragments() throws Exception {
+        String queries[] = {
+                "select * from new_order where no_w_id in (5,7);",
+                "select w_name, count(*) from warehouse, district where w_id = d_w_id " +
+                        "group by w_name order by w_name limit 10;",
+                "select c_id from customer where c_last = ? and c_w_id = ? order by c_first;"
+        };
+        for (String sql : queries) {
+            List<AbstractPlanNode> fragments = compileToFragments(sql);
+            for (AbstractPlanNode fragment : fragments) {
+                byte json[] = CompiledPlan.bytesForPlan(fragment);
+                byte binary[] = BinaryPlanEncoding.encode(json);
+                assertTrue(sql, binary.length < json.length);
+                assertRoundTrip(new String(json, Charsets.UTF_8));
+            }
+        }
+    }
+
+    public void testWriterMatchesEncoder() throws Exception {
+        String queries[] = {
+                "select * from new_order where no_w_id in (5,7);",
+                "select w_name, count(*) from warehouse, district where w_id = d_w_id " +
+                        "group by w_name order by w_name limit 10;",
+                "select c_id, c_balance * 1.5 from customer where c_last = ? and c_w_id = ? " +
+                        "and c_discount > 0.25 order by c_first;",
+                "update district set d_ytd = d_ytd + 100.0 where d_w_id = 3 and d_id = -2;",
+                "delete from new_order where no_o_id < 9007199254740993;"
+        };
+        for (String sql : queries) {
+            CompiledPlan plan = compileAdHocPlan(sql);
+            for (AbstractPlanNode fragment : new AbstractPlanNode[] { plan.rootPlanGraph, plan.subPlanGraph }) {
+                if (fragment == null) {
+                    continue;
+                }
+                byte json[] = CompiledPlan.bytesForPlan(fragment);
+                byte binary[] = CompiledPlan.binaryBytesForPlan(fragment);
+                assertNotNull(sql, binary);
+                assertTrue(sql, Arrays.equals(BinaryPlanEncoding.encode(json), binary));
+            }
+
+            CorePlan core = new CorePlan(plan, 0);
+            assertTrue(sql, Arrays.equals(BinaryPlanEncoding.encode(core.aggregatorFragment),
+                                          core.aggregatorBinaryFragment));
+            ByteBuffer buf = ByteBuffer.allocate(core.getSerializedSize());
+            core.flattenToBuffer(buf);
+            buf.flip();
+            CorePlan copy = CorePlan.fromBuffer(buf);
+            assertEquals(sql, core, copy);
+            assertTrue(sql, Arrays.equals(core.aggregatorBinaryFragment, copy.aggregatorBinaryFragment));
+            assertTrue(sql, Arrays.equals(core.collectorBinaryFragment, copy.collectorBinaryFragment));
+        }
+    }
+
+    public void testWriterValues() throws Exception {
+        Map<String, Object> map = new TreeMap<String, Object>();
+        map.put("K", Arrays.asList(1, "two", null));
+        BinaryPlanEncoding.Writer writer = new BinaryPlanEncoding.Writer();
+        JSONStringer stringer = new JSONStringer();
+        for (JSONStringer out : new JSONStringer[] { writer, stringer }) {
+            out.object();
+            out.key("A").value(JSONObject.NULL);
+            out.key("B").value(true);
+            out.key("C").value(-42);
+            out.key("D").value(1.0);
+            out.key("E").value(0.1);
+            out.key("F").value(new BigInteger("9007199254740993000000"));
+            out.key("G").value(Integer.valueOf(7));
+            out.key("H").value("a\"b\u00e9\n");
+            out.key("I").value(VoltType.BIGINT);
+            out.key("J").value(new JSONObject("{\"X\":[1.5e10,{}]}"));
+            out.key("K").value(map);
+            out.key("L").array().array().endArray().object().endObject().endArray();
+            out.endObject();
+        }
+        byte binary[] = writer.toByteArray();
+        assertTrue(Arrays.equals(BinaryPlanEncoding.encode(stringer.toString().getBytes(Charsets.UTF_8)), binary));
+        assertEquals(BinaryPlanEncoding.decode(binary), writer.toString());
+    }
+
+    public void testWriterMisuse() throws Exception {
+        BinaryPlanEncoding.Writer writer = new BinaryPlanEncoding.Writer();
+        writer.object();
+        try {
+            writer.value(1);
+            fail("Expected a value without a key to fail");
+        }
+        catch (JSONException expected) {}
+        writer.key("A");
+        try {
+            writer.endObject();
+            fail("Expected a key without a value to fail");
+        }
+        catch (JSONException expected) {}
+        try {
+            writer.toByteArray();
+            fail("Expected an unfinished plan to fail");
+        }
+        catch (JSONException expected) {}
+        assertNull(writer.toString());
+        writer.value(1);
+        try {
+            writer.endArray();
+            fail("Expected a mismatched end to fail");
+        }
+        catch (JSONException expected) {}
+        writer.endObject();
+        try {
+            writer.object();
+            fail("Expected a second value to fail");
+        }
+        catch (JSONException expected) {}
+        assertEquals("{\"A\":1}", writer.toString());
+    }
+
+    public void testMalformedPlans() {
+        String bad[] = { "", "{", "{\"A\":}", "{\"A\":1,}", "[1 2]", "{\"A\":tru}", "{\"A\":\"x}", "{} x" };
+        for (String json : bad) {
+            try {
+                BinaryPlanEncoding.encode(json.getBytes(Charsets.UTF_8));
+                fail("Expected failure encoding " + json);
+            }
+            catch (JSONException expected) {}
+        }
+    }
+
+}
@@ -310,4 +310,34 @@ public class TestIndexSelection extends PlannerTestCase {
         System.out.println(pn.toExplainPlanString());
         assertTrue(pn.toExplainPlanString().contains("using its primary key index (for deterministic order only)"));
     }
+
+    public void testPartialIndex()
+    {
+        AbstractPlanNode pn;
+
+        // The filter repeats the index's WHERE clause, so the partial index holds every wanted row.
+        pn = compile("select id from orders where status = 'PENDING' and customer = ?;");
+        pn = pn.getChild(0);
+        assertTrue(pn instanceof IndexScanPlanNode);
+        assertTrue(pn.toJSONString().contains("\"TARGET_INDEX_NAME\":\"PENDING_CUSTOMER_IDX\""));
+
+        // The comparison may be written with its operands swapped.
+        pn = compile("select id from orders where customer = ? and 'PENDING' = status;");
+        pn = pn.getChild(0);
+        assertTrue(pn instanceof IndexScanPlanNode);
+        assertTrue(pn.toJSONString().contains("\"TARGET_INDEX_NAME\":\"PENDING_CUSTOMER_IDX\""));
+
+        // Negative cases -- the filters do not imply the index's WHERE clause.
+        pn = compile("select id from orders where customer = ?;");
+        assertFalse(pn.getChild(0).toExplainPlanString().contains("PENDING_CUSTOMER_IDX"));
+
+        pn = compile("select id from orders where status = 'SHIPPED' and customer = ?;");
+        assertFalse(pn.getChild(0).toExplainPlanString().contains("PENDING_CUSTOMER_IDX"));
+
+        pn = compile("select id from orders where status = ? and customer = ?;");
+        assertFalse(pn.getChild(0).toExplainPlanString().contains("PENDING_CUSTOMER_IDX"));
+
+        pn = compile("select id from orders where status = 'PENDING' or customer = ?;");
+        assertFalse(pn.getChild(0).toExplainPlanString().contains("PENDING_CUSTOMER_IDX"));
+    }
 }
@@ -23,7 +23,16 @@
 
 package org.voltdb.planner;
 
+import java.util.List;
+
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ParameterValueExpression;
+import org.voltdb.expressions.VectorValueExpression;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.plannodes.MaterializedScanPlanNode;
+import org.voltdb.types.PlanNodeType;
 
 
 
@@ -42,6 +51,161 @@ public class TestPlansIn extends PlannerTestCase {
         compile("select * from new_order where no_w_id in (abs(17761776), ?, 17761776) and no_d_id in (abs(-1), ?, 17761776);");
     }
 
+    public void testOrOfEqualitiesUsesIndexedInList()
+    {
+        AbstractPlanNode pn;
+        String explain;
+
+        // Equalities on the leading key component drive a MaterializedScan of the (deduplicated) values.
+        pn = compile("select * from new_order where no_d_id = 5 or no_d_id = 7 or 9 = no_d_id or no_d_id = 5;");
+        explain = pn.toExplainPlanString();
+        assertTrue(explain.contains("MATERIALIZED SCAN"));
+        assertTrue(explain.contains("using its primary key index"));
+        List<AbstractPlanNode> matScans = pn.findAllNodesOfType(PlanNodeType.MATERIALIZEDSCAN);
+        assertEquals(1, matScans.size());
+        AbstractExpression listElements = ((MaterializedScanPlanNode) matScans.get(0)).getTableRowsExpression();
+        assertTrue(listElements instanceof VectorValueExpression);
+        assertEquals(3, listElements.getArgs().size());
+
+        pn = compile("select * from new_order where no_d_id = ? and (no_w_id = ? or no_w_id = ?);");
+        explain = pn.toExplainPlanString();
+        assertTrue(explain.contains("MATERIALIZED SCAN"));
+        assertTrue(explain.contains("using its primary key index"));
+
+        // Disjunctions over different columns are not IN LISTs.
+        pn = compile("select * from new_order where no_d_id = 5 or no_w_id = 7;");
+        explain = pn.toExplainPlanString();
+        assertFalse(explain.contains("MATERIALIZED SCAN"));
+    }
+
+    public void testOrOfTupleEqualitiesUsesIndexedTupleInList()
+    {
+        AbstractPlanNode pn;
+        String explain;
+
+        // Equalities on the two leading key components, in any order, drive a MaterializedScan
+        // of (deduplicated) tuples that supplies both components of the index search key.
+        pn = compile("select * from new_order where (no_d_id = 1 and no_w_id = 2) or " +
+                     "(no_w_id = 4 and no_d_id = 3) or (no_d_id = 1 and no_w_id = 2);");
+        explain = pn.toExplainPlanString();
+        assertTrue(explain.contains("MATERIALIZED SCAN of SQL-IN-LIST of 2-column tuples"));
+        assertTrue(explain.contains("using its primary key index"));
+        List<AbstractExpression> tupleData = getTupleData(pn);
+        assertEquals(2, tupleData.size());
+        assertEquals(2, tupleData.get(0).getArgs().size());
+        assertEquals(2, tupleData.get(1).getArgs().size());
+        assertEquals(2, getIndexScan(pn).getSearchKeyExpressions().size());
+
+        // A tuple IN LIST can follow an equality filter on a prior key component.
+        pn = compile("select * from customer where c_w_id = 1 and " +
+                     "((c_d_id = 2 and c_last = 'a') or (c_d_id = 3 and c_last = 'b'));");
+        explain = pn.toExplainPlanString();
+        assertTrue(explain.contains("MATERIALIZED SCAN of SQL-IN-LIST of 2-column tuples"));
+        assertTrue(explain.contains("IDX_CUSTOMER"));
+        assertEquals(3, getIndexScan(pn).getSearchKeyExpressions().size());
+
+        // The compared columns must be consecutive key components.
+        pn = compile("select * from new_order where (no_d_id = 1 and no_o_id = 2) or (no_d_id = 3 and no_o_id = 4);");
+        explain = pn.toExplainPlanString();
+        assertFalse(explain.contains("MATERIALIZED SCAN"));
+
+        // Every disjunct must compare the same columns.
+        pn = compile("select * from new_order where (no_d_id = 1 and no_w_id = 2) or no_d_id = 3;");
+        explain = pn.toExplainPlanString();
+        assertFalse(explain.contains("MATERIALIZED SCAN"));
+    }
+
+    public void testOrOfEqualitiesWithOtherTerms()
+    {
+        AbstractPlanNode pn;
+        String explain;
+
+        // A disjunct that is not an equality to a constant or parameter spoils the IN LIST.
+        pn = compile("select * from new_order where no_d_id = 5 or no_d_id > 7;");
+        explain = pn.toExplainPlanString();
+        assertFalse(explain.contains("MATERIALIZED SCAN"));
+
+        pn = compile("select * from new_order where no_d_id = 5 or no_d_id = no_w_id;");
+        explain = pn.toExplainPlanString();
+        assertFalse(explain.contains("MATERIALIZED SCAN"));
+
+        pn = compile("select * from new_order where (no_d_id = 1 and no_w_id > 2) or (no_d_id = 3 and no_w_id = 4);");
+        explain = pn.toExplainPlanString();
+        assertFalse(explain.contains("MATERIALIZED SCAN"));
+
+        // Other filters alongside the disjunction do not.
+        pn = compile("select * from new_order where (no_d_id = 5 or no_d_id = 7) and no_o_id > 3;");
+        explain = pn.toExplainPlanString();
+        assertTrue(explain.contains("MATERIALIZED SCAN"));
+        assertTrue(explain.contains("using its primary key index"));
+        assertNotNull(getIndexScan(pn).getPredicate());
+    }
+
+    public void testOrOfEqualitiesDropsDuplicateConstants()
+    {
+        AbstractPlanNode pn;
+
+        pn = compile("select * from new_order where no_d_id = 5 or 5 = no_d_id or no_d_id = 5;");
+        assertEquals(1, getTableRowsExpression(pn).getArgs().size());
+
+        // Tuples are only duplicates if all of their elements are.
+        pn = compile("select * from new_order where (no_d_id = 1 and no_w_id = 2) or " +
+                     "(no_d_id = 1 and no_w_id = 3) or (no_w_id = 2 and no_d_id = 1);");
+        List<AbstractExpression> tupleData = getTupleData(pn);
+        assertEquals(2, tupleData.get(0).getArgs().size());
+        assertEquals(2, tupleData.get(1).getArgs().size());
+    }
+
+    public void testParameterizedOrOfEqualities()
+    {
+        AbstractPlanNode pn;
+
+        // Parameters can not be deduplicated until their values are known at run time.
+        pn = compile("select * from new_order where no_d_id = ? or no_d_id = ? or no_d_id = 5;");
+        AbstractExpression listElements = getTableRowsExpression(pn);
+        assertEquals(3, listElements.getArgs().size());
+        assertTrue(listElements.getArgs().get(0) instanceof ParameterValueExpression);
+        assertTrue(listElements.getArgs().get(1) instanceof ParameterValueExpression);
+
+        pn = compile("select * from new_order where (no_d_id = ? and no_w_id = ?) or (no_d_id = ? and no_w_id = ?);");
+        List<AbstractExpression> tupleData = getTupleData(pn);
+        assertEquals(2, tupleData.size());
+        for (AbstractExpression columnData : tupleData) {
+            assertEquals(2, columnData.getArgs().size());
+            for (AbstractExpression element : columnData.getArgs()) {
+                assertTrue(element instanceof ParameterValueExpression);
+            }
+        }
+    }
+
+    private static MaterializedScanPlanNode getMaterializedScan(AbstractPlanNode pn)
+    {
+        List<AbstractPlanNode> matScans = pn.findAllNodesOfType(PlanNodeType.MATERIALIZEDSCAN);
+        assertEquals(1, matScans.size());
+        return (MaterializedScanPlanNode) matScans.get(0);
+    }
+
+    private static AbstractExpression getTableRowsExpression(AbstractPlanNode pn)
+    {
+        MaterializedScanPlanNode matScan = getMaterializedScan(pn);
+        assertTrue(matScan.getTupleData().isEmpty());
+        AbstractExpression listElements = matScan.getTableRowsExpression();
+        assertTrue(listElements instanceof VectorValueExpression);
+        return listElements;
+    }
+
+    private static List<AbstractExpression> getTupleData(AbstractPlanNode pn)
+    {
+        return getMaterializedScan(pn).getTupleData();
+    }
+
+    private static IndexScanPlanNode getIndexScan(AbstractPlanNode pn)
+    {
+        List<AbstractPlanNode> nlijs = pn.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX);
+        assertEquals(1, nlijs.size());
+        return (IndexScanPlanNode) nlijs.get(0).getInlinePlanNode(PlanNodeType.INDEXSCAN);
+    }
+
     public void testNonSupportedIn() {
         // Empty in list cases should give roughly the same error message regardless
         // of other valid where clauses or use of ";"
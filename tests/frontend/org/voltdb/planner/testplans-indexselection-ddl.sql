@@ -40,3 +40,13 @@ CREATE TABLE a
 
 CREATE INDEX deleted_since_idx ON a (deleted, updated_date, id);
 
+
+CREATE TABLE orders
+(
+    id BIGINT NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    customer BIGINT NOT NULL,
+    CONSTRAINT pk_orders PRIMARY KEY (id)
+);
+
+CREATE INDEX pending_customer_idx ON orders (customer) WHERE status = 'PENDING';
@@ -40,6 +40,7 @@ import org.voltdb_testprocs.regressionsuites.matviewprocs.AddPerson;
 import org.voltdb_testprocs.regressionsuites.matviewprocs.AddThing;
 import org.voltdb_testprocs.regressionsuites.matviewprocs.AggAges;
 import org.voltdb_testprocs.regressionsuites.matviewprocs.AggThings;
+import org.voltdb_testprocs.regressionsuites.matviewprocs.ChangeRegionOrders;
 import org.voltdb_testprocs.regressionsuites.matviewprocs.DeletePerson;
 import org.voltdb_testprocs.regressionsuites.matviewprocs.Eng798Insert;
 import org.voltdb_testprocs.regressionsuites.matviewprocs.OverflowTest;
@@ -59,7 +60,7 @@ public class TestMaterializedViewSuite extends RegressionSuite {
     static final Class<?>[] PROCEDURES = {
         AddPerson.class, DeletePerson.class, UpdatePerson.class, AggAges.class,
         SelectAllPeople.class, AggThings.class, AddThing.class, OverflowTest.class,
-        Eng798Insert.class, TruncateMatViewDataMP.class
+        Eng798Insert.class, TruncateMatViewDataMP.class, ChangeRegionOrders.class
     };
 
     public TestMaterializedViewSuite(String name) {
@@ -1172,6 +1173,84 @@ public class TestMaterializedViewSuite extends RegressionSuite {
 
     }
 
+    public void testJoinedTableView() throws IOException, ProcCallException
+    {
+        Client client = getClient();
+        truncateBeforeTest(client);
+
+        // Customer 0 has no orders and orders for customer 5 have no customer.
+        for (int id = 0; id < 5; id++) {
+            client.callProcedure("CUSTOMERS.insert", id, id % 3);
+        }
+        // Orders with a multiple of 4 as their amount are filtered out.
+        for (int id = 1; id <= 20; id++) {
+            client.callProcedure("ORDERS.insert", id, 1 + id % 5, id % 8);
+        }
+        assertJoinedViewMatches(client);
+
+        // each kind of change to the source table
+        client.callProcedure("@AdHoc", "INSERT INTO ORDERS VALUES (21, 2, 5);");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "UPDATE ORDERS SET CUST = 3 WHERE ID = 1;");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "UPDATE ORDERS SET AMOUNT = 0 WHERE ID = 2;");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "UPDATE ORDERS SET AMOUNT = 9 WHERE ID = 4;");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "DELETE FROM ORDERS WHERE CUST = 4;");
+        assertJoinedViewMatches(client);
+
+        // each kind of change to the joined table
+        client.callProcedure("@AdHoc", "INSERT INTO CUSTOMERS VALUES (5, 7);");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "UPDATE CUSTOMERS SET REGION = 7 WHERE ID = 1;");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "UPDATE CUSTOMERS SET ID = 6 WHERE ID = 2;");
+        assertJoinedViewMatches(client);
+        client.callProcedure("@AdHoc", "DELETE FROM CUSTOMERS WHERE ID = 3;");
+        assertJoinedViewMatches(client);
+
+        // HSQL backend does not support multi-statement transactionality.
+        if ( ! isHSQL()) {
+            // A rolled back transaction leaves no trace of its changes to either table in the view.
+            VoltTable before = client.callProcedure("@AdHoc",
+                    "SELECT * FROM REGION_ORDERS ORDER BY REGION, NUM, TOTAL;").getResults()[0];
+            try {
+                client.callProcedure("ChangeRegionOrders", 7, 1, 5, 4, 22, 3, 5, SABOTAGE);
+                fail("intentional ProcCallException failed");
+            } catch (ProcCallException pce) {
+                // Expected the throw.
+            }
+            VoltTable after = client.callProcedure("@AdHoc",
+                    "SELECT * FROM REGION_ORDERS ORDER BY REGION, NUM, TOTAL;").getResults()[0];
+            assertTrue(before.hasSameContents(after));
+            assertJoinedViewMatches(client);
+        }
+
+        client.callProcedure("ChangeRegionOrders", 7, 1, 5, 4, 22, 3, 5, NORMALLY);
+        assertJoinedViewMatches(client);
+    }
+
+    // Compare the view with the GROUP BY query it materializes. The view has a row for
+    // each region on each partition, so its rows are summed up by region.
+    private void assertJoinedViewMatches(Client client) throws IOException, ProcCallException
+    {
+        VoltTable expected = client.callProcedure("@AdHoc",
+                "SELECT CUSTOMERS.REGION, COUNT(*), SUM(ORDERS.AMOUNT) FROM ORDERS, CUSTOMERS " +
+                "WHERE ORDERS.CUST = CUSTOMERS.ID AND ORDERS.AMOUNT > 0 " +
+                "GROUP BY CUSTOMERS.REGION ORDER BY CUSTOMERS.REGION;").getResults()[0];
+        VoltTable actual = client.callProcedure("@AdHoc",
+                "SELECT REGION, SUM(NUM), SUM(TOTAL) FROM REGION_ORDERS " +
+                "GROUP BY REGION ORDER BY REGION;").getResults()[0];
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        while (expected.advanceRow()) {
+            assertTrue(actual.advanceRow());
+            for (int col = 0; col < 3; col++) {
+                assertEquals(expected.getLong(col), actual.getLong(col));
+            }
+        }
+    }
+
     /**
      * Build a list of the tests that will be run when TestTPCCSuite gets run by JUnit.
      * Use helper classes that are part of the RegressionSuite framework.
@@ -0,0 +1,102 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestStreamSnapshotWindow {
+    private static final int BLOCK = 1024 * 1024;
+
+    /**
+     * Ack one block every intervalNanos for the given duration, each with the given round trip.
+     */
+    private static long ackAtRate(StreamSnapshotWindow window, long startNanos, long durationNanos,
+                                  long intervalNanos, long rttNanos)
+    {
+        long now = startNanos;
+        while (now < startNanos + durationNanos) {
+            window.ackReceived(now, rttNanos, BLOCK);
+            now += intervalNanos;
+        }
+        return now;
+    }
+
+    @Test
+    public void testStartsAtMinimum() {
+        StreamSnapshotWindow window = new StreamSnapshotWindow(16, 128);
+        assertEquals(16, window.getWindow());
+        assertEquals(0.0, window.getMinRttMillis(), 0.0);
+        assertEquals(0.0, window.getBytesPerSecond(), 0.0);
+    }
+
+    @Test
+    public void testGrowsToBandwidthDelayProduct() {
+        StreamSnapshotWindow window = new StreamSnapshotWindow(4, 1024);
+        // 1000 blocks per second with a 50ms round trip is 50 blocks in flight
+        long interval = TimeUnit.MILLISECONDS.toNanos(1);
+        long rtt = TimeUnit.MILLISECONDS.toNanos(50);
+        ackAtRate(window, 0, TimeUnit.SECONDS.toNanos(1), interval, rtt);
+
+        assertEquals(50.0, window.getMinRttMillis(), 0.001);
+        assertEquals(1000.0 * BLOCK, window.getBytesPerSecond(), BLOCK);
+        // twice the BDP
+        int size = window.getWindow();
+        assertTrue("window was " + size, size >= 99 && size <= 101);
+    }
+
+    @Test
+    public void testClampedToBounds() {
+        StreamSnapshotWindow window = new StreamSnapshotWindow(16, 32);
+        long interval = TimeUnit.MILLISECONDS.toNanos(1);
+        ackAtRate(window, 0, TimeUnit.SECONDS.toNanos(1), interval, TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(32, window.getWindow());
+
+        window = new StreamSnapshotWindow(16, 32);
+        ackAtRate(window, 0, TimeUnit.SECONDS.toNanos(1), interval, TimeUnit.MICROSECONDS.toNanos(100));
+        assertEquals(16, window.getWindow());
+    }
+
+    @Test
+    public void testQueueingDelayDoesNotInflateWindow() {
+        StreamSnapshotWindow window = new StreamSnapshotWindow(4, 1024);
+        long interval = TimeUnit.MILLISECONDS.toNanos(1);
+        long now = ackAtRate(window, 0, TimeUnit.SECONDS.toNanos(1), interval, TimeUnit.MILLISECONDS.toNanos(10));
+        int before = window.getWindow();
+
+        // Same delivery rate, but the acks now sit behind a queue
+        ackAtRate(window, now, TimeUnit.SECONDS.toNanos(1), interval, TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(10.0, window.getMinRttMillis(), 0.001);
+        assertEquals(before, window.getWindow());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new StreamSnapshotWindow(32, 16);
+    }
+}
@@ -0,0 +1,153 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+public class TestColumnarChunkCodec extends TestCase {
+
+    private static VoltTable createTable() {
+        return new VoltTable(
+                new ColumnInfo("TI", VoltType.TINYINT),
+                new ColumnInfo("SI", VoltType.SMALLINT),
+                new ColumnInfo("I", VoltType.INTEGER),
+                new ColumnInfo("BI", VoltType.BIGINT),
+                new ColumnInfo("F", VoltType.FLOAT),
+                new ColumnInfo("D", VoltType.DECIMAL),
+                new ColumnInfo("TS", VoltType.TIMESTAMP),
+                new ColumnInfo("S", VoltType.STRING),
+                new ColumnInfo("VB", VoltType.VARBINARY));
+    }
+
+    /*
+     * The tuple data in a snapshot chunk is the row count and rows of a serialized VoltTable
+     */
+    private static ByteBuffer getTupleData(VoltTable table) {
+        ByteBuffer buf = PrivateVoltTableFactory.getTableDataReference(table);
+        buf.position(buf.getInt(0) + 4);
+        return buf.slice();
+    }
+
+    private static ByteBuffer roundTrip(VoltTable table, ByteBuffer encoded) {
+        ColumnarChunkCodec codec = new ColumnarChunkCodec(table);
+        ByteBuffer rows = getTupleData(table);
+        encoded.clear();
+        codec.encode(rows, encoded);
+        encoded.flip();
+        assertEquals(0, rows.position());
+
+        ByteBuffer decoded = ByteBuffer.allocate(rows.remaining() + 1024);
+        codec.decode(encoded.duplicate(), decoded);
+        decoded.flip();
+        assertEquals(rows, decoded);
+        return encoded;
+    }
+
+    public void testRepetitiveChunkIsEncodedSmaller() {
+        VoltTable table = createTable();
+        String regions[] = new String[] { "east", "west", "north", "south" };
+        for (int ii = 0; ii < 1000; ii++) {
+            table.addRow(
+                    ii % 3,
+                    ii % 100,
+                    ii,
+                    1000000000000L + ii * 7,
+                    ii / 3.0,
+                    new BigDecimal(ii).setScale(12),
+                    new TimestampType(1400000000000000L + ii * 1000),
+                    regions[ii % regions.length],
+                    new byte[] { (byte)(ii % 2) });
+        }
+        ByteBuffer encoded = roundTrip(table, ByteBuffer.allocate(1024 * 1024));
+        assertEquals(ColumnarChunkCodec.COLUMNAR_FORMAT, encoded.get(0));
+        assertTrue(encoded.remaining() < getTupleData(table).remaining() / 2);
+    }
+
+    public void testNullsSurviveRoundTrip() {
+        VoltTable table = createTable();
+        for (int ii = 0; ii < 200; ii++) {
+            if (ii % 2 == 0) {
+                table.addRow(null, null, null, null, null, null, null, null, null);
+            } else {
+                table.addRow(
+                        Byte.MAX_VALUE,
+                        Short.MIN_VALUE + 1,
+                        Integer.MAX_VALUE,
+                        Long.MAX_VALUE,
+                        Double.MAX_VALUE,
+                        new BigDecimal("-1.5").setScale(12),
+                        new TimestampType(Long.MIN_VALUE + 1),
+                        "",
+                        new byte[0]);
+            }
+        }
+        roundTrip(table, ByteBuffer.allocate(1024 * 1024));
+    }
+
+    public void testRandomDataRoundTrip() {
+        Random r = new Random(42);
+        VoltTable table = createTable();
+        for (int ii = 0; ii < 50; ii++) {
+            byte bytes[] = new byte[1 + r.nextInt(64)];
+            r.nextBytes(bytes);
+            table.addRow(
+                    r.nextInt(Byte.MAX_VALUE),
+                    r.nextInt(Short.MAX_VALUE),
+                    r.nextInt(),
+                    r.nextLong(),
+                    r.nextDouble(),
+                    new BigDecimal(r.nextInt()).setScale(12),
+                    new TimestampType(r.nextLong() / 1000),
+                    Long.toHexString(r.nextLong()),
+                    bytes);
+        }
+        ByteBuffer encoded = roundTrip(table, ByteBuffer.allocate(1024 * 1024));
+        assertTrue(encoded.remaining() <= getTupleData(table).remaining() + 1);
+
+    }
+
+    public void testSmallChunkKeepsRowFormat() {
+        //Per column section overhead outweighs the savings for a single row
+        VoltTable table = createTable();
+        table.addRow(1, 2, 3, 4, 5.0, new BigDecimal(6).setScale(12), new TimestampType(7), "eight", new byte[] { 9 });
+        ByteBuffer encoded = roundTrip(table, ByteBuffer.allocate(1024));
+        assertEquals(ColumnarChunkCodec.ROW_FORMAT, encoded.get(0));
+        assertEquals(getTupleData(table).remaining() + 1, encoded.remaining());
+    }
+
+    public void testEmptyChunk() {
+        VoltTable table = createTable();
+        roundTrip(table, ByteBuffer.allocate(1024));
+    }
+}
@@ -0,0 +1,208 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google_voltpatches.common.hash.HashCode;
+
+public class TestDeltaSegmenter extends TestCase {
+
+    private static List<byte[]> createRows(int count, long seed) {
+        final Random r = new Random(seed);
+        final List<byte[]> rows = new ArrayList<byte[]>(count);
+        for (int ii = 0; ii < count; ii++) {
+            final byte row[] = new byte[40 + r.nextInt(120)];
+            r.nextBytes(row);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /*
+     * Feed the rows as tuple data chunks of chunkRows rows each
+     */
+    private static List<ByteBuffer> segment(List<byte[]> rows, int chunkRows) {
+        final DeltaSegmenter segmenter = new DeltaSegmenter();
+        final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+        for (int start = 0; start < rows.size(); start += chunkRows) {
+            final List<byte[]> chunkRowList = rows.subList(start, Math.min(rows.size(), start + chunkRows));
+            int size = 4;
+            for (byte row[] : chunkRowList) {
+                size += 4 + row.length;
+            }
+            final ByteBuffer chunk = ByteBuffer.allocateDirect(size + 4);
+            //Skip a partition id like the snapshot data target does
+            chunk.putInt(7);
+            chunk.putInt(chunkRowList.size());
+            for (byte row[] : chunkRowList) {
+                chunk.putInt(row.length);
+                chunk.put(row);
+            }
+            chunk.flip();
+            chunk.position(4);
+            segments.addAll(segmenter.add(chunk));
+            assertEquals(4, chunk.position());
+        }
+        final ByteBuffer last = segmenter.flush();
+        if (last != null) {
+            segments.add(last);
+        }
+        assertNull(segmenter.flush());
+        return segments;
+    }
+
+    private static Set<HashCode> hashes(List<ByteBuffer> segments) {
+        final Set<HashCode> hashes = new HashSet<HashCode>();
+        for (ByteBuffer segment : segments) {
+            hashes.add(DeltaSegmenter.hash(segment));
+        }
+        return hashes;
+    }
+
+    public void testSegmentsPreserveRows() {
+        final List<byte[]> rows = createRows(10000, 0);
+        final List<ByteBuffer> segments = segment(rows, 333);
+        assertTrue(segments.size() > 1);
+
+        int ii = 0;
+        for (ByteBuffer segment : segments) {
+            assertTrue(segment.remaining() <= DeltaSegmenter.MAX_SEGMENT_BYTES);
+            final int rowCount = segment.getInt();
+            for (int jj = 0; jj < rowCount; jj++) {
+                final byte row[] = new byte[segment.getInt()];
+                segment.get(row);
+                assertTrue(Arrays.equals(rows.get(ii++), row));
+            }
+            assertFalse(segment.hasRemaining());
+        }
+        assertEquals(rows.size(), ii);
+    }
+
+    public void testBoundariesIgnoreChunking() {
+        final List<byte[]> rows = createRows(10000, 1);
+        assertEquals(hashes(segment(rows, 100)), hashes(segment(rows, 4096)));
+    }
+
+    public void testInsertOnlyChangesNearbySegments() {
+        final List<byte[]> rows = createRows(20000, 2);
+        final Set<HashCode> base = hashes(segment(rows, 500));
+
+        final List<byte[]> changed = new ArrayList<byte[]>(rows);
+        changed.add(10000, createRows(1, 3).get(0));
+        changed.remove(15000);
+        final Set<HashCode> delta = hashes(segment(changed, 500));
+
+        final Set<HashCode> shared = new HashSet<HashCode>(delta);
+        shared.retainAll(base);
+        //Each change affects the segment it lands in and at most the one after it
+        assertTrue(delta.size() - shared.size() <= 4);
+        assertTrue(shared.size() > base.size() / 2);
+    }
+
+    public void testManifestRoundTrip() throws Exception {
+        final File tableFile = File.createTempFile("delta", ".vpt");
+        final File manifestFile = DeltaSnapshotManifest.getManifestFile(tableFile);
+        try {
+            assertEquals(0, DeltaSnapshotManifest.read(tableFile).size());
+
+            final List<ByteBuffer> segments = segment(createRows(5000, 4), 1000);
+            final DeltaSnapshotManifest manifest = new DeltaSnapshotManifest();
+            long offset = 0;
+            for (ByteBuffer segment : segments) {
+                manifest.put(DeltaSegmenter.hash(segment),
+                        new DeltaSnapshotManifest.Location(3, tableFile.getName(), offset));
+                offset += segment.remaining();
+            }
+            manifest.write(tableFile);
+
+            final DeltaSnapshotManifest read = DeltaSnapshotManifest.read(tableFile);
+            assertEquals(segments.size(), read.size());
+            offset = 0;
+            for (ByteBuffer segment : segments) {
+                final DeltaSnapshotManifest.Location location = read.get(DeltaSegmenter.hash(segment));
+                assertEquals(3, location.partitionId);
+                assertEquals(tableFile.getName(), location.fileName);
+                assertEquals(offset, location.offset);
+                offset += segment.remaining();
+            }
+        } finally {
+            tableFile.delete();
+            manifestFile.delete();
+        }
+    }
+
+    public void testReferencedFiles() throws Exception {
+        final File dir = File.createTempFile("delta", "");
+        dir.delete();
+        dir.mkdir();
+        final File base = new File(dir, "base-FOO.vpt");
+        final File delta = new File(dir, "delta-FOO.vpt");
+        final File other = new File(dir, "other-FOO.vpt");
+        try {
+            final List<ByteBuffer> segments = segment(createRows(2000, 4), 1000);
+            final DeltaSnapshotManifest baseManifest = new DeltaSnapshotManifest();
+            final DeltaSnapshotManifest deltaManifest = new DeltaSnapshotManifest();
+            for (int ii = 0; ii < segments.size(); ii++) {
+                final HashCode hash = DeltaSegmenter.hash(segments.get(ii));
+                baseManifest.put(hash, new DeltaSnapshotManifest.Location(0, base.getName(), ii));
+                //The delta rewrote the first segment and references the others
+                deltaManifest.put(hash, new DeltaSnapshotManifest.Location(0,
+                        ii == 0 ? delta.getName() : base.getName(), ii));
+            }
+            baseManifest.write(base);
+            deltaManifest.write(delta);
+            new DeltaSnapshotManifest().write(other);
+
+            final List<File> none = new ArrayList<File>();
+            assertEquals(new HashSet<String>(Arrays.asList(base.getName())),
+                    DeltaSnapshotManifest.getReferencedFiles(dir, none));
+            //Nothing references the base once the delta goes away with it
+            assertTrue(DeltaSnapshotManifest.getReferencedFiles(dir, Arrays.asList(delta, base)).isEmpty());
+            //A file of the same name elsewhere doesn't count
+            assertEquals(1, DeltaSnapshotManifest.getReferencedFiles(dir,
+                    Arrays.asList(new File(new File(dir, "elsewhere"), delta.getName()))).size());
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    public void testHashLength() throws Exception {
+        //Manifests store hashes in a fixed width
+        assertEquals(DeltaSegmenter.HASH_LENGTH,
+                DeltaSegmenter.hash(ByteBuffer.wrap(new byte[10])).asBytes().length);
+    }
+}
@@ -0,0 +1,154 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDirectIOFileChannel {
+
+    private final static File TEST_FILE = new File("/tmp/" + System.getProperty("user.name") + "-directio");
+
+    private DirectIOFileChannel m_channel;
+
+    @Before
+    public void setUp() throws Exception {
+        TEST_FILE.delete();
+        m_channel = DirectIOFileChannel.open(TEST_FILE, 3 * DirectIOFileChannel.ALIGNMENT, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_channel != null) {
+            m_channel.close();
+        }
+        TEST_FILE.delete();
+    }
+
+    private static byte[] readFile() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final FileInputStream fis = new FileInputStream(TEST_FILE);
+        try {
+            final byte buf[] = new byte[8192];
+            int read;
+            while ((read = fis.read(buf)) != -1) {
+                baos.write(buf, 0, read);
+            }
+        } finally {
+            fis.close();
+        }
+        return baos.toByteArray();
+    }
+
+    /*
+     * Append unaligned chunks the way the snapshot data target does,
+     * bigger and smaller than the staging buffer
+     */
+    private byte[] appendChunks(int count) throws IOException {
+        final Random r = new Random(0);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int ii = 0; ii < count; ii++) {
+            final byte chunk[] = new byte[1 + r.nextInt(DirectIOFileChannel.ALIGNMENT * 5)];
+            r.nextBytes(chunk);
+            final ByteBuffer buf = ByteBuffer.allocateDirect(chunk.length);
+            buf.put(chunk).flip();
+            assertEquals(expected.size(), m_channel.position());
+            assertEquals(chunk.length, m_channel.write(buf));
+            expected.write(chunk);
+        }
+        assertEquals(expected.size(), m_channel.size());
+        return expected.toByteArray();
+    }
+
+    @Test
+    public void testAppendsMatchFileContents() throws Exception {
+        //Not every platform or file system supports O_DIRECT, tmpfs for one doesn't
+        assumeNotNull(m_channel);
+        final byte expected[] = appendChunks(50);
+        m_channel.close();
+        assertArrayEquals(expected, readFile());
+    }
+
+    @Test
+    public void testForceWritesUnalignedTail() throws Exception {
+        //Not every platform or file system supports O_DIRECT, tmpfs for one doesn't
+        assumeNotNull(m_channel);
+        byte expected[] = appendChunks(7);
+        m_channel.force(false);
+        assertArrayEquals(expected, readFile());
+
+        //Appends after a force rewrite the padded block
+        final ByteBuffer more = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+        m_channel.write(more);
+        m_channel.force(false);
+        final byte actual[] = readFile();
+        assertEquals(expected.length + 3, actual.length);
+        assertEquals(3, actual[actual.length - 1]);
+    }
+
+    @Test
+    public void testOverwriteHeaderAndStagedBytes() throws Exception {
+        //Not every platform or file system supports O_DIRECT, tmpfs for one doesn't
+        assumeNotNull(m_channel);
+        final byte expected[] = appendChunks(20);
+        //Same as the completion flag written when a snapshot target is closed
+        m_channel.position(8);
+        m_channel.write(ByteBuffer.wrap(new byte[] { 42 }));
+        expected[8] = 42;
+        //A write crossing a block boundary that was already written out
+        final int boundary = DirectIOFileChannel.ALIGNMENT;
+        m_channel.write(ByteBuffer.wrap(new byte[] { 7, 7, 7, 7 }), boundary - 2);
+        for (int ii = boundary - 2; ii < boundary + 2; ii++) {
+            expected[ii] = 7;
+        }
+        //And one in the staged tail
+        m_channel.write(ByteBuffer.wrap(new byte[] { 9 }), expected.length - 1);
+        expected[expected.length - 1] = 9;
+        m_channel.close();
+        assertArrayEquals(expected, readFile());
+    }
+
+    @Test
+    public void testODirectIsOnlyUsedWhereKnown() throws Exception {
+        assertEquals(040000, CLibrary.DirectIO.getODirect("Linux", "amd64"));
+        assertEquals(040000, CLibrary.DirectIO.getODirect("Linux", "i386"));
+        assertEquals(0200000, CLibrary.DirectIO.getODirect("Linux", "aarch64"));
+        //Different values or no O_DIRECT at all, the snapshot falls back to buffered writes
+        assertEquals(0, CLibrary.DirectIO.getODirect("Linux", "ppc64le"));
+        assertEquals(0, CLibrary.DirectIO.getODirect("Mac OS X", "x86_64"));
+        assertEquals(0, CLibrary.DirectIO.getODirect("Linux", null));
+    }
+}
@@ -0,0 +1,58 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2014 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb_testprocs.regressionsuites.matviewprocs;
+
+import org.voltdb.ProcInfo;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+
+@ProcInfo (
+    singlePartition = false
+)
+public class ChangeRegionOrders extends VoltProcedure {
+    public final SQLStmt insertCustomer = new SQLStmt("INSERT INTO CUSTOMERS VALUES (?, ?);");
+    public final SQLStmt moveCustomer = new SQLStmt("UPDATE CUSTOMERS SET REGION = ? WHERE ID = ?;");
+    public final SQLStmt deleteCustomer = new SQLStmt("DELETE FROM CUSTOMERS WHERE ID = ?;");
+    public final SQLStmt insertOrder = new SQLStmt("INSERT INTO ORDERS VALUES (?, ?, ?);");
+    public final SQLStmt moveOrder = new SQLStmt("UPDATE ORDERS SET CUST = ? WHERE ID = ?;");
+    public final SQLStmt deleteOrder = new SQLStmt("DELETE FROM ORDERS WHERE ID = ?;");
+
+    // Make one change of each kind to both tables joined by the REGION_ORDERS view.
+    public VoltTable[] run(int newCustomer, int newRegion, int movedCustomer, int deletedCustomer,
+                           int newOrder, int movedOrder, int deletedOrder, int set2sabotage) {
+        voltQueueSQL(insertCustomer, newCustomer, newRegion);
+        voltQueueSQL(moveCustomer, newRegion, movedCustomer);
+        voltQueueSQL(deleteCustomer, deletedCustomer);
+        voltQueueSQL(insertOrder, newOrder, newCustomer, newOrder);
+        voltQueueSQL(moveOrder, newCustomer, movedOrder);
+        voltQueueSQL(deleteOrder, deletedOrder);
+        if (set2sabotage == 2) {
+            // The point here is to get the duplicate primary key on the joined table
+            // to abort all of the changes and any side effects on the matview table.
+            voltQueueSQL(insertCustomer, newCustomer, newRegion);
+        }
+        return voltExecuteSQL();
+    }
+}
@@ -100,3 +100,14 @@ CREATE VIEW DEPT_AGE_FILTER_MATVIEW(DEPT, AGE, CNT, MAX_CHILDREN)
     FROM DEPT_PEOPLE
     WHERE SALARY >= 1000
     GROUP BY DEPT, AGE;
+
+CREATE TABLE ORDERS (ID INTEGER NOT NULL, CUST INTEGER NOT NULL, AMOUNT INTEGER, PRIMARY KEY (ID));
+PARTITION TABLE ORDERS ON COLUMN ID;
+-- finds the orders that a change to CUSTOMERS affects
+CREATE INDEX ORDERS_CUST ON ORDERS (CUST);
+CREATE TABLE CUSTOMERS (ID INTEGER NOT NULL, REGION INTEGER NOT NULL, PRIMARY KEY (ID));
+CREATE VIEW REGION_ORDERS (REGION, NUM, TOTAL)
+    AS SELECT CUSTOMERS.REGION, COUNT(*), SUM(ORDERS.AMOUNT)
+    FROM ORDERS, CUSTOMERS
+    WHERE ORDERS.CUST = CUSTOMERS.ID AND ORDERS.AMOUNT > 0
+    GROUP BY CUSTOMERS.REGION;
@@ -42,14 +42,38 @@ import com.google_voltpatches.common.primitives.UnsignedBytes;
  */
 public class MurmurHash3
 {
+    private final static long c1 = 0x87c37b91114253d5L;
+    private final static long c2 = 0x4cf5ad432745937fL;
+
     protected static long getblock(ByteBuffer key, int offset, int index)
     {
         int i_8 = index << 3;
         int blockOffset = offset + i_8;
-        return ((long) key.get(blockOffset + 0) & 0xFFL) + (((long) key.get(blockOffset + 1) & 0xFFL) << 8) +
-               (((long) key.get(blockOffset + 2) & 0xFFL) << 16) + (((long) key.get(blockOffset + 3) & 0xFFL) << 24) +
-               (((long) key.get(blockOffset + 4) & 0xFFL) << 32) + (((long) key.get(blockOffset + 5) & 0xFFL) << 40) +
-               (((long) key.get(blockOffset + 6) & 0xFFL) << 48) + (((long) key.get(blockOffset + 7) & 0xFFL) << 56);
+        // Blocks are little endian no matter what order the buffer is in
+        long block = key.getLong(blockOffset);
+        return key.order() == ByteOrder.LITTLE_ENDIAN ? block : Long.reverseBytes(block);
+    }
+
+    protected static long getblock(byte[] key, int offset, int index)
+    {
+        int i_8 = index << 3;
+        int blockOffset = offset + i_8;
+        return ((long) key[blockOffset + 0] & 0xFFL) + (((long) key[blockOffset + 1] & 0xFFL) << 8) +
+               (((long) key[blockOffset + 2] & 0xFFL) << 16) + (((long) key[blockOffset + 3] & 0xFFL) << 24) +
+               (((long) key[blockOffset + 4] & 0xFFL) << 32) + (((long) key[blockOffset + 5] & 0xFFL) << 40) +
+               (((long) key[blockOffset + 6] & 0xFFL) << 48) + (((long) key[blockOffset + 7] & 0xFFL) << 56);
+    }
+
+    private static long mixK1(long k1)
+    {
+        k1 *= c1; k1 = rotl64(k1,31); k1 *= c2;
+        return k1;
+    }
+
+    private static long mixK2(long k2)
+    {
+        k2 *= c2; k2 = rotl64(k2,33); k2 *= c1;
+        return k2;
     }
 
     protected static long rotl64(long v, int n)
@@ -72,11 +96,148 @@ public class MurmurHash3
         return hash3_x64_128(value, 0);
     }
 
+    /**
+     * Same as hashing the 8 little endian bytes of the value, without materializing them.
+     */
     public static int hash3_x64_128(long value, long seed) {
-        ByteBuffer buf = ByteBuffer.allocate(8);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        buf.putLong(value);
-        return hash3_x64_128(buf, 0, 8, seed);
+        long h1 = seed;
+        long h2 = seed;
+        h1 ^= mixK1(value);
+        return finish(h1, h2, 8);
+    }
+
+    public static int hash3_x64_128(byte[] key, int offset, int length, long seed)
+    {
+        final int nblocks = length >> 4; // Process as 128-bit blocks.
+
+        long h1 = seed;
+        long h2 = seed;
+
+        for(int i = 0; i < nblocks; i++)
+        {
+            long k1 = getblock(key, offset, i*2+0);
+            long k2 = getblock(key, offset, i*2+1);
+
+            h1 ^= mixK1(k1);
+            h1 = rotl64(h1,27); h1 += h2; h1 = h1*5+0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = rotl64(h2,31); h2 += h1; h2 = h2*5+0x38495ab5;
+        }
+
+        offset += nblocks * 16;
+
+        long k1 = 0;
+        long k2 = 0;
+
+        switch(length & 15)
+        {
+            case 15: k2 ^= ((long) UnsignedBytes.toInt(key[offset+14])) << 48;
+            case 14: k2 ^= ((long) UnsignedBytes.toInt(key[offset+13])) << 40;
+            case 13: k2 ^= ((long) UnsignedBytes.toInt(key[offset+12])) << 32;
+            case 12: k2 ^= ((long) UnsignedBytes.toInt(key[offset+11])) << 24;
+            case 11: k2 ^= ((long) UnsignedBytes.toInt(key[offset+10])) << 16;
+            case 10: k2 ^= ((long) UnsignedBytes.toInt(key[offset+9])) << 8;
+            case  9: k2 ^= ((long) UnsignedBytes.toInt(key[offset+8])) << 0;
+                h2 ^= mixK2(k2);
+
+            case  8: k1 ^= ((long) UnsignedBytes.toInt(key[offset+7])) << 56;
+            case  7: k1 ^= ((long) UnsignedBytes.toInt(key[offset+6])) << 48;
+            case  6: k1 ^= ((long) UnsignedBytes.toInt(key[offset+5])) << 40;
+            case  5: k1 ^= ((long) UnsignedBytes.toInt(key[offset+4])) << 32;
+            case  4: k1 ^= ((long) UnsignedBytes.toInt(key[offset+3])) << 24;
+            case  3: k1 ^= ((long) UnsignedBytes.toInt(key[offset+2])) << 16;
+            case  2: k1 ^= ((long) UnsignedBytes.toInt(key[offset+1])) << 8;
+            case  1: k1 ^= ((long) UnsignedBytes.toInt(key[offset]));
+                h1 ^= mixK1(k1);
+        };
+
+        return finish(h1, h2, length);
+    }
+
+    /**
+     * Hash the UTF-8 encoding of a string, encoding it on the fly instead of
+     * allocating the bytes. Produces the same hash as hashing the result of
+     * String.getBytes(UTF_8), including its replacement of unpaired surrogates with '?'.
+     */
+    public static int hash3_x64_128(CharSequence value, long seed)
+    {
+        long h1 = seed;
+        long h2 = seed;
+
+        long k1 = 0;
+        long k2 = 0;
+        // bytes in the current 16 byte block and in the whole encoding
+        int blockLength = 0;
+        long length = 0;
+
+        final int chars = value.length();
+        for (int i = 0; i < chars; i++) {
+            // up to 4 encoded bytes, first byte lowest
+            int encoded;
+            int count;
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                encoded = c;
+                count = 1;
+            }
+            else if (c < 0x800) {
+                encoded = (0xC0 | (c >> 6)) | ((0x80 | (c & 0x3F)) << 8);
+                count = 2;
+            }
+            else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    encoded = (0xF0 | (cp >> 18)) |
+                              ((0x80 | ((cp >> 12) & 0x3F)) << 8) |
+                              ((0x80 | ((cp >> 6) & 0x3F)) << 16) |
+                              ((0x80 | (cp & 0x3F)) << 24);
+                    count = 4;
+                }
+                else {
+                    encoded = '?';
+                    count = 1;
+                }
+            }
+            else {
+                encoded = (0xE0 | (c >> 12)) |
+                          ((0x80 | ((c >> 6) & 0x3F)) << 8) |
+                          ((0x80 | (c & 0x3F)) << 16);
+                count = 3;
+            }
+
+            for (int j = 0; j < count; j++, encoded >>>= 8) {
+                final long b = encoded & 0xFFL;
+                if (blockLength < 8) {
+                    k1 |= b << (blockLength << 3);
+                }
+                else {
+                    k2 |= b << ((blockLength - 8) << 3);
+                }
+                if (++blockLength == 16) {
+                    h1 ^= mixK1(k1);
+                    h1 = rotl64(h1,27); h1 += h2; h1 = h1*5+0x52dce729;
+
+                    h2 ^= mixK2(k2);
+                    h2 = rotl64(h2,31); h2 += h1; h2 = h2*5+0x38495ab5;
+
+                    k1 = 0;
+                    k2 = 0;
+                    blockLength = 0;
+                }
+            }
+            length += count;
+        }
+
+        // tail
+        if (blockLength > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (blockLength > 0) {
+            h1 ^= mixK1(k1);
+        }
+
+        return finish(h1, h2, length);
     }
 
     private final static long MASK = 0xFFFFFFFF00000000L;
@@ -88,9 +249,6 @@ public class MurmurHash3
         long h1 = seed;
         long h2 = seed;
 
-        long c1 = 0x87c37b91114253d5L;
-        long c2 = 0x4cf5ad432745937fL;
-
         //----------
         // body
 
@@ -99,12 +257,10 @@ public class MurmurHash3
             long k1 = getblock(key, offset, i*2+0);
             long k2 = getblock(key, offset, i*2+1);
 
-            k1 *= c1; k1 = rotl64(k1,31); k1 *= c2; h1 ^= k1;
-
+            h1 ^= mixK1(k1);
             h1 = rotl64(h1,27); h1 += h2; h1 = h1*5+0x52dce729;
 
-            k2 *= c2; k2  = rotl64(k2,33); k2 *= c1; h2 ^= k2;
-
+            h2 ^= mixK2(k2);
             h2 = rotl64(h2,31); h2 += h1; h2 = h2*5+0x38495ab5;
         }
 
@@ -130,7 +286,7 @@ public class MurmurHash3
             case 11: k2 ^= ((long) UnsignedBytes.toInt(key.get(offset+10))) << 16;
             case 10: k2 ^= ((long) UnsignedBytes.toInt(key.get(offset+9))) << 8;
             case  9: k2 ^= ((long) UnsignedBytes.toInt(key.get(offset+8))) << 0;
-                k2 *= c2; k2  = rotl64(k2,33); k2 *= c1; h2 ^= k2;
+                h2 ^= mixK2(k2);
 
             case  8: k1 ^= ((long) UnsignedBytes.toInt(key.get(offset+7))) << 56;
             case  7: k1 ^= ((long) UnsignedBytes.toInt(key.get(offset+6))) << 48;
@@ -140,9 +296,14 @@ public class MurmurHash3
             case  3: k1 ^= ((long) UnsignedBytes.toInt(key.get(offset+2))) << 16;
             case  2: k1 ^= ((long) UnsignedBytes.toInt(key.get(offset+1))) << 8;
             case  1: k1 ^= ((long) UnsignedBytes.toInt(key.get(offset)));
-                k1 *= c1; k1  = rotl64(k1,31); k1 *= c2; h1 ^= k1;
+                h1 ^= mixK1(k1);
         };
 
+        return finish(h1, h2, length);
+    }
+
+    private static int finish(long h1, long h2, long length)
+    {
         //----------
         // finalization
 